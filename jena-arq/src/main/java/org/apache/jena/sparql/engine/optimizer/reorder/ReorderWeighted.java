@@ -30,7 +30,7 @@ public final class ReorderWeighted extends ReorderTransformationSubstitution
     }
     
     @Override
-    protected double weight(PatternTriple pTriple)
+    public double weight(PatternTriple pTriple)
     {
         return stats.match(pTriple) ;
     }
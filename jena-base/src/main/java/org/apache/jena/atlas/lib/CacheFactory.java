@@ -31,6 +31,17 @@ public class CacheFactory {
         return new CacheGuava<>(maxSize) ;
     }
 
+    /**
+     * Create a cache which has space for up to a certain number of objects,
+     * for use by many threads at once. Keys are admitted by frequency of use (W-TinyLFU)
+     * so a scan over keys used once does not displace those used often.
+     * The cache returns null for a cache miss.
+     * The cache is thread-safe for single operations.
+     */
+    public static <Key, Value> Cache<Key, Value> createConcurrentCache(int maxSize) {
+        return new CacheTinyLFU<>(maxSize) ;
+    }
+
     /** Create a null cache */
     public static <Key, Value> Cache<Key, Value> createNullCache() {
         return new Cache0<>() ;
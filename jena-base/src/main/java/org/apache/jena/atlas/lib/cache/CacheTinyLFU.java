@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.atlas.lib.cache;
+
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.Callable ;
+import java.util.function.BiConsumer ;
+
+import org.apache.jena.atlas.lib.Cache ;
+import org.apache.jena.atlas.logging.Log ;
+
+/**
+ * A cache for use by many threads, with frequency-based admission (W-TinyLFU).
+ * <p>
+ * The entries are spread over segments by hash, each with its own lock, so threads
+ * working on different keys rarely wait for each other.
+ * <p>
+ * In each segment, a new key goes into a small LRU window. When it leaves the window,
+ * it is only kept in the main area, instead of the least recently used key there, if
+ * it has been used more often recently; use is counted approximately by a count-min
+ * sketch, halved from time to time. A scan of keys used once does not push out the
+ * keys in frequent use. The main area is split into probation and protected
+ * LRU parts: a key used again while in probation is protected.
+ * <p>
+ * The drop handler is called for entries evicted for space, not for those removed
+ * or replaced.
+ */
+final public class CacheTinyLFU<K, V> implements Cache<K, V>
+{
+    private static final int MaxSegments = 64 ;
+    private static final int MinSegmentSize = 128 ;
+
+    private final Segment<K, V>[] segments ;
+    private final int mask ;
+    private BiConsumer<K, V> dropHandler = null ;
+
+    @SuppressWarnings("unchecked")
+    public CacheTinyLFU(int size)
+    {
+        if ( size <= 0 )
+            throw new IllegalArgumentException("Cache size: "+size) ;
+        int n = Math.min(MaxSegments, Integer.highestOneBit(Math.max(1, size/MinSegmentSize))) ;
+        segments = (Segment<K, V>[])new Segment<?, ?>[n] ;
+        for ( int i = 0 ; i < n ; i++ )
+            segments[i] = new Segment<>(this, size/n + ( i < size%n ? 1 : 0 )) ;
+        mask = n-1 ;
+    }
+
+    private static int spread(int h)
+    {
+        h ^= h >>> 16 ;
+        h *= 0x45d9f3b ;
+        return h ^ (h >>> 16) ;
+    }
+
+    private Segment<K, V> segment(int hash)
+    {
+        return segments[hash & mask] ;
+    }
+
+    @Override
+    public boolean containsKey(K key)
+    {
+        int h = spread(key.hashCode()) ;
+        return segment(h).containsKey(key) ;
+    }
+
+    @Override
+    public V getIfPresent(K key)
+    {
+        int h = spread(key.hashCode()) ;
+        return segment(h).get(key, h) ;
+    }
+
+    @Override
+    public V getOrFill(K key, Callable<V> filler)
+    {
+        int h = spread(key.hashCode()) ;
+        Segment<K, V> seg = segment(h) ;
+        synchronized (seg)
+        {
+            V value = seg.get(key, h) ;
+            if ( value != null )
+                return value ;
+            try { value = filler.call() ; }
+            catch (Exception ex) {
+                Log.warn(CacheTinyLFU.class, "Exception filling cache", ex) ;
+                return null ;
+            }
+            if ( value != null )
+                seg.put(key, value, h) ;
+            return value ;
+        }
+    }
+
+    @Override
+    public void put(K key, V thing)
+    {
+        int h = spread(key.hashCode()) ;
+        if ( thing == null )
+            segment(h).remove(key) ;
+        else
+            segment(h).put(key, thing, h) ;
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        int h = spread(key.hashCode()) ;
+        segment(h).remove(key) ;
+    }
+
+    /** Iterate over a copy of the keys at the time of the call. */
+    @Override
+    public Iterator<K> keys()
+    {
+        List<K> keys = new ArrayList<>() ;
+        for ( Segment<K, V> seg : segments )
+        {
+            synchronized (seg)
+            { keys.addAll(seg.map.keySet()) ; }
+        }
+        return keys.iterator() ;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0 ;
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( Segment<K, V> seg : segments )
+            seg.clear() ;
+    }
+
+    @Override
+    public long size()
+    {
+        long n = 0 ;
+        for ( Segment<K, V> seg : segments )
+        {
+            synchronized (seg)
+            { n += seg.map.size() ; }
+        }
+        return n ;
+    }
+
+    @Override
+    public void setDropHandler(BiConsumer<K, V> dropHandler)
+    {
+        this.dropHandler = dropHandler ;
+    }
+
+    // ---- Segments
+
+    private static final int WINDOW = 0 ;
+    private static final int PROBATION = 1 ;
+    private static final int PROTECTED = 2 ;
+
+    private static final class Entry<K, V>
+    {
+        final K key ;
+        final int hash ;
+        V value ;
+        int queue ;
+        Entry<K, V> prev, next ;
+
+        Entry(K key, V value, int hash) { this.key = key ; this.value = value ; this.hash = hash ; }
+    }
+
+    /** Doubly linked list of entries, least recently used first. */
+    private static final class Queue<K, V>
+    {
+        final Entry<K, V> head = new Entry<>(null, null, 0) ;
+        int size = 0 ;
+
+        Queue() { head.prev = head ; head.next = head ; }
+
+        Entry<K, V> first()                 { return ( head.next == head ) ? null : head.next ; }
+
+        void addLast(Entry<K, V> e)
+        {
+            e.prev = head.prev ;
+            e.next = head ;
+            head.prev.next = e ;
+            head.prev = e ;
+            size++ ;
+        }
+
+        void unlink(Entry<K, V> e)
+        {
+            e.prev.next = e.next ;
+            e.next.prev = e.prev ;
+            e.prev = null ;
+            e.next = null ;
+            size-- ;
+        }
+
+        void moveToLast(Entry<K, V> e)      { unlink(e) ; addLast(e) ; }
+
+        void clear()                        { head.prev = head ; head.next = head ; size = 0 ; }
+    }
+
+    private static final class Segment<K, V>
+    {
+        private final CacheTinyLFU<K, V> cache ;
+        private final int capacity ;
+        private final int windowCapacity ;
+        private final int protectedCapacity ;
+        final Map<K, Entry<K, V>> map = new HashMap<>() ;
+        private final Queue<K, V> window = new Queue<>() ;
+        private final Queue<K, V> probation = new Queue<>() ;
+        private final Queue<K, V> protectedQueue = new Queue<>() ;
+        private final FrequencySketch sketch ;
+
+        Segment(CacheTinyLFU<K, V> cache, int capacity)
+        {
+            this.cache = cache ;
+            this.capacity = capacity ;
+            // 1% window; 80% of the main area protected.
+            this.windowCapacity = Math.max(1, capacity/100) ;
+            this.protectedCapacity = (capacity-windowCapacity)*4/5 ;
+            this.sketch = new FrequencySketch(capacity) ;
+        }
+
+        synchronized boolean containsKey(K key)
+        {
+            return map.containsKey(key) ;
+        }
+
+        synchronized V get(K key, int hash)
+        {
+            sketch.increment(hash) ;
+            Entry<K, V> e = map.get(key) ;
+            if ( e == null )
+                return null ;
+            onAccess(e) ;
+            return e.value ;
+        }
+
+        synchronized void put(K key, V value, int hash)
+        {
+            Entry<K, V> e = map.get(key) ;
+            if ( e != null )
+            {
+                e.value = value ;
+                onAccess(e) ;
+                return ;
+            }
+            sketch.increment(hash) ;
+            e = new Entry<>(key, value, hash) ;
+            e.queue = WINDOW ;
+            map.put(key, e) ;
+            window.addLast(e) ;
+            if ( window.size > windowCapacity )
+            {
+                // Out of the window, onto probation.
+                Entry<K, V> candidate = window.first() ;
+                window.unlink(candidate) ;
+                candidate.queue = PROBATION ;
+                probation.addLast(candidate) ;
+                if ( map.size() > capacity )
+                    evict(candidate) ;
+            }
+        }
+
+        synchronized void remove(K key)
+        {
+            Entry<K, V> e = map.remove(key) ;
+            if ( e != null )
+                queue(e).unlink(e) ;
+        }
+
+        synchronized void clear()
+        {
+            map.clear() ;
+            window.clear() ;
+            probation.clear() ;
+            protectedQueue.clear() ;
+        }
+
+        private Queue<K, V> queue(Entry<K, V> e)
+        {
+            switch (e.queue)
+            {
+                case WINDOW:    return window ;
+                case PROBATION: return probation ;
+                default:        return protectedQueue ;
+            }
+        }
+
+        private void onAccess(Entry<K, V> e)
+        {
+            switch (e.queue)
+            {
+                case WINDOW:
+                    window.moveToLast(e) ;
+                    break ;
+                case PROBATION:
+                    probation.unlink(e) ;
+                    e.queue = PROTECTED ;
+                    protectedQueue.addLast(e) ;
+                    if ( protectedQueue.size > protectedCapacity )
+                    {
+                        Entry<K, V> demoted = protectedQueue.first() ;
+                        protectedQueue.unlink(demoted) ;
+                        demoted.queue = PROBATION ;
+                        probation.addLast(demoted) ;
+                    }
+                    break ;
+                default:
+                    protectedQueue.moveToLast(e) ;
+            }
+        }
+
+        /** The candidate, just out of the window, or the victim of the main area goes. */
+        private void evict(Entry<K, V> candidate)
+        {
+            Entry<K, V> victim = probation.first() ;
+            if ( victim == candidate )
+            {
+                // Only the candidate is on probation: the victim is the protected LRU, if any.
+                Entry<K, V> p = protectedQueue.first() ;
+                if ( p != null )
+                    victim = p ;
+            }
+            Entry<K, V> drop = candidate ;
+            if ( victim != candidate && sketch.frequency(candidate.hash) > sketch.frequency(victim.hash) )
+                drop = victim ;
+            queue(drop).unlink(drop) ;
+            map.remove(drop.key) ;
+            BiConsumer<K, V> handler = cache.dropHandler ;
+            if ( handler != null )
+                handler.accept(drop.key, drop.value) ;
+        }
+    }
+
+    /**
+     * Count-min sketch of the recent frequency of hashes: 4 rows of counters up to 15,
+     * all halved once there have been 10 increments per entry of the cache.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int Depth = 4 ;
+        private static final int MaxCount = 15 ;
+        private static final int[] Seeds = { 0x97cb3127, 0xbe4b8a93, 0x2c2f9a59, 0x6b6b0e35 } ;
+
+        private final byte[] table ;
+        private final int width ;
+        private final int sampleSize ;
+        private int additions = 0 ;
+
+        FrequencySketch(int capacity)
+        {
+            width = Integer.highestOneBit(Math.max(16, capacity-1)) << 1 ;
+            table = new byte[Depth*width] ;
+            sampleSize = 10*Math.max(capacity, 16) ;
+        }
+
+        private int index(int hash, int row)
+        {
+            int h = hash * Seeds[row] ;
+            h ^= h >>> 16 ;
+            return row*width + (h & (width-1)) ;
+        }
+
+        void increment(int hash)
+        {
+            boolean added = false ;
+            for ( int row = 0 ; row < Depth ; row++ )
+            {
+                int i = index(hash, row) ;
+                if ( table[i] < MaxCount )
+                {
+                    table[i]++ ;
+                    added = true ;
+                }
+            }
+            if ( added && ++additions >= sampleSize )
+                reset() ;
+        }
+
+        int frequency(int hash)
+        {
+            int f = MaxCount ;
+            for ( int row = 0 ; row < Depth ; row++ )
+                f = Math.min(f, table[index(hash, row)]) ;
+            return f ;
+        }
+
+        private void reset()
+        {
+            for ( int i = 0 ; i < table.length ; i++ )
+                table[i] = (byte)(table[i] >> 1) ;
+            additions /= 2 ;
+        }
+    }
+}
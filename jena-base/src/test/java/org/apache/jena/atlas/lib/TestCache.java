@@ -58,6 +58,16 @@ public class TestCache extends BaseTest
         }
     ;
 
+    private static CacheMaker<Integer, Integer> concurrent = 
+        new CacheMaker<Integer, Integer>()
+        {
+        @Override
+        public Cache<Integer, Integer> make(int size) { return CacheFactory.createConcurrentCache(size) ; }
+        @Override
+        public String name() { return "Concurrent" ; } 
+        }
+    ;
+
     @Parameters
     public static Collection<Object[]> cacheMakers()
     {
@@ -68,6 +78,9 @@ public class TestCache extends BaseTest
             , { standard , 10 }
             , { standard , 2 }
             , { standard , 1 }
+            , { concurrent , 10 }
+            , { concurrent , 2 }
+            , { concurrent , 1 }
         } ) ; 
     }
 
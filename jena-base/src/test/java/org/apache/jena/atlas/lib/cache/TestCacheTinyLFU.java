@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.atlas.lib.cache;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Random ;
+import java.util.concurrent.atomic.AtomicInteger ;
+import java.util.concurrent.atomic.AtomicReference ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.Cache ;
+import org.junit.Test ;
+
+public class TestCacheTinyLFU extends BaseTest
+{
+    // Get, and fill on a miss, as a cache in front of a table is used.
+    private static int access(Cache<Integer, Integer> cache, int key)
+    {
+        Integer x = cache.getIfPresent(key) ;
+        if ( x != null )
+            return 1 ;
+        cache.put(key, key) ;
+        return 0 ;
+    }
+
+    @Test public void tinylfu_size_01()
+    {
+        AtomicInteger evictions = new AtomicInteger() ;
+        Cache<Integer, Integer> cache = new CacheTinyLFU<>(100) ;
+        cache.setDropHandler((k, v) -> evictions.incrementAndGet()) ;
+        for ( int i = 0 ; i < 10000 ; i++ )
+            cache.put(i, i) ;
+        assertEquals(100, cache.size()) ;
+        assertEquals(9900, evictions.get()) ;
+        // Replacing and removing are not evictions.
+        cache.put(9999, 0) ;
+        cache.remove(9999) ;
+        assertEquals(9900, evictions.get()) ;
+    }
+
+    @Test public void tinylfu_size_02()
+    {
+        // Several segments.
+        Cache<Integer, Integer> cache = new CacheTinyLFU<>(5000) ;
+        for ( int i = 0 ; i < 100000 ; i++ )
+            cache.put(i, i) ;
+        assertTrue(cache.size() <= 5000) ;
+        assertTrue(cache.size() > 4900) ;
+    }
+
+    @Test public void tinylfu_scan_01()
+    {
+        // Keys in frequent use stay through a scan of keys used once.
+        Cache<Integer, Integer> cache = new CacheTinyLFU<>(1000) ;
+        for ( int round = 0 ; round < 10 ; round++ )
+        {
+            for ( int i = 0 ; i < 500 ; i++ )
+                access(cache, i) ;
+        }
+        for ( int i = 1000 ; i < 100000 ; i++ )
+            access(cache, i) ;
+        int hits = 0 ;
+        for ( int i = 0 ; i < 500 ; i++ )
+            hits += access(cache, i) ;
+        assertTrue("Hits: "+hits, hits > 450) ;
+    }
+
+    @Test public void tinylfu_fill_01()
+    {
+        Cache<Integer, Integer> cache = new CacheTinyLFU<>(10) ;
+        assertEquals(Integer.valueOf(14), cache.getOrFill(7, () -> 14)) ;
+        assertEquals(Integer.valueOf(14), cache.getOrFill(7, () -> 0)) ;
+        assertNull(cache.getOrFill(8, () -> null)) ;
+        assertFalse(cache.containsKey(8)) ;
+    }
+
+    @Test public void tinylfu_threads_01() throws InterruptedException
+    {
+        Cache<Integer, Integer> cache = new CacheTinyLFU<>(500) ;
+        AtomicReference<String> error = new AtomicReference<>() ;
+        List<Thread> threads = new ArrayList<>() ;
+        for ( int t = 0 ; t < 8 ; t++ )
+        {
+            int seed = t ;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed) ;
+                for ( int i = 0 ; i < 50000 ; i++ )
+                {
+                    int key = random.nextInt(5000) ;
+                    Integer x = cache.getIfPresent(key) ;
+                    if ( x == null )
+                        cache.put(key, 2*key) ;
+                    else if ( x != 2*key )
+                        error.set("Key "+key+" : "+x) ;
+                }
+            })) ;
+        }
+        threads.forEach(Thread::start) ;
+        for ( Thread t : threads )
+            t.join() ;
+        assertNull(error.get()) ;
+        assertTrue(cache.size() <= 500) ;
+    }
+}
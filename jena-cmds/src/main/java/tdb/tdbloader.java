@@ -18,6 +18,7 @@
 
 package tdb ;
 
+import java.io.File ;
 import java.util.List ;
 
 import jena.cmd.ArgDecl;
@@ -28,6 +29,7 @@ import org.apache.jena.riot.RDFLanguages ;
 import org.apache.jena.tdb.TDB ;
 import org.apache.jena.tdb.TDBLoader ;
 import org.apache.jena.tdb.store.GraphTDB;
+import org.apache.jena.tdb.store.bulkloader.BulkLoader ;
 import tdb.cmdline.CmdTDB ;
 import tdb.cmdline.CmdTDBGraph ;
 
@@ -36,6 +38,9 @@ public class tdbloader extends CmdTDBGraph {
     // private static final ArgDecl argIncremental = new ArgDecl(ArgDecl.NoValue, "incr", "incremental") ;
     private static final ArgDecl argNoStats = new ArgDecl(ArgDecl.NoValue, "nostats") ;
     private static final ArgDecl argStats = new ArgDecl(ArgDecl.HasValue,  "stats") ;
+    private static final ArgDecl argSortMemory = new ArgDecl(ArgDecl.HasValue, "sort-memory") ;
+    private static final ArgDecl argSortTmpDir = new ArgDecl(ArgDecl.HasValue, "sort-tmpdir") ;
+    private static final ArgDecl argSortThreads = new ArgDecl(ArgDecl.HasValue, "sort-threads") ;
 
     private boolean showProgress  = true ;
     private boolean generateStats  = true ;
@@ -53,6 +58,9 @@ public class tdbloader extends CmdTDBGraph {
 //        super.getUsage().startCategory("Stats") ;
         super.add(argNoStats, "--nostats", "Switch off statistics gathering") ;
         super.add(argStats) ;   // Hidden argument
+        super.add(argSortMemory, "--sort-memory=MB", "Memory for sorting the secondary indexes") ;
+        super.add(argSortTmpDir, "--sort-tmpdir=DIR", "Directory for the sorted runs that do not fit in memory") ;
+        super.add(argSortThreads, "--sort-threads=N", "Threads building the secondary indexes") ;
         // super.add(argParallel, "--parallel",
         // "Do rebuilding of secondary indexes in a parallel") ;
         // super.add(argIncremental, "--incremental",
@@ -67,6 +75,21 @@ public class tdbloader extends CmdTDBGraph {
         super.processModulesAndArgs() ;
         // doInParallel = super.contains(argParallel) ;
         // doIncremental = super.contains(argIncremental) ;
+        if ( super.contains(argSortMemory) )
+            BulkLoader.IndexSortMemory = positive(argSortMemory)*1024*1024 ;
+        if ( super.contains(argSortTmpDir) )
+            BulkLoader.IndexSortTmpDir = new File(getValue(argSortTmpDir)) ;
+        if ( super.contains(argSortThreads) )
+            BulkLoader.IndexSortThreads = (int)positive(argSortThreads) ;
+    }
+
+    private long positive(ArgDecl arg) {
+        try {
+            long x = Long.parseLong(getValue(arg)) ;
+            if ( x > 0 )
+                return x ;
+        } catch (NumberFormatException ex) {}
+        throw new CmdException("Not a positive number: "+getValue(arg)) ;
     }
 
     @Override
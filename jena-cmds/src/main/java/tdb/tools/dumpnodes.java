@@ -39,7 +39,11 @@ import org.apache.jena.tdb.base.file.Location ;
 import org.apache.jena.tdb.base.objectfile.ObjectFile ;
 import org.apache.jena.tdb.lib.NodeLib ;
 import org.apache.jena.tdb.setup.StoreParams ;
+import org.apache.jena.tdb.setup.StoreParamsCodec ;
 import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTableNative ;
+import org.apache.jena.tdb.store.nodetable.Nodec ;
+import org.apache.jena.tdb.store.nodetable.NodecNamespace ;
 import org.apache.jena.tdb.sys.Names ;
 import tdb.cmdline.ModLocation ;
 
@@ -55,7 +59,7 @@ public class dumpnodes extends CmdARQ {
     protected void exec() {
         Location loc = modLocation.getLocation() ;
         ObjectFile objFile = determineNodeTable(loc);
-        dump(System.out, objFile) ;
+        dump(System.out, objFile, determineNodec(loc)) ;
     }
     
     private ObjectFile determineNodeTable(Location loc) {
@@ -68,27 +72,42 @@ public class dumpnodes extends CmdARQ {
         return objFile;
     }
 
+    private Nodec determineNodec(Location loc) {
+        // IRIs as namespace ids if the database was created that way.
+        StoreParams storeParams = StoreParamsCodec.read(loc);
+        if ( storeParams == null || ! storeParams.isNodeNamespaces() )
+            return NodeLib.getNodec() ;
+        FileSet fsId2Node = new FileSet(loc, storeParams.getIndexId2Node()) ;
+        
+        String file = fsId2Node.filename(Names.extNamespaces);
+        return new NodecNamespace(new NamespaceTableNative(FileFactory.createObjectFileDisk(file)));
+    }
+
     protected dumpnodes(String[] argv) {
         super(argv) ;
         super.addModule(modLocation) ;
     }
 
     // Taken from NodeTableNative.
-    private static Iterator<Pair<NodeId, Node>> all(ObjectFile objFile)
+    private static Iterator<Pair<NodeId, Node>> all(ObjectFile objFile, Nodec nodec)
     {
         Iterator<Pair<Long, ByteBuffer>> objs = objFile.all() ; 
         Function<Pair<Long, ByteBuffer>, Pair<NodeId, Node>> transform = item -> {
             NodeId id = NodeId.create(item.car().longValue());
             ByteBuffer bb = item.cdr();
-            Node n = NodeLib.decode(bb);
+            Node n = NodeLib.decode(bb, nodec);
             return new Pair<>(id, n);
         };
         return Iter.map(objs, transform) ;
     }
     
     public static void dump(OutputStream w, ObjectFile objFile) {
+        dump(w, objFile, NodeLib.getNodec()) ;
+    }
+    
+    public static void dump(OutputStream w, ObjectFile objFile, Nodec nodec) {
         // Better to hack the indexes?
-        Iterator<Pair<NodeId, Node>> iter = all(objFile) ;
+        Iterator<Pair<NodeId, Node>> iter = all(objFile, nodec) ;
         long count = 0 ;
         try (IndentedWriter iw = new IndentedWriter(w)) {
             if ( ! iter.hasNext() ) {
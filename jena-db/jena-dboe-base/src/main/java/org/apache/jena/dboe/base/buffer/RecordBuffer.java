@@ -20,6 +20,7 @@ package org.apache.jena.dboe.base.buffer ;
 
 import static java.lang.String.format ;
 import static org.apache.jena.atlas.lib.Alg.encodeIndex ;
+import static org.apache.jena.dboe.sys.Sys.SizeOfLong ;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
@@ -180,6 +181,67 @@ final public class RecordBuffer extends BufferBase {
         return encodeIndex(low) ;
     }
 
+    // ---- Access by long columns.
+    // Keys made of NodeIds are compared and decoded as longs, straight from the
+    // ByteBuffer, so that no Record or byte[] is created. A long key may be shorter
+    // than the record key; it is then compared as a prefix.
+
+    /** Decode the key in slot idx into dst, one long per column (no bounds checking) */
+    public void getLongs(int idx, long[] dst) {
+        int x = idx * slotLen ;
+        for ( int i = 0 ; i < dst.length ; i++ )
+            dst[i] = bb.getLong(x + i * SizeOfLong) ;
+    }
+
+    /** Search for a key given as longs in range fromIndex (inclusive) to toIndex (exclusive) */
+    public int find(long[] key, int fromIndex, int toIndex) {
+        int low = fromIndex ;
+        int high = toIndex - 1 ;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1 ;
+            int x = compare(mid, key) ;
+            if ( x < 0 )
+                low = mid + 1 ;
+            else if ( x > 0 )
+                high = mid - 1 ;
+            else
+                return mid ;
+        }
+        return encodeIndex(low) ;
+    }
+
+    /** Binary search for a key given as longs */
+    public int find(long[] key) {
+        return find(key, 0, numSlot) ;
+    }
+
+    /**
+     * Galloping search for a key given as longs, starting at fromIndex: probes
+     * fromIndex+1, +2, +4, ... then binary searches the last interval. The key must
+     * not be before slot fromIndex. Returns as {@link #find(long[])}.
+     */
+    public int gallop(long[] key, int fromIndex) {
+        int low = fromIndex ;
+        int step = 1 ;
+        while ( low + step < numSlot && compare(low + step, key) < 0 ) {
+            low += step ;
+            step <<= 1 ;
+        }
+        return find(key, low, Math.min(low + step + 1, numSlot)) ;
+    }
+
+    /** Compare the slot at idx with a key given as longs. Columns compare unsigned, as the bytes do. */
+    public int compare(int idx, long[] key) {
+        int x = idx * slotLen ;
+        for ( int i = 0 ; i < key.length ; i++ ) {
+            int c = Long.compareUnsigned(bb.getLong(x + i * SizeOfLong), key[i]) ;
+            if ( c != 0 )
+                return c ;
+        }
+        return 0 ;
+    }
+
     // Record compareByKey except we avoid touching bytes by exiting as soon as
     // possible.
     // No record created as would be by using
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.trans.bplustree;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.List ;
+
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.dboe.base.buffer.RecordBuffer ;
+
+/**
+ * A forward cursor over the keys of a B+Tree, read as longs, that can seek.
+ * <p>
+ * Records blocks are not linked (they are copied on write) so the cursor keeps
+ * the path from the root to its records block, and moves to the next block, or
+ * seeks past the current one, by climbing that path only as far as needed.
+ * The root is taken once, when the cursor is created: inside a read transaction
+ * that is the root of the transaction's view of the tree, and as blocks are
+ * never changed in place, the cursor sees that view whatever commits meanwhile.
+ * <p>
+ * Keys are compared as unsigned longs, as the bytes of the records are. A seek
+ * key shorter than the record key is padded with zeros, the lowest key it is a
+ * prefix of. Seeks only go forward; {@link #position} goes anywhere, from the root.
+ */
+public final class BPTreeCursor implements Closeable {
+    private final BPlusTree bpTree ;
+    private final int columns ;
+    private BPTreeNode root ;               // held until the cursor is closed
+    private final List<BPTreeNode> path = new ArrayList<>() ;
+    private int[] slots = new int[4] ;      // child of path.get(d) on the path
+    private BPTreeRecords records ;
+    private RecordBuffer buffer ;
+    private int slot ;
+    private boolean atEnd ;
+    private final long[] seekKey ;
+
+    /** A cursor on the first key of bpTree, in the current transaction if it is transactional */
+    public BPTreeCursor(BPlusTree bpTree) {
+        this.bpTree = bpTree ;
+        this.columns = bpTree.getRecordFactory().keyLength() / Long.BYTES ;
+        this.seekKey = new long[columns] ;
+        bpTree.startReadBlkMgr() ;
+        root = bpTree.getRootRead() ;
+        path.add(root) ;
+        descend(0, true) ;
+        bpTree.finishReadBlkMgr() ;
+        skipEmpty() ;
+    }
+
+    /** Number of long columns of a key */
+    public int columns()        { return columns ; }
+
+    public boolean atEnd()      { return atEnd ; }
+
+    /** Decode the current key into tuple, its first tuple.length columns */
+    public void get(long[] tuple) {
+        buffer.getLongs(slot, tuple) ;
+    }
+
+    /** Compare the current key with a key prefix, unsigned */
+    public int compare(long[] key) {
+        return buffer.compare(slot, key) ;
+    }
+
+    /** Move to the next key */
+    public void next() {
+        if ( atEnd )
+            return ;
+        slot++ ;
+        if ( slot == buffer.size() ) {
+            bpTree.startReadBlkMgr() ;
+            nextRecords() ;
+            bpTree.finishReadBlkMgr() ;
+            skipEmpty() ;
+        }
+    }
+
+    /**
+     * Move to the first key not before key, which may be a prefix of the record
+     * key. Does not move if the current key is not before it.
+     */
+    public void seek(long[] key) {
+        if ( atEnd )
+            return ;
+        Arrays.fill(seekKey, key.length, columns, 0L) ;
+        System.arraycopy(key, 0, seekKey, 0, key.length) ;
+        if ( buffer.compare(slot, seekKey) >= 0 )
+            return ;
+        int idx = apply(buffer.gallop(seekKey, slot)) ;
+        if ( idx < buffer.size() ) {
+            slot = idx ;
+            return ;
+        }
+
+        bpTree.startReadBlkMgr() ;
+        records.release() ;
+        records = null ;
+        // Climb while the key is past the subtree: the separators are the highest
+        // keys of the subtrees on their left, the root has no bound.
+        int d = path.size() - 1 ;
+        for ( ;; ) {
+            BPTreeNode node = path.get(d) ;
+            RecordBuffer seps = node.getRecordBuffer() ;
+            int s = apply(seps.find(seekKey, slots[d], node.getCount())) ;
+            if ( s < node.getCount() || d == 0 ) {
+                slots[d] = s ;
+                break ;
+            }
+            path.remove(d).release() ;
+            d-- ;
+        }
+        descendFrom(d, false) ;
+        // A separator can be above the keys left of it after deletes: then the
+        // key is after the block found, and the first key of the next one is it.
+        idx = apply(buffer.find(seekKey)) ;
+        if ( idx < buffer.size() )
+            slot = idx ;
+        else
+            nextRecords() ;
+        bpTree.finishReadBlkMgr() ;
+        skipEmpty() ;
+    }
+
+    /**
+     * Move to the first key not before key, which may be a prefix of the record
+     * key, whether it is before or after the current one: down from the root.
+     */
+    public void position(long[] key) {
+        if ( root == null )
+            return ;
+        Arrays.fill(seekKey, key.length, columns, 0L) ;
+        System.arraycopy(key, 0, seekKey, 0, key.length) ;
+        bpTree.startReadBlkMgr() ;
+        releasePath() ;
+        atEnd = false ;
+        path.add(root) ;
+        descend(0, false) ;
+        int idx = apply(buffer.find(seekKey)) ;
+        if ( idx < buffer.size() )
+            slot = idx ;
+        else
+            nextRecords() ;
+        bpTree.finishReadBlkMgr() ;
+        skipEmpty() ;
+    }
+
+    /** Release the blocks of the path. The cursor is then at its end. */
+    @Override
+    public void close() {
+        if ( root == null )
+            return ;
+        releasePath() ;
+        root.release() ;
+        root = null ;
+        buffer = null ;
+        atEnd = true ;
+    }
+
+    /** Release the blocks below the root */
+    private void releasePath() {
+        if ( records != null )
+            records.release() ;
+        records = null ;
+        for ( int d = path.size() - 1 ; d >= 1 ; d-- )
+            path.get(d).release() ;
+        path.clear() ;
+    }
+
+    // ---- Moving on the path: called between startReadBlkMgr and finishReadBlkMgr.
+
+    /** Go down from the last node of the path, to its first child or that of seekKey */
+    private void descend(int d, boolean leftmost) {
+        BPTreeNode node = path.get(d) ;
+        setSlot(d, leftmost ? 0 : apply(node.getRecordBuffer().find(seekKey, 0, node.getCount()))) ;
+        descendFrom(d, leftmost) ;
+    }
+
+    /** Go down from path.get(d) through its child slots[d] */
+    private void descendFrom(int d, boolean leftmost) {
+        BPTreeNode node = path.get(d) ;
+        BPTreePage page = node.get(slots[d]) ;
+        if ( node.isLeaf() ) {
+            records = (BPTreeRecords)page ;
+            buffer = records.getRecordBuffer() ;
+            slot = 0 ;
+            return ;
+        }
+        path.add((BPTreeNode)page) ;
+        descend(d + 1, leftmost) ;
+    }
+
+    /** Go to the first key of the next records block, or to the end */
+    private void nextRecords() {
+        if ( records != null ) {
+            records.release() ;
+            records = null ;
+        }
+        int d = path.size() - 1 ;
+        while ( slots[d] == path.get(d).getCount() ) {
+            if ( d == 0 ) {
+                end() ;
+                return ;
+            }
+            path.remove(d).release() ;
+            d-- ;
+        }
+        slots[d]++ ;
+        descendFrom(d, true) ;
+        slot = 0 ;
+    }
+
+    /** Pass over empty blocks: only the block of an empty tree is, but nothing relies on it */
+    private void skipEmpty() {
+        while ( !atEnd && slot >= buffer.size() ) {
+            bpTree.startReadBlkMgr() ;
+            nextRecords() ;
+            bpTree.finishReadBlkMgr() ;
+        }
+    }
+
+    private void end() {
+        releasePath() ;
+        buffer = null ;
+        atEnd = true ;
+    }
+
+    private void setSlot(int d, int s) {
+        if ( d >= slots.length )
+            slots = Arrays.copyOf(slots, 2 * slots.length) ;
+        slots[d] = s ;
+    }
+
+    private static int apply(int idx) {
+        return idx < 0 ? -(idx + 1) : idx ;
+    }
+}
@@ -154,7 +154,7 @@ public class BPlusTree extends TransactionalComponentLifecycle<BptTxnState> impl
         this.recordsMgr = recordsMgr ;
     }
 
-    private BPTreeNode getRootRead() {
+    /*package*/ BPTreeNode getRootRead() {
         if ( isTransactional() ) {
             super.checkTxn() ;
             int rootId = super.getDataState().getRoot() ;
@@ -30,6 +30,7 @@ import org.junit.runners.Suite ;
     TestBPlusTreeIndexNonTxn.class,
     TestBPlusTreeNonTxn.class,
     TestBPTreeModes.class,
+    TestBPTreeCursor.class,
     
     // Transactional tests
     TestBPlusTreeTxn.class,
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.dboe.trans.bplustree;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.List ;
+import java.util.Random ;
+import java.util.TreeSet ;
+
+import org.apache.jena.atlas.lib.Bytes ;
+import org.apache.jena.dboe.base.file.Location ;
+import org.apache.jena.dboe.base.record.Record ;
+import org.apache.jena.dboe.transaction.Transactional ;
+import org.apache.jena.dboe.transaction.TransactionalFactory ;
+import org.apache.jena.system.Txn ;
+import org.junit.Assert ;
+import org.junit.Test ;
+
+/** Tests of the cursor of a B+Tree, against the keys kept in a sorted set */
+public class TestBPTreeCursor extends Assert {
+
+    private static final int COLUMNS = 3 ;
+
+    // Keys compared as the cursor does: unsigned longs, column by column.
+    private static int compare(long[] a, long[] b) {
+        for ( int i = 0 ; i < Math.min(a.length, b.length) ; i++ ) {
+            int c = Long.compareUnsigned(a[i], b[i]) ;
+            if ( c != 0 )
+                return c ;
+        }
+        return 0 ;
+    }
+
+    private static BPlusTree create() {
+        BPlusTree bpt = BPlusTreeFactory.makeMem(3, 2, COLUMNS * Long.BYTES, 0) ;
+        bpt.nonTransactional() ;
+        return bpt ;
+    }
+
+    private static Record record(BPlusTree bpt, long[] key) {
+        byte[] b = new byte[COLUMNS * Long.BYTES] ;
+        for ( int i = 0 ; i < COLUMNS ; i++ )
+            Bytes.setLong(key[i], b, i * Long.BYTES) ;
+        return bpt.getRecordFactory().create(b) ;
+    }
+
+    private static TreeSet<long[]> fill(BPlusTree bpt, Random random, int n) {
+        TreeSet<long[]> keys = new TreeSet<>(TestBPTreeCursor::compare) ;
+        for ( int i = 0 ; i < n ; i++ ) {
+            // Small values so that prefixes repeat; some with the top bit set.
+            long[] key = { random.nextInt(8), random.nextInt(20), random.nextInt(50) } ;
+            if ( random.nextInt(10) == 0 )
+                key[1] |= Long.MIN_VALUE ;
+            keys.add(key) ;
+            bpt.insert(record(bpt, key)) ;
+        }
+        return keys ;
+    }
+
+    private static List<long[]> scan(BPTreeCursor cursor) {
+        return scan(cursor, Integer.MAX_VALUE) ;
+    }
+
+    private static List<long[]> scan(BPTreeCursor cursor, int max) {
+        List<long[]> res = new ArrayList<>() ;
+        while ( !cursor.atEnd() && res.size() < max ) {
+            long[] key = new long[COLUMNS] ;
+            cursor.get(key) ;
+            res.add(key) ;
+            cursor.next() ;
+        }
+        return res ;
+    }
+
+    private static void assertSameKeys(Iterable<long[]> expected, List<long[]> keys) {
+        List<long[]> exp = new ArrayList<>() ;
+        expected.forEach(exp::add) ;
+        assertEquals(exp.size(), keys.size()) ;
+        for ( int i = 0 ; i < exp.size() ; i++ )
+            assertArrayEquals(exp.get(i), keys.get(i)) ;
+    }
+
+    @Test public void cursor_empty_01() {
+        BPlusTree bpt = create() ;
+        BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+        assertTrue(cursor.atEnd()) ;
+        cursor.seek(new long[]{5}) ;
+        assertTrue(cursor.atEnd()) ;
+        cursor.close() ;
+    }
+
+    @Test public void cursor_scan_01() {
+        BPlusTree bpt = create() ;
+        TreeSet<long[]> keys = fill(bpt, new Random(1), 2000) ;
+        BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+        assertEquals(COLUMNS, cursor.columns()) ;
+        assertSameKeys(keys, scan(cursor)) ;
+        cursor.close() ;
+    }
+
+    @Test public void cursor_seek_01() {
+        BPlusTree bpt = create() ;
+        Random random = new Random(2) ;
+        TreeSet<long[]> keys = fill(bpt, random, 2000) ;
+        for ( int run = 0 ; run < 50 ; run++ ) {
+            BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+            long[] at = null ;
+            while ( !cursor.atEnd() ) {
+                // Forward seeks of prefixes of any length, some not moving.
+                long[] seek = Arrays.copyOf(new long[]{ random.nextInt(9), random.nextInt(22), random.nextInt(52) }, 1 + random.nextInt(COLUMNS)) ;
+                if ( at != null && compare(seek, at) < 0 )
+                    continue ;
+                cursor.seek(seek) ;
+                long[] padded = Arrays.copyOf(seek, COLUMNS) ;
+                long[] expected = at != null && compare(at, padded) >= 0 ? at : keys.ceiling(padded) ;
+                if ( expected == null ) {
+                    assertTrue(cursor.atEnd()) ;
+                    break ;
+                }
+                at = new long[COLUMNS] ;
+                cursor.get(at) ;
+                assertArrayEquals(expected, at) ;
+                assertTrue(cursor.compare(seek) >= 0) ;
+            }
+            cursor.close() ;
+        }
+    }
+
+    @Test public void cursor_position_01() {
+        // Back and forth, from the root.
+        BPlusTree bpt = create() ;
+        Random random = new Random(5) ;
+        TreeSet<long[]> keys = fill(bpt, random, 2000) ;
+        BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+        for ( int i = 0 ; i < 500 ; i++ ) {
+            long[] key = Arrays.copyOf(new long[]{ random.nextInt(9), random.nextInt(22), random.nextInt(52) }, 1 + random.nextInt(COLUMNS)) ;
+            cursor.position(key) ;
+            long[] expected = keys.ceiling(Arrays.copyOf(key, COLUMNS)) ;
+            if ( expected == null )
+                assertTrue(cursor.atEnd()) ;
+            else {
+                long[] at = new long[COLUMNS] ;
+                cursor.get(at) ;
+                assertArrayEquals(expected, at) ;
+                // and on from there
+                assertSameKeys(keys.tailSet(expected, true).stream().limit(20)::iterator, scan(cursor, 20)) ;
+            }
+        }
+        cursor.close() ;
+    }
+
+    @Test public void cursor_delete_01() {
+        // Deletes leave separators above the keys on their left.
+        BPlusTree bpt = create() ;
+        Random random = new Random(3) ;
+        TreeSet<long[]> keys = fill(bpt, random, 2000) ;
+        List<long[]> all = new ArrayList<>(keys) ;
+        for ( int i = 0 ; i < all.size() ; i += 2 ) {
+            keys.remove(all.get(i)) ;
+            bpt.delete(record(bpt, all.get(i))) ;
+        }
+        BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+        assertSameKeys(keys, scan(cursor)) ;
+        cursor.close() ;
+        for ( long[] key : all ) {
+            cursor = new BPTreeCursor(bpt) ;
+            cursor.seek(key) ;
+            long[] expected = keys.ceiling(key) ;
+            if ( expected == null )
+                assertTrue(cursor.atEnd()) ;
+            else {
+                long[] at = new long[COLUMNS] ;
+                cursor.get(at) ;
+                assertArrayEquals(expected, at) ;
+            }
+            cursor.close() ;
+        }
+    }
+
+    @Test public void cursor_txn_01() {
+        // The cursor reads the tree of its read transaction, whatever is committed meanwhile.
+        BPlusTree bpt = BPlusTreeFactory.makeMem(3, 2, COLUMNS * Long.BYTES, 0) ;
+        Transactional thing = TransactionalFactory.createTransactional(Location.mem(), bpt) ;
+        Random random = new Random(4) ;
+        TreeSet<long[]> keys = new TreeSet<>(TestBPTreeCursor::compare) ;
+        Txn.executeWrite(thing, () -> keys.addAll(fill(bpt, random, 500))) ;
+        Txn.executeRead(thing, () -> {
+            BPTreeCursor cursor = new BPTreeCursor(bpt) ;
+            Thread writer = new Thread(() -> Txn.executeWrite(thing, () -> fill(bpt, random, 500))) ;
+            writer.start() ;
+            try {
+                writer.join() ;
+            } catch (InterruptedException ex) {
+                fail() ;
+            }
+            assertSameKeys(keys, scan(cursor)) ;
+            cursor.close() ;
+        }) ;
+    }
+}
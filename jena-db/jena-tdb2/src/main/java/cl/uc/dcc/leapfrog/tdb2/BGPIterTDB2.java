@@ -0,0 +1,368 @@
+package cl.uc.dcc.leapfrog.tdb2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.atlas.lib.tuple.TupleMap;
+import org.apache.jena.dboe.index.RangeIndex;
+import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb2.solver.Abortable;
+import org.apache.jena.tdb2.solver.BindingNodeId;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.NodeIdFactory;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb2.store.tupletable.TupleIndex;
+import org.apache.jena.tdb2.store.tupletable.TupleIndexRecord;
+
+/**
+ * The leapfrog triejoin of a BGP over the B+Tree indexes of TDB2, read through {@link LFTrieIndexTDB2}.
+ *
+ * The variables are visited in one order for all the tuples, so each tuple needs an index having its constants first
+ * and then its variables in that order: {@link #init} looks for such an order. The pages are read in the read
+ * transaction the query runs in, each index from the root it had when the iterator was initialized.
+ */
+public class BGPIterTDB2 implements Iterator<BindingNodeId>, Abortable, Closeable {
+
+	private NodeTupleTable ntt;
+	private Node[][] tuples;								// (S,P,O), or (G,S,P,O) in the quad table
+
+	private Var[] vars;										// in the order of the levels
+	private LFTrieIndexTDB2[] iter;
+	private LFTrieIndexTDB2[][] itersForVar;				// the iterators having vars[i], sorted by key while at level i
+	private int[] idxMin;									// position of the iterator with the least key in itersForVar[i]
+
+	private long[] binding;
+	private boolean started;
+	private boolean nextFound;
+	private boolean finished;
+
+	private volatile boolean aborted;
+
+	/** @param graphNode null for the triples of ntt, else a graph of the quad table ntt */
+	public BGPIterTDB2(BasicPattern pattern, Node graphNode, NodeTupleTable ntt) {
+		this.ntt = ntt;
+		List<Triple> triples = pattern.getList();
+		tuples = new Node[triples.size()][];
+		for (int i = 0; i < tuples.length; i++) {
+			Triple t = triples.get(i);
+			if (graphNode == null) {
+				tuples[i] = new Node[] { t.getSubject(), t.getPredicate(), t.getObject() };
+			} else {
+				tuples[i] = new Node[] { graphNode, t.getSubject(), t.getPredicate(), t.getObject() };
+			}
+		}
+	}
+
+	/**
+	 * Chooses the order of the variables and the index of each tuple, and opens them.
+	 * @throws IllegalStateException if the pattern has something the leapfrog doesn't run here: a variable twice in
+	 * a triple, the union graph, or no order of the variables fitting the indexes.
+	 */
+	public void init() {
+		Set<Var> allVars = new LinkedHashSet<>();
+		for (Node[] tuple : tuples) {
+			Set<Var> tupleVars = new LinkedHashSet<>();
+			for (Node n : tuple) {
+				if (Node.ANY.equals(n)) {
+					throw new IllegalStateException("Union graph");
+				}
+				if (Var.isVar(n) && !tupleVars.add(Var.alloc(n))) {
+					throw new IllegalStateException("Repeated variable in " + Arrays.toString(tuple));
+				}
+			}
+			allVars.addAll(tupleVars);
+		}
+
+		// the variables of more tuples first, those are the joins
+		List<Var> candidates = new ArrayList<>(allVars);
+		candidates.sort(Comparator.comparingInt(v -> -occurrences(v)));
+		List<Var> order = new ArrayList<>();
+		TupleIndex[] indexes = ntt.getTupleTable().getIndexes();
+		if (!findOrder(candidates, order, indexes)) {
+			throw new IllegalStateException("No index order for the variables " + candidates);
+		}
+		vars = order.toArray(new Var[0]);
+
+		NodeTable nodeTable = ntt.getNodeTable();
+		iter = new LFTrieIndexTDB2[tuples.length];
+		List<List<LFTrieIndexTDB2>> forVar = new ArrayList<>();
+		for (int i = 0; i < vars.length; i++) {
+			forVar.add(new ArrayList<>());
+		}
+		for (int i = 0; i < tuples.length; i++) {
+			TupleIndex index = findIndex(tuples[i], order, indexes);
+			TupleMap map = index.getMapping();
+			int n = tuples[i].length;
+			long[] constants = new long[n - varCount(tuples[i])];
+			for (int c = 0; c < constants.length; c++) {
+				NodeId id = nodeTable.getNodeIdForNode(tuples[i][map.getSlotIdx(c)]);
+				// a node not in the table matches nothing: an id no tuple has
+				constants[c] = NodeId.isDoesNotExist(id) ? -1L : toLong(id);
+			}
+			iter[i] = new LFTrieIndexTDB2(btree(index), constants, n - constants.length, n);
+			for (int c = constants.length; c < n; c++) {
+				forVar.get(order.indexOf(Var.alloc(tuples[i][map.getSlotIdx(c)]))).add(iter[i]);
+			}
+		}
+		itersForVar = new LFTrieIndexTDB2[vars.length][];
+		for (int i = 0; i < vars.length; i++) {
+			itersForVar[i] = forVar.get(i).toArray(new LFTrieIndexTDB2[0]);
+		}
+		idxMin = new int[vars.length];
+		binding = new long[vars.length];
+	}
+
+	public Var[] getVars() {
+		return vars;
+	}
+
+	private int occurrences(Var v) {
+		int res = 0;
+		for (Node[] tuple : tuples) {
+			if (Arrays.asList(tuple).contains(v)) {
+				res++;
+			}
+		}
+		return res;
+	}
+
+	private static int varCount(Node[] tuple) {
+		int res = 0;
+		for (Node n : tuple) {
+			if (Var.isVar(n)) {
+				res++;
+			}
+		}
+		return res;
+	}
+
+	/** Extends order with the candidates, backtracking, so every tuple keeps an index. */
+	private boolean findOrder(List<Var> candidates, List<Var> order, TupleIndex[] indexes) {
+		if (candidates.isEmpty()) {
+			return true;
+		}
+		for (int i = 0; i < candidates.size(); i++) {
+			Var v = candidates.remove(i);
+			order.add(v);
+			boolean fits = true;
+			for (Node[] tuple : tuples) {
+				if (findIndex(tuple, order, indexes) == null) {
+					fits = false;
+					break;
+				}
+			}
+			if (fits && findOrder(candidates, order, indexes)) {
+				return true;
+			}
+			order.remove(order.size() - 1);
+			candidates.add(i, v);
+		}
+		return false;
+	}
+
+	/**
+	 * An index with the constants of tuple first and then its variables of order in that order, the others after
+	 * them: null if none, or if its B+Tree can't be read by the trie.
+	 */
+	private static TupleIndex findIndex(Node[] tuple, List<Var> order, TupleIndex[] indexes) {
+		for (TupleIndex index : indexes) {
+			if (btree(index) != null && fits(tuple, order, index.getMapping())) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	private static boolean fits(Node[] tuple, List<Var> order, TupleMap map) {
+		int c = 0;
+		while (c < tuple.length && !Var.isVar(tuple[map.getSlotIdx(c)])) {
+			c++;
+		}
+		int last = -1;
+		for (; c < tuple.length; c++) {
+			Node n = tuple[map.getSlotIdx(c)];
+			if (!Var.isVar(n)) {
+				return false;
+			}
+			int pos = order.indexOf(Var.alloc(n));
+			if (pos == -1) {
+				// not ordered yet: neither may any that follows be
+				last = Integer.MAX_VALUE;
+			} else if (pos < last) {
+				return false;
+			} else {
+				last = pos;
+			}
+		}
+		return true;
+	}
+
+	private static BPlusTree btree(TupleIndex index) {
+		TupleIndex base = index.baseTupleIndex();
+		if (!(base instanceof TupleIndexRecord)) {
+			return null;
+		}
+		RangeIndex rIdx = ((TupleIndexRecord) base).getRangeIndex();
+		return rIdx instanceof BPlusTree ? (BPlusTree) rIdx : null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextFound) {
+			return true;
+		} else if (finished) {
+			return false;
+		}
+		int level;
+		boolean found;
+		if (!started) {
+			started = true;
+			for (LFTrieIndexTDB2 it : iter) {
+				if (!it.openConstants()) {
+					return end();
+				}
+			}
+			if (vars.length == 0) {
+				// the triples are all there
+				nextFound = true;
+				finished = true;
+				return true;
+			}
+			level = 0;
+			found = openLevel(level);
+		} else {
+			level = vars.length - 1;
+			found = nextAtLevel(level);
+		}
+		while (true) {
+			checkAborted();
+			if (found) {
+				binding[level] = itersForVar[level][0].key();
+				if (level == vars.length - 1) {
+					nextFound = true;
+					return true;
+				}
+				level++;
+				found = openLevel(level);
+			} else {
+				for (LFTrieIndexTDB2 it : itersForVar[level]) {
+					it.up();
+				}
+				level--;
+				if (level < 0) {
+					return end();
+				}
+				found = nextAtLevel(level);
+			}
+		}
+	}
+
+	private boolean end() {
+		finished = true;
+		close();
+		return false;
+	}
+
+	private boolean openLevel(int level) {
+		LFTrieIndexTDB2[] iters = itersForVar[level];
+		for (LFTrieIndexTDB2 it : iters) {
+			it.open();
+		}
+		Arrays.sort(iters, (a, b) -> Long.compareUnsigned(a.key(), b.key()));
+		idxMin[level] = 0;
+		return search(level);
+	}
+
+	private boolean nextAtLevel(int level) {
+		LFTrieIndexTDB2[] iters = itersForVar[level];
+		LFTrieIndexTDB2 it = iters[idxMin[level]];
+		it.next();
+		if (it.atEnd()) {
+			return false;
+		}
+		idxMin[level] = (idxMin[level] + 1) % iters.length;
+		return search(level);
+	}
+
+	/** The leapfrog: seeks the least key to the greatest until they are all the same. */
+	private boolean search(int level) {
+		LFTrieIndexTDB2[] iters = itersForVar[level];
+		int p = idxMin[level];
+		long max = iters[(p + iters.length - 1) % iters.length].key();
+		while (true) {
+			checkAborted();
+			LFTrieIndexTDB2 it = iters[p];
+			if (it.key() == max) {
+				idxMin[level] = p;
+				return true;
+			}
+			it.seek(max);
+			if (it.atEnd()) {
+				return false;
+			}
+			max = it.key();
+			p = (p + 1) % iters.length;
+		}
+	}
+
+	@Override
+	public BindingNodeId next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		nextFound = false;
+		BindingNodeId res = new BindingNodeId();
+		for (int i = 0; i < vars.length; i++) {
+			res.put(vars[i], toNodeId(binding[i]));
+		}
+		return res;
+	}
+
+	/** Stops at the next seek or binding. */
+	@Override
+	public void abort() {
+		aborted = true;
+	}
+
+	private void checkAborted() {
+		if (aborted) {
+			throw new QueryCancelledException();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (iter != null) {
+			for (LFTrieIndexTDB2 it : iter) {
+				it.close();
+			}
+		}
+	}
+
+	/** The id as the indexes have it. */
+	public static long toLong(NodeId id) {
+		byte[] b = new byte[NodeId.SIZE];
+		NodeIdFactory.set(id, b);
+		return Bytes.getLong(b);
+	}
+
+	public static NodeId toNodeId(long id) {
+		byte[] b = new byte[NodeId.SIZE];
+		Bytes.setLong(id, b);
+		return NodeIdFactory.get(b);
+	}
+}
@@ -0,0 +1,148 @@
+package cl.uc.dcc.leapfrog.tdb2;
+
+import org.apache.jena.dboe.trans.bplustree.BPTreeCursor;
+import org.apache.jena.dboe.trans.bplustree.BPlusTree;
+
+/**
+ * A tuple pattern as a trie over an index of TDB2: its constants are the leading columns of the index, opened once,
+ * and each level of the trie is one of the variable columns that follow, in the order of the index.
+ *
+ * Moving in the trie is a seek of the cursor to the keys fixed so far followed by the key wanted: the first tuple
+ * having them, if it still has the keys of the levels above. Keys are the encoded ids of the index, compared unsigned.
+ * Opening a level again under the same keys, after levels of other tuples between them changed, is the only move
+ * back: the cursor goes there from the root.
+ */
+public class LFTrieIndexTDB2 {
+
+	private static final long[] NO_KEY = new long[0];
+
+	private final BPTreeCursor cursor;
+	private final int prefix;								// constant columns
+	private final int levels;								// variable columns after them
+
+	private final long[] fixed;								// the constants, then the key of each open level
+	private final long[][] seekKeys;						// seekKeys[c] has the c + 1 first columns: no allocation per seek
+	private final long[] tuple;								// the current tuple of the cursor
+	private int level = -1;
+	private boolean atEnd;
+	private int firstOf = Integer.MAX_VALUE;				// the cursor is on the first tuple of the keys down to this level,
+															// and of those of the levels under it: -1 for the constants
+
+	/**
+	 * @param columns the length of the tuples of btree
+	 * @param levels the columns after the constants visited, the others are ignored
+	 */
+	public LFTrieIndexTDB2(BPlusTree btree, long[] constants, int levels, int columns) {
+		this.cursor = new BPTreeCursor(btree);
+		this.prefix = constants.length;
+		this.levels = levels;
+		this.fixed = new long[columns];
+		System.arraycopy(constants, 0, fixed, 0, prefix);
+		this.seekKeys = new long[columns][];
+		for (int c = 0; c < columns; c++) {
+			seekKeys[c] = new long[c + 1];
+		}
+		this.tuple = new long[columns];
+	}
+
+	public int levels() {
+		return levels;
+	}
+
+	/** Goes to the first tuple of the constants: false if there is none. */
+	public boolean openConstants() {
+		if (prefix > 0) {
+			long[] key = seekKeys[prefix - 1];
+			System.arraycopy(fixed, 0, key, 0, prefix);
+			cursor.seek(key);
+		}
+		if (cursor.atEnd()) {
+			return false;
+		}
+		cursor.get(tuple);
+		firstOf = -1;
+		return matchesFixed(prefix);
+	}
+
+	/** Goes down to the next level, on its first key under the keys above. */
+	public void open() {
+		level++;
+		atEnd = false;
+		if (firstOf > level - 1) {
+			// past the first tuple of the keys above
+			int c = prefix + level;
+			long[] key = c == 0 ? NO_KEY : seekKeys[c - 1];
+			System.arraycopy(fixed, 0, key, 0, c);
+			cursor.position(key);
+			cursor.get(tuple);
+			firstOf = level - 1;
+		}
+		fixed[prefix + level] = tuple[prefix + level];
+	}
+
+	public void up() {
+		level--;
+		atEnd = false;
+	}
+
+	public long key() {
+		return fixed[prefix + level];
+	}
+
+	public boolean atEnd() {
+		return atEnd;
+	}
+
+	/** The next key of the level. */
+	public void next() {
+		long key = key();
+		if (key == -1L) {
+			// the unsigned maximum
+			atEnd = true;
+			return;
+		}
+		move(key + 1);
+	}
+
+	/** The first key of the level not below key, compared unsigned. */
+	public void seek(long key) {
+		if (Long.compareUnsigned(key, key()) > 0) {
+			move(key);
+		}
+	}
+
+	private void move(long key) {
+		int c = prefix + level;
+		long[] seekKey = seekKeys[c];
+		System.arraycopy(fixed, 0, seekKey, 0, c);
+		seekKey[c] = key;
+		cursor.seek(seekKey);
+		if (cursor.atEnd()) {
+			atEnd = true;
+			firstOf = Integer.MAX_VALUE;
+			return;
+		}
+		cursor.get(tuple);
+		if (!matchesFixed(c)) {
+			atEnd = true;
+			firstOf = Integer.MAX_VALUE;
+			return;
+		}
+		fixed[c] = tuple[c];
+		firstOf = level;
+	}
+
+	/** Whether the current tuple has the keys fixed in its first n columns. */
+	private boolean matchesFixed(int n) {
+		for (int i = 0; i < n; i++) {
+			if (tuple[i] != fixed[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void close() {
+		cursor.close();
+	}
+}
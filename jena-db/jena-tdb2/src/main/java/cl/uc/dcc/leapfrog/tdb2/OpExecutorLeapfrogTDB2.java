@@ -0,0 +1,109 @@
+package cl.uc.dcc.leapfrog.tdb2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.atlas.iterator.IteratorResourceClosing;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterFilterExpr;
+import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.tdb2.solver.Abortable;
+import org.apache.jena.tdb2.solver.OpExecutorTDB2;
+import org.apache.jena.tdb2.solver.QueryIterTDB;
+import org.apache.jena.tdb2.solver.SolverLib;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.GraphTDB;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+
+/**
+ * Runs the BGPs of a TDB2 graph, and the FILTERs over them, with the leapfrog ({@link BGPIterTDB2}) when they are
+ * the first step of the query; anything else as {@link OpExecutorTDB2} does.
+ *
+ * Not installed by default: set {@link #OpExecFactoryLeapfrog} in the context of the dataset or of a query
+ * with {@code QC.setFactory}.
+ */
+public class OpExecutorLeapfrogTDB2 extends OpExecutorTDB2 {
+
+	public final static OpExecutorFactory OpExecFactoryLeapfrog = new OpExecutorFactory() {
+		@Override
+		public OpExecutor create(ExecutionContext execCxt) {
+			return new OpExecutorLeapfrogTDB2(execCxt);
+		}
+	};
+
+	public OpExecutorLeapfrogTDB2(ExecutionContext execCxt) {
+		super(execCxt);
+	}
+
+	@Override
+	protected QueryIterator execute(OpBGP opBGP, QueryIterator input) {
+		QueryIterator iter = leapfrog(opBGP, null, input);
+		return iter != null ? iter : super.execute(opBGP, input);
+	}
+
+	@Override
+	protected QueryIterator execute(OpQuadPattern quadPattern, QueryIterator input) {
+		QueryIterator iter = leapfrog(quadPattern, null, input);
+		return iter != null ? iter : super.execute(quadPattern, input);
+	}
+
+	@Override
+	protected QueryIterator execute(OpFilter opFilter, QueryIterator input) {
+		QueryIterator iter = leapfrog(opFilter.getSubOp(), opFilter, input);
+		return iter != null ? iter : super.execute(opFilter, input);
+	}
+
+	/**
+	 * The results of a BGP or quad pattern, filtered by filter if not null, with the leapfrog; null if it doesn't
+	 * run them.
+	 */
+	private QueryIterator leapfrog(Op op, OpFilter filter, QueryIterator input) {
+		if (!(input instanceof QueryIterRoot) || !input.isJoinIdentity()
+				|| !(execCxt.getActiveGraph() instanceof GraphTDB)) {
+			return null;
+		}
+		GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
+		DatasetGraphTDB dsg = graph.getDSG();
+		BasicPattern pattern;
+		Node graphNode;
+		if (op instanceof OpBGP) {
+			pattern = ((OpBGP) op).getPattern();
+			graphNode = decideGraphNode(graph.getGraphName(), execCxt);
+		} else if (op instanceof OpQuadPattern) {
+			pattern = ((OpQuadPattern) op).getBasicPattern();
+			graphNode = decideGraphNode(((OpQuadPattern) op).getGraphNode(), execCxt);
+		} else {
+			return null;
+		}
+		NodeTupleTable ntt = dsg.chooseNodeTupleTable(graphNode);
+
+		BGPIterTDB2 bgp = new BGPIterTDB2(pattern, graphNode, ntt);
+		try {
+			bgp.init();
+		} catch (IllegalStateException ex) {
+			return null;
+		}
+		List<Abortable> killList = new ArrayList<>();
+		killList.add(bgp);
+		Iterator<Binding> bindings = new IteratorResourceClosing<>(SolverLib.convertToNodes(bgp, ntt.getNodeTable()), bgp);
+		QueryIterator iter = new QueryIterTDB(bindings, killList, input, execCxt);
+		if (filter != null) {
+			for (Expr expr : filter.getExprs()) {
+				iter = new QueryIterFilterExpr(iter, expr, execCxt);
+			}
+		}
+		return iter;
+	}
+}
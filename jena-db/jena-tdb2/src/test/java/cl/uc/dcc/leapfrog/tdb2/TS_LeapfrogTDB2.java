@@ -0,0 +1,13 @@
+package cl.uc.dcc.leapfrog.tdb2;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses( {
+	TestBGPIterTDB2.class
+} )
+
+public class TS_LeapfrogTDB2 {
+
+}
@@ -0,0 +1,125 @@
+package cl.uc.dcc.leapfrog.tdb2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The leapfrog on TDB2, checked against the TDB2 executor. */
+public class TestBGPIterTDB2 {
+
+	private static final String NS = "http://example/";
+	private static final String PRE = "PREFIX : <" + NS + "> ";
+
+	private static Dataset dataset;
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	@BeforeClass public static void data() {
+		dataset = TDB2Factory.createDataset();
+		DatasetGraph dsg = dataset.asDatasetGraph();
+		Txn.executeWrite(dsg, () -> {
+			for (int i = 0; i < 300; i++) {
+				dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + (i % 17)));
+				dsg.add(Quad.defaultGraphIRI, uri("o" + (i % 17)), uri("q"), uri("s" + (i * 7 % 300)));
+				dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("v"), NodeFactory.createLiteral("" + (i % 5)));
+				if (i % 4 == 0) {
+					dsg.add(new Quad(uri("g" + (i % 3)), uri("s" + i), uri("p"), uri("o" + (i % 5))));
+				}
+			}
+		});
+	}
+
+	private static List<String> exec(String qs, boolean leapfrog) {
+		return Txn.calculateRead(dataset, () -> {
+			try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, dataset) ) {
+				if (leapfrog) {
+					QC.setFactory(qExec.getContext(), OpExecutorLeapfrogTDB2.OpExecFactoryLeapfrog);
+				}
+				List<String> rows = new ArrayList<>();
+				ResultSet rs = qExec.execSelect();
+				while (rs.hasNext()) {
+					rows.add(rs.nextBinding().toString());
+				}
+				Collections.sort(rows);
+				return rows;
+			}
+		});
+	}
+
+	private static void test(String qs) {
+		List<String> expected = exec(qs, false);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, exec(qs, true));
+	}
+
+	private static BGPIterTDB2 bgp(String bgp) {
+		DatasetGraphTDB dsg = TDBInternal.getDatasetGraphTDB(dataset);
+		OpBGP op = (OpBGP) SSE.parseOp(bgp);
+		return new BGPIterTDB2(op.getPattern(), null, dsg.getTripleTable().getNodeTupleTable());
+	}
+
+	@Test public void bgp_01() {
+		test("SELECT * { ?s :p ?o }");
+		test("SELECT * { ?s :p :o3 }");
+		test("SELECT * { ?s :p ?o . ?o :q ?t }");
+	}
+
+	@Test public void bgp_02() {
+		// a cycle, and a join on the objects
+		test("SELECT * { ?a :p ?o . ?o :q ?b . ?b :p ?o }");
+		test("SELECT * { ?a :p ?o . ?b :p ?o . ?a :v \"2\" . ?b :v \"3\" }");
+		test("SELECT * { ?s ?p ?o . ?o :q ?t }");
+	}
+
+	@Test public void bgp_filter_01() {
+		test("SELECT * { ?s :p ?o . ?s :v ?x FILTER(?x != \"1\") }");
+	}
+
+	@Test public void bgp_graph_01() {
+		test("SELECT * { GRAPH :g1 { ?s :p ?o } }");
+		test("SELECT * { GRAPH ?g { ?s :p ?o } }");
+	}
+
+	@Test public void bgp_empty_01() {
+		assertTrue(exec("SELECT * { ?s :p :nothing }", true).isEmpty());
+		assertTrue(exec("SELECT * { ?s :p ?o . ?o :p ?t }", true).isEmpty());
+		assertEquals(1, exec("SELECT * { :s1 :p :o1 }", true).size());
+	}
+
+	@Test public void bgp_unsupported_01() {
+		BGPIterTDB2 iter = bgp("(bgp (?s <" + NS + "p> ?s))");
+		Txn.executeRead(dataset, () -> {
+			try {
+				iter.init();
+				fail("repeated variable");
+			} catch (IllegalStateException ex) {}
+		});
+		// left to the TDB2 executor
+		test("SELECT * { GRAPH <urn:x-arq:UnionGraph> { ?s :p ?o } }");
+	}
+}
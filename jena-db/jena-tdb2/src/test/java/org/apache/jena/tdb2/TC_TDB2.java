@@ -39,6 +39,8 @@ import org.junit.BeforeClass ;
 import org.junit.runner.RunWith ;
 import org.junit.runners.Suite ;
 
+import cl.uc.dcc.leapfrog.tdb2.TS_LeapfrogTDB2;
+
 // Naming conventions.
 // TS_* - Test sets: collections of testing files (Often Test*)
 // TC_*  - Test collection: sets of TS's and TC's.
@@ -57,6 +59,7 @@ import org.junit.runners.Suite ;
     , TS_TDBAssembler.class
     , TS_Sys.class
     , TS_Loader.class
+    , TS_LeapfrogTDB2.class
 } )
 
 public class TC_TDB2
@@ -1,28 +1,43 @@
 package cl.uc.dcc.leapfrog;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.FmtUtils;
 import org.apache.jena.tdb.index.bplustree.BPlusTree;
+import org.apache.jena.tdb.lib.ColumnMap;
+import org.apache.jena.tdb.solver.Abortable;
 import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.store.NodeId;
 import org.apache.jena.tdb.store.nodetable.NodeTable;
 import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb.store.tupletable.TupleIndex;
 import org.apache.jena.tdb.store.tupletable.TupleIndexRecord;
 
 import cl.uc.dcc.leapfrog.LFTrieIndex;
 
-public class BGPIter {
+public class BGPIter implements Abortable {
 	
 	private NodeTupleTable ntt;								// Required to get the B+Tree indexes and the nodeTable
-	private Triple[] triples;								// Array of all triples in the Pattern.
+	private Node[][] tuples;								// Each triple of the pattern as a tuple of ntt: (S,P,O), or (G,S,P,O) in the quad table.
+															// Node.ANY as G is the union of the named graphs.
+	private Node[][] columns;								// tuples in the column order of their index
 	
-	private LFTrieIndex[] iter;								// Corresponding iterator for each triple.
-	private LFTrieIndex[] iterOrderedForEnumeration;		// Copy of iter, might be in a different order.
-	private LFTrieIndex[][] itersForVar;					// Each itersForVar[i] contains all iterators containing the variable localAttributeOrder[i].
+	private LFTrie[] iter;									// Corresponding iterator for each tuple.
+	private LFTrie[] iterOrderedForEnumeration;				// Copy of iter, might be in a different order.
+	private LFTrie[][] itersForVar;							// Each itersForVar[i] contains all iterators containing the variable localAttributeOrder[i].
 															// These iterators are supposed to be ordered at opening the corresponding level
 															// and the order is always maintained (the position of the minimum changes p=(p+1)%n after each seek).
 	
@@ -41,13 +56,64 @@ public class BGPIter {
 	private int[] globalToLocal;							// index of a variable in the local order given its global index
 	
 	private boolean beforeFirstEnumeration;
+	private boolean emptyEnumeration;						// some iterator has nothing to enumerate: only possible without join variables, on an empty index
 	private int enumarationLevel;
+	
+	private LFCostModel costModel;							// null to keep the order given by getVarOrder
+	
+	private boolean hasRangeMin, hasRangeMax;				// Restricts the first level to [rangeMin, rangeMax), to run a part of the BGP.
+	private long rangeMin, rangeMax;						// Compared unsigned, as the keys in the indexes.
+	private boolean rangeEmpty;								// No key >= rangeMin in some iterator.
+	
+	private Map<Var, LFKeyRange> keyRanges = new HashMap<>();	// keys a variable may take, from the filters: it is intersected, not enumerated
+	private LFKeyRange[] levelRanges;						// keyRanges by level, null if any key
+	
+	private Set<Var> neededVars;							// under a DISTINCT, the variables the query uses, null for all
+	private int distinctLevel;								// the levels after are not needed: one binding for each key of the level before
+	private boolean distinctEnd;							// no needed level after the base: a single binding for the upper variables
+	
+	private List<Var> leadingVars;							// visited first: the groups counted, the keys of an ORDER BY
+	private long groupCount;
+	private boolean counted;								// the count without group variables was taken
+	
+	private Set<String> snapshotIndexes;					// names of the indexes read from their snapshots, see LFTrieSnapshot
+	
+	private volatile boolean aborted;						// checked at each seek and binding, so a cancelled query stops within a hasNext()
+	
+	// The plan and what the leapfrog did at each level, for the plan explained (see LFExplain).
+	private String[] indexNames;							// index of each tuple
+	private int[] noIntersectionLevels;						// columns of each tuple that are not enumerated
+	private long[] seekCount;								// seeks of the iterators at each level
+	private long[] nextCount;
+	private long[] keyCount;								// keys found by the intersection at each level
+	private long bindingCount;								// bindings of the BGP
 		
 	
 	public BGPIter(BasicPattern pattern, NodeTupleTable ntt) {
+		this(pattern, ntt, null);
+	}
+	
+	public BGPIter(BasicPattern pattern, NodeTupleTable ntt, LFCostModel costModel) {
+		this(pattern, null, ntt, costModel);
+	}
+	
+	/**
+	 * @param graphNode null for the triples of ntt, else the graph of the pattern in the quad table ntt:
+	 * a node, a variable, or {@link Node#ANY} for the union of the named graphs.
+	 */
+	public BGPIter(BasicPattern pattern, Node graphNode, NodeTupleTable ntt, LFCostModel costModel) {
 		this.ntt = ntt;
+		this.costModel = costModel;
 		List<Triple> temp = pattern.getList();
-		triples = temp.toArray(new Triple[temp.size()]);
+		tuples = new Node[temp.size()][];
+		for (int i = 0; i < tuples.length; i++) {
+			Triple t = temp.get(i);
+			if (graphNode == null) {
+				tuples[i] = new Node[] { t.getSubject(), t.getMatchPredicate(), t.getObject() };
+			} else {
+				tuples[i] = new Node[] { graphNode, t.getSubject(), t.getMatchPredicate(), t.getObject() };
+			}
+		}
 	}
 	
 	/** Searches for terms in the BGP and open their corresponding iterators. 
@@ -55,25 +121,37 @@ public class BGPIter {
 	 *  */
 	public boolean openTerms() {
 		NodeTable nodeTable = ntt.getNodeTable();
-		for (int i = 0; i < triples.length; i++) {
-			Node nodes[] = { triples[i].getSubject(), triples[i].getMatchPredicate(), triples[i].getObject() };
-			LFTrieIndex iter = this.iter[i];
+		for (int i = 0; i < tuples.length; i++) {
+			Node nodes[] = columns[i];
+			LFTrie iter = this.iter[i];
 			
-			for (int j = 0; j < 3; j++) {
-				if ( ! nodes[j].isVariable() ) {
-					long id = nodeTable.getNodeIdForNode(nodes[j]).getId();
+			// the constants at the start of the index are opened here, the iterator checks the others
+			boolean prefix = true;
+			for (int j = 0; j < nodes.length; j++) {
+				if ( ! isConstant(nodes[j]) ) {
+					prefix = false;
+					continue;
+				}
+				NodeId nodeId = nodeTable.getNodeIdForNode(nodes[j]);
+				long id = nodeId.getId();
+				
+				if ( ! prefix ) {
+					if (NodeId.isDoesNotExist(nodeId)) {
+						return false;
+					}
+					iter.setConstant(j, id);
+					continue;
+				}
+				iter.open();
+				// Have to check this first because exists the possibility that after open
+				// it ended up finding the key. Calling iter.seek would move forwards
+				if (iter.key() != id) {
 					
-					iter.open();
-					// Have to check this first because exists the possibility that after open
-					// it ended up finding the key. Calling iter.seek would move forwards
-					if (iter.key() != id) {
-						
-						iter.seek(id);
-						
-						if (iter.atEnd() || iter.key() != id) {
-							// no match is found, we know is impossible to have any binding
-							return false;
-						}
+					iter.seek(id);
+					
+					if (iter.atEnd() || iter.key() != id) {
+						// no match is found, we know is impossible to have any binding
+						return false;
 					}
 				}
 			}
@@ -85,7 +163,7 @@ public class BGPIter {
 	
 	/** calls up() in all the corresponding iterators */
 	private void up() {		
-		LFTrieIndex it[] = itersForVar[level];
+		LFTrie it[] = itersForVar[level];
 		for (int i = 0; i < it.length; i++) {
 			it[i].up();
 		}
@@ -95,19 +173,33 @@ public class BGPIter {
 	/** opens all the corresponding iterators for the current level and orders them by key */
 	public void open() {
 		level++;
+		if (level == baseLevel) {
+			distinctEnd = false;
+		}
 		
 		if (level < enumarationLevel) {
 			beforeFirst = true;
-			LFTrieIndex it[] = itersForVar[level];
+			LFTrie it[] = itersForVar[level];
 			for (int i = 0; i < it.length; i++) {
 				it[i].open();
 			}
 			
+			if (level == 0 && hasRangeMin) {
+				rangeEmpty = false;
+				for (int i = 0; i < it.length; i++) {
+					if (Long.compareUnsigned(it[i].key(), rangeMin) < 0) {
+						it[i].seek(rangeMin);
+						seekCount[level]++;
+						rangeEmpty |= it[i].atEnd();
+					}
+				}
+			}
+			
 			// sort the corresponding iterators using insertion sort
 			for (int i = 1; i < it.length; i++) {
-				LFTrieIndex aux = it[i];
+				LFTrie aux = it[i];
 				int j;
-				for (j = i-1; j >= 0 && it[j].key() > aux.key(); j--) {
+				for (j = i-1; j >= 0 && Long.compareUnsigned(it[j].key(), aux.key()) > 0; j--) {
 					it[j+1] = it[j];
 				}
 				it[j+1] = aux;
@@ -115,8 +207,10 @@ public class BGPIter {
 			idxMin[level] = 0;
 		} else {
 			beforeFirstEnumeration = true;
+			emptyEnumeration = false;
 			for (int i = 0; i < iter.length; i++) {
 				iter[i].startNoIntersection(binding);
+				emptyEnumeration |= iter[i].bufferSize() == 0;
 			}
 
 			for (int i = 0; i < iter.length; i++) {
@@ -125,7 +219,7 @@ public class BGPIter {
 			
 			// sort the corresponding iterators using insertion sort
 			for (int i = 1; i < iterOrderedForEnumeration.length; i++) {
-				LFTrieIndex aux = iterOrderedForEnumeration[i];
+				LFTrie aux = iterOrderedForEnumeration[i];
 				int j;
 				for (j = i-1; j >= 0 && iterOrderedForEnumeration[j].bufferSize() > aux.bufferSize(); j--) {
 					iterOrderedForEnumeration[j+1] = iterOrderedForEnumeration[j];
@@ -137,51 +231,73 @@ public class BGPIter {
 	
 	
 	public boolean hasNext() {
-		while (level != enumarationLevel) {
-			// We try to bind the variable for the current level
-			if ( findIntersection() ) {
-				open();
-			} else {
-				if (level == baseLevel) {
+		while (true) {
+			checkAborted();
+			if (distinctEnd) {
+				return false;
+			}
+			if (distinctLevel < enumarationLevel && level == enumarationLevel && !beforeFirstEnumeration) {
+				// the binding found is the only one needed for the key of the last needed level
+				level--;
+				while (level >= Math.max(distinctLevel, baseLevel+1)) {
+					up();
+				}
+				if (distinctLevel <= baseLevel) {
+					distinctEnd = true;
 					return false;
+				}
+			}
+		
+			while (level != enumarationLevel) {
+				checkAborted();
+				// We try to bind the variable for the current level
+				if ( findIntersection() ) {
+					open();
 				} else {
-					up();
+					if (level == baseLevel) {
+						return false;
+					} else {
+						up();
+					}
 				}
 			}
-		}
 		
-		if (beforeFirstEnumeration) {
-			beforeFirstEnumeration = false;
-			return true;
-		}
+			if (beforeFirstEnumeration) {
+				beforeFirstEnumeration = false;
+				if (!emptyEnumeration) {
+					bindingCount++;
+					return true;
+				}
+			}
 		
-		for (int i = 0; i < iterOrderedForEnumeration.length; i++) {
-			if (iterOrderedForEnumeration[i].hasNextInBuffer()) {
-				iterOrderedForEnumeration[i].nextInBuffer(binding);
+			for (int i = 0; i < iterOrderedForEnumeration.length && !emptyEnumeration; i++) {
+				if (iterOrderedForEnumeration[i].hasNextInBuffer()) {
+					iterOrderedForEnumeration[i].nextInBuffer(binding);
 				
-				while (--i >= 0) {
-					iterOrderedForEnumeration[i].resetBuffer(binding);
+					while (--i >= 0) {
+						iterOrderedForEnumeration[i].resetBuffer(binding);
+					}
+					bindingCount++;
+					return true;
 				}
-				return true;
 			}
-		}
 		
-		for (int i = 0; i < iterOrderedForEnumeration.length; i++) {
-			if (iterOrderedForEnumeration[i].hasNextBuffer()) {
-				iterOrderedForEnumeration[i].nextBuffer(binding);
+			for (int i = 0; i < iterOrderedForEnumeration.length && !emptyEnumeration; i++) {
+				if (iterOrderedForEnumeration[i].hasNextBuffer()) {
+					iterOrderedForEnumeration[i].nextBuffer(binding);
 				
-				while (--i >= 0) {
-					iterOrderedForEnumeration[i].resetAll(binding);
+					while (--i >= 0) {
+						iterOrderedForEnumeration[i].resetAll(binding);
+					}
+					bindingCount++;
+					return true;
 				}
-				return true;
 			}
-		}
-		
-		level--;
-		if (level < baseLevel) {
-			return false;
-		} else {
-			return hasNext();
+			
+			level--;
+			if (level < baseLevel) {
+				return false;
+			}
 		}
 	}
 	
@@ -191,14 +307,25 @@ public class BGPIter {
 	 */	
 	private boolean findIntersection() {
 		
-		LFTrieIndex currentIter[] = itersForVar[level];
+		LFTrie currentIter[] = itersForVar[level];
 		int p = idxMin[level]; // to make code simpler, don't forget to reassign idxMin[level] = p before returning true.
 		
+		if (level == 0 && rangeEmpty) {
+			return false;
+		}
+		
 		// Call next unless this is the first call to leapfrogSearch after open() was called
 		if (beforeFirst) {
 			beforeFirst = false;
+			// opening the level checks the constants after it, which may leave nothing to intersect
+			for (int i = 0; i < currentIter.length; i++) {
+				if (currentIter[i].atEnd()) {
+					return false;
+				}
+			}
 		} else {
 			currentIter[p].next();
+			nextCount[level]++;
 			if ( currentIter[p].atEnd() ) {
 				return false;
 			} else {
@@ -210,12 +337,33 @@ public class BGPIter {
 		long max = currentIter[Math.floorMod(p - 1, currentIter.length)].key();
 		
 		while (true) {
+			checkAborted();
 			long min = currentIter[p].key();
 			if (min == max) { // min = max means all are equal
+				if (level == 0 && hasRangeMax && Long.compareUnsigned(min, rangeMax) >= 0) {
+					return false;
+				}
+				LFKeyRange range = levelRanges[level];
+				if (range != null && !range.contains(min)) {
+					// the filters reject the keys up to the next one in range, skip them
+					if (!range.hasCeiling(min)) {
+						return false;
+					}
+					currentIter[p].seek(range.ceiling(min));
+					seekCount[level]++;
+					if ( currentIter[p].atEnd() ) {
+						return false;
+					}
+					max = currentIter[p].key();
+					p = (p + 1) % currentIter.length;
+					continue;
+				}
 				binding[level] = min;
+				keyCount[level]++;
 				return true;
 			} else {
 				currentIter[p].seek(max);
+				seekCount[level]++;
 				if ( currentIter[p].atEnd() ) {
 					return false;
 				} else {
@@ -245,48 +393,84 @@ public class BGPIter {
 			globalIndex++;
 		}
 		
-		// Create one iterator per each triple
-		iter = new LFTrieIndex[triples.length];
-		iterOrderedForEnumeration = new LFTrieIndex[triples.length];
+		levelRanges = new LFKeyRange[localAttributeOrder.length];
+		for (int i = baseLevel; i < localAttributeOrder.length; i++) {
+			levelRanges[i] = keyRanges.get(localAttributeOrder[i]);
+		}
 		
-		for (int i = 0; i < triples.length; i++) {
-			int permutation = getIndex(triples[i]);
+		enumarationLevel = localAttributeOrder.length;
+		while (enumarationLevel > 0 && !repitedVar(localAttributeOrder[enumarationLevel-1], upperVars)) {
+			enumarationLevel--;	
+		}
+		
+		distinctLevel = localAttributeOrder.length;
+		if (neededVars != null) {
+			while (distinctLevel > baseLevel && !neededVars.contains(localAttributeOrder[distinctLevel-1])) {
+				distinctLevel--;
+			}
+		}
+		distinctLevel = Math.min(distinctLevel, enumarationLevel);
+		
+		// Create one iterator per each tuple
+		iter = new LFTrie[tuples.length];
+		iterOrderedForEnumeration = new LFTrie[tuples.length];
+		columns = new Node[tuples.length][];
+		indexNames = new String[tuples.length];
+		noIntersectionLevels = new int[tuples.length];
+		
+		List<Var> order = Arrays.asList(localAttributeOrder);
+		for (int i = 0; i < tuples.length; i++) {
+			int permutation = getIndex(tuples[i], order, enumarationLevel);
 			TupleIndexRecord index = (TupleIndexRecord) ntt.getTupleTable().getIndex(permutation);
+			ColumnMap colMap = index.getColumnMap();
+			columns[i] = new Node[tuples[i].length];
+			for (int j = 0; j < columns[i].length; j++) {
+				columns[i][j] = tuples[i][colMap.fetchSlotIdx(j)];
+			}
 			BPlusTree btree = (BPlusTree) index.getRangeIndex();
-			iter[i] = new LFTrieIndex(btree, triples[i], localAttributeOrder, permutation, getNoIntersectionLevel(triples[i], permutation, upperVars));
+			indexNames[i] = index.getName();
+			noIntersectionLevels[i] = getNoIntersectionLevel(columns[i], upperVars);
+			LFTrieSnapshot snapshot = (snapshotIndexes != null && snapshotIndexes.contains(index.getName())) ? LFTrieSnapshot.get(btree) : null;
+			if (snapshot != null) {
+				indexNames[i] += " snapshot";
+				iter[i] = new LFSnapshotTrie(snapshot, columns[i], localAttributeOrder, noIntersectionLevels[i]);
+			} else {
+				iter[i] = new LFTrieIndex(btree, columns[i], localAttributeOrder, noIntersectionLevels[i]);
+			}
+			if (neededVars != null) {
+				iter[i].setDistinctWidth(getDistinctWidth(columns[i]));
+			}
 		}
 		
 		// dont't need to initialize each idxMin element at 0, java does it automatically.
 		idxMin = new int[localAttributeOrder.length];
 		
 		// for each variable in the gao, we create an array containing the corresponding iterators.
-		itersForVar = new LFTrieIndex[localAttributeOrder.length][];
+		itersForVar = new LFTrie[localAttributeOrder.length][];
 		
 		binding = new long[localAttributeOrder.length];
+		seekCount = new long[localAttributeOrder.length];
+		nextCount = new long[localAttributeOrder.length];
+		keyCount = new long[localAttributeOrder.length];
 		
 		for (int i = 0; i < localAttributeOrder.length; i++) {
 			for (int lvl = 0; lvl < localAttributeOrder.length; lvl++) {
 				// we add to triplesForLevel all the iterators for the current lvl
-				List<LFTrieIndex> triplesForLevel = new ArrayList<>();
+				List<LFTrie> triplesForLevel = new ArrayList<>();
 				
-				for (int j = 0; j < triples.length; j++) {
-					if ( tripleContainsVariable(triples[j], localAttributeOrder[lvl]) ) {
+				for (int j = 0; j < tuples.length; j++) {
+					if ( tupleContainsVariable(tuples[j], localAttributeOrder[lvl]) ) {
 						triplesForLevel.add(iter[j]);
 					}
 				}
 				// triplesForLevel list is converted to an array.
-				itersForVar[lvl] = new LFTrieIndex[triplesForLevel.size()];
+				itersForVar[lvl] = new LFTrie[triplesForLevel.size()];
 				for (int k = 0; k < triplesForLevel.size(); k++) {
 					// Order does not matter yet. They will be ordered after a open() is called at their level.
 					itersForVar[lvl][k] = triplesForLevel.get(k);
 				}	
 			}
 		}
-		enumarationLevel = localAttributeOrder.length;
-		while (enumarationLevel > 0 && !repitedVar(localAttributeOrder[enumarationLevel-1], upperVars)) {
-			enumarationLevel--;	
-		}
-		
 		return globalAttributeOrder;		
 	}
 	
@@ -301,9 +485,7 @@ public class BGPIter {
 			tempGao.add(upperVar);
 		}
 		
-		for (Triple triple : triples) {
-			Node nodes[] = { triple.getSubject(), triple.getMatchPredicate(), triple.getObject() };
-			
+		for (Node nodes[] : tuples) {
 			for (int i = 0; i < nodes.length; i++) {
 				if ( Var.isVar(nodes[i]) ) {
 					Var v = (Var) nodes[i];
@@ -325,6 +507,23 @@ public class BGPIter {
 			}
 		}
 		List<Var> afterOrdered = getVarOrder(after);
+		if (costModel != null) {
+			afterOrdered = costModel.getVarOrder(tuples, afterOrdered, previous);
+		}
+		if (leadingVars != null) {
+			List<Var> leading = new ArrayList<>();
+			for (Var v : leadingVars) {
+				if (afterOrdered.contains(v)) {
+					leading.add(v);
+				}
+			}
+			for (Var v : afterOrdered) {
+				if (!leadingVars.contains(v)) {
+					leading.add(v);
+				}
+			}
+			afterOrdered = leading;
+		}
 		List<Var> localAttributeOrderList = new ArrayList<>();
 		
 		for (Var upperVar : upperVars) {
@@ -335,6 +534,8 @@ public class BGPIter {
 		}
 		
 		localAttributeOrderList.addAll(afterOrdered);
+		localAttributeOrderList = getIndexOrder(localAttributeOrderList, upperVars);
+		afterOrdered = localAttributeOrderList.subList(baseLevel, localAttributeOrderList.size());
 		localAttributeOrder = localAttributeOrderList.toArray(new Var[localAttributeOrderList.size()]);
 		
 		// now previous have all variables
@@ -345,24 +546,19 @@ public class BGPIter {
 	
 	public List<Var> getVarOrder(List<Var> after) {
 		List<Var> res = new ArrayList<>();
-		if (triples.length <= 1) {
+		if (tuples.length <= 1) {
 			return after;
 		}
 		
-		for (int i = 1; i < triples.length; i++) {
+		for (int i = 1; i < tuples.length; i++) {
 			int[] varAppereances = new int[after.size()];
 			
 			for (int j = 0; j <= i; j++) {
-				Triple triple = triples[j];
-				for (int k = 0; k < after.size(); k++) {
-					if (triple.getSubject().equals(after.get(k))) {
-						varAppereances[k]++;
-					}
-					if (triple.getPredicate().equals(after.get(k))) {
-						varAppereances[k]++;
-					}
-					if (triple.getObject().equals(after.get(k))) {
-						varAppereances[k]++;
+				for (Node node : tuples[j]) {
+					for (int k = 0; k < after.size(); k++) {
+						if (node.equals(after.get(k))) {
+							varAppereances[k]++;
+						}
 					}
 				}
 			}
@@ -383,103 +579,139 @@ public class BGPIter {
 		return res;
 	}
 	
-	/** 
-	 * @param triple the triple you want to know its permutation.
-	 * @return the corresponding position in the indexes array, need to be consistent with 
-	 * the order declared at Names.java 
+	/**
+	 * Variables to visit in order, the same as preferred if the indexes of ntt allow it: with the quad indexes the
+	 * graph can only be the first or the last column. Otherwise the join variables are reordered, keeping the first
+	 * order in preferred that some index of each tuple follows.
+	 * @param preferred the upper variables of the BGP followed by the others, join variables first.
+	 * @throws IllegalStateException if no order of the join variables fits the indexes.
 	 */
-	private int getIndex(Triple triple) {
-		// Default values satisfy s < p < o, because openTerms() will check in that order.
-		int s=-3, p=-2, o=-1;
-
-		// If the node is a variable, we assign their position in the gao.
-		for (int i = 0; i < localAttributeOrder.length; i++) {
-			if ( localAttributeOrder[i].equals(triple.getSubject()) ) {
-				s = i;
-			} else if ( localAttributeOrder[i].equals(triple.getPredicate()) ) {
-				p = i;
-			} else if ( localAttributeOrder[i].equals(triple.getObject()) ) {
-				o = i;
-			}
-		}
-		if (s <= p && s <= o) { // S??
-			if (p <= o) {
-				return 0; // SPO
+	private List<Var> getIndexOrder(List<Var> preferred, Var[] upperVars) {
+		List<Var> res = new ArrayList<>(preferred.subList(0, baseLevel));
+		List<Var> joinVars = new ArrayList<>();
+		List<Var> singleVars = new ArrayList<>();
+		for (Var v : preferred.subList(baseLevel, preferred.size())) {
+			if (repitedVar(v, upperVars)) {
+				joinVars.add(v);
 			} else {
-				return 3; // SOP
+				singleVars.add(v);
 			}
-				
-		} else if (p <= s && p <= o) { // P??
-			if (s <= o) {
-				return 4; // PSO
-			} else {
-				return 1; // POS
-			}		
-		} else { // O??
-			if (s <= p) {
-				return 2; // OSP
-			} else {
-				return 5; // OPS
+		}
+		if (!searchIndexOrder(res, joinVars)) {
+			// the ranged variables are enumerated and left to the filters instead, but those leading
+			if (keyRanges.keySet().removeIf(v -> leadingVars == null || !leadingVars.contains(v))) {
+				return getIndexOrder(preferred, upperVars);
 			}
+			throw new IllegalStateException("No index order for the variables " + preferred);
 		}
+		res.addAll(singleVars);
+		return res;
 	}
 	
 	
-	private int getNoIntersectionLevel(Triple triple, int permutation, Var[] upperVars) {
-		if (permutation == 0) { // SPO
-			if (repitedVar(triple.getObject(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getPredicate(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getSubject(), upperVars))
-				return 1;
+	/** Depth first search of the first extension of order with the variables of remaining that fits the indexes. */
+	private boolean searchIndexOrder(List<Var> order, List<Var> remaining) {
+		for (Node[] tuple : tuples) {
+			if (getIndex(tuple, order, order.size()) < 0) {
+				return false;
+			}
 		}
-		else if (permutation == 1) { // POS
-			if (repitedVar(triple.getSubject(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getObject(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getPredicate(), upperVars))
-				return 1;
+		if (remaining.isEmpty()) {
+			return true;
 		}
-		else if (permutation == 2) { // OSP
-			if (repitedVar(triple.getPredicate(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getSubject(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getObject(), upperVars))
-				return 1;
+		for (int i = 0; i < remaining.size(); i++) {
+			Var v = remaining.remove(i);
+			order.add(v);
+			if (searchIndexOrder(order, remaining)) {
+				return true;
+			}
+			order.remove(order.size()-1);
+			remaining.add(i, v);
 		}
-		else if (permutation == 3) { // SOP
-			if (repitedVar(triple.getPredicate(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getObject(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getSubject(), upperVars))
-				return 1;
+		return false;
+	}
+	
+	
+	/** 
+	 * @param tuple the tuple you want to know its index.
+	 * @param order the variables, the first ordered of them are visited by the leapfrog in that order and the
+	 * others are enumerated.
+	 * @return the position of the index for tuple in the indexes of ntt, -1 if there isn't one.
+	 * The index must have the constants before any enumerated variable, the ordered variables following order,
+	 * and Node.ANY last. The first index having the constants first, in the order of the tuple, and all the
+	 * variables following order is preferred: for triples that is SPO, POS, ... as declared at Names.java.
+	 */
+	private int getIndex(Node[] tuple, List<Var> order, int ordered) {
+		TupleIndex[] indexes = ntt.getTupleTable().getIndexes();
+		int res = -1;
+		for (int i = 0; i < indexes.length; i++) {
+			ColumnMap colMap = indexes[i].getColumnMap();
+			boolean fits = true;
+			boolean preferred = true;
+			boolean enumerated = false;		// an enumerated variable was seen
+			boolean any = false;			// Node.ANY was seen
+			int lastOrdered = -1;
+			int lastRank = Integer.MIN_VALUE;
+			for (int j = 0; j < tuple.length && fits; j++) {
+				int slot = colMap.fetchSlotIdx(j);
+				Node node = tuple[slot];
+				int rank;
+				if (Node.ANY.equals(node)) {
+					any = true;
+					rank = Integer.MAX_VALUE;
+				} else if (isConstant(node)) {
+					fits = !enumerated && !any;
+					rank = slot - tuple.length;
+				} else {
+					int pos = order.indexOf(node);
+					if (pos >= 0 && pos < ordered) {
+						fits = !enumerated && !any && pos > lastOrdered;
+						lastOrdered = pos;
+					} else {
+						fits = !any;
+						enumerated = true;
+					}
+					rank = (pos >= 0) ? pos : Integer.MAX_VALUE-1;
+				}
+				preferred &= rank >= lastRank;
+				lastRank = rank;
+			}
+			if (fits && preferred) {
+				return i;
+			}
+			if (fits && res < 0) {
+				res = i;
+			}
 		}
-		else if (permutation == 4) { // PSO
-			if (repitedVar(triple.getObject(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getSubject(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getPredicate(), upperVars))
-				return 1;
+		return res;
+	}
+	
+	
+	/** @param columns a tuple in the column order of its index. Its columns up to the last needed one. */
+	private int getDistinctWidth(Node[] columns) {
+		int width = columns.length;
+		while (width > 0 && (Node.ANY.equals(columns[width-1]) || (Var.isVar(columns[width-1]) && !neededVars.contains(columns[width-1])))) {
+			width--;
+		}
+		return width;
+	}
+	
+	
+	/** @param columns a tuple in the column order of its index. */
+	private int getNoIntersectionLevel(Node[] columns, Var[] upperVars) {
+		int level = columns.length;
+		while (level > 0 && Node.ANY.equals(columns[level-1])) {
+			level--;
 		}
-		else { // permutation == 5 // OPS
-			if (repitedVar(triple.getSubject(), upperVars))
-				return 3;
-			else if (repitedVar(triple.getPredicate(), upperVars))
-				return 2;
-			else if (repitedVar(triple.getObject(), upperVars))
-				return 1;
+		while (level > 0 && !repitedVar(columns[level-1], upperVars)) {
+			level--;
 		}
-		return 0;
+		return level;
 	}
 	
 	
 	private boolean repitedVar(Node node, Var[] upperVars) {
-		if (!node.isVariable()) {
+		if (isConstant(node) || keyRanges.containsKey(node) || (leadingVars != null && leadingVars.contains(node))) {
 			return true;
 		} else {
 			for (Var var : upperVars) {
@@ -488,14 +720,8 @@ public class BGPIter {
 				}
 			}
 			int appearances = 0;
-			for (Triple triple : triples) {
-				if (triple.getSubject().equals(node)) {
-					appearances++;
-				}
-				else if (triple.getPredicate().equals(node)) {
-					appearances++;
-				}
-				else if (triple.getObject().equals(node)) {
+			for (Node[] tuple : tuples) {
+				if (tupleContainsVariable(tuple, node)) {
 					appearances++;
 				}
 			}
@@ -504,19 +730,259 @@ public class BGPIter {
 	}
 	
 	/**
-	 * @param triple the triple you want to check if the variable is in.
-	 * @param var the variable you are searching into the triple.
-	 * @return true if the variable is contained in the triple, false otherwise. 
+	 * @param tuple the tuple you want to check if the variable is in.
+	 * @param var the variable you are searching into the tuple.
+	 * @return true if the variable is contained in the tuple, false otherwise. 
 	 * */
-	private static boolean tripleContainsVariable(Triple triple, Var var) {
-		return triple.subjectMatches(var) || triple.predicateMatches(var) || triple.objectMatches(var); 
-	}	
+	private static boolean tupleContainsVariable(Node[] tuple, Node var) {
+		for (Node node : tuple) {
+			if (node.equals(var)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/** Constants are concrete nodes, not variables nor Node.ANY. */
+	private static boolean isConstant(Node node) {
+		return node.isConcrete();
+	}
+	
+	
+	/**
+	 * Only bindings with v in range, see {@link LFRangeFilter}. Before init: v becomes a level of the leapfrog,
+	 * that seeks past the keys out of range, unless no index order allows it.
+	 */
+	public void setKeyRange(Var v, LFKeyRange range) {
+		LFKeyRange r = keyRanges.get(v);
+		keyRanges.put(v, r == null ? range : r.intersection(range));
+	}
+	
+	/**
+	 * Only the variables in vars are needed, the bindings differing in the others alone may be left out: for a
+	 * DISTINCT over them. Before init.
+	 */
+	public void setNeededVars(Set<Var> vars) {
+		neededVars = vars;
+	}
+	
+	/**
+	 * The indexes with these names are read from their snapshots in memory, see {@link LFTrieSnapshot}; they must
+	 * not change while the BGP is read. Before init.
+	 */
+	public void setSnapshotIndexes(Set<String> names) {
+		snapshotIndexes = names;
+	}
+	
+	/**
+	 * The variables to visit first, in this order if the indexes allow it, else in some order or not at all: check
+	 * with {@link #isLeadingPrefix}.
+	 * The bindings then come sorted by their ids, and can be counted for each key of them, see {@link #nextGroup}.
+	 * Before init, without upper variables.
+	 */
+	public void setLeadingVars(List<Var> vars) {
+		leadingVars = vars;
+	}
+	
+	/** Whether the leading variables are the first ones visited, in any order. After init. */
+	public boolean isLeadingPrefix() {
+		for (int i = 0; i < leadingVars.size(); i++) {
+			if (i >= enumarationLevel || !leadingVars.contains(localAttributeOrder[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Moves to the next key of the leading variables having bindings and counts them. The key is the first variables
+	 * of {@link #next()}, the count {@link #getGroupCount()}. Without leading variables there is a single count,
+	 * maybe 0. Instead of {@link #hasNext()}, after openTerms() and before open().
+	 */
+	public boolean nextGroup() {
+		int groupLevel = leadingVars.size();
+		if (groupLevel == 0) {
+			if (counted) {
+				return false;
+			}
+			counted = true;
+			groupCount = countBelow();
+			return true;
+		}
+		if (level < 0) {
+			open();
+		}
+		while (true) {
+			if (findIntersection()) {
+				if (level == groupLevel-1) {
+					groupCount = countBelow();
+					if (groupCount > 0) {
+						return true;
+					}
+				} else {
+					open();
+				}
+			} else {
+				if (level == 0) {
+					return false;
+				}
+				up();
+			}
+		}
+	}
+	
+	public long getGroupCount() {
+		return groupCount;
+	}
+	
+	/**
+	 * Number of bindings below the current level: the intersections are walked, the variables of the enumeration
+	 * are only in one tuple and their count is the product of the counts of each tuple.
+	 */
+	private long countBelow() {
+		if (level+1 == enumarationLevel) {
+			long n = 1;
+			for (int i = 0; i < iter.length && n > 0; i++) {
+				n *= iter[i].countNoIntersection();
+			}
+			return n;
+		}
+		open();
+		long n = 0;
+		while (findIntersection()) {
+			n += countBelow();
+		}
+		up();
+		return n;
+	}
+	
+	/** Makes the iterator throw a {@link QueryCancelledException} at its next seek. Can be called from any thread. */
+	@Override
+	public void abort() {
+		aborted = true;
+	}
+	
+	private void checkAborted() {
+		if (aborted) {
+			throw new QueryCancelledException();
+		}
+	}
+	
+	/** The variables of the BGP. */
+	public Set<Var> getVars() {
+		Set<Var> vars = new LinkedHashSet<>();
+		for (Node[] tuple : tuples) {
+			for (Node node : tuple) {
+				if (Var.isVar(node)) {
+					vars.add(Var.alloc(node));
+				}
+			}
+		}
+		return vars;
+	}
+	
+	/** Only bindings with the first variable >= min. Must be called before the first open(). */
+	public void setRangeMin(long min) {
+		hasRangeMin = true;
+		rangeMin = min;
+	}
+	
+	/** Only bindings with the first variable < max. */
+	public void setRangeMax(long max) {
+		hasRangeMax = true;
+		rangeMax = max;
+	}
+	
+	/**
+	 * Keys of the first variable splitting its values in up to n parts of similar size, sampled from the
+	 * internal nodes of the B+Tree of the iterator with fewer records. Called after the first open().
+	 * @return the keys in increasing order, empty if the BGP can't be split on its first variable.
+	 */
+	public long[] sampleSplits(int n) {
+		if (level != 0 || baseLevel != 0 || enumarationLevel == 0 || n <= 1) {
+			return new long[0];
+		}
+		LFTrie smallest = null;
+		long smallestSize = Long.MAX_VALUE;
+		for (LFTrie it : itersForVar[0]) {
+			long size = it.levelSize();
+			if (size < smallestSize) {
+				smallest = it;
+				smallestSize = size;
+			}
+		}
+		List<Long> keys = new ArrayList<>();
+		smallest.sampleKeys(4*n, keys);
+		
+		List<Long> splits = new ArrayList<>();
+		for (int i = 1; i < n; i++) {
+			int idx = i * keys.size() / n;
+			if (idx < keys.size() && (splits.isEmpty() || Long.compareUnsigned(splits.get(splits.size()-1), keys.get(idx)) < 0)) {
+				splits.add(keys.get(idx));
+			}
+		}
+		long[] res = new long[splits.size()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = splits.get(i);
+		}
+		return res;
+	}
+	
+	
+	/**
+	 * Writes the plan of the BGP, after init: its variable order, a bar before the variables enumerated from a
+	 * single index, and each tuple as its index has it, with the bar before its enumerated columns. With analyze,
+	 * the seeks, nexts and keys found at each level of the intersection, the bindings, and the leaf pages each
+	 * index went to at each of its columns and in the enumeration.
+	 */
+	void explain(IndentedWriter out, boolean analyze) {
+		out.print("bgp");
+		printNodes(out, localAttributeOrder, enumarationLevel);
+		out.println();
+		out.incIndent();
+		for (int i = 0; i < tuples.length; i++) {
+			out.print(indexNames[i]);
+			printNodes(out, columns[i], noIntersectionLevels[i]);
+			if (analyze) {
+				out.print("  pages");
+				for (int j = 0; j < columns[i].length; j++) {
+					out.print(" " + iter[i].pagesAt(j));
+				}
+				out.print(", enumeration " + iter[i].enumerationPages() + " pages " + iter[i].enumerationTuples() + " tuples");
+			}
+			out.println();
+		}
+		if (analyze) {
+			for (int i = 0; i < enumarationLevel; i++) {
+				out.println(fmt(localAttributeOrder[i]) + "  " + seekCount[i] + " seeks, " + nextCount[i] + " nexts, " + keyCount[i] + " keys");
+			}
+			out.println(bindingCount + " bindings");
+		}
+		out.decIndent();
+	}
+	
+	private static void printNodes(IndentedWriter out, Node[] nodes, int bar) {
+		for (int i = 0; i < nodes.length; i++) {
+			out.print(i == bar ? " | " : " ");
+			out.print(fmt(nodes[i]));
+		}
+	}
+	
+	private static String fmt(Node node) {
+		return FmtUtils.stringForNode(node, SSE.getPrefixMapWrite());
+	}
 	
 	
 	public Var getLocalAttribute(int i) {
 		return localAttributeOrder[i];
 	}
 	
+	
+	public int getLocalAttributeCount() {
+		return localAttributeOrder.length;
+	}
+	
 
 	public long[] next() {
 		return binding;
@@ -526,19 +992,22 @@ public class BGPIter {
 	public boolean tryOpenAndSeek(long nodeId) {
 		boolean res = true;
 		level++;
-		LFTrieIndex it[] = itersForVar[level];
+		LFTrie it[] = itersForVar[level];
 		// tengo que abrir todos los iteradores para que sea consistente
 		for (int i = 0; i < it.length; i++) {
 			it[i].open();
 			if (it[i].key() != nodeId) { // podría quedar justo abierto en la key que necesito, si hago seek me paso
 				it[i].seek(nodeId);
+				seekCount[level]++;
 			}
-			if (it[i].key() != nodeId) {
+			// past the end, as the constants after the level may leave it, the key is stale
+			if (it[i].atEnd() || it[i].key() != nodeId) {
 				res = false;
 			}
 		}
 		if (res) {
 			binding[level] = nodeId;
+			keyCount[level]++;
 		}
 		return res;
 	}
@@ -546,7 +1015,8 @@ public class BGPIter {
 	
 	public boolean seekBinding(BindingNodeId base, int firstChangedVarPos) {
 		beforeFirst = true;
-		int levelToReset = globalToLocal[firstChangedVarPos];
+		// a BGP of constants only, as ARQ leaves the right side of an OPTIONAL substituted with the left one
+		int levelToReset = (globalToLocal.length == 0) ? 0 : globalToLocal[firstChangedVarPos];
 		
 		// se supone que quede en baseLevel
 		// por cada variable de mi gao que este en reset tengo que hacer up
@@ -570,10 +1040,11 @@ public class BGPIter {
 	}
 	
 
-	public int getFirstChangedVar(BindingNodeId previousBinding) {		
-		if (previousBinding != null) {
+	/** @param previousIds a previous result of {@link #next()} (a copy), or null. */
+	public int getFirstChangedVar(long[] previousIds) {		
+		if (previousIds != null) {
 			for (int i = 0; i < localAttributeOrder.length; i++) {
-				if ( previousBinding.get(localAttributeOrder[i]).getId() != binding[i]) {
+				if ( previousIds[i] != binding[i]) {
 					return localToGlobal[i];
 				}
 			}
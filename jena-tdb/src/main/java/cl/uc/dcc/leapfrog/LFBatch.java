@@ -0,0 +1,70 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+
+/**
+ * A query run for each of many values of one of its variables, as a single query: the values are a VALUES block
+ * joined with its pattern, which the leapfrog runs in one pass, seeking from one value to the next (see
+ * {@link OptionalTreeNode#setValues}). The results are then sent back to the value they were found for.
+ */
+public class LFBatch {
+
+	private LFBatch() {}
+
+	/**
+	 * The results of query with each of values as the value of param, in the order of values. The results have param
+	 * bound, projected or not.
+	 * @throws IllegalArgumentException for a query that is not a SELECT, or whose results for a value depend on those
+	 * of the others: with a LIMIT, an OFFSET or a GROUP BY.
+	 */
+	public static Map<Node, List<Binding>> exec(Query query, Var param, Collection<Node> values, Dataset dataset) {
+		if (!query.isSelectType() || query.hasLimit() || query.hasOffset() || query.hasGroupBy()) {
+			throw new IllegalArgumentException("Not a query to run for each value: " + query);
+		}
+		Query batch = query.cloneQuery();
+		ElementData data = new ElementData();
+		data.add(param);
+		Map<Node, List<Binding>> results = new LinkedHashMap<>();
+		for (Node value : values) {
+			if (!results.containsKey(value)) {
+				data.add(BindingFactory.binding(param, value));
+				results.put(value, new ArrayList<>());
+			}
+		}
+		ElementGroup group = new ElementGroup();
+		group.addElement(data);
+		group.addElement(batch.getQueryPattern());
+		batch.setQueryPattern(group);
+		if (!batch.isQueryResultStar() && !batch.getProjectVars().contains(param)) {
+			batch.addResultVar(param);
+		}
+
+		try ( QueryExecution qExec = QueryExecutionFactory.create(batch, dataset) ) {
+			ResultSet rs = qExec.execSelect();
+			while (rs.hasNext()) {
+				Binding binding = rs.nextBinding();
+				List<Binding> res = results.get(binding.get(param));
+				if (res != null) {
+					res.add(binding);
+				}
+			}
+		}
+		return results;
+	}
+}
@@ -0,0 +1,241 @@
+package cl.uc.dcc.leapfrog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.atlas.AtlasException;
+import org.apache.jena.atlas.data.BagFactory;
+import org.apache.jena.atlas.data.DataBag;
+import org.apache.jena.atlas.data.SerializationFactory;
+import org.apache.jena.atlas.data.ThresholdPolicy;
+import org.apache.jena.atlas.data.ThresholdPolicyFactory;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Sink;
+
+/**
+ * The bindings of a child of an {@link OptionalTreeNode} for the current binding of its parent, replayed once
+ * for each combination with the bindings of its siblings.
+ *
+ * Each binding is a row of ids, one column per variable the child may bind, taken from and put back into arrays
+ * indexed by the global attribute order of the tree (see {@link LFBindingNodeId}).
+ * Rows are kept in a growable <code>long[]</code> until the {@link ThresholdPolicy} is exceeded, the following
+ * ones go to a {@link DataBag} that writes them to disk.
+ */
+public class LFBindingCache {
+
+	private static final long UNBOUND = LFBindingNodeId.UNBOUND;
+	private static final int INITIAL_ROWS = 16;
+
+	private int[] columns;			// positions in the global attribute order
+	private long spillThreshold;
+
+	private long[] rows;
+	private int size;				// rows in memory
+	private long spilledSize;		// rows in the bag
+	private ThresholdPolicy<long[]> policy;
+	private DataBag<long[]> bag;
+
+	private long pos = -1;			// current row, -1 before the first
+	private long[] row;				// current row if it comes from the bag
+	private Iterator<long[]> bagIter;
+
+	/**
+	 * @param columns the positions of the variables in the global attribute order.
+	 * @param spillThreshold number of rows kept in memory, negative for no limit
+	 * (as {@link org.apache.jena.query.ARQ#spillToDiskThreshold}).
+	 */
+	public LFBindingCache(int[] columns, long spillThreshold) {
+		this.columns = columns;
+		this.spillThreshold = spillThreshold;
+		rows = new long[INITIAL_ROWS * Math.max(1, columns.length)];
+		policy = newPolicy();
+	}
+
+	// Rows without columns only count bindings, they are never spilled.
+	private ThresholdPolicy<long[]> newPolicy() {
+		return spillThreshold >= 0 && columns.length > 0 ? ThresholdPolicyFactory.count(spillThreshold) : ThresholdPolicyFactory.never();
+	}
+
+	/** Empties the cache, so it can be filled again. */
+	public void clear() {
+		closeBag();
+		size = 0;
+		spilledSize = 0;
+		pos = -1;
+		policy.reset();
+	}
+
+	/** Adds the columns of binding, an array indexed by the global attribute order. */
+	public void add(long[] binding) {
+		long[] r = policy.isThresholdExceeded() ? new long[columns.length] : null;
+		int offset = size * columns.length;
+		if (r == null && offset + columns.length > rows.length) {
+			long[] newRows = new long[Math.max(rows.length * 2, offset + columns.length)];
+			System.arraycopy(rows, 0, newRows, 0, offset);
+			rows = newRows;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			long value = columns[i] < binding.length ? binding[columns[i]] : UNBOUND;
+			if (r == null) {
+				rows[offset + i] = value;
+			} else {
+				r[i] = value;
+			}
+		}
+		if (r == null) {
+			size++;
+			policy.increment(null);
+		} else {
+			if (bag == null) {
+				bag = BagFactory.newDefaultBag(ThresholdPolicyFactory.count(0), new RowSerialization(columns.length));
+			}
+			bag.add(r);
+			spilledSize++;
+		}
+	}
+
+	public long size() {
+		return size + spilledSize;
+	}
+
+	/** True if some rows were written to disk. */
+	public boolean isSpilled() {
+		return bag != null;
+	}
+
+	/** Goes back to before the first row. */
+	public void rewind() {
+		pos = -1;
+		row = null;
+		if (bagIter != null) {
+			Iter.close(bagIter);
+			bagIter = null;
+		}
+	}
+
+	/** Moves to the next row, false if there is none. */
+	public boolean advance() {
+		if (pos + 1 >= size()) {
+			return false;
+		}
+		pos++;
+		if (pos >= size) {
+			if (bagIter == null) {
+				bagIter = bag.iterator();
+			}
+			row = bagIter.next();
+		}
+		return true;
+	}
+
+	/** Puts the bound columns of the current row in binding, indexed by the global attribute order. */
+	public void extend(long[] binding) {
+		for (int i = 0; i < columns.length; i++) {
+			long value = pos < size ? rows[(int) pos * columns.length + i] : row[i];
+			if (value != UNBOUND) {
+				binding[columns[i]] = value;
+			}
+		}
+	}
+
+	/** Releases the rows on disk. */
+	public void close() {
+		closeBag();
+	}
+
+	private void closeBag() {
+		rewind();
+		if (bag != null) {
+			bag.close();
+			bag = null;
+		}
+	}
+
+	/** Rows of a fixed number of longs. */
+	private static class RowSerialization implements SerializationFactory<long[]> {
+		private final int width;
+
+		RowSerialization(int width) {
+			this.width = width;
+		}
+
+		@Override
+		public Sink<long[]> createSerializer(OutputStream out) {
+			DataOutputStream data = new DataOutputStream(out);
+			return new Sink<long[]>() {
+				@Override
+				public void send(long[] item) {
+					try {
+						for (int i = 0; i < width; i++) {
+							data.writeLong(item[i]);
+						}
+					} catch (IOException e) {
+						throw new AtlasException(e);
+					}
+				}
+
+				@Override
+				public void flush() {
+					try {
+						data.flush();
+					} catch (IOException e) {
+						throw new AtlasException(e);
+					}
+				}
+
+				@Override
+				public void close() {
+					flush();
+				}
+			};
+		}
+
+		@Override
+		public Iterator<long[]> createDeserializer(InputStream in) {
+			DataInputStream data = new DataInputStream(in);
+			return new Iterator<long[]>() {
+				private long[] next;
+				private boolean finished = false;
+
+				@Override
+				public boolean hasNext() {
+					if (next == null && !finished) {
+						long[] r = new long[width];
+						try {
+							for (int i = 0; i < width; i++) {
+								r[i] = data.readLong();
+							}
+							next = r;
+						} catch (EOFException e) {
+							finished = true;
+						} catch (IOException e) {
+							throw new AtlasException(e);
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				public long[] next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					long[] r = next;
+					next = null;
+					return r;
+				}
+			};
+		}
+
+		@Override
+		public long getEstimatedMemorySize(long[] item) {
+			return 16 + 8L * width;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.store.NodeId;
+
+/**
+ * A {@link BindingNodeId} over an array of ids indexed by the global attribute order of an optional tree,
+ * instead of a hash map. Variables whose id is {@link #UNBOUND} are not in the binding.
+ *
+ * The array is not copied: {@link OptionalTreeNode} gives each result its own, and uses views over its
+ * working arrays for filters and children.
+ */
+public class LFBindingNodeId extends BindingNodeId {
+
+	public static final long UNBOUND = NodeId.NodeDoesNotExist.getId();
+
+	private final Var[] vars;
+	private final long[] ids;
+
+	/** @param ids ids for vars, with at least as many elements. */
+	public LFBindingNodeId(Var[] vars, long[] ids) {
+		this(vars, ids, null);
+	}
+
+	/** @param parent the binding this one extends, see {@link BindingNodeId#getParentBinding()}. */
+	public LFBindingNodeId(Var[] vars, long[] ids, Binding parent) {
+		super(null, null, parent);
+		this.vars = vars;
+		this.ids = ids;
+	}
+
+	private int indexOf(Var v) {
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i].equals(v)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** The id of v, {@link #UNBOUND} if it is not in the binding. */
+	public long getId(Var v) {
+		int i = indexOf(v);
+		return i < 0 ? UNBOUND : ids[i];
+	}
+
+	@Override
+	public boolean containsKey(Var v) {
+		return getId(v) != UNBOUND;
+	}
+
+	@Override
+	public NodeId get(Var v) {
+		long id = getId(v);
+		return id == UNBOUND ? null : NodeId.create(id);
+	}
+
+	@Override
+	public void put(Var v, NodeId n) {
+		if (v == null || n == null) {
+			throw new IllegalArgumentException("(" + v + "," + n + ")");
+		}
+		int i = indexOf(v);
+		if (i < 0) {
+			throw new IllegalArgumentException("Not in the attribute order: " + v);
+		}
+		ids[i] = n.getId();
+	}
+
+	@Override
+	public void putAll(BindingNodeId other) {
+		for (Var v : other) {
+			put(v, other.get(v));
+		}
+	}
+
+	@Override
+	public Iterator<Var> iterator() {
+		return new Iterator<Var>() {
+			private int i = skip(0);
+
+			private int skip(int from) {
+				while (from < vars.length && ids[from] == UNBOUND) {
+					from++;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return i < vars.length;
+			}
+
+			@Override
+			public Var next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Var v = vars[i];
+				i = skip(i + 1);
+				return v;
+			}
+		};
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < vars.length; i++) {
+			if (ids[i] != UNBOUND) {
+				size++;
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,165 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The bindings of a child of an {@link OptionalTreeNode} for the keys its parent bound to the variables they share,
+ * so a binding of the parent with the same keys as an earlier one reads them again instead of seeking the child.
+ * In a star of OPTIONALs, a child joining on a variable after the first of the parent sees its keys come back for
+ * each key of the variables before.
+ *
+ * Rows are the columns of the child, as in {@link LFBindingCache}, taken from arrays indexed by the global attribute
+ * order. The least recently used keys are dropped to keep up to a number of rows; the bindings of a key with more
+ * rows than that are not kept.
+ */
+public class LFChildMemo {
+
+	private static final long[] NO_ROWS = new long[0];
+
+	private final int[] keyColumns;			// positions in the global attribute order of the shared variables
+	private final int[] columns;			// of the child, positions in the global attribute order
+	private final long maxRows;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long rows;						// rows of the entries
+
+	private Key recordKey;					// the key the rows added are for, null if not recording
+	private long[] recorded;
+	private int recordedCount;
+
+	private long hits;
+
+	/** The bindings of a child for a key: count rows of the child's columns, one after the other. */
+	public static class Entry {
+		final long[] rows;
+		final int count;
+
+		private Entry(long[] rows, int count) {
+			this.rows = rows;
+			this.count = count;
+		}
+
+		public int count() {
+			return count;
+		}
+	}
+
+	private static class Key {
+		final long[] ids;
+		final int hash;
+
+		Key(long[] ids) {
+			this.ids = ids;
+			this.hash = Arrays.hashCode(ids);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(ids, ((Key) o).ids);
+		}
+	}
+
+	/**
+	 * @param keyColumns the positions of the shared variables in the global attribute order.
+	 * @param columns the positions of the variables of the child, as for its {@link LFBindingCache}.
+	 * @param maxRows rows kept for all the keys.
+	 */
+	public LFChildMemo(int[] keyColumns, int[] columns, long maxRows) {
+		this.keyColumns = keyColumns;
+		this.columns = columns;
+		this.maxRows = maxRows;
+	}
+
+	/** The bindings kept for the keys of binding, an array indexed by the global attribute order; null if none. */
+	public Entry get(long[] binding) {
+		Entry entry = entries.get(new Key(key(binding)));
+		if (entry != null) {
+			hits++;
+		}
+		return entry;
+	}
+
+	/** Starts keeping the rows added next as the bindings for the keys of binding, until {@link #end}. */
+	public void start(long[] binding) {
+		recordKey = new Key(key(binding));
+		recorded = NO_ROWS;
+		recordedCount = 0;
+	}
+
+	/** Adds the columns of binding, an array indexed by the global attribute order, to the rows being kept. */
+	public void add(long[] binding) {
+		if (recordKey == null) {
+			return;
+		}
+		if (recordedCount >= maxRows) {
+			// too many to keep
+			recordKey = null;
+			recorded = null;
+			return;
+		}
+		int offset = recordedCount * columns.length;
+		if (offset + columns.length > recorded.length) {
+			recorded = Arrays.copyOf(recorded, Math.max(2 * recorded.length, offset + columns.length));
+		}
+		for (int i = 0; i < columns.length; i++) {
+			recorded[offset + i] = columns[i] < binding.length ? binding[columns[i]] : LFBindingNodeId.UNBOUND;
+		}
+		recordedCount++;
+	}
+
+	/** Keeps the rows added since {@link #start}, unless there were too many, dropping the least recently used. */
+	public void end() {
+		if (recordKey == null) {
+			return;
+		}
+		Entry entry = new Entry(Arrays.copyOf(recorded, recordedCount * columns.length), recordedCount);
+		Entry old = entries.put(recordKey, entry);
+		if (old != null) {
+			rows -= old.count;
+		}
+		rows += entry.count;
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (rows > maxRows && eldest.hasNext()) {
+			rows -= eldest.next().count;
+			eldest.remove();
+		}
+		recordKey = null;
+		recorded = null;
+	}
+
+	/** Puts the columns of row i of entry in binding, indexed by the global attribute order. */
+	public void extend(Entry entry, int i, long[] binding) {
+		int offset = i * columns.length;
+		for (int j = 0; j < columns.length; j++) {
+			binding[columns[j]] = entry.rows[offset + j];
+		}
+	}
+
+	/** Forgets all the keys, when the bindings of the child may change for the same keys. */
+	public void clear() {
+		entries.clear();
+		rows = 0;
+		recordKey = null;
+		recorded = null;
+	}
+
+	/** Times a binding of the parent found its keys. */
+	public long hits() {
+		return hits;
+	}
+
+	private long[] key(long[] binding) {
+		long[] key = new long[keyColumns.length];
+		for (int i = 0; i < keyColumns.length; i++) {
+			key[i] = binding[keyColumns[i]];
+		}
+		return key;
+	}
+}
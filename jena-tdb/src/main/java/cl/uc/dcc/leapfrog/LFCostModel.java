@@ -0,0 +1,226 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternElements;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderFixed;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderWeighted;
+import org.apache.jena.tdb.index.bplustree.BPlusTree;
+import org.apache.jena.tdb.lib.ColumnMap;
+import org.apache.jena.tdb.solver.stats.TripleStats;
+import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb.store.tupletable.TupleIndex;
+import org.apache.jena.tdb.store.tupletable.TupleIndexRecord;
+
+/**
+ * Chooses the order in which the leapfrog visits the join variables of a BGP, using estimated cardinalities.
+ *
+ * The number of tuples matching the constants of a triple, or quad, is estimated on the B+Tree whose key starts
+ * with those constants ({@link BPlusTree#estimateRange}).
+ * Once some variables of the triple are bound, that count is scaled by the weights of the dataset's
+ * {@link ReorderTransformation}: with a stats file ({@link ReorderWeighted}) these come from the predicate
+ * counts, otherwise the fixed weights of {@link ReorderFixed} are used. When the live statistics of the triple
+ * table know the predicate of a triple ({@link TripleStats}), the count is instead divided by the number of
+ * distinct subjects, or objects, of the predicate for each of those columns that is bound.
+ */
+public class LFCostModel {
+
+	private NodeTupleTable ntt;
+	private ToDoubleFunction<PatternTriple> weights;
+	private TripleStats stats;								// null when there are none, or the tuples are quads
+
+	public LFCostModel(NodeTupleTable ntt, ReorderTransformation reorderTransformation) {
+		this(ntt, reorderTransformation, null);
+	}
+
+	/** @param stats the statistics of ntt, a triple table, or null to use the weights alone. */
+	public LFCostModel(NodeTupleTable ntt, ReorderTransformation reorderTransformation, TripleStats stats) {
+		this.ntt = ntt;
+		this.stats = stats;
+		if (reorderTransformation instanceof ReorderWeighted) {
+			weights = ((ReorderWeighted) reorderTransformation)::weight;
+		} else {
+			weights = new ReorderFixed()::weight;
+		}
+	}
+
+	/**
+	 * @param triples the triples of the BGP.
+	 * @param heuristicOrder the variables not bound from outside, in the order given by {@link BGPIter#getVarOrder}.
+	 * @param previous the variables of the BGP already bound when it is opened.
+	 * @return heuristicOrder with the join variables reordered greedily, cheapest first. Variables appearing once
+	 * stay at the end, in the same order, because the enumeration needs them last.
+	 */
+	public List<Var> getVarOrder(Triple[] triples, List<Var> heuristicOrder, List<Var> previous) {
+		Node[][] tuples = new Node[triples.length][];
+		for (int i = 0; i < triples.length; i++) {
+			tuples[i] = tuple(triples[i]);
+		}
+		return getVarOrder(tuples, heuristicOrder, previous);
+	}
+
+	/** As {@link #getVarOrder(Triple[], List, List)}, for the tuples of the table: (S,P,O) or (G,S,P,O). */
+	public List<Var> getVarOrder(Node[][] tuples, List<Var> heuristicOrder, List<Var> previous) {
+		List<Var> joinVars = new ArrayList<>();
+		List<Var> res = new ArrayList<>();
+		for (Var v : heuristicOrder) {
+			if (appearances(tuples, v) > 1) {
+				joinVars.add(v);
+			}
+		}
+
+		double[] tripleCount = new double[tuples.length];
+		double[] tripleWeight = new double[tuples.length];
+		for (int i = 0; i < tuples.length; i++) {
+			tripleCount[i] = rangeCount(tuples[i]);
+			tripleWeight[i] = weights.applyAsDouble(pattern(tuples[i], Collections.<Var>emptyList()));
+		}
+
+		Set<Var> bound = new HashSet<>(previous);
+		while (!joinVars.isEmpty()) {
+			Var best = null;
+			double bestCost = Double.POSITIVE_INFINITY;
+			for (Var v : joinVars) {
+				double cost = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < tuples.length; i++) {
+					if (Arrays.asList(tuples[i]).contains(v)) {
+						cost = Math.min(cost, estimate(tuples[i], tripleCount[i], tripleWeight[i], bound));
+					}
+				}
+				// strict comparison: ties keep the heuristic order
+				if (best == null || cost < bestCost) {
+					best = v;
+					bestCost = cost;
+				}
+			}
+			res.add(best);
+			bound.add(best);
+			joinVars.remove(best);
+		}
+
+		for (Var v : heuristicOrder) {
+			if (!res.contains(v)) {
+				res.add(v);
+			}
+		}
+		return res;
+	}
+
+	/** Estimated number of tuples matching tuple for each binding of the bound variables it contains. */
+	private double estimate(Node[] tuple, double count, double weight, Set<Var> bound) {
+		if (count == 0) {
+			return count;
+		}
+		if (stats != null && tuple.length == 3 && tuple[1].isConcrete() && stats.getCount(tuple[1]) > 0) {
+			double res = count;
+			if (bound.contains(tuple[0])) {
+				res /= stats.getDistinctSubjects(tuple[1]);
+			}
+			if (bound.contains(tuple[2])) {
+				res /= stats.getDistinctObjects(tuple[1]);
+			}
+			return res;
+		}
+		if (weight <= 0) {
+			return count;
+		}
+		double boundWeight = weights.applyAsDouble(pattern(tuple, bound));
+		if (boundWeight <= 0) {
+			return count;
+		}
+		return count * Math.min(1.0, boundWeight / weight);
+	}
+
+	/** Estimate of the number of tuples matching the constants of triple, 0 if a constant is not in the dataset. */
+	public long rangeCount(Triple triple) {
+		return rangeCount(tuple(triple));
+	}
+
+	/**
+	 * As {@link #rangeCount(Triple)}, for a tuple in the column order of the table. Node.ANY, the union graph,
+	 * matches any node.
+	 */
+	public long rangeCount(Node[] tuple) {
+		NodeTable nodeTable = ntt.getNodeTable();
+		TupleIndex[] indexes = ntt.getTupleTable().getIndexes();
+
+		// Index whose key starts with the constants: the first one with the most of them will do.
+		int best = 0;
+		int numConstants = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			ColumnMap colMap = indexes[i].getColumnMap();
+			int k = 0;
+			while (k < tuple.length && tuple[colMap.fetchSlotIdx(k)].isConcrete()) {
+				k++;
+			}
+			if (k > numConstants) {
+				best = i;
+				numConstants = k;
+			}
+		}
+
+		// [from, to) over the full key, to being the prefix with its last column incremented.
+		long[] from = new long[tuple.length];
+		long[] to = new long[tuple.length];
+		ColumnMap colMap = indexes[best].getColumnMap();
+		for (int k = 0; k < numConstants; k++) {
+			NodeId id = nodeTable.getNodeIdForNode(tuple[colMap.fetchSlotIdx(k)]);
+			if (NodeId.isDoesNotExist(id)) {
+				return 0;
+			}
+			from[k] = id.getId();
+			to[k] = id.getId();
+		}
+
+		BPlusTree btree = (BPlusTree) ((TupleIndexRecord) indexes[best]).getRangeIndex();
+		if (numConstants == 0) {
+			Arrays.fill(to, -1L);		// unsigned maximum
+			return btree.estimateRange(from, to);
+		}
+		to[numConstants-1]++;
+		return btree.estimateRange(from, to);
+	}
+
+	private static Node[] tuple(Triple triple) {
+		return new Node[] { triple.getSubject(), triple.getMatchPredicate(), triple.getObject() };
+	}
+
+	/** The triple of tuple as seen by the weights, the graph aside: constants and bound variables are terms. */
+	private static PatternTriple pattern(Node[] tuple, Iterable<Var> bound) {
+		int s = tuple.length - 3;
+		PatternTriple pt = new PatternTriple(Triple.create(tuple[s], tuple[s+1], tuple[s+2]));
+		for (Var v : bound) {
+			if (v.equals(tuple[s]))
+				pt.subject = PatternElements.TERM;
+			if (v.equals(tuple[s+1]))
+				pt.predicate = PatternElements.TERM;
+			if (v.equals(tuple[s+2]))
+				pt.object = PatternElements.TERM;
+		}
+		return pt;
+	}
+
+	private static int appearances(Node[][] tuples, Var v) {
+		int appearances = 0;
+		for (Node[] tuple : tuples) {
+			for (Node node : tuple) {
+				if (node.equals(v))
+					appearances++;
+			}
+		}
+		return appearances;
+	}
+}
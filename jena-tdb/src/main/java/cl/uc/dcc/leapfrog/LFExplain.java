@@ -0,0 +1,68 @@
+package cl.uc.dcc.leapfrog;
+
+import org.apache.jena.atlas.io.IndentedLineBuffer;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.sparql.mgt.Explain;
+import org.apache.jena.sparql.mgt.Explain.InfoLevel;
+import org.apache.jena.sparql.util.Context;
+
+/**
+ * The plan of the leapfrog, logged as ARQ logs the algebra, when the execution is explained at {@link InfoLevel#FINE}
+ * or above: {@code tdbquery --explain}, or {@link ARQ#symLogExec} in the context of a query or of a Fuseki dataset.
+ *
+ * The tree of OPTIONALs is logged when the query starts: for each node its BGP, with the variable order and the
+ * index of each tuple, and its filters. When the results are closed, the same tree again with what each level of
+ * each BGP did (seeks, nexts, keys found, leaf pages read) and the time since the start.
+ */
+public class LFExplain implements Closeable {
+
+	private final OptionalTreeNode tree;
+	private final Closeable resource;
+	private final long start;
+	private boolean closed;
+
+	private LFExplain(OptionalTreeNode tree, Closeable resource) {
+		this.tree = tree;
+		this.resource = resource;
+		this.start = System.nanoTime();
+	}
+
+	/** Whether the plan of the leapfrog is logged for a query run in context. */
+	public static boolean explaining(Context context) {
+		return context != null && Explain.explaining(InfoLevel.FINE, Explain.logExec, context);
+	}
+
+	/**
+	 * Logs the plan of tree, after init, if context explains the execution.
+	 * @param resource what closing the results closes: the tree, or what reads it
+	 * @return resource, or what closes it after logging the analysis of tree
+	 */
+	public static Closeable start(OptionalTreeNode tree, Closeable resource, Context context) {
+		if (!explaining(context)) {
+			return resource;
+		}
+		Explain.logExec.info("Leapfrog\n" + plan(tree, false));
+		return new LFExplain(tree, resource);
+	}
+
+	/** The plan of tree, after init, with what it did so far if analyze: see {@link OptionalTreeNode#explain}. */
+	public static String plan(OptionalTreeNode tree, boolean analyze) {
+		try (IndentedLineBuffer out = new IndentedLineBuffer()) {
+			out.incIndent();
+			tree.explain(out, analyze);
+			return out.asString();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		Explain.logExec.info("Leapfrog analysis, " + millis + " ms\n" + plan(tree, true));
+		resource.close();
+	}
+}
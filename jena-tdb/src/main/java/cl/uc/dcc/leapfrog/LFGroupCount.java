@@ -0,0 +1,106 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.tdb.solver.Abortable;
+import org.apache.jena.tdb.solver.BindingTDB;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+
+/**
+ * COUNTs of the bindings of a BGP grouped by some of its variables, taken from the trie (see
+ * {@link BGPIter#nextGroup}): the group variables are its first levels, so the groups come one at a time in the
+ * order of their ids, without a table of them, and the bindings of each group are counted without enumerating them.
+ */
+public class LFGroupCount implements Iterator<Binding>, Abortable {
+
+	private BGPIter pattern;
+	private NodeTable nodeTable;
+	private Var[] groupVars;				// in the order of the levels
+	private List<Var> countVars;			// each one the same count
+
+	private boolean atEnd;
+	private boolean nextFound;
+
+	private LFGroupCount(BGPIter pattern, NodeTable nodeTable, List<Var> countVars) {
+		this.pattern = pattern;
+		this.nodeTable = nodeTable;
+		this.countVars = countVars;
+	}
+
+	/**
+	 * @param op a BGP, see {@link OptionalTreeNode#getNode}
+	 * @param groupVars variables of op
+	 * @return null if the indexes don't allow visiting the group variables first.
+	 */
+	public static LFGroupCount create(DatasetGraphTDB dsg, Node graphNode, Op op, ReorderTransformation reorderTransformation,
+			List<Var> groupVars, List<Var> countVars) {
+		BGPIter pattern = OptionalTreeNode.getNode(dsg, graphNode, op, reorderTransformation).getPattern();
+		pattern.setLeadingVars(groupVars);
+		try {
+			pattern.init(new Var[0]);
+		} catch (IllegalStateException ex) {
+			return null;
+		}
+		if (!pattern.isLeadingPrefix()) {
+			return null;
+		}
+		LFGroupCount res = new LFGroupCount(pattern, dsg.getTripleTable().getNodeTupleTable().getNodeTable(), countVars);
+		res.groupVars = new Var[groupVars.size()];
+		for (int i = 0; i < res.groupVars.length; i++) {
+			res.groupVars[i] = pattern.getLocalAttribute(i);
+		}
+		if (!pattern.openTerms()) {
+			// no bindings: no groups, or a count of 0 without group variables
+			res.atEnd = true;
+			res.nextFound = groupVars.isEmpty();
+		}
+		return res;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextFound) {
+			return true;
+		} else if (atEnd) {
+			return false;
+		}
+		nextFound = pattern.nextGroup();
+		atEnd = !nextFound;
+		return nextFound;
+	}
+
+	@Override
+	public Binding next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		nextFound = false;
+		long[] key = new long[groupVars.length];
+		System.arraycopy(pattern.next(), 0, key, 0, key.length);
+		Binding keyBinding = new BindingTDB(new LFBindingNodeId(groupVars, key), nodeTable);
+
+		BindingMap res = BindingFactory.create(keyBinding);
+		Node count = NodeValue.makeInteger(pattern.getGroupCount()).asNode();
+		for (Var v : countVars) {
+			res.add(v, count);
+		}
+		return res;
+	}
+
+	/** Stops the counting at its next seek. */
+	@Override
+	public void abort() {
+		pattern.abort();
+	}
+}
@@ -0,0 +1,186 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of NodeIds as sorted, disjoint intervals [lo, hi] of keys, compared unsigned as in the indexes.
+ * The leapfrog seeks past the keys of a variable not in its range instead of enumerating their subtrees.
+ */
+public class LFKeyRange {
+
+	/** All the keys. */
+	public static final LFKeyRange ALL = new LFKeyRange(new long[] { 0L }, new long[] { -1L });
+	/** No key. */
+	public static final LFKeyRange NONE = new LFKeyRange(new long[0], new long[0]);
+
+	private final long[] lo;
+	private final long[] hi;		// inclusive
+
+	private LFKeyRange(long[] lo, long[] hi) {
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	/** The keys in [lo, hi], none if hi < lo. */
+	public static LFKeyRange interval(long lo, long hi) {
+		if (Long.compareUnsigned(lo, hi) > 0) {
+			return NONE;
+		}
+		return new LFKeyRange(new long[] { lo }, new long[] { hi });
+	}
+
+	/** The keys in ids, in any order. */
+	public static LFKeyRange keys(long[] ids) {
+		long[] sorted = new long[ids.length];
+		// sorted unsigned, with the sign bit flipped
+		for (int i = 0; i < ids.length; i++) {
+			sorted[i] = ids[i] ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(sorted);
+		List<long[]> res = new ArrayList<>();
+		for (long key : sorted) {
+			key ^= Long.MIN_VALUE;
+			long[] last = res.isEmpty() ? null : res.get(res.size()-1);
+			if (last != null && (key == last[1] || key == last[1]+1)) {
+				last[1] = key;
+			} else {
+				res.add(new long[] { key, key });
+			}
+		}
+		return of(res);
+	}
+
+	/** The keys outside of [lo, hi]. */
+	public static LFKeyRange outside(long lo, long hi) {
+		List<long[]> res = new ArrayList<>();
+		if (lo != 0L) {
+			res.add(new long[] { 0L, lo-1 });
+		}
+		if (hi != -1L) {
+			res.add(new long[] { hi+1, -1L });
+		}
+		return of(res);
+	}
+
+	private static LFKeyRange of(List<long[]> intervals) {
+		long[] lo = new long[intervals.size()];
+		long[] hi = new long[intervals.size()];
+		for (int i = 0; i < lo.length; i++) {
+			lo[i] = intervals.get(i)[0];
+			hi[i] = intervals.get(i)[1];
+		}
+		return new LFKeyRange(lo, hi);
+	}
+
+	public boolean isEmpty() {
+		return lo.length == 0;
+	}
+
+	public boolean isAll() {
+		return lo.length == 1 && lo[0] == 0L && hi[0] == -1L;
+	}
+
+	public boolean contains(long key) {
+		int i = find(key);
+		return i < lo.length && Long.compareUnsigned(lo[i], key) <= 0;
+	}
+
+	/** The first key >= key in the range, or key itself if there is none: check with {@link #contains}. */
+	public long ceiling(long key) {
+		int i = find(key);
+		if (i == lo.length) {
+			return key;
+		}
+		return Long.compareUnsigned(lo[i], key) > 0 ? lo[i] : key;
+	}
+
+	/** Whether the range has keys >= key. */
+	public boolean hasCeiling(long key) {
+		return find(key) < lo.length;
+	}
+
+	/** Index of the first interval whose hi >= key. */
+	private int find(long key) {
+		int from = 0, to = lo.length;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (Long.compareUnsigned(hi[mid], key) < 0) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	public LFKeyRange union(LFKeyRange other) {
+		List<long[]> all = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < lo.length || j < other.lo.length) {
+			long[] next;
+			if (j == other.lo.length || (i < lo.length && Long.compareUnsigned(lo[i], other.lo[j]) <= 0)) {
+				next = new long[] { lo[i], hi[i] };
+				i++;
+			} else {
+				next = new long[] { other.lo[j], other.hi[j] };
+				j++;
+			}
+			long[] last = all.isEmpty() ? null : all.get(all.size()-1);
+			// merges overlapping and adjacent intervals
+			if (last != null && (last[1] == -1L || Long.compareUnsigned(next[0], last[1]+1) <= 0)) {
+				if (Long.compareUnsigned(next[1], last[1]) > 0) {
+					last[1] = next[1];
+				}
+			} else {
+				all.add(next);
+			}
+		}
+		return of(all);
+	}
+
+	public LFKeyRange intersection(LFKeyRange other) {
+		List<long[]> res = new ArrayList<>();
+		int i = 0, j = 0;
+		while (i < lo.length && j < other.lo.length) {
+			long l = Long.compareUnsigned(lo[i], other.lo[j]) >= 0 ? lo[i] : other.lo[j];
+			long h = Long.compareUnsigned(hi[i], other.hi[j]) <= 0 ? hi[i] : other.hi[j];
+			if (Long.compareUnsigned(l, h) <= 0) {
+				res.add(new long[] { l, h });
+			}
+			if (Long.compareUnsigned(hi[i], other.hi[j]) < 0) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return of(res);
+	}
+
+	/** The keys not in the range. */
+	public LFKeyRange complement() {
+		List<long[]> res = new ArrayList<>();
+		long from = 0L;
+		for (int i = 0; i < lo.length; i++) {
+			if (lo[i] != from) {
+				res.add(new long[] { from, lo[i]-1 });
+			}
+			if (hi[i] == -1L) {
+				return of(res);
+			}
+			from = hi[i]+1;
+		}
+		res.add(new long[] { from, -1L });
+		return of(res);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lo.length; i++) {
+			sb.append(String.format("[%016X, %016X]", lo[i], hi[i]));
+		}
+		return sb.length() == 0 ? "[]" : sb.toString();
+	}
+}
@@ -0,0 +1,144 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.solver.BindingTDB;
+import org.apache.jena.tdb.solver.SolverLib;
+import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+import org.apache.jena.tdb.store.nodetable.NodeTableWrapper;
+import org.apache.jena.tdb.sys.SystemTDB;
+
+/**
+ * Turns the results of the leapfrog into {@link Binding}s a block at a time: the NodeIds of a block of rows are
+ * deduplicated and looked up in increasing order, which for ids stored in the node table is the order of their
+ * offsets in its object file, so a cold cache is read sequentially instead of at random.
+ *
+ * The first block is a single row and each one after is twice the previous one, up to the block size: a LIMIT or an
+ * ASK above, which stop pulling rows after the first ones, don't have the leapfrog find and materialize a whole block.
+ *
+ * The results are still {@link BindingTDB}s, over a node table that answers from the nodes of their block.
+ */
+public class LFMaterializer implements Iterator<Binding> {
+
+	/** Maximum number of rows materialized together, 0 to resolve each id when it is needed. Default {@value #DEFAULT_BLOCK_SIZE}. */
+	public static final Symbol symMaterializeBlock = SystemTDB.allocSymbol("leapfrogMaterializeBlock");
+	public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+	private Iterator<BindingNodeId> input;
+	private NodeTable nodeTable;
+	private BindingNodeId[] block;
+	private final int maxBlockSize;
+	private int blockSize;				// rows in block
+	private int pos;					// next row of block
+	private BlockNodeTable blockTable;
+	private long[] ids = new long[0];
+
+	/**
+	 * @return the bindings of input, materialized in blocks of the size given by context,
+	 * or one at a time as {@link SolverLib#convertToNodes} does.
+	 */
+	public static Iterator<Binding> create(Iterator<BindingNodeId> input, NodeTable nodeTable, Context context) {
+		int size = context == null ? DEFAULT_BLOCK_SIZE : context.getInt(symMaterializeBlock, DEFAULT_BLOCK_SIZE);
+		if (size <= 1) {
+			return SolverLib.convertToNodes(input, nodeTable);
+		}
+		return new LFMaterializer(input, nodeTable, size);
+	}
+
+	public LFMaterializer(Iterator<BindingNodeId> input, NodeTable nodeTable, int size) {
+		this.input = input;
+		this.nodeTable = nodeTable;
+		maxBlockSize = size;
+		block = new BindingNodeId[0];
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (pos < blockSize) {
+			return true;
+		}
+		fill();
+		return blockSize > 0;
+	}
+
+	@Override
+	public Binding next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		BindingNodeId b = block[pos];
+		block[pos++] = null;
+		return new BindingTDB(b, blockTable);
+	}
+
+	private void fill() {
+		blockSize = 0;
+		pos = 0;
+		int numIds = 0;
+		// 1, 2, 4... rows, the previous block was consumed whole
+		if (block.length < maxBlockSize) {
+			block = new BindingNodeId[Math.min(maxBlockSize, Math.max(1, 2 * block.length))];
+		}
+		while (blockSize < block.length && input.hasNext()) {
+			BindingNodeId b = input.next();
+			block[blockSize++] = b;
+			for (Var v : b) {
+				NodeId id = b.get(v);
+				if (!NodeId.isInline(id)) {
+					if (numIds == ids.length) {
+						ids = Arrays.copyOf(ids, Math.max(16, 2 * numIds));
+					}
+					ids[numIds++] = id.getId();
+				}
+			}
+		}
+		if (blockSize == 0) {
+			return;
+		}
+
+		Arrays.sort(ids, 0, numIds);
+		int distinct = 0;
+		for (int i = 0; i < numIds; i++) {
+			if (distinct == 0 || ids[i] != ids[distinct-1]) {
+				ids[distinct++] = ids[i];
+			}
+		}
+		long[] blockIds = Arrays.copyOf(ids, distinct);
+		Node[] nodes = new Node[distinct];
+		for (int i = 0; i < distinct; i++) {
+			nodes[i] = nodeTable.getNodeForNodeId(NodeId.create(blockIds[i]));
+		}
+		// A new table for each block: the bindings of the previous one may still be in use.
+		blockTable = new BlockNodeTable(nodeTable, blockIds, nodes);
+	}
+
+	/** The nodes of a block, other ids go to the node table. */
+	private static class BlockNodeTable extends NodeTableWrapper {
+		private final long[] ids;		// sorted
+		private final Node[] nodes;
+
+		BlockNodeTable(NodeTable nodeTable, long[] ids, Node[] nodes) {
+			super(nodeTable);
+			this.ids = ids;
+			this.nodes = nodes;
+		}
+
+		@Override
+		public Node getNodeForNodeId(NodeId id) {
+			int i = Arrays.binarySearch(ids, id.getId());
+			if (i >= 0) {
+				return nodes[i];
+			}
+			return super.getNodeForNodeId(id);
+		}
+	}
+}
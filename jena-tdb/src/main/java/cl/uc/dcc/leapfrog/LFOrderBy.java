@@ -0,0 +1,162 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb.solver.Abortable;
+import org.apache.jena.tdb.solver.BindingNodeId;
+
+/**
+ * The results of a tree in the order of a variable's values, as ORDER BY sorts them, without sorting them: the
+ * variable is visited first (see {@link BGPIter#setLeadingVars}), so the results come in the order of its ids, and
+ * for the inline integers and dateTimes of one timezone that is the order of their values, but for the negative
+ * integers that come after the others. The tree is then run once for each range of ids in the order of the values.
+ *
+ * Whether all the values are of such a range is only known running the tree, so {@link #create} checks it first,
+ * and initializes the tree of each range, checking it can visit the variable first too.
+ */
+public class LFOrderBy implements Iterator<BindingNodeId>, Abortable, Closeable {
+
+	private OptionalTreeNode[] trees;		// the tree of each range, initialized, null once taken
+	private int next;						// next range to run
+	private volatile OptionalTreeNode tree;	// the tree of the current range
+	private volatile boolean aborted;
+
+	private LFOrderBy(OptionalTreeNode[] trees) {
+		this.trees = trees;
+	}
+
+	/**
+	 * @param treeFactory trees for a supported op, without upper variables
+	 * @param var a variable of the root BGP of the trees
+	 * @return the results of the trees ordered by var, null if its values are not all of the same range of inline
+	 * values or the indexes don't allow visiting it first.
+	 */
+	public static LFOrderBy create(Supplier<OptionalTreeNode> treeFactory, Var var) {
+		OptionalTreeNode first = tree(treeFactory, var, null, false);
+		if (first == null) {
+			return null;
+		}
+		LFKeyRange[] ranges;
+		try {
+			if (!first.hasNext()) {
+				return new LFOrderBy(new OptionalTreeNode[0]);
+			}
+			ranges = LFRangeFilter.valueOrder(((LFBindingNodeId) first.next()).getId(var));
+		} finally {
+			first.close();
+		}
+		if (ranges == null) {
+			return null;
+		}
+
+		// any value out of the ranges
+		LFKeyRange all = LFKeyRange.NONE;
+		for (LFKeyRange r : ranges) {
+			all = all.union(r);
+		}
+		OptionalTreeNode others = tree(treeFactory, var, all.complement(), true);
+		if (others == null) {
+			return null;
+		}
+		try {
+			if (others.hasNext()) {
+				return null;
+			}
+		} finally {
+			others.close();
+		}
+		OptionalTreeNode[] trees = new OptionalTreeNode[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			trees[i] = tree(treeFactory, var, ranges[i], false);
+			if (trees[i] == null) {
+				for (int j = 0; j < i; j++) {
+					trees[j].close();
+				}
+				return null;
+			}
+		}
+		return new LFOrderBy(trees);
+	}
+
+	/**
+	 * A tree visiting var first, initialized, its values within range if not null. Null if var can't be visited first.
+	 * @param exists whether only the existence of a result is wanted
+	 */
+	private static OptionalTreeNode tree(Supplier<OptionalTreeNode> treeFactory, Var var, LFKeyRange range, boolean exists) {
+		OptionalTreeNode tree = treeFactory.get();
+		BGPIter pattern = tree.getPattern();
+		if (!pattern.getVars().contains(var)) {
+			return null;
+		}
+		pattern.setLeadingVars(Collections.singletonList(var));
+		if (range != null) {
+			pattern.setKeyRange(var, range);
+		}
+		if (exists) {
+			tree.setDistinctVars(Collections.emptySet());
+		}
+		try {
+			tree.init(new Var[0]);
+		} catch (IllegalStateException ex) {
+			return null;
+		}
+		if (!pattern.isLeadingPrefix()) {
+			tree.close();
+			return null;
+		}
+		return tree;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (tree == null || !tree.hasNext()) {
+			if (tree != null) {
+				tree.close();
+				tree = null;
+			}
+			if (next == trees.length) {
+				return false;
+			}
+			tree = trees[next];
+			trees[next++] = null;
+			if (aborted) {
+				tree.abort();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public BindingNodeId next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return tree.next();
+	}
+
+	@Override
+	public void abort() {
+		aborted = true;
+		OptionalTreeNode t = tree;
+		if (t != null) {
+			t.abort();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (tree != null) {
+			tree.close();
+			tree = null;
+		}
+		for (; next < trees.length; next++) {
+			trees[next].close();
+			trees[next] = null;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package cl.uc.dcc.leapfrog;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.E_GreaterThanOrEqual;
+import org.apache.jena.sparql.expr.E_LessThan;
+import org.apache.jena.sparql.expr.E_LessThanOrEqual;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprFunction2;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.tdb.store.DateTimeNode;
+import org.apache.jena.tdb.store.IntegerNode;
+import org.apache.jena.tdb.store.NodeId;
+
+/**
+ * The comparisons of variables with constants in a FILTER, as ranges of keys for the leapfrog, see {@link LFKeyRange}.
+ *
+ * Inline integers are ordered by value in their NodeIds, and inline dateTimes of the same timezone by their instant,
+ * so the ids of those failing a comparison are intervals the leapfrog seeks past. The ranges keep all the other ids,
+ * for the filter to decide on them. A filter made of such comparisons only holds, without evaluating it, when the ids
+ * of its variables are inline values of the ranges.
+ */
+public class LFRangeFilter {
+
+	private static final int GT = 0, GE = 1, LT = 2, LE = 3, EQ = 4;
+
+	private static final long VALUE_MASK = (1L << 56) - 1;
+	private static final int TZ = 49;							// position of the timezone in an inline dateTime, see DateTimeNode
+	private static final long TZ_MASK = 0x7FL << TZ;
+	private static final int TZ_Z = 0x7F, TZ_NONE = 0x7E;
+	private static final int TZ_QUARTERS = 14 * 4;				// timezones go from -14:00 to +14:00
+
+	private Map<Var, LFKeyRange> ranges = new HashMap<>();		// all the keys that may satisfy the filter
+	private Map<Var, LFKeyRange> exact = new HashMap<>();		// keys satisfying the comparisons of the variable
+	private boolean compiled = true;							// the filter is only comparisons in ranges
+
+	private Var[] vars;
+	private LFKeyRange[] exactRanges;
+	private int[] positions;
+
+	private LFRangeFilter() {}
+
+	/** The ranges of the variables in vars that expr compares with constants. */
+	public static LFRangeFilter compile(Expr expr, Set<Var> vars) {
+		LFRangeFilter res = new LFRangeFilter();
+		res.add(expr, vars);
+		return res;
+	}
+
+	/** The keys of v that may satisfy the filter, {@link LFKeyRange#ALL} for a variable it does not restrict. */
+	public LFKeyRange getRange(Var v) {
+		return ranges.getOrDefault(v, LFKeyRange.ALL);
+	}
+
+	/** The variables the filter restricts. */
+	public Set<Var> getVars() {
+		return ranges.keySet();
+	}
+
+	/** Positions of the variables in the ids given to {@link #holds}. */
+	public void setAttributeOrder(Var[] order) {
+		vars = exact.keySet().toArray(new Var[0]);
+		exactRanges = new LFKeyRange[vars.length];
+		positions = new int[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			exactRanges[i] = exact.get(vars[i]);
+			positions[i] = -1;
+			for (int j = 0; j < order.length; j++) {
+				if (order[j].equals(vars[i])) {
+					positions[i] = j;
+				}
+			}
+		}
+	}
+
+	/** Whether the filter holds for ids, by the attribute order, known from the ranges alone. */
+	public boolean holds(long[] ids) {
+		if (!compiled) {
+			return false;
+		}
+		for (int i = 0; i < positions.length; i++) {
+			if (positions[i] < 0 || ids[positions[i]] == LFBindingNodeId.UNBOUND || !exactRanges[i].contains(ids[positions[i]])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void add(Expr expr, Set<Var> patternVars) {
+		if (expr instanceof E_LogicalAnd) {
+			add(((E_LogicalAnd) expr).getArg1(), patternVars);
+			add(((E_LogicalAnd) expr).getArg2(), patternVars);
+			return;
+		}
+		int op = op(expr);
+		if (op < 0) {
+			compiled = false;
+			return;
+		}
+		Expr left = ((ExprFunction2) expr).getArg1();
+		Expr right = ((ExprFunction2) expr).getArg2();
+		if (right.isVariable() && left.isConstant()) {
+			Expr e = left;
+			left = right;
+			right = e;
+			op = flip(op);
+		}
+		if (!left.isVariable() || !right.isConstant() || !patternVars.contains(left.asVar())) {
+			compiled = false;
+			return;
+		}
+
+		LFKeyRange[] r = null;
+		NodeValue c = right.getConstant();
+		if (c.isInteger() || c.isDecimal()) {
+			r = integerRange(op, c.getDecimal());
+		} else if (c.isDateTime()) {
+			r = dateTimeRange(op, c.getDateTime());
+		}
+		if (r == null) {
+			compiled = false;
+			return;
+		}
+		Var v = left.asVar();
+		ranges.put(v, getRange(v).intersection(r[0]));
+		exact.put(v, exact.getOrDefault(v, LFKeyRange.ALL).intersection(r[1]));
+	}
+
+	private static int op(Expr expr) {
+		if (expr instanceof E_GreaterThan) {
+			return GT;
+		} else if (expr instanceof E_GreaterThanOrEqual) {
+			return GE;
+		} else if (expr instanceof E_LessThan) {
+			return LT;
+		} else if (expr instanceof E_LessThanOrEqual) {
+			return LE;
+		} else if (expr instanceof E_Equals) {
+			return EQ;
+		}
+		return -1;
+	}
+
+	/** The comparison with the arguments swapped: c > x is x < c. */
+	private static int flip(int op) {
+		switch (op) {
+			case GT: return LT;
+			case GE: return LE;
+			case LT: return GT;
+			case LE: return GE;
+			default: return op;
+		}
+	}
+
+	/** { the keys that may satisfy x op c, the inline integers that do }. */
+	private static LFKeyRange[] integerRange(int op, BigDecimal c) {
+		BigDecimal floor = c.setScale(0, RoundingMode.FLOOR);
+		BigDecimal ceiling = c.setScale(0, RoundingMode.CEILING);
+		BigDecimal min = BigDecimal.valueOf(IntegerNode.MIN);
+		BigDecimal max = BigDecimal.valueOf(IntegerNode.MAX);
+		switch (op) {
+			case GT: min = floor.add(BigDecimal.ONE).max(min); break;
+			case GE: min = ceiling.max(min); break;
+			case LT: max = ceiling.subtract(BigDecimal.ONE).min(max); break;
+			case LE: max = floor.min(max); break;
+			default:
+				if (floor.compareTo(c) != 0) {
+					return new LFKeyRange[] { outside(NodeId.INTEGER), LFKeyRange.NONE };
+				}
+				min = min.max(c);
+				max = max.min(c);
+		}
+		LFKeyRange values;
+		if (min.compareTo(max) > 0) {
+			values = LFKeyRange.NONE;
+		} else {
+			long lo = min.longValueExact();
+			long hi = max.longValueExact();
+			// the 56 bits of a negative value are above those of the positive ones
+			if (lo >= 0 || hi < 0) {
+				values = LFKeyRange.interval(integerKey(lo), integerKey(hi));
+			} else {
+				values = LFKeyRange.interval(integerKey(0), integerKey(hi)).union(LFKeyRange.interval(integerKey(lo), integerKey(-1)));
+			}
+		}
+		return new LFKeyRange[] { outside(NodeId.INTEGER).union(values), values };
+	}
+
+	/**
+	 * The inline values ARQ orders together with the value of id, as ranges of keys in the order of their values:
+	 * the negative integers then the others, or the dateTimes of a timezone. Null for other ids.
+	 */
+	public static LFKeyRange[] valueOrder(long id) {
+		int type = (int) (id >>> 56);
+		if (type == NodeId.INTEGER) {
+			return new LFKeyRange[] {
+				LFKeyRange.interval(integerKey(IntegerNode.MIN), integerKey(-1)),
+				LFKeyRange.interval(integerKey(0), integerKey(IntegerNode.MAX))
+			};
+		} else if (type == NodeId.DATETIME) {
+			long start = id & ~((1L << TZ) - 1);
+			return new LFKeyRange[] { LFKeyRange.interval(start, start | ((1L << TZ) - 1)) };
+		}
+		return null;
+	}
+
+	private static long integerKey(long v) {
+		return IntegerNode.pack(v);
+	}
+
+	/**
+	 * { the keys that may satisfy x op c, the inline dateTimes that do }, null if they can't be told apart.
+	 * Only the dateTimes of a timezone are ordered by their instant: for a constant with a timezone, the values without
+	 * one are left to the filter, and the other way round.
+	 */
+	private static LFKeyRange[] dateTimeRange(int op, XMLGregorianCalendar c) {
+		if (c.getHour() == 24 || !hasMillisecondPrecision(c)) {
+			return null;
+		}
+		LFKeyRange ranges = LFKeyRange.ALL;
+		LFKeyRange values = LFKeyRange.NONE;
+		if (c.getTimezone() == DatatypeConstants.FIELD_UNDEFINED) {
+			long key = dateTimeKey(c, TZ_NONE);
+			if (key != -1) {
+				LFKeyRange r = blockRange(op, key);
+				ranges = ranges.intersection(outsideBlock(TZ_NONE).union(r));
+				values = values.union(r);
+			}
+		} else {
+			XMLGregorianCalendar utc = c.normalize();
+			DatatypeFactory factory = newFactory();
+			for (int quarters = -TZ_QUARTERS; quarters <= TZ_QUARTERS + 1; quarters++) {
+				// the last one is Z, the same instant as +00:00 in a different block
+				boolean z = quarters == TZ_QUARTERS + 1;
+				int minutes = z ? 0 : quarters * 15;
+				XMLGregorianCalendar local = (XMLGregorianCalendar) utc.clone();
+				local.add(factory.newDuration(minutes * 60000L));
+				int code = z ? TZ_Z : (quarters & 0x7F);
+				if (!z && (code == TZ_Z || code == TZ_NONE)) {
+					// -00:15 and -00:30 have the codes of Z and no timezone, see DateTimeNode
+					continue;
+				}
+				long key = dateTimeKey(local, code);
+				if (key != -1) {
+					LFKeyRange r = blockRange(op, key);
+					ranges = ranges.intersection(outsideBlock(code).union(r));
+					values = values.union(r);
+				}
+			}
+		}
+		return new LFKeyRange[] { ranges, values };
+	}
+
+	private static boolean hasMillisecondPrecision(XMLGregorianCalendar c) {
+		return c.getFractionalSecond() == null || c.getFractionalSecond().stripTrailingZeros().scale() <= 3;
+	}
+
+	/** The key of the local time of c with timezone code, -1 if it isn't inlined. */
+	private static long dateTimeKey(XMLGregorianCalendar c, int code) {
+		XMLGregorianCalendar local = (XMLGregorianCalendar) c.clone();
+		local.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
+		long v = DateTimeNode.packDateTime(local.toXMLFormat());
+		if (v == -1) {
+			return -1;
+		}
+		return ((long) NodeId.DATETIME << 56) | (v & ~TZ_MASK) | ((long) code << TZ);
+	}
+
+	/** The keys of the block of key's timezone satisfying x op key. */
+	private static LFKeyRange blockRange(int op, long key) {
+		long start = key & ~((1L << TZ) - 1);
+		long end = start | ((1L << TZ) - 1);
+		switch (op) {
+			case GT: return key == end ? LFKeyRange.NONE : LFKeyRange.interval(key+1, end);
+			case GE: return LFKeyRange.interval(key, end);
+			case LT: return key == start ? LFKeyRange.NONE : LFKeyRange.interval(start, key-1);
+			case LE: return LFKeyRange.interval(start, key);
+			default: return LFKeyRange.interval(key, key);
+		}
+	}
+
+	/** The keys of other inline types. */
+	private static LFKeyRange outside(int type) {
+		long start = (long) type << 56;
+		return LFKeyRange.outside(start, start | VALUE_MASK);
+	}
+
+	/** The keys out of the dateTimes of a timezone. */
+	private static LFKeyRange outsideBlock(int code) {
+		long start = ((long) NodeId.DATETIME << 56) | ((long) code << TZ);
+		return LFKeyRange.outside(start, start | ((1L << TZ) - 1));
+	}
+
+	/** A factory for one compile: they are not for concurrent use, and filters compile in parallel queries. */
+	private static DatatypeFactory newFactory() {
+		try {
+			return DatatypeFactory.newInstance();
+		} catch (DatatypeConfigurationException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+
+/**
+ * The trie of a tuple pattern over the {@link LFTrieSnapshot} of an index. The position at each column is a node of
+ * the snapshot, among the children of the node above: next moves to the following sibling, seek gallops over them.
+ * The enumeration is the range of nodes under the position, with nothing to buffer: all of it is in memory.
+ */
+public class LFSnapshotTrie extends LFTrie {
+
+	private final long[][] keys;
+	private final int[][] children;
+	private final int[] pos;								// node of the position at each column, up to the level
+	private final int[] end;								// end of the siblings of pos, at the levels
+
+	// The enumeration: the nodes from enumFrom to enumTo at column distinctWidth-1, or one if the prefix fixes all
+	// of them. enumPos has the node of the current tuple at each column, the first descendant after distinctWidth.
+	private final int[] enumPos;
+	private int noIntersectionPrefix;						// columns fixed by the levels above the enumeration
+	private int enumFrom;
+	private int enumTo;
+	private int enumCurrent;
+
+	private long enumerationTuples;
+
+
+	/**
+	 * The trie of tuple, see {@link LFTrie#LFTrie} for the other parameters.
+	 * @param snapshot of an index of a tuple table, with one column per element of tuple.
+	 */
+	public LFSnapshotTrie(LFTrieSnapshot snapshot, Node[] tuple, Var[] localAttributeOrder, int noIntersectionLevel) {
+		super(tuple, localAttributeOrder, noIntersectionLevel);
+		if (snapshot.columns != columns) {
+			throw new IllegalArgumentException("Index of " + snapshot.columns + " columns for " + tuple.length);
+		}
+		keys = snapshot.keys;
+		children = snapshot.children;
+		pos = new int[columns];
+		end = new int[columns];
+		enumPos = new int[columns];
+	}
+
+	public void open() {
+		level = (level < firstVarColumn) ? level+1 : lastConstant[level]+1;
+		pos[level] = first(level);
+		end[level] = last(level);
+		if (pos[level] >= end[level]) {
+			// only the first level of an empty index
+			atEnd = true;
+			currentTuple[level] = -1L;
+			return;
+		}
+		currentTuple[level] = keys[level][pos[level]];
+		matchConstants();
+	}
+
+	public void next() {
+		pos[level]++;
+		setCurrent();
+		matchConstants();
+	}
+
+	public void seek(long key) {
+		// If the current position is already greater or equal it moves to the next position anyways.
+		// Keys are ordered as unsigned, as in the index.
+		if (Long.compareUnsigned(key, currentTuple[level]) <= 0) {
+			next();
+			return;
+		}
+		if (atEnd) {
+			return;
+		}
+		pos[level] = gallop(keys[level], pos[level]+1, end[level], key);
+		setCurrent();
+		matchConstants();
+	}
+
+	private void setCurrent() {
+		if (pos[level] >= end[level]) {
+			atEnd = true;
+		} else {
+			currentTuple[level] = keys[level][pos[level]];
+		}
+	}
+
+	/** Moves forwards from the current key to the first one with children for the constants of the next columns. */
+	private void matchConstants() {
+		int last = lastConstant[level];
+		while (!atEnd && !findConstants(last)) {
+			pos[level]++;
+			setCurrent();
+		}
+	}
+
+	/** Goes down from the current key through the constants up to column last, false if one is missing. */
+	private boolean findConstants(int last) {
+		for (int c = level+1; c <= last; c++) {
+			int from = children[c-1][pos[c-1]];
+			int to = children[c-1][pos[c-1]+1];
+			int i = gallop(keys[c], from, to, constantIds[c]);
+			if (i >= to || keys[c][i] != constantIds[c]) {
+				return false;
+			}
+			pos[c] = i;
+			currentTuple[c] = constantIds[c];
+		}
+		return true;
+	}
+
+	/** First child of the node above column c, 0 at the first column. */
+	private int first(int c) {
+		return (c == 0) ? 0 : children[c-1][pos[c-1]];
+	}
+
+	/** End of the children of the node above column c. */
+	private int last(int c) {
+		return (c == 0) ? keys[0].length : children[c-1][pos[c-1]+1];
+	}
+
+	/** The first position from from to to of a key not below key, unsigned as in the index; to if none. */
+	private static int gallop(long[] a, int from, int to, long key) {
+		int lo = from;
+		int hi = from;
+		long step = 1;
+		while (hi < to && Long.compareUnsigned(a[hi], key) < 0) {
+			lo = hi + 1;
+			hi = (int) Math.min(from + step, to);
+			step *= 2;
+		}
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Long.compareUnsigned(a[mid], key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/** The first descendant at column c of node i at column c0; for the end of a range, the end of their descendants. */
+	private int descend(int c0, int i, int c) {
+		for (int k = c0; k < c; k++) {
+			i = children[k][i];
+		}
+		return i;
+	}
+
+	/** The node at column c-1 whose children include node i of column c. */
+	private int parent(int c, int i) {
+		int[] offsets = children[c-1];
+		int lo = 0;
+		int hi = offsets.length - 1;
+		// the last node whose first child is not after i
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets[mid] <= i) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+
+	/** The number of tuples under the prefix of the current level, exactly. */
+	public long levelSize() {
+		int from = first(level);
+		int to = last(level);
+		return descend(level, to, columns-1) - descend(level, from, columns-1);
+	}
+
+	/** Keys of the current level, under the current prefix, at tuples evenly spaced in the range. */
+	public void sampleKeys(int n, List<Long> keys) {
+		keys.clear();
+		int from = descend(level, first(level), columns-1);
+		int to = descend(level, last(level), columns-1);
+		for (int k = 1; k <= n && to > from; k++) {
+			int i = from + (int) ((long) (to - from) * k / (n + 1));
+			for (int c = columns-1; c > level; c--) {
+				i = parent(c, i);
+			}
+			keys.add(this.keys[level][i]);
+		}
+	}
+
+
+	public void startNoIntersection(long[] binding) {
+		// the prefix includes the constants after the current level
+		int last = (level < 0) ? level : lastConstant[level];
+		noIntersectionPrefix = last + 1;
+		int e = Math.max(distinctWidth, noIntersectionPrefix) - 1;
+		if (e < 0) {
+			// no column to tell apart, the index only has to have a tuple
+			enumFrom = 0;
+			enumTo = Math.min(1, keys[0].length);
+		} else if (e == last) {
+			enumFrom = pos[last];
+			enumTo = pos[last] + 1;
+		} else {
+			int from = (last < 0) ? 0 : children[last][pos[last]];
+			int to = (last < 0) ? keys[0].length : children[last][pos[last]+1];
+			enumFrom = descend(last+1, from, e);
+			enumTo = descend(last+1, to, e);
+		}
+		resetBuffer(binding);
+	}
+
+	public long countNoIntersection() {
+		int last = (level < 0) ? level : lastConstant[level];
+		int e = Math.max(distinctWidth, last + 1) - 1;
+		if (e < 0) {
+			return Math.min(1, keys[0].length);
+		}
+		if (e == last) {
+			return 1;
+		}
+		int from = (last < 0) ? 0 : children[last][pos[last]];
+		int to = (last < 0) ? keys[0].length : children[last][pos[last]+1];
+		return descend(last+1, to, e) - descend(last+1, from, e);
+	}
+
+	public void resetBuffer(long[] binding) {
+		enumCurrent = enumFrom;
+		if (enumFrom >= enumTo) {
+			return;
+		}
+		for (int c = 0; c < noIntersectionPrefix; c++) {
+			enumPos[c] = pos[c];
+		}
+		// the first tuple of the range is the first descendant of the prefix
+		setFromEnumeration(noIntersectionPrefix - 1, binding);
+	}
+
+	/** The whole range is in memory, there are no more buffers. */
+	public void resetAll(long[] binding) {
+		resetBuffer(binding);
+	}
+
+	public boolean hasNextBuffer() {
+		return false;
+	}
+
+	public boolean hasNextInBuffer() {
+		return enumCurrent < enumTo - 1;
+	}
+
+	public void nextInBuffer(long[] binding) {
+		int e = Math.max(distinctWidth, noIntersectionPrefix) - 1;
+		enumCurrent++;
+		enumPos[e] = enumCurrent;
+		// each node has children, so the ancestors move at most one node
+		for (int c = e; c > noIntersectionPrefix && enumPos[c] >= children[c-1][enumPos[c-1]+1]; c--) {
+			enumPos[c-1]++;
+		}
+		setFromEnumeration(e, binding);
+	}
+
+	public void nextBuffer(long[] binding) {
+		resetBuffer(binding);
+	}
+
+	/** Sets the columns to the nodes of the enumeration down to column e, and after it to their first descendants. */
+	private void setFromEnumeration(int e, long[] binding) {
+		enumerationTuples++;
+		for (int c = e+1; c < columns; c++) {
+			enumPos[c] = (c == 0) ? 0 : children[c-1][enumPos[c-1]];
+		}
+		for (int c = noIntersectionPrefix; c < columns; c++) {
+			currentTuple[c] = keys[c][enumPos[c]];
+		}
+		for (int i = noIntersectionLevel; i < width; i++) {
+			binding[varIndexInLocalOrder[i]] = currentTuple[i];
+		}
+	}
+
+	public int bufferSize() {
+		return enumTo - enumFrom;
+	}
+
+
+	/** No pages, the snapshot is in memory. */
+	public long pagesAt(int column) {
+		return 0;
+	}
+
+	public long enumerationPages() {
+		return 0;
+	}
+
+	/** Tuples the enumeration went to, counting those it went to again. */
+	public long enumerationTuples() {
+		return enumerationTuples;
+	}
+}
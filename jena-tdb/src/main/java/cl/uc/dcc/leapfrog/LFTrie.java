@@ -0,0 +1,173 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+
+/**
+ * A tuple pattern as a trie, for {@link BGPIter}: each level is a column of an index, in its order. The leapfrog
+ * moves through the levels of the intersected variables with {@link #open}, {@link #next}, {@link #seek} and
+ * {@link #up}; the variables after them, only in this tuple, are enumerated from a buffer.
+ *
+ * {@link LFTrieIndex} reads the trie from the B+Tree of the index, {@link LFSnapshotTrie} from an in-memory copy.
+ * Both see the pattern the same way: constants first, then variables, and constants after a variable that are
+ * checked when its key is found.
+ */
+public abstract class LFTrie {
+
+	protected int level;
+	protected boolean atEnd;
+
+	protected final int columns;							// columns of the index
+	protected final int width;								// leading columns the trie goes through, the rest are ignored
+	protected int distinctWidth;							// leading columns the enumeration tells apart, <= width
+	protected final long[] currentTuple;
+
+	// Constants after a variable column are not levels of the trie: the key of the variable is only visited
+	// if the constants follow it, and open() and up() go past them.
+	protected final boolean[] isConstant;
+	protected final long[] constantIds;
+	protected final int[] lastConstant;						// last of the constant columns right after column i, i if none
+	protected final int[] upLevel;							// level up() goes back to from column i
+	protected final int firstVarColumn;						// columns before are constants, opened one by one
+
+	protected final int noIntersectionLevel;
+	protected final int[] varIndexInLocalOrder;
+
+
+	/**
+	 * @param tuple the pattern in the column order of the index: constants first, then variables. {@link Node#ANY}
+	 * marks trailing columns that are not part of the trie, each tuple of the remaining columns is visited once
+	 * whatever their values (the graph of a union default graph query).
+	 * @param localAttributeOrder variable order of the BGP, the variables of tuple must follow it.
+	 * @param noIntersectionLevel number of columns that are not enumerated: the variables from there on are only
+	 * in this tuple and are set from the buffer.
+	 */
+	protected LFTrie(Node[] tuple, Var[] localAttributeOrder, int noIntersectionLevel) {
+		this.noIntersectionLevel = noIntersectionLevel;
+		columns = tuple.length;
+		int w = columns;
+		while (w > 0 && Node.ANY.equals(tuple[w-1])) {
+			w--;
+		}
+		width = w;
+		distinctWidth = w;
+		currentTuple = new long[columns];
+
+		isConstant = new boolean[columns];
+		constantIds = new long[columns];
+		int k = 0;
+		while (k < width && tuple[k].isConcrete()) {
+			k++;
+		}
+		firstVarColumn = k;
+		lastConstant = new int[columns];
+		upLevel = new int[columns];
+		for (int i = 0; i < columns; i++) {
+			isConstant[i] = tuple[i].isConcrete();
+			lastConstant[i] = i;
+			upLevel[i] = i-1;
+		}
+		for (int i = firstVarColumn; i < width; i++) {
+			if (!isConstant[i]) {
+				while (lastConstant[i]+1 < width && isConstant[lastConstant[i]+1]) {
+					lastConstant[i]++;
+				}
+				if (lastConstant[i]+1 < columns) {
+					upLevel[lastConstant[i]+1] = i;
+				}
+			}
+		}
+
+		varIndexInLocalOrder = new int[columns];
+
+		for (int i = noIntersectionLevel; i < width; i++) {
+			for (int j = 0; j < localAttributeOrder.length; j++ ) {
+				if (localAttributeOrder[j].equals(tuple[i])) {
+					varIndexInLocalOrder[i] = j;
+					break;
+				}
+			}
+		}
+
+		level = -1;
+	}
+
+	/**
+	 * Enumerates the tuples with different values in the first w columns only, one for each, as if the columns
+	 * after were {@link Node#ANY}: for variables of no use to the query, under a DISTINCT. The columns of the trie
+	 * are always told apart. When the levels above fix all of them, the enumeration only checks a tuple exists.
+	 */
+	public void setDistinctWidth(int w) {
+		distinctWidth = Math.max(noIntersectionLevel, Math.min(w, width));
+	}
+
+	/** Sets the id of the constant at column, before opening the levels after it. */
+	public void setConstant(int column, long id) {
+		constantIds[column] = id;
+	}
+
+	public void up() {
+		atEnd = false;
+		level = upLevel[level];
+	}
+
+	/** Goes down to the next level, on its first key under the keys above followed by the constants after it. */
+	public abstract void open();
+
+	public long key() {
+		return currentTuple[level];
+	}
+
+	public boolean atEnd() {
+		return atEnd;
+	}
+
+	/** The next key of the level followed by the constants after it. */
+	public abstract void next();
+
+	/** The first key of the level not below key followed by the constants after it; the next one if key is not after the current one. */
+	public abstract void seek(long key);
+
+	/** Estimated number of tuples under the prefix of the current level. */
+	public abstract long levelSize();
+
+	/** Keys of the current level, under the current prefix, that split it in parts of similar size. */
+	public abstract void sampleKeys(int n, List<Long> keys);
+
+	// The enumeration of the tuples under the current position, see BGPIter: the first ones are in a buffer, which
+	// is enumerated again for each binding of the iterators before this one, and then the next buffers.
+
+	/** Starts the enumeration under the current position, setting its variables in binding from the first tuple. */
+	public abstract void startNoIntersection(long[] binding);
+
+	/** Number of tuples {@link #startNoIntersection} would enumerate from the current position. */
+	public abstract long countNoIntersection();
+
+	public abstract void resetBuffer(long[] binding);
+
+	public abstract void resetAll(long[] binding);
+
+	public abstract boolean hasNextBuffer();
+
+	public abstract boolean hasNextInBuffer();
+
+	public abstract void nextInBuffer(long[] binding);
+
+	public abstract void nextBuffer(long[] binding);
+
+	/** Tuples in the buffer, 0 if the enumeration is empty. */
+	public abstract int bufferSize();
+
+	// What the trie read, for the plan explained (see LFExplain).
+
+	/** Leaf pages the moves at column went to, the first page of an open included. */
+	public abstract long pagesAt(int column);
+
+	/** Leaf pages the enumeration read, counting those it read again. */
+	public abstract long enumerationPages();
+
+	/** Tuples the enumeration read, counting those it read again and the duplicates it skipped. */
+	public abstract long enumerationTuples();
+}
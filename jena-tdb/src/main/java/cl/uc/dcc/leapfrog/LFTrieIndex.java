@@ -2,14 +2,16 @@ package cl.uc.dcc.leapfrog;
 
 import static org.apache.jena.tdb.sys.SystemTDB.SizeOfLong;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Stack;
 
+import org.apache.jena.atlas.lib.Alg;
 import org.apache.jena.atlas.lib.Bytes;
 import org.apache.jena.graph.Node;
-import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.tdb.base.record.Record;
-import org.apache.jena.tdb.base.record.RecordFactory;
+import org.apache.jena.tdb.base.recordbuffer.RecordBufferPage;
 import org.apache.jena.tdb.base.recordbuffer.RecordBufferPageMgr;
 import org.apache.jena.tdb.base.recordbuffer.RecordRangeIterator;
 import org.apache.jena.tdb.index.bplustree.BPTreeNode;
@@ -18,104 +20,84 @@ import org.apache.jena.tdb.index.bplustree.BPlusTree;
 import org.apache.jena.tdb.store.NodeId;
 
 
-public class LFTrieIndex {
+/** The trie of a tuple pattern over the B+Tree of an index, read page by page. */
+public class LFTrieIndex extends LFTrie {
 	
-	private static final int MAX_LEVEL = 2;
-	private static final RecordFactory factory;
-	public static final Record zeroRecord;
-	static {
-		factory = new RecordFactory(32*MAX_LEVEL, 0);
-		zeroRecord = factory.create(new byte[3 * NodeId.SIZE]);
-	}
-	
-	private int level;
-	private boolean atEnd;
+	// Seeks and the record decoding work over these arrays, created once per iterator,
+	// so moving inside a leaf page doesn't allocate.
+	private final long[] zeroKey;
+	private final long[] lastKey;							// unsigned maximum
+	private final long[] minKey;
+	private final long[] maxKey;
+	private boolean hasMax;
 	
-	private long[] currentTuple;
+	private BPlusTree btree;
 	private Stack<BPTreeNode> nodes;
 	private BPTreeRecords currentRecordsNode;
-	
-	private int[] varIndexInLocalOrder;
-	
-	private Var[] noIntersectionVars;
-	private int noIntersectionLevel;
+	private int currentSlot;								// slot of currentTuple in currentRecordsNode, seeks gallop from there
 	
 	private RecordBufferPageMgr pageMgr;
 	private RecordRangeIterator recordIter;
-	private Record noIntersectionMin;
-	private Record noIntersectionMax;
+	private final byte[] noIntersectionMinBytes;
+	private final byte[] noIntersectionMaxBytes;
+	private final Record noIntersectionMin;
+	private final Record noIntersectionMax;
+	private boolean noIntersectionHasMax;
+	private int noIntersectionPrefix;						// columns fixed by the levels above the enumeration
 	
-	private static final int BUFFER_SIZE = 1_000;
+	// The tuples of the enumeration, one after the other in a flat array. It starts small and grows, sized from the
+	// estimate of the range when that is larger, up to the budget: a range that fits is read once, and enumerated
+	// again from memory for each binding of the iterators before it in the enumeration.
+	private static final int INITIAL_BUFFER_TUPLES = 64;
+	static long bufferBudget = 8L << 20;					// bytes of the buffer of an iterator
 	private int maxBufferPos;
 	private int currentBufferPos;
-	private long buffer[][];
+	private long[] buffer;
+	private final int maxBufferTuples;
+	private boolean estimated;								// the range was estimated since the last startNoIntersection
+	private boolean complete;								// the buffer has all the tuples of the range
+	private final long[] pending;							// first tuple after a full buffer, when hasPending
+	private boolean hasPending;
 	
+	// What the trie read, for the plan explained (see LFExplain): the leaf pages the moves at each column went to,
+	// and the pages and tuples of the enumeration.
+	private final long[] pagesAt;
+	private long enumerationPages;
+	private long enumerationTuples;
 	
-	public LFTrieIndex(BPlusTree btree, Triple triple, Var[] localAttributeOrder, int permutation, int noIntersectionLevel) {
-		this.noIntersectionLevel = noIntersectionLevel;
-		buffer = new long[BUFFER_SIZE][];
-		
-		pageMgr = btree.getRecordsMgr().getRecordBufferPageMgr();
-				
-		noIntersectionVars = new Var[3-noIntersectionLevel];
-		
-		if (permutation == 0) { //SPO
-			setNoIntersectionVars(triple.getSubject(), triple.getPredicate(), triple.getObject());
-		}
-		else if (permutation == 1) { //POS
-			setNoIntersectionVars(triple.getPredicate(), triple.getObject(), triple.getSubject());
-		}
-		else if (permutation == 2) { //OSP
-			setNoIntersectionVars(triple.getObject(), triple.getSubject(), triple.getPredicate());
-		}
-		else if (permutation == 3) { //SOP
-			setNoIntersectionVars(triple.getSubject(), triple.getObject(), triple.getPredicate());
-		}
-		else if (permutation == 4) { //PSO
-			setNoIntersectionVars(triple.getPredicate(), triple.getSubject(), triple.getObject());
-		}
-		else { // permutation == 5 //OPS
-			setNoIntersectionVars(triple.getObject(), triple.getPredicate(), triple.getSubject());
+	
+	/**
+	 * The trie of tuple, see {@link LFTrie#LFTrie} for the other parameters.
+	 * @param btree an index of a tuple table, with one column per element of tuple.
+	 */
+	public LFTrieIndex(BPlusTree btree, Node[] tuple, Var[] localAttributeOrder, int noIntersectionLevel) {
+		super(tuple, localAttributeOrder, noIntersectionLevel);
+		this.btree = btree;
+		if (btree.getRecordFactory().keyLength() != columns * NodeId.SIZE) {
+			throw new IllegalArgumentException("Index of " + btree.getRecordFactory().keyLength() / NodeId.SIZE + " columns for " + Arrays.toString(tuple));
 		}
+		zeroKey = new long[columns];
+		lastKey = new long[columns];
+		Arrays.fill(lastKey, -1L);
+		minKey = new long[columns];
+		maxKey = new long[columns];
+		noIntersectionMinBytes = new byte[columns * NodeId.SIZE];
+		noIntersectionMaxBytes = new byte[columns * NodeId.SIZE];
+		noIntersectionMin = btree.getRecordFactory().create(noIntersectionMinBytes);
+		noIntersectionMax = btree.getRecordFactory().create(noIntersectionMaxBytes);
+		maxBufferTuples = (int) Math.max(1, Math.min(bufferBudget / (SizeOfLong * columns), Integer.MAX_VALUE / columns));
+		buffer = new long[Math.min(INITIAL_BUFFER_TUPLES, maxBufferTuples) * columns];
+		pending = new long[columns];
+		pagesAt = new long[columns];
 		
-		varIndexInLocalOrder = new int[3];
-		
-		for (int i = noIntersectionLevel; i < 3; i++) {
-			for (int j = 0; j < localAttributeOrder.length; j++ ) {
-				if (localAttributeOrder[j].equals(noIntersectionVars[i-noIntersectionLevel])) {
-					varIndexInLocalOrder[i] = j;
-					break;
-				}
-			}
-		}
+		pageMgr = btree.getRecordsMgr().getRecordBufferPageMgr();
 		
-    	level = -1;
     	nodes = new Stack<>();
     	nodes.add(btree.getRoot());
 	}
-
-	private void setNoIntersectionVars(Node node1, Node node2, Node node3) {
-		int i = 0;
-		if (noIntersectionLevel <= 0) {
-			noIntersectionVars[0] = (Var) node1; 
-			i++;
-		}
-		if (noIntersectionLevel <= 1) {
-			noIntersectionVars[i] = (Var) node2; 
-			i++;
-		}
-		if (noIntersectionLevel <= 2) {
-			noIntersectionVars[i] = (Var) node3; 
-		}
-	}
-	
-	public void up() {
-		atEnd = false;
-		level--;
-	}
 	
 	public void open() {		
-		level++;
+		level = (level < firstVarColumn) ? level+1 : lastConstant[level]+1;
 
 		// iterator starts again
 		if (level == 0) {
@@ -130,269 +112,295 @@ public class LFTrieIndex {
 			if (currentRecordsNode != null) {
 				currentRecordsNode.release();
 			}
-			currentRecordsNode = n.search(nodes, zeroRecord);
-			currentTuple = recordToTuple(currentRecordsNode.minRecord());
+			currentRecordsNode = n.search(nodes, zeroKey);
+			pagesAt[level]++;
+			currentSlot = 0;
+			currentRecordsNode.getTuple(0, currentTuple);
 		} else {
-			byte[] min = new byte[3 * NodeId.SIZE];
-			switch (level) {
-			case 0:
-				// 0, 0, 0
-				//Bytes.setLong(0L, min, 0);
-				//Bytes.setLong(0L, min, SizeOfLong);
-				//Bytes.setLong(0L, min, 2*SizeOfLong);
-				break;
-			case 1:
-				// current, 0, 0
-				Bytes.setLong(currentTuple[0], min, 0);
-				//Bytes.setLong(0L, min, SizeOfLong);
-				//Bytes.setLong(0L, min, 2*SizeOfLong);
-				break;
-			case 2:
-				// current, current, 0
-				Bytes.setLong(currentTuple[0], min, 0);
-				Bytes.setLong(currentTuple[1], min, SizeOfLong);
-				//Bytes.setLong(0L, min, 2*SizeOfLong);
-				break;
-			}
-			Record recordMin = factory.create(min);
+			// min = current prefix, 0...
+			setMinKey(0);
 			
-			Record r = currentRecordsNode.search(recordMin);
-			// if low <= r <= high
-			if (r != null && (Record.keyLE(r, recordMin) && Record.keyLE(recordMin, r))) {
-				currentTuple = recordToTuple(r);
+			// The prefix is in the current page. Unless the first record >= min is the first
+			// record of the page (and not exactly min), there can't be an earlier one in a previous page.
+			int idx = currentRecordsNode.findSlot(minKey);
+			if (idx < currentRecordsNode.getCount() && (idx > 0 || currentRecordsNode.getRecordBuffer().compare(idx, minKey) == 0)) {
+				currentSlot = idx;
+				currentRecordsNode.getTuple(idx, currentTuple);
+				matchConstants();
 				return;
 			}
 			BPTreeNode n = nodes.pop();
 			
-			while ( (Record.keyLT(recordMin, n.getLowOrZeroRecord()) || Record.keyLT(n.getHighOrZeroRecord(), recordMin)) && !nodes.empty()) {
+			while (n.isOutside(minKey) && !nodes.empty()) {
 				n.release();
 				n = nodes.pop();
 			}
 			
-			BPTreeRecords recordsNodeFound = n.search(nodes, recordMin);
-			r = recordsNodeFound.search(recordMin);
+			BPTreeRecords recordsNodeFound = n.search(nodes, minKey);
+			pagesAt[level]++;
+			idx = recordsNodeFound.findSlot(minKey);
 			
 			currentRecordsNode.release();
 			currentRecordsNode = recordsNodeFound;
-			currentTuple = recordToTuple(r);
-		}	
+			currentSlot = idx;
+			currentRecordsNode.getTuple(idx, currentTuple);
+		}
+		matchConstants();
 	}
 	
 	
-	public long key() {
-		return currentTuple[level];
-	}
-
-
 	public void next() {
-		byte[] min = new byte[3 * NodeId.SIZE];
-		byte[] max = new byte[3 * NodeId.SIZE];
-		
-		switch (level) {
-		case 0:
-			// min = current+1, 0, 0
-			Bytes.setLong(currentTuple[0]+1, min, 0);
-			//Bytes.setLong(0L, min, SizeOfLong);
-			//Bytes.setLong(0L, min, 2*SizeOfLong);
-			
-			// max = null
-			break;
-		case 1:
-			// min = current, current+1, 0				
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(currentTuple[1]+1, min, SizeOfLong);
-			//Bytes.setLong(0L, min, 2*SizeOfLong);
-			
-			// max = current+1, 0, 0
-			Bytes.setLong(currentTuple[0]+1, max, 0);
-			//Bytes.setLong(0L, max, SizeOfLong);
-			//Bytes.setLong(0L, max, 2*SizeOfLong);
-			
-			break;
-		case 2:
-			// min = current, current, current+1
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(currentTuple[1], min, SizeOfLong);
-			Bytes.setLong(currentTuple[2]+1, min, 2*SizeOfLong);
-			
-			// max = current, current+1, 0
-			Bytes.setLong(currentTuple[0], max, 0);
-			Bytes.setLong(currentTuple[1]+1, max, SizeOfLong);
-			//Bytes.setLong(0L, max, 2*SizeOfLong);
-			
-			break;
-		}
-		Record recordMin = factory.create(min);
-		Record recordMax = (level==0)? null : factory.create(max);
-		
-		internalSearch(recordMin, recordMax);
+		// min = current prefix, current+1, 0...
+		// max = current prefix without the last element, last+1, 0...
+		setMinKey(currentTuple[level]+1);
+		setMaxKey();
+		internalSearch();
+		matchConstants();
 	}
 	
 	
-	/** search a record in the interval [min, max) */
-	public void internalSearch(Record min, Record max) {
-		Record r = currentRecordsNode.search(min);
+	/** 
+	 * search a record in the interval [minKey, maxKey), maxKey is only used if hasMax.
+	 * minKey is always after the current record, so the search gallops forwards from currentSlot
+	 * and only climbs the node stack when the key is past the end of the current page.
+	 */
+	private void internalSearch() {
+		int idx = currentRecordsNode.findSlot(minKey, currentSlot);
 		
-		if (r == null) {
+		if (idx >= currentRecordsNode.getCount()) {
 			BPTreeNode n = nodes.pop();
-			while ( !nodes.empty() && (Record.keyLT(n.getHighOrZeroRecord(), min) || Record.keyLT(min, n.getLowOrZeroRecord())) ) {
+			while ( !nodes.empty() && n.isOutside(minKey) ) {
 				n.release();
 				n = nodes.pop();
 			}
 			
-			BPTreeRecords recordsNodeFound = n.search(nodes, min);
-			r = recordsNodeFound.search(min);
+			BPTreeRecords recordsNodeFound = n.search(nodes, minKey);
+			pagesAt[level]++;
+			idx = recordsNodeFound.findSlot(minKey);
 			
-			if (r == null || (max != null && Record.keyGE(r, max)) ) {
+			if (idx >= recordsNodeFound.getCount() || (hasMax && recordsNodeFound.getRecordBuffer().compare(idx, maxKey) >= 0) ) {
 				recordsNodeFound.release();
 				atEnd = true;
 				return;
 			} else {
 				currentRecordsNode.release();
 				currentRecordsNode = recordsNodeFound;
-				currentTuple = recordToTuple(r);
+				currentSlot = idx;
+				currentRecordsNode.getTuple(idx, currentTuple);
 			}
-		} else if (max != null && Record.keyGE(r, max)) {
+		} else if (hasMax && currentRecordsNode.getRecordBuffer().compare(idx, maxKey) >= 0) {
 			atEnd = true;
 		} else {
-			currentTuple = recordToTuple(r);
+			currentSlot = idx;
+			currentRecordsNode.getTuple(idx, currentTuple);
 		}
 	}
 
 
 	public void seek(long key) {
 		// If the current position is already greater or equal it moves to the next position anyways.
-		if (key <= currentTuple[level]) {
+		// Keys are ordered as unsigned, as in the index.
+		if (Long.compareUnsigned(key, currentTuple[level]) <= 0) {
 			next();
 			return;
 		}
 		
-		byte[] min = new byte[3 * NodeId.SIZE];
-		byte[] max = new byte[3 * NodeId.SIZE];
-		
-		switch (level) {
-		case 0:
-			// min = key, 0, 0
-			Bytes.setLong(key, min, 0);
-			//Bytes.setLong(0L, min, SizeOfLong);
-			//Bytes.setLong(0L, min, 2*SizeOfLong);
-			
-			// max = null
-			break;
-		case 1:
-			// min = current, key, 0				
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(key, min, SizeOfLong);
-			//Bytes.setLong(0L, min, 2*SizeOfLong);
-			
-			// max = current+1, 0, 0
-			Bytes.setLong(currentTuple[0]+1, max, 0);
-			//Bytes.setLong(0L, max, SizeOfLong);
-			//Bytes.setLong(0L, max, 2*SizeOfLong);
-			
-			break;
-		case 2:
-			// min = current, current, key
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(currentTuple[1], min, SizeOfLong);
-			Bytes.setLong(key, min, 2*SizeOfLong);
-			
-			// max = current, current+1, 0
-			Bytes.setLong(currentTuple[0], max, 0);
-			Bytes.setLong(currentTuple[1]+1, max, SizeOfLong);
-			//Bytes.setLong(0L, max, 2*SizeOfLong);
-			
-			break;
+		// min = current prefix, key, 0...
+		// max = current prefix without the last element, last+1, 0...
+		setMinKey(key);
+		setMaxKey();
+		internalSearch();
+		matchConstants();
+	}
+	
+	
+	/**
+	 * Moves forwards from the current key to the first one followed by the constants of the next columns,
+	 * leaving the iterator on the first record with that prefix.
+	 */
+	private void matchConstants() {
+		int last = lastConstant[level];
+		while (!atEnd && !matchesConstants(last)) {
+			long key = currentTuple[level];
+			// min = current prefix, key, constants, 0...
+			setMinKey(key);
+			for (int i = level+1; i <= last; i++) {
+				minKey[i] = constantIds[i];
+			}
+			setMaxKey();
+			internalSearch();
+			if (!atEnd && currentTuple[level] == key && !matchesConstants(last)) {
+				// key isn't followed by the constants
+				setMinKey(key+1);
+				setMaxKey();
+				internalSearch();
+			}
 		}
-		Record recordMin = factory.create(min);
-		Record recordMax = (level==0)? null : factory.create(max);
-		internalSearch(recordMin, recordMax);
 	}
 	
-
-	public boolean atEnd() {
-		return atEnd;
+	
+	private boolean matchesConstants(int last) {
+		for (int i = level+1; i <= last; i++) {
+			if (currentTuple[i] != constantIds[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** minKey = currentTuple[0..level-1], key, 0... */
+	private void setMinKey(long key) {
+		for (int i = 0; i < level; i++) {
+			minKey[i] = currentTuple[i];
+		}
+		minKey[level] = key;
+		for (int i = level+1; i < minKey.length; i++) {
+			minKey[i] = 0;
+		}
 	}
+	
+	/** maxKey = currentTuple[0..level-2], currentTuple[level-1]+1, 0...; no max at level 0 */
+	private void setMaxKey() {
+		hasMax = level > 0;
+		if (!hasMax) {
+			return;
+		}
+		for (int i = 0; i < level-1; i++) {
+			maxKey[i] = currentTuple[i];
+		}
+		maxKey[level-1] = currentTuple[level-1]+1;
+		for (int i = level; i < maxKey.length; i++) {
+			maxKey[i] = 0;
+		}
+	}
+	
 
+	/** Estimated number of records under the prefix of the current level. */
+	public long levelSize() {
+		setMinKey(0);
+		setMaxKey();
+		return btree.estimateRange(minKey, hasMax ? maxKey : lastKey);
+	}
+	
+	
+	/** Keys of the current level, under the current prefix, that split it in parts of similar size. */
+	public void sampleKeys(int n, List<Long> keys) {
+		setMinKey(0);
+		setMaxKey();
+		btree.sampleKeys(minKey, hasMax ? maxKey : lastKey, level, n, keys);
+	}
+	
 
 	public void startNoIntersection(long[] binding) {
-		byte[] min = new byte[3 * NodeId.SIZE];
-		byte[] max = new byte[3 * NodeId.SIZE];
-		
-		switch (level) {
-		case -1:
-			noIntersectionMin = factory.create(min);
-			
-			break;
-		case 0:	
-			Bytes.setLong(currentTuple[0], min, 0);
-			
-			Bytes.setLong(currentTuple[0]+1, max, 0);
-			
-			break;
-		case 1:
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(currentTuple[1], min, SizeOfLong);
-			
-			Bytes.setLong(currentTuple[0], max, 0);
-			Bytes.setLong(currentTuple[1]+1, max, SizeOfLong);
-			
-			break;
-		case 2:
-			Bytes.setLong(currentTuple[0], min, 0);
-			Bytes.setLong(currentTuple[1], min, SizeOfLong);
-			Bytes.setLong(currentTuple[2], min, 2*SizeOfLong);
-			
-			Bytes.setLong(currentTuple[0], max, 0);
-			Bytes.setLong(currentTuple[1], max, SizeOfLong);
-			Bytes.setLong(currentTuple[2]+1, max, 2*SizeOfLong);
+		setNoIntersectionRange();
+		openRecordIter();
+		hasPending = false;
+		estimated = false;
+		fillBuffer(true);
+		setFromBuffer(binding);
+	}
+	
+	
+	/**
+	 * Number of tuples {@link #startNoIntersection} would enumerate from the current position. Whole leaf pages
+	 * are counted by their size, without reading their records, unless columns are skipped.
+	 */
+	public long countNoIntersection() {
+		setNoIntersectionRange();
+		if (distinctWidth < columns) {
+			openRecordIter();
+			long n = 0;
+			long[] previous = new long[columns];
+			long[] tuple = new long[columns];
+			while (recordIter.hasNext()) {
+				recordToTuple(recordIter.next(), tuple);
+				if (n == 0 || !samePrefix(previous, tuple)) {
+					n++;
+					if (distinctWidth <= noIntersectionPrefix) {
+						break;
+					}
+				}
+				long[] t = previous;
+				previous = tuple;
+				tuple = t;
+			}
+			return n;
 		}
-			
-		noIntersectionMin = factory.create(min);
-		noIntersectionMax = (level==-1)? null : factory.create(max);
-
-		if (recordIter != null) {
-			recordIter.close();
+		
+		int idx = BPTreeNode.convert(nodes.peek().findSlot(noIntersectionMin));
+		int id = nodes.peek().getPtrBuffer().get(idx);
+		RecordBufferPage page = pageMgr.getRead(id);
+		enumerationPages++;
+		try {
+			long n = 0;
+			int from = decodeIndex(page.getRecordBuffer().find(noIntersectionMin));
+			while (true) {
+				int to = page.getCount();
+				if (noIntersectionHasMax) {
+					to = decodeIndex(page.getRecordBuffer().find(noIntersectionMax));
+				}
+				n += Math.max(0, to - from);
+				if (to < page.getCount() || page.getLink() < 0) {
+					return n;
+				}
+				RecordBufferPage next = pageMgr.getRead(page.getLink());
+				enumerationPages++;
+				pageMgr.release(page);
+				page = next;
+				from = 0;
+			}
+		} finally {
+			pageMgr.release(page);
 		}
-		int idx = BPTreeNode.convert(nodes.peek().findSlot(noIntersectionMin)) ;
-        int id = nodes.peek().getPtrBuffer().get(idx) ;
-		recordIter = (RecordRangeIterator) RecordRangeIterator.iterator(id, noIntersectionMin, noIntersectionMax, pageMgr);		
-		fillBuffer();
-
-		currentTuple = buffer[0];
-		for (int i = noIntersectionLevel; i < 3; i++) {
-			binding[varIndexInLocalOrder[i]] = currentTuple[i];
+	}
+	
+	
+	private static int decodeIndex(int i) {
+		return (i < 0) ? Alg.decodeIndex(i) : i;
+	}
+	
+	
+	/** Sets the range of the tuples below the current position, from its prefix. */
+	private void setNoIntersectionRange() {
+		// the prefix includes the constants after the current level
+		int last = (level < 0) ? level : lastConstant[level];
+		// min = current prefix, 0...
+		// max = current prefix without the last element, last+1, 0...
+		for (int i = 0; i < columns; i++) {
+			long min = (i <= last) ? currentTuple[i] : 0L;
+			long max = (i < last) ? currentTuple[i] : (i == last) ? currentTuple[i]+1 : 0L;
+			Bytes.setLong(min, noIntersectionMinBytes, i*SizeOfLong);
+			Bytes.setLong(max, noIntersectionMaxBytes, i*SizeOfLong);
 		}
+		noIntersectionHasMax = last != -1;
+		noIntersectionPrefix = last + 1;
 	}
 	
 
 	public void resetBuffer(long[] binding) {
 		currentBufferPos = 0;
-		currentTuple = buffer[0];
-		
-		for (int i = noIntersectionLevel; i < 3; i++) {
-			binding[varIndexInLocalOrder[i]] = currentTuple[i];
-		}
+		setFromBuffer(binding);
 	}
 	
 
 	public void resetAll(long[] binding) {
-		recordIter.close();
-		int idx = BPTreeNode.convert(nodes.peek().findSlot(noIntersectionMin)) ;
-        int id = nodes.peek().getPtrBuffer().get(idx) ;
-		recordIter = (RecordRangeIterator) RecordRangeIterator.iterator(id, noIntersectionMin, noIntersectionMax, pageMgr);		
-		fillBuffer();
-		
-		currentTuple = buffer[0];
-		
-		for (int i = noIntersectionLevel; i < 3; i++) {
-			binding[varIndexInLocalOrder[i]] = currentTuple[i];
+		if (complete) {
+			// all read, nothing to read again
+			resetBuffer(binding);
+			return;
 		}
+		openRecordIter();
+		hasPending = false;
+		fillBuffer(true);
+		setFromBuffer(binding);
 	}
 	
 
 	public boolean hasNextBuffer() {
-		return recordIter.hasNext();
+		if (distinctWidth <= noIntersectionPrefix) {
+			return false;
+		}
+		return hasPending || recordIter.hasNext();
 	}
 	
 
@@ -402,43 +410,166 @@ public class LFTrieIndex {
 
 
 	public void nextInBuffer(long[] binding) {
-		currentTuple = buffer[++currentBufferPos];
-		for (int i = noIntersectionLevel; i < 3; i++) {
-			binding[varIndexInLocalOrder[i]] = currentTuple[i];
-		}
+		++currentBufferPos;
+		setFromBuffer(binding);
 	}
 
 	
 	public void nextBuffer(long[] binding) {
-		fillBuffer();
-		currentTuple = buffer[0];
-		for (int i = noIntersectionLevel; i < 3; i++) {
+		fillBuffer(false);
+		setFromBuffer(binding);
+	}
+	
+	
+	/** Reads the range from its first page, closing the previous read. */
+	private void openRecordIter() {
+		closeRecordIter();
+		int idx = BPTreeNode.convert(nodes.peek().findSlot(noIntersectionMin)) ;
+		int id = nodes.peek().getPtrBuffer().get(idx) ;
+		recordIter = (RecordRangeIterator) RecordRangeIterator.iterator(id, noIntersectionMin, noIntersectionHasMax ? noIntersectionMax : null, pageMgr);
+		enumerationPages++;
+	}
+	
+	
+	private void closeRecordIter() {
+		if (recordIter != null) {
+			recordIter.close();
+			// the iterator counts the pages after its first one
+			enumerationPages += recordIter.getCountBlocks();
+			enumerationTuples += recordIter.getCountRecords();
+			recordIter = null;
+		}
+	}
+	
+	
+	/** copies the tuple at the current buffer position to currentTuple and to the binding, if the buffer isn't empty */
+	private void setFromBuffer(long[] binding) {
+		if (maxBufferPos == 0) {
+			return;
+		}
+		System.arraycopy(buffer, currentBufferPos * columns, currentTuple, 0, columns);
+		for (int i = noIntersectionLevel; i < width; i++) {
 			binding[varIndexInLocalOrder[i]] = currentTuple[i];
 		}
 	}
 	
 	
-	private void fillBuffer() {
+	/**
+	 * reads the next tuples of recordIter into the buffer, growing it while under the budget: fromStart if they are
+	 * the first of the range, which is then complete if they all fit. Tuples equal to the previous one in the first
+	 * distinctWidth columns are skipped, so the buffer never ends with a tuple whose duplicates are still to be read.
+	 */
+	private void fillBuffer(boolean fromStart) {
 		maxBufferPos = 0;
-		while (maxBufferPos < BUFFER_SIZE && recordIter.hasNext()) {
-			buffer[maxBufferPos++] = recordToTuple(recordIter.next());
+		complete = fromStart;
+		if (hasPending) {
+			System.arraycopy(pending, 0, buffer, 0, columns);
+			maxBufferPos = 1;
+			hasPending = false;
+		}
+		while (recordIter.hasNext()) {
+			if ((maxBufferPos + 1) * columns > buffer.length && !growBuffer()) {
+				// full: the tuple is kept for the next fill, unless it is a duplicate
+				recordToTuple(recordIter.next(), pending, 0);
+				if (distinctWidth < columns && samePrefix(buffer, (maxBufferPos-1) * columns, pending, 0)) {
+					continue;
+				}
+				hasPending = true;
+				complete = false;
+				break;
+			}
+			int off = maxBufferPos * columns;
+			recordToTuple(recordIter.next(), buffer, off);
+			if (distinctWidth < columns && maxBufferPos > 0 && samePrefix(buffer, off - columns, buffer, off)) {
+				continue;
+			}
+			maxBufferPos++;
+			if (distinctWidth <= noIntersectionPrefix) {
+				// a single seek tells the tuple exists
+				break;
+			}
 		}
 		currentBufferPos = 0;
 	}
 	
 	
-	private static long[] recordToTuple(Record r) {
-        int n = r.getKey().length/SizeOfLong;
-        long[] nodeIds = new long[n] ;
-        for (int i = 0 ; i < n ; i++) {
-            nodeIds[i] = Bytes.getLong(r.getKey(), i*SizeOfLong);
-        }
-        return nodeIds;
-    }
+	/**
+	 * Makes room for more tuples, if under the budget: to the estimated size of the range the first time it is full,
+	 * else twice its size. False if the buffer is at the budget.
+	 */
+	private boolean growBuffer() {
+		int tuples = buffer.length / columns;
+		if (tuples >= maxBufferTuples) {
+			return false;
+		}
+		long target = 2L * tuples;
+		if (!estimated) {
+			estimated = true;
+			long[] max = noIntersectionHasMax ? new long[columns] : lastKey;
+			long[] min = new long[columns];
+			for (int i = 0; i < columns; i++) {
+				min[i] = Bytes.getLong(noIntersectionMinBytes, i*SizeOfLong);
+				if (noIntersectionHasMax) {
+					max[i] = Bytes.getLong(noIntersectionMaxBytes, i*SizeOfLong);
+				}
+			}
+			target = Math.max(target, btree.estimateRange(min, max) + 1);
+		}
+		buffer = Arrays.copyOf(buffer, (int) Math.min(target, maxBufferTuples) * columns);
+		return true;
+	}
+	
+	
+	private boolean samePrefix(long[] t1, int off1, long[] t2, int off2) {
+		for (int i = 0; i < distinctWidth; i++) {
+			if (t1[off1 + i] != t2[off2 + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	private boolean samePrefix(long[] t1, long[] t2) {
+		return samePrefix(t1, 0, t2, 0);
+	}
+	
+	
+	private static void recordToTuple(Record r, long[] tuple) {
+		recordToTuple(r, tuple, 0);
+	}
+	
+	
+	/** Decodes the key of r into tuple, from off. */
+	private static void recordToTuple(Record r, long[] tuple, int off) {
+		byte[] key = r.getKey();
+		int columns = key.length / SizeOfLong;
+		for (int i = 0 ; i < columns ; i++) {
+			tuple[off + i] = Bytes.getLong(key, i*SizeOfLong);
+		}
+	}
 
 
 	public int bufferSize() {
 		return maxBufferPos;
 	}
 	
-}
\ No newline at end of file
+	
+	
+	/** Leaf pages the moves at column went to, the first page of an open included. */
+	public long pagesAt(int column) {
+		return pagesAt[column];
+	}
+	
+	
+	/** Leaf pages the enumeration read, counting those it read again. */
+	public long enumerationPages() {
+		return enumerationPages + (recordIter != null ? recordIter.getCountBlocks() : 0);
+	}
+	
+	
+	/** Tuples the enumeration read, counting those it read again and the duplicates it skipped. */
+	public long enumerationTuples() {
+		return enumerationTuples + (recordIter != null ? recordIter.getCountRecords() : 0);
+	}
+}
@@ -0,0 +1,142 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.apache.jena.tdb.sys.SystemTDB.SizeOfLong;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.tdb.base.record.Record;
+import org.apache.jena.tdb.index.bplustree.BPlusTree;
+import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.sys.SystemTDB;
+
+/**
+ * The tuples of an index as an in-memory trie, read by {@link LFSnapshotTrie}: for each column, the keys of the
+ * nodes at that level in index order, and for each node the range of its children in the next column (as in a CSR
+ * matrix). Seeks are searches over arrays, without decoding pages or going through the block cache.
+ *
+ * Snapshots are kept for each B+Tree object, and read again from it after an add or a delete through it. Queries in
+ * a transaction read their own B+Tree objects, so they don't use snapshots.
+ */
+public class LFTrieSnapshot {
+
+	/**
+	 * Names of the indexes read from snapshots, separated by commas (SPO, POS, GSPO, ...). Only outside
+	 * transactions, when the dataset is read-mostly. Unset reads them all from their B+Trees.
+	 */
+	public static final Symbol symSnapshotIndexes = SystemTDB.allocSymbol("leapfrogSnapshotIndexes");
+
+	private static final Map<BPlusTree, LFTrieSnapshot> snapshots = new WeakHashMap<>();
+
+	final int columns;
+	final long[][] keys;					// keys[c], the keys of the nodes at column c
+	final int[][] children;					// children of node i at column c are keys[c+1] from children[c][i] to children[c][i+1]
+	final long modifications;				// of the B+Tree when it was read
+
+	private LFTrieSnapshot(long[][] keys, int[][] children, long modifications) {
+		this.columns = keys.length;
+		this.keys = keys;
+		this.children = children;
+		this.modifications = modifications;
+	}
+
+	/** The names of the indexes context reads from snapshots, see {@link #symSnapshotIndexes}; empty if none. */
+	public static Set<String> indexes(Context context) {
+		Set<String> names = new HashSet<>();
+		String value = context.getAsString(symSnapshotIndexes);
+		if (value != null) {
+			for (String name : value.split(",")) {
+				if (!name.trim().isEmpty()) {
+					names.add(name.trim().toUpperCase());
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * The snapshot of btree, read again if it changed since the last one; null if it has more nodes at a column
+	 * than an array holds.
+	 */
+	public static synchronized LFTrieSnapshot get(BPlusTree btree) {
+		LFTrieSnapshot snapshot = snapshots.get(btree);
+		if (snapshot == null || snapshot.modifications != btree.getModifications()) {
+			snapshot = read(btree);
+			if (snapshot != null) {
+				snapshots.put(btree, snapshot);
+			} else {
+				snapshots.remove(btree);
+			}
+		}
+		return snapshot;
+	}
+
+	/** Number of tuples. */
+	public int size() {
+		return keys[columns-1].length;
+	}
+
+	private static LFTrieSnapshot read(BPlusTree btree) {
+		long modifications = btree.getModifications();
+		int columns = btree.getRecordFactory().keyLength() / NodeId.SIZE;
+		long[][] keys = new long[columns][16];
+		int[][] children = new int[columns-1][16];
+		int[] sizes = new int[columns];
+		long[] previous = new long[columns];
+		long[] tuple = new long[columns];
+		boolean first = true;
+
+		Iterator<Record> iter = btree.iterator();
+		try {
+			while (iter.hasNext()) {
+				byte[] key = iter.next().getKey();
+				for (int i = 0; i < columns; i++) {
+					tuple[i] = Bytes.getLong(key, i*SizeOfLong);
+				}
+				// the first column that differs from the previous tuple starts a node at each column after
+				int d = 0;
+				while (!first && d < columns-1 && tuple[d] == previous[d]) {
+					d++;
+				}
+				first = false;
+				for (int c = d; c < columns; c++) {
+					if (sizes[c] == Integer.MAX_VALUE - 1) {
+						return null;
+					}
+					if (sizes[c] == keys[c].length) {
+						keys[c] = Arrays.copyOf(keys[c], (int) Math.min(2L * sizes[c], Integer.MAX_VALUE - 1));
+						if (c < columns-1) {
+							children[c] = Arrays.copyOf(children[c], keys[c].length + 1);
+						}
+					}
+					if (c < columns-1) {
+						children[c][sizes[c]] = sizes[c+1];
+					}
+					keys[c][sizes[c]++] = tuple[c];
+				}
+				long[] t = previous;
+				previous = tuple;
+				tuple = t;
+			}
+		} finally {
+			Iter.close(iter);
+		}
+
+		for (int c = 0; c < columns; c++) {
+			keys[c] = Arrays.copyOf(keys[c], sizes[c]);
+			if (c < columns-1) {
+				children[c] = Arrays.copyOf(children[c], sizes[c] + 1);
+				children[c][sizes[c]] = sizes[c+1];
+			}
+		}
+		return new LFTrieSnapshot(keys, children, modifications);
+	}
+}
@@ -1,35 +1,68 @@
 package cl.uc.dcc.leapfrog;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import org.apache.jena.atlas.iterator.IteratorResourceClosing;
+import org.apache.jena.atlas.lib.Closeable;
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.Table;
 import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpDistinct;
 import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpGroup;
+import org.apache.jena.sparql.algebra.op.OpJoin;
 import org.apache.jena.sparql.algebra.op.OpConditional;
+import org.apache.jena.sparql.algebra.op.OpOrder;
+import org.apache.jena.sparql.algebra.op.OpProject;
 import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.algebra.op.OpReduced;
 import org.apache.jena.sparql.algebra.op.OpSequence;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.algebra.op.OpTopN;
 import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterDistinct;
+import org.apache.jena.sparql.engine.iterator.QueryIterProject;
+import org.apache.jena.sparql.engine.iterator.QueryIterReduced;
 import org.apache.jena.sparql.engine.iterator.QueryIterRoot;
+import org.apache.jena.sparql.engine.iterator.QueryIterSlice;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.OpExecutorFactory;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.aggregate.AggCount;
+import org.apache.jena.sparql.expr.aggregate.AggCountVar;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
 import org.apache.jena.tdb.solver.Abortable;
 import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.solver.OpExecutorTDB1;
 import org.apache.jena.tdb.solver.QueryIterTDB;
 import org.apache.jena.tdb.solver.SolverLib;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
 import org.apache.jena.tdb.store.GraphTDB;
 import org.apache.jena.tdb.store.nodetable.NodeTable;
-import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
 
-import cl.uc.dcc.leapfrog.LFIterBindingNodeId;
 import cl.uc.dcc.leapfrog.OptionalTreeNode;
 
-public class OpExecutorOptionalTree extends OpExecutor {
+/**
+ * Runs the BGPs, and the OPTIONALs and FILTERs over them, of a TDB graph with the leapfrog; anything else, and
+ * graphs that are not TDB, as {@link OpExecutorTDB1} does. The leapfrog then works on the bindings the rest of the
+ * query gives it, as the right side of a join: see {@link SeededOptionalTree}.
+ */
+public class OpExecutorOptionalTree extends OpExecutorTDB1 {
 
 	private ReorderTransformation reorderTransformation;
 	
@@ -42,112 +75,313 @@ public class OpExecutorOptionalTree extends OpExecutor {
 
 	protected OpExecutorOptionalTree(ExecutionContext execCxt) {
 		super(execCxt);
-		GraphTDB graphTDB = (GraphTDB) execCxt.getActiveGraph();
-		reorderTransformation = graphTDB.getDatasetGraphTDB().getReorderTransform() ;
+		if (execCxt.getActiveGraph() instanceof GraphTDB) {
+			GraphTDB graphTDB = (GraphTDB) execCxt.getActiveGraph();
+			reorderTransformation = graphTDB.getDatasetGraphTDB().getReorderTransform() ;
+		}
 	}
 
 	@Override
-    protected QueryIterator execute(OpSequence opSequence, QueryIterator input) {
-    	if (!(input instanceof QueryIterRoot)) {
-    		throw new IllegalStateException("Expected QueryIterRoot as input.");
-    	}
-    	GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
-        List<Abortable> killList = new ArrayList<>();
-
-        Node graphNode = null;
-        NodeTupleTable ntt = graph.getDatasetGraphTDB().chooseNodeTupleTable(graphNode);
-        NodeTable nodeTable = ntt.getNodeTable();
-
-        LFIterBindingNodeId iter = OptionalTreeNode.getNode(ntt, opSequence, reorderTransformation);
-        iter.init(new Var[0]);
-
-        Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
-        Iterator<Binding> iterBinding = SolverLib.convertToNodes(abortableIter, nodeTable);
-        
-        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+    protected QueryIterator execute(OpFilter opFilter, QueryIterator input) {
+        QueryIterator iter = leapfrog(opFilter, input);
+        if (iter == null) {
+            iter = leapfrogValues(opFilter, input);
+        }
+        return iter != null ? iter : super.execute(opFilter, input);
     }
 	
-	@Override
-    protected QueryIterator execute(OpFilter opFilter, QueryIterator input) {
-    	if (!(input instanceof QueryIterRoot)) {
-    		throw new IllegalStateException("Expected QueryIterRoot as input.");
-    	}
-    	GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
-        List<Abortable> killList = new ArrayList<>();
+    @Override
+    protected QueryIterator execute(OpBGP opBGP, QueryIterator input) {
+        QueryIterator iter = leapfrog(opBGP, input);
+        return iter != null ? iter : super.execute(opBGP, input);
+    }
+    
+    @Override
+    protected QueryIterator execute(OpQuadPattern opQuadPattern, QueryIterator input) {
+        QueryIterator iter = leapfrog(opQuadPattern, input);
+        return iter != null ? iter : super.execute(opQuadPattern, input);
+    }
+
+    @Override
+    protected QueryIterator execute(OpConditional opConditional, QueryIterator input) {
+        QueryIterator iter = leapfrog(opConditional, input);
+        if (iter == null) {
+            iter = leapfrogValues(opConditional, input);
+        }
+        return iter != null ? iter : super.execute(opConditional, input);
+    }
 
-        Node graphNode = null;
-        NodeTupleTable ntt = graph.getDatasetGraphTDB().chooseNodeTupleTable(graphNode);
-        NodeTable nodeTable = ntt.getNodeTable();
+    @Override
+    protected QueryIterator execute(OpJoin opJoin, QueryIterator input) {
+        QueryIterator iter = leapfrogValues(opJoin, input);
+        return iter != null ? iter : super.execute(opJoin, input);
+    }
 
-        LFIterBindingNodeId iter = OptionalTreeNode.getNode(ntt, opFilter, reorderTransformation);
-        iter.init(new Var[0]);
+    @Override
+    protected QueryIterator execute(OpSequence opSequence, QueryIterator input) {
+        QueryIterator iter = leapfrogValues(opSequence, input);
+        return iter != null ? iter : super.execute(opSequence, input);
+    }
 
-        Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
-        Iterator<Binding> iterBinding = SolverLib.convertToNodes(abortableIter, nodeTable);
-        
-        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+    @Override
+    protected QueryIterator execute(OpDistinct opDistinct, QueryIterator input) {
+        QueryIterator iter = leapfrogProject(opDistinct.getSubOp(), input);
+        return iter != null ? new QueryIterDistinct(iter, execCxt) : super.execute(opDistinct, input);
     }
-	
+
     @Override
-    protected QueryIterator execute(OpBGP opBGP, QueryIterator input) {
-    	if (!(input instanceof QueryIterRoot)) {
-    		throw new IllegalStateException("Expected QueryIterRoot as input.");
-    	}
+    protected QueryIterator execute(OpReduced opReduced, QueryIterator input) {
+        QueryIterator iter = leapfrogProject(opReduced.getSubOp(), input);
+        return iter != null ? new QueryIterReduced(iter, execCxt) : super.execute(opReduced, input);
+    }
 
-    	GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
-        List<Abortable> killList = new ArrayList<>();
+    @Override
+    protected QueryIterator execute(OpGroup opGroup, QueryIterator input) {
+        QueryIterator iter = leapfrogCount(opGroup, input);
+        return iter != null ? iter : super.execute(opGroup, input);
+    }
 
-        Node graphNode = null;
-        NodeTupleTable ntt = graph.getDatasetGraphTDB().chooseNodeTupleTable(graphNode);
-        NodeTable nodeTable = ntt.getNodeTable();
+    @Override
+    protected QueryIterator execute(OpOrder opOrder, QueryIterator input) {
+        QueryIterator iter = leapfrogOrder(opOrder.getSubOp(), opOrder.getConditions(), input);
+        return iter != null ? iter : super.execute(opOrder, input);
+    }
 
-        LFIterBindingNodeId iter = OptionalTreeNode.getNode(ntt, opBGP, reorderTransformation);
-        iter.init(new Var[0]);
+    @Override
+    protected QueryIterator execute(OpTopN opTop, QueryIterator input) {
+        QueryIterator iter = leapfrogOrder(opTop.getSubOp(), opTop.getConditions(), input);
+        return iter != null ? new QueryIterSlice(iter, 0, opTop.getLimit(), execCxt) : super.execute(opTop, input);
+    }
 
+    /**
+     * The leapfrog over op with its results in the order of the conditions, without sorting them, see
+     * {@link LFOrderBy}. Null unless the conditions are a single ascending variable of the root BGP whose values
+     * are all inline integers or dateTimes of a timezone.
+     */
+    private QueryIterator leapfrogOrder(Op op, List<SortCondition> conditions, QueryIterator input) {
+        if (!(execCxt.getActiveGraph() instanceof GraphTDB) || !(input instanceof QueryIterRoot) || !input.isJoinIdentity()
+                || !OptionalTreeNode.isSupported(op) || conditions.size() != 1) {
+            return null;
+        }
+        SortCondition condition = conditions.get(0);
+        if (condition.getDirection() == Query.ORDER_DESCENDING || !condition.getExpression().isVariable()) {
+            return null;
+        }
+        GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
+        DatasetGraphTDB dsg = graph.getDatasetGraphTDB();
+        Node graphNode = OpExecutorTDB1.decideGraphNode(graph.getGraphName(), execCxt);
+        LFOrderBy iter = LFOrderBy.create(() -> getTree(dsg, graphNode, op, null), condition.getExpression().asVar());
+        if (iter == null) {
+            return null;
+        }
+        List<Abortable> killList = new ArrayList<>();
+        killList.add(iter);
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
         Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
-        Iterator<Binding> iterBinding = SolverLib.convertToNodes(abortableIter, nodeTable);
+        Iterator<Binding> iterBinding = new IteratorResourceClosing<>(LFMaterializer.create(abortableIter, nodeTable, execCxt.getContext()), iter);
         return new QueryIterTDB(iterBinding, killList, input, execCxt);
     }
-    
-    @Override
-    protected QueryIterator execute(OpQuadPattern opQuadPattern, QueryIterator input) {
-    	if (!(input instanceof QueryIterRoot)) {
-    		throw new IllegalStateException("Expected QueryIterRoot as input.");
-    	}
 
-    	GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
+    /**
+     * COUNT(*) and COUNT(?v) of a BGP grouped by its variables, from the trie, see {@link LFGroupCount}. Null for
+     * other aggregates, group expressions, or if the group variables can't be visited first.
+     */
+    private QueryIterator leapfrogCount(OpGroup opGroup, QueryIterator input) {
+        Op op = opGroup.getSubOp();
+        if (!(execCxt.getActiveGraph() instanceof GraphTDB) || !(input instanceof QueryIterRoot) || !input.isJoinIdentity()
+                || !(op instanceof OpBGP || op instanceof OpQuadPattern) || !OptionalTreeNode.isSupported(op)) {
+            return null;
+        }
+        Set<Var> patternVars = OptionalTreeNode.patternVars(op);
+        VarExprList groupVars = opGroup.getGroupVars();
+        if (!groupVars.getExprs().isEmpty() || !patternVars.containsAll(groupVars.getVars())) {
+            return null;
+        }
+        List<Var> countVars = new ArrayList<>();
+        for (ExprAggregator agg : opGroup.getAggregators()) {
+            Aggregator aggregator = agg.getAggregator();
+            if (aggregator instanceof AggCountVar) {
+                // the variables of a BGP are always bound
+                Expr expr = aggregator.getExprList().get(0);
+                if (!expr.isVariable() || !patternVars.contains(expr.asVar())) {
+                    return null;
+                }
+            } else if (!(aggregator instanceof AggCount)) {
+                return null;
+            }
+            countVars.add(agg.getVar());
+        }
+        GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
+        Node graphNode = OpExecutorTDB1.decideGraphNode(graph.getGraphName(), execCxt);
+        LFGroupCount iter = LFGroupCount.create(graph.getDatasetGraphTDB(), graphNode, op, reorderTransformation, groupVars.getVars(), countVars);
+        if (iter == null) {
+            return null;
+        }
         List<Abortable> killList = new ArrayList<>();
+        killList.add(iter);
+        return new QueryIterTDB(iter, killList, input, execCxt);
+    }
 
-        Node graphNode = null;
-        NodeTupleTable ntt = graph.getDatasetGraphTDB().chooseNodeTupleTable(graphNode);
-        NodeTable nodeTable = ntt.getNodeTable();
+    /**
+     * A VALUES block of one variable joined with the root BGP of an op, as a single leapfrog over the op with the keys
+     * of the variable restricted to the values, see {@link OptionalTreeNode#setValues}: near-identical queries
+     * differing in a constant run as one. Null if the block has other variables, UNDEF or a value twice, or its
+     * variable is not of the root BGP.
+     */
+    private QueryIterator leapfrogValues(Op opValues, QueryIterator input) {
+        if (!(execCxt.getActiveGraph() instanceof GraphTDB) || !(input instanceof QueryIterRoot) || !input.isJoinIdentity()) {
+            return null;
+        }
+        OpTable[] block = new OpTable[1];
+        Op op = withoutValues(opValues, block);
+        if (op == null || !OptionalTreeNode.isSupported(op)) {
+            return null;
+        }
+        Table table = block[0].getTable();
+        if (table.getVars().size() != 1 || !OptionalTreeNode.rootPatternVars(op).contains(table.getVars().get(0))) {
+            return null;
+        }
+        Var v = table.getVars().get(0);
+        List<Node> values = new ArrayList<>();
+        for (Iterator<Binding> rows = table.rows(); rows.hasNext(); ) {
+            Node value = rows.next().get(v);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        if (new HashSet<>(values).size() != values.size()) {
+            // each result once for each time its value is in the block
+            return null;
+        }
+        GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
+        DatasetGraphTDB dsg = graph.getDatasetGraphTDB();
+        Node graphNode = OpExecutorTDB1.decideGraphNode(graph.getGraphName(), execCxt);
+        List<Abortable> killList = new ArrayList<>();
+        Iterator<Binding> iterBinding = execute(dsg, () -> {
+            OptionalTreeNode tree = getTree(dsg, graphNode, op, null);
+            tree.setValues(v, values);
+            return tree;
+        }, killList);
+        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+    }
 
-        LFIterBindingNodeId iter = OptionalTreeNode.getNode(ntt, opQuadPattern, reorderTransformation);
-        iter.init(new Var[0]);
+    /**
+     * op without the VALUES block joined with its root, put in block: the join of the block, first, with a BGP, under
+     * OPTIONALs and FILTERs. Null if there is none.
+     */
+    private static Op withoutValues(Op op, OpTable[] block) {
+        if (op instanceof OpConditional) {
+            Op left = withoutValues(((OpConditional) op).getLeft(), block);
+            return left != null ? new OpConditional(left, ((OpConditional) op).getRight()) : null;
+        } else if (op instanceof OpFilter) {
+            Op sub = withoutValues(((OpFilter) op).getSubOp(), block);
+            return sub != null ? OpFilter.filterBy(((OpFilter) op).getExprs(), sub) : null;
+        }
+        Op first = null, rest = null;
+        if (op instanceof OpJoin) {
+            first = ((OpJoin) op).getLeft();
+            rest = ((OpJoin) op).getRight();
+        } else if (op instanceof OpSequence && ((OpSequence) op).size() == 2) {
+            first = ((OpSequence) op).get(0);
+            rest = ((OpSequence) op).get(1);
+        }
+        if (!(first instanceof OpTable) || !(rest instanceof OpBGP || rest instanceof OpQuadPattern)) {
+            return null;
+        }
+        block[0] = (OpTable) first;
+        return rest;
+    }
 
-        Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
-        Iterator<Binding> iterBinding = SolverLib.convertToNodes(abortableIter, nodeTable);
-        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+    /**
+     * The projection of the leapfrog over the op under a DISTINCT or REDUCED, which skips the bindings that differ
+     * only in variables not projected. Null if op is not a projection of an op it can run, or is nested.
+     */
+    private QueryIterator leapfrogProject(Op op, QueryIterator input) {
+        if (!(op instanceof OpProject) || !(input instanceof QueryIterRoot)) {
+            return null;
+        }
+        OpProject opProject = (OpProject) op;
+        QueryIterator iter = leapfrog(opProject.getSubOp(), input, new HashSet<>(opProject.getVars()));
+        return iter != null ? new QueryIterProject(iter, opProject.getVars(), execCxt) : null;
     }
 
-    @Override
-    protected QueryIterator execute(OpConditional opConditional, QueryIterator input) {
-    	if (!(input instanceof QueryIterRoot)) {
-    		throw new IllegalStateException("Expected QueryIterRoot as input.");
-    	}
+    /** The leapfrog over op for the bindings of input, null if it can't run op. */
+    private QueryIterator leapfrog(Op op, QueryIterator input) {
+        return leapfrog(op, input, null);
+    }
 
+    /** @param distinctVars the variables needed from op, null for all: see {@link OptionalTreeNode#setDistinctVars} */
+    private QueryIterator leapfrog(Op op, QueryIterator input, Set<Var> distinctVars) {
+        if (!(execCxt.getActiveGraph() instanceof GraphTDB) || !OptionalTreeNode.isSupported(op)) {
+            return null;
+        }
         GraphTDB graph = (GraphTDB) execCxt.getActiveGraph();
         List<Abortable> killList = new ArrayList<>();
 
-        Node graphNode = null;
-        NodeTupleTable ntt = graph.getDatasetGraphTDB().chooseNodeTupleTable(graphNode);
-        NodeTable nodeTable = ntt.getNodeTable();
+        DatasetGraphTDB dsg = graph.getDatasetGraphTDB();
+        // The graph of the BGPs, for a named graph or the union graph seen as a model.
+        Node graphNode = OpExecutorTDB1.decideGraphNode(graph.getGraphName(), execCxt);
 
-        LFIterBindingNodeId iter = OptionalTreeNode.getNode(ntt, opConditional, reorderTransformation);
+        Iterator<Binding> iterBinding;
+        if (input instanceof QueryIterRoot && input.isJoinIdentity()) {
+            iterBinding = execute(dsg, () -> getTree(dsg, graphNode, op, distinctVars), killList);
+        } else {
+            iterBinding = execute(dsg, graphNode, op, input, distinctVars, killList);
+        }
+        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+    }
+
+    /**
+     * The leapfrog over the trees of factory, run in parallel if the context sets
+     * {@link ParallelOptionalTree#symParallelism}. Else its plan is logged when the context explains the execution,
+     * see {@link LFExplain}.
+     */
+    private Iterator<Binding> execute(DatasetGraphTDB dsg, Supplier<OptionalTreeNode> factory, List<Abortable> killList) {
+        // The triple and the quad tables share the node table.
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
+        int parallelism = execCxt.getContext().getInt(ParallelOptionalTree.symParallelism, 1);
+        if (parallelism > 1) {
+            boolean ordered = !execCxt.getContext().isFalse(ParallelOptionalTree.symParallelOrdered);
+            return ParallelOptionalTree.create(factory, nodeTable, execCxt.getContext(), parallelism, ordered, killList);
+        }
+        OptionalTreeNode iter = factory.get();
         iter.init(new Var[0]);
+        // stops it in the middle of a hasNext(), which the abortable iterator can't
+        killList.add(iter);
 
         Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
-        Iterator<Binding> iterBinding = SolverLib.convertToNodes(abortableIter, nodeTable);
-        return new QueryIterTDB(iterBinding, killList, input, execCxt);
+        // Closing the results releases what the OPTIONAL caches spilled to disk, after logging the analysis.
+        Closeable resource = LFExplain.start(iter, iter, execCxt.getContext());
+        return new IteratorResourceClosing<>(LFMaterializer.create(abortableIter, nodeTable, execCxt.getContext()), resource);
+    }
+
+    /** The leapfrog over op for each binding of input, see {@link SeededOptionalTree} */
+    private Iterator<Binding> execute(DatasetGraphTDB dsg, Node graphNode, Op op, Iterator<Binding> input, Set<Var> distinctVars, List<Abortable> killList) {
+        NodeTable nodeTable = dsg.getTripleTable().getNodeTupleTable().getNodeTable();
+        SeededOptionalTree iter = new SeededOptionalTree(input, op, () -> getTree(dsg, graphNode, op, distinctVars), nodeTable);
+        killList.add(iter);
+
+        Iterator<BindingNodeId> abortableIter = SolverLib.makeAbortable(iter, killList);
+        return new IteratorResourceClosing<>(LFMaterializer.create(abortableIter, nodeTable, execCxt.getContext()), iter);
+    }
+
+    /**
+     * The tree for op, its OPTIONAL caches spilling to disk past {@link ARQ#spillToDiskThreshold}, its memos
+     * keeping {@link OptionalTreeNode#symOptionalMemo} rows. Outside a transaction, it reads the indexes of
+     * {@link LFTrieSnapshot#symSnapshotIndexes} from their snapshots.
+     */
+    private OptionalTreeNode getTree(DatasetGraphTDB dsg, Node graphNode, Op op, Set<Var> distinctVars) {
+        OptionalTreeNode tree = OptionalTreeNode.getNode(dsg, graphNode, op, reorderTransformation);
+        if (distinctVars != null) {
+            tree.setDistinctVars(distinctVars);
+        }
+        tree.setSpillThreshold(execCxt.getContext().getLong(ARQ.spillToDiskThreshold, -1));
+        tree.setMemoRows(execCxt.getContext().getLong(OptionalTreeNode.symOptionalMemo, OptionalTreeNode.DEFAULT_MEMO_ROWS));
+        if (!execCxt.getDataset().isInTransaction()) {
+            tree.setSnapshotIndexes(LFTrieSnapshot.indexes(execCxt.getContext()));
+        }
+        tree.setFunctionEnv(execCxt);
+        return tree;
     }
-}
\ No newline at end of file
+}
@@ -1,89 +1,155 @@
 package cl.uc.dcc.leapfrog;
 
-import java.util.Iterator;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVars;
 import org.apache.jena.sparql.algebra.op.OpBGP;
 import org.apache.jena.sparql.algebra.op.OpFilter;
 import org.apache.jena.sparql.algebra.op.OpConditional;
 import org.apache.jena.sparql.algebra.op.OpQuadPattern;
 import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
-import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.tdb.solver.Abortable;
 import org.apache.jena.tdb.solver.BindingNodeId;
 import org.apache.jena.tdb.solver.BindingTDB;
+import org.apache.jena.tdb.solver.OpExecutorTDB1;
+import org.apache.jena.tdb.solver.stats.TripleStats;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
 import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.store.TripleTable;
 import org.apache.jena.tdb.store.nodetable.NodeTable;
 import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb.sys.SystemTDB;
 
 import cl.uc.dcc.leapfrog.BGPIter;
 
-public class OptionalTreeNode implements LFIterBindingNodeId {
+public class OptionalTreeNode implements LFIterBindingNodeId, Abortable, Closeable {
+
+	/**
+	 * Rows of the bindings of each OPTIONAL child kept for the keys of the variables it shares with its parent, see
+	 * {@link LFChildMemo}. 0 keeps none. Default {@value #DEFAULT_MEMO_ROWS}.
+	 */
+	public static final Symbol symOptionalMemo = SystemTDB.allocSymbol("leapfrogOptionalMemo");
+	public static final long DEFAULT_MEMO_ROWS = 10000;
 
 	private OptionalTreeNode[] children;
 	private BGPIter myPattern;
 	private NodeTable nodeTable;
 
-	private BindingNodeId myBinding;
 	private ExprList myFilters;
-	private BindingNodeId extendedBinding;
+	private LFRangeFilter[] rangeFilters;	// one per filter, the keys myPattern seeks within
+	private Var valuesVar;					// only the bindings with one of the values for valuesVar, null if any
+	private LFKeyRange valuesKeys;			// the ids of the values in the data
+	private int valuesCount;
+	private int valuesPosition;				// of valuesVar in globalAttributeOrder
 
 	private Var[] globalAttributeOrder;
+	private int[] myPositions;				// position in globalAttributeOrder of each variable of myPattern
+	private long[] myIds;					// ids of myPattern's variables, indexed by globalAttributeOrder
+	private LFBindingNodeId myBinding;		// view over myIds
+	private long[] extendedIds;				// myIds extended with the children's bindings
+	private long[][] seekedIds;				// binding of myPattern each child was last seeked with
 
 	private boolean atEnd = false;
+	private boolean noTerms = false;		// a constant of myPattern is not in the data: never a match
 	private boolean nextFound = false;
 	private int stage = STAGE_FIND;
 
 	private final static int STAGE_FIND = 0;
 	private final static int STAGE_EXTEND = 1;
 
-	private final static int MAX_CACHE = 1000;
-
 	private int childrenExtended;
-	private int[] cacheSize;
-	private int[] cacheCurrentPos;
-	private BindingNodeId[][] cacheBindings;
-
-
-	private OptionalTreeNode(NodeTupleTable ntt, BasicPattern pattern) {
+	private int[] extendedChildren;			// indexes of the children extending the current binding
+	private LFBindingCache[] caches;		// one per child
+	private int[][] childColumns;			// the columns of each child, positions in globalAttributeOrder
+	private long[] streamedRow;				// the columns of the last child extended: it is not cached but read as it goes
+	private long spillThreshold = -1;
+	private long memoRows = DEFAULT_MEMO_ROWS;
+	private LFChildMemo[] memos;			// one per child, null if none is kept
+	private LFChildMemo.Entry[] memoHits;	// the bindings of each child extending the current binding, if the memo had them
+	private int streamedPos;				// next row of the memo for the last child extended
+	private long[] memoBinding;				// the rows of a memo put back into the global attribute order
+	private FunctionEnv functionEnv;
+
+	private int[] seekedFrom;				// first position the node was seeked from since each child last was
+	private boolean unmatchable = false;	// a variable of myPattern is seeded with a node not in the data
+	private Binding seedParent;				// the binding a seeded tree extends
+	private int numSeeded;					// the upper variables of a seeded tree, first in globalAttributeOrder
+
+	private long[] rejectedCount;			// bindings of myPattern each filter rejected, for the plan explained
+	private long resultCount;
+
+
+	/** @param graphNode see {@link BGPIter#BGPIter(BasicPattern, Node, NodeTupleTable, LFCostModel)} */
+	private OptionalTreeNode(NodeTupleTable ntt, Node graphNode, BasicPattern pattern, LFCostModel costModel) {
 		nodeTable = ntt.getNodeTable();
-		myPattern = new BGPIter(pattern, ntt);
-		extendedBinding = new BindingNodeId();
+		myPattern = new BGPIter(pattern, graphNode, ntt, costModel);
 		myFilters = new ExprList();
 	}
-	
-	private OptionalTreeNode(NodeTupleTable ntt, BasicPattern pattern, ExprList exprList) {
-		nodeTable = ntt.getNodeTable();
-		myPattern = new BGPIter(pattern, ntt);
-		extendedBinding = new BindingNodeId();
-		myFilters = exprList;
+
+	/** The tree for op, its BGPs over the default graph. */
+	public static OptionalTreeNode getNode(DatasetGraphTDB dsg, Op op, ReorderTransformation reorderTransformation) {
+		return getNode(dsg, null, op, reorderTransformation);
+	}
+
+	/** The cost model of ntt, with the live statistics of the triple table when ntt is that table. */
+	private static LFCostModel costModel(DatasetGraphTDB dsg, NodeTupleTable ntt, ReorderTransformation reorderTransformation) {
+		TripleTable tripleTable = dsg.getTripleTable();
+		TripleStats stats = ntt == tripleTable.getNodeTupleTable() ? tripleTable.getStats() : null;
+		return new LFCostModel(ntt, reorderTransformation, stats);
 	}
 
-	public static OptionalTreeNode getNode(NodeTupleTable ntt, Op op, ReorderTransformation reorderTransformation) {
+	/**
+	 * The tree for op. Patterns of the default graph run on the triple table, the others on the quad table:
+	 * those of a named graph, of a graph variable, and those of the union graph.
+	 * @param graphNode the graph of the BGPs, as {@link OpExecutorTDB1#decideGraphNode} gives it: null for the default graph.
+	 */
+	public static OptionalTreeNode getNode(DatasetGraphTDB dsg, Node graphNode, Op op, ReorderTransformation reorderTransformation) {
 		if (op instanceof OpBGP) {
 			OpBGP opBGP = (OpBGP) op;
-			return new OptionalTreeNode(ntt, reorderTransformation.reorder(opBGP.getPattern()));
+			NodeTupleTable ntt = dsg.chooseNodeTupleTable(graphNode);
+			return new OptionalTreeNode(ntt, graphNode, reorderTransformation.reorder(opBGP.getPattern()), costModel(dsg, ntt, reorderTransformation));
 
 		} else if (op instanceof OpQuadPattern) {
 			OpQuadPattern opQuad = (OpQuadPattern) op;
-			if (!opQuad.isDefaultGraph()) {
-				throw new IllegalStateException("No graph allowed");	
+			Node quadGraphNode = opQuad.getGraphNode();
+			if (opQuad.isDefaultGraph()) {
+				quadGraphNode = null;
+			} else if (Quad.isUnionGraph(quadGraphNode)) {
+				quadGraphNode = Node.ANY;
 			}
-			return new OptionalTreeNode(ntt, reorderTransformation.reorder(opQuad.getBasicPattern()));
+			NodeTupleTable ntt = dsg.chooseNodeTupleTable(quadGraphNode);
+			return new OptionalTreeNode(ntt, quadGraphNode, reorderTransformation.reorder(opQuad.getBasicPattern()), costModel(dsg, ntt, reorderTransformation));
 
         } else if (op instanceof OpConditional) {
         	OpConditional opConditional = (OpConditional) op;
-			OptionalTreeNode leftNode = OptionalTreeNode.getNode(ntt, opConditional.getLeft(), reorderTransformation);
-			OptionalTreeNode rightNode = OptionalTreeNode.getNode(ntt, opConditional.getRight(), reorderTransformation);
+			OptionalTreeNode leftNode = OptionalTreeNode.getNode(dsg, graphNode, opConditional.getLeft(), reorderTransformation);
+			OptionalTreeNode rightNode = OptionalTreeNode.getNode(dsg, graphNode, opConditional.getRight(), reorderTransformation);
 			leftNode.addChild(rightNode);
 			return leftNode;
 
 		} else if (op instanceof OpFilter) {
 			OpFilter opFilter = (OpFilter) op;
-			OptionalTreeNode res = OptionalTreeNode.getNode(ntt, opFilter.getSubOp(), reorderTransformation);
+			OptionalTreeNode res = OptionalTreeNode.getNode(dsg, graphNode, opFilter.getSubOp(), reorderTransformation);
 			res.addFilter(opFilter.getExprs());
 			return res;
 			
@@ -92,6 +158,67 @@ public class OptionalTreeNode implements LFIterBindingNodeId {
         }
 
 	}
+
+	/**
+	 * Whether {@link #getNode} builds a tree for op: BGPs, and OPTIONALs and FILTERs over them. Not if a triple has a
+	 * variable twice, as in { ?x ?p ?x }: the leapfrog binds each variable at one column of a tuple. Nor if a filter
+	 * mentions a variable not of the BGP it is evaluated on, the root one of its op, as { FILTER(!bound(?z)) } over
+	 * an OPTIONAL binding ?z: it is evaluated before the OPTIONALs extend the binding.
+	 */
+	public static boolean isSupported(Op op) {
+		if (op instanceof OpBGP) {
+			for (Triple t : ((OpBGP) op).getPattern()) {
+				if (hasRepeatedVar(null, t)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (op instanceof OpQuadPattern) {
+			OpQuadPattern opQuad = (OpQuadPattern) op;
+			for (Triple t : opQuad.getBasicPattern()) {
+				if (hasRepeatedVar(opQuad.getGraphNode(), t)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (op instanceof OpConditional) {
+			return isSupported(((OpConditional) op).getLeft()) && isSupported(((OpConditional) op).getRight());
+		} else if (op instanceof OpFilter) {
+			OpFilter opFilter = (OpFilter) op;
+			return isSupported(opFilter.getSubOp())
+					&& rootPatternVars(opFilter.getSubOp()).containsAll(opFilter.getExprs().getVarsMentioned());
+		}
+		return false;
+	}
+
+	/** Whether a variable is twice in the triple, or the graph node when not null. */
+	private static boolean hasRepeatedVar(Node graphNode, Triple t) {
+		Set<Node> vars = new HashSet<>();
+		for (Node n : new Node[] { graphNode, t.getSubject(), t.getPredicate(), t.getObject() }) {
+			if (n != null && Var.isVar(n) && !vars.add(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** The variables of the BGPs of a supported op, those the leapfrog binds. */
+	public static Set<Var> patternVars(Op op) {
+		Set<Var> vars = new LinkedHashSet<>();
+		addPatternVars(op, vars);
+		return vars;
+	}
+
+	private static void addPatternVars(Op op, Set<Var> vars) {
+		if (op instanceof OpBGP || op instanceof OpQuadPattern) {
+			vars.addAll(OpVars.mentionedVars(op));
+		} else if (op instanceof OpConditional) {
+			addPatternVars(((OpConditional) op).getLeft(), vars);
+			addPatternVars(((OpConditional) op).getRight(), vars);
+		} else if (op instanceof OpFilter) {
+			addPatternVars(((OpFilter) op).getSubOp(), vars);
+		}
+	}
 	
 	private void addFilter(ExprList exprs) {
 		myFilters.addAll(exprs);
@@ -111,6 +238,182 @@ public class OptionalTreeNode implements LFIterBindingNodeId {
 		}
 	}
 
+	/** The BGP of this node. */
+	BGPIter getPattern() {
+		return myPattern;
+	}
+
+	/** The variables of the root BGP of a supported op, those a tree for it binds in every result. */
+	public static Set<Var> rootPatternVars(Op op) {
+		if (op instanceof OpConditional) {
+			return rootPatternVars(((OpConditional) op).getLeft());
+		} else if (op instanceof OpFilter) {
+			return rootPatternVars(((OpFilter) op).getSubOp());
+		}
+		return patternVars(op);
+	}
+
+	/**
+	 * Only the bindings with v, a variable of this node's BGP, in values: a VALUES block of v joined with the tree,
+	 * run in one pass as if each value were the constant of its own query. v becomes a level of the BGP that seeks
+	 * from one value to the next, see {@link BGPIter#setKeyRange}, and the bindings are checked in case no index
+	 * order allows it. The values not in the data match nothing. Before init.
+	 */
+	public void setValues(Var v, Collection<Node> values) {
+		long[] ids = new long[values.size()];
+		int n = 0;
+		for (Node value : values) {
+			NodeId id = nodeTable.getNodeIdForNode(value);
+			if (!NodeId.isDoesNotExist(id)) {
+				ids[n++] = id.getId();
+			}
+		}
+		valuesVar = v;
+		valuesKeys = LFKeyRange.keys(Arrays.copyOf(ids, n));
+		valuesCount = n;
+		myPattern.setKeyRange(v, valuesKeys);
+	}
+
+	/** Restricts the first variable of this node's BGP to [min, ...), see {@link BGPIter#setRangeMin}. Before init. */
+	public void setRangeMin(long min) {
+		myPattern.setRangeMin(min);
+	}
+	
+	/** Restricts the first variable of this node's BGP to [..., max), see {@link BGPIter#setRangeMax}. */
+	public void setRangeMax(long max) {
+		myPattern.setRangeMax(max);
+	}
+	
+	/** Split keys for the first variable, see {@link BGPIter#sampleSplits}. After init. */
+	public long[] sampleSplits(int n) {
+		if (atEnd) {
+			return new long[0];
+		}
+		return myPattern.sampleSplits(n);
+	}
+
+	/**
+	 * Number of bindings of a child kept in memory for each binding of its parent, the rest are written to disk
+	 * (see {@link LFBindingCache}). Negative, the default, for no limit. For the whole tree, before init.
+	 */
+	public void setSpillThreshold(long threshold) {
+		spillThreshold = threshold;
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.setSpillThreshold(threshold);
+			}
+		}
+	}
+
+	/** Rows kept by the memo of each child, see {@link #symOptionalMemo}. For the whole tree, before init. */
+	public void setMemoRows(long rows) {
+		memoRows = rows;
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.setMemoRows(rows);
+			}
+		}
+	}
+
+	/** Indexes read from their snapshots, see {@link BGPIter#setSnapshotIndexes}. For the whole tree, before init. */
+	public void setSnapshotIndexes(Set<String> names) {
+		myPattern.setSnapshotIndexes(names);
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.setSnapshotIndexes(names);
+			}
+		}
+	}
+
+	/**
+	 * Only the variables in vars are needed from the tree, as for a DISTINCT over them, see
+	 * {@link BGPIter#setNeededVars}. Those of the filters and of the children are needed too. For the whole tree,
+	 * before init.
+	 */
+	public void setDistinctVars(Set<Var> vars) {
+		Set<Var> needed = new HashSet<>(vars);
+		needed.addAll(myFilters.getVarsMentioned());
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.addTreeVars(needed);
+				child.setDistinctVars(vars);
+			}
+		}
+		myPattern.setNeededVars(needed);
+	}
+	
+	private void addTreeVars(Set<Var> vars) {
+		vars.addAll(myPattern.getVars());
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.addTreeVars(vars);
+			}
+		}
+	}
+
+	/** The environment the filters are evaluated in, for the whole tree. */
+	public void setFunctionEnv(FunctionEnv env) {
+		functionEnv = env;
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.setFunctionEnv(env);
+			}
+		}
+	}
+
+	/**
+	 * Writes the plan of the tree, after init, see {@link LFExplain}: the BGP of each node, its filters, with the
+	 * variables whose key ranges they restrict, and its OPTIONAL children indented under it. With analyze, the
+	 * bindings each filter rejected and the results of each node.
+	 */
+	void explain(IndentedWriter out, boolean analyze) {
+		myPattern.explain(out, analyze);
+		out.incIndent();
+		if (noTerms) {
+			out.println("a constant not in the data");
+		}
+		if (valuesVar != null) {
+			out.println("values " + valuesVar + "  " + valuesCount + " keys");
+		}
+		for (int i = 0; i < rangeFilters.length; i++) {
+			out.print("filter " + ExprUtils.fmtSPARQL(myFilters.get(i)));
+			if (!rangeFilters[i].getVars().isEmpty()) {
+				out.print("  key range " + rangeFilters[i].getVars());
+			}
+			if (analyze) {
+				out.print("  " + rejectedCount[i] + " rejected");
+			}
+			out.println();
+		}
+		if (analyze) {
+			out.println(resultCount + " results");
+		}
+		out.decIndent();
+		for (int i = 0; i < children.length; i++) {
+			out.print("optional");
+			if (analyze && memos != null) {
+				out.print("  " + memos[i].hits() + " memo hits");
+			}
+			out.println();
+			out.incIndent();
+			children[i].explain(out, analyze);
+			out.decIndent();
+		}
+	}
+
+	/** Releases the bindings the caches wrote to disk. */
+	@Override
+	public void close() {
+		if (caches != null) {
+			for (LFBindingCache cache : caches) {
+				cache.close();
+			}
+			for (OptionalTreeNode child : children) {
+				child.close();
+			}
+		}
+	}
+
 	@Override
 	public Var[] init(Var[] upperVars) {
 		return init(upperVars, true);
@@ -121,21 +424,72 @@ public class OptionalTreeNode implements LFIterBindingNodeId {
 			children = new OptionalTreeNode[0];
 		}
 
-		cacheSize = new int[children.length];
-		cacheCurrentPos = new int[children.length];
-		cacheBindings = new BindingNodeId[children.length][];
+		extendedChildren = new int[children.length];
+		caches = new LFBindingCache[children.length];
+		childColumns = new int[children.length][];
 
+		rangeFilters = new LFRangeFilter[myFilters.size()];
+		rejectedCount = new long[myFilters.size()];
+		for (int i = 0; i < rangeFilters.length; i++) {
+			rangeFilters[i] = LFRangeFilter.compile(myFilters.get(i), myPattern.getVars());
+			for (Var v : rangeFilters[i].getVars()) {
+				myPattern.setKeyRange(v, rangeFilters[i].getRange(v));
+			}
+		}
 		globalAttributeOrder = myPattern.init(upperVars);
 		if (!myPattern.openTerms()) {
 			atEnd = true;
+			noTerms = true;
 		}
-		if (root) {
+		if (root && !noTerms) {
 			myPattern.open();
 		}
 		
+		List<Var> myVars = new ArrayList<>();
+		for (int i = 0; i < myPattern.getLocalAttributeCount(); i++) {
+			myVars.add(myPattern.getLocalAttribute(i));
+		}
 		for (int i = 0; i < children.length; i++) {
-			cacheBindings[i] = new BindingNodeId[MAX_CACHE];
-			globalAttributeOrder = children[i].init(globalAttributeOrder, false);
+			Var[] childOrder = children[i].init(globalAttributeOrder, false);
+			// The child's variables other than those of this node's BGP. Its attribute order starts with ours.
+			List<Integer> columns = new ArrayList<>();
+			for (int j = 0; j < childOrder.length; j++) {
+				if (!myVars.contains(childOrder[j])) {
+					columns.add(j);
+				}
+			}
+			childColumns[i] = columns.stream().mapToInt(Integer::intValue).toArray();
+			caches[i] = new LFBindingCache(childColumns[i], spillThreshold);
+			globalAttributeOrder = childOrder;
+		}
+
+		myPositions = new int[myVars.size()];
+		for (int i = 0; i < myPositions.length; i++) {
+			myPositions[i] = Arrays.asList(globalAttributeOrder).indexOf(myVars.get(i));
+		}
+		seekedFrom = new int[children.length];
+		Arrays.fill(seekedFrom, Integer.MAX_VALUE);
+		seekedIds = new long[children.length][];
+		if (memoRows > 0 && children.length > 0) {
+			memos = new LFChildMemo[children.length];
+			memoHits = new LFChildMemo.Entry[children.length];
+			for (int i = 0; i < children.length; i++) {
+				// the child sees the binding of myPattern only: its bindings depend on the variables they share
+				Set<Var> childVars = new HashSet<>();
+				children[i].addTreeVars(childVars);
+				int[] keyColumns = Arrays.stream(myPositions).filter(pos -> childVars.contains(globalAttributeOrder[pos])).toArray();
+				memos[i] = new LFChildMemo(keyColumns, childColumns[i], memoRows);
+			}
+		}
+		myIds = new long[globalAttributeOrder.length];
+		Arrays.fill(myIds, LFBindingNodeId.UNBOUND);
+		myBinding = new LFBindingNodeId(globalAttributeOrder, myIds);
+		extendedIds = new long[globalAttributeOrder.length];
+		for (LFRangeFilter rangeFilter : rangeFilters) {
+			rangeFilter.setAttributeOrder(globalAttributeOrder);
+		}
+		if (valuesVar != null) {
+			valuesPosition = Arrays.asList(globalAttributeOrder).indexOf(valuesVar);
 		}
 		return globalAttributeOrder;
 	}
@@ -148,96 +502,271 @@ public class OptionalTreeNode implements LFIterBindingNodeId {
 			return true;
 		}
 
-		if (stage == STAGE_FIND) {
-			if (myPattern.hasNext()) {
-				BindingNodeId myOldBinding = myBinding;
+		while (true) {
+			if (stage == STAGE_FIND) {
+				if (!myPattern.hasNext()) {
+					atEnd = true;
+					return false;
+				}
 				long[] myPatternIds = myPattern.next();
-				myBinding = new BindingNodeId();
-				
 				for (int i = 0; i < myPatternIds.length; i++) {
-					myBinding.put(myPattern.getLocalAttribute(i), NodeId.create(myPatternIds[i]));
+					myIds[myPositions[i]] = myPatternIds[i];
 				}
-				
-				extendedBinding = new BindingNodeId(myBinding);
-				
-				if (myFilters.size() > 0) {
-					Binding binding = new BindingTDB(extendedBinding, nodeTable);
-					
-					for (Expr filter : myFilters) {
-						if(!filter.isSatisfied(binding, null)) {
-							return hasNext();
-						}
-					}
+				if (!satisfiesFilters()) {
+					continue;
 				}
 
+				System.arraycopy(myIds, 0, extendedIds, 0, myIds.length);
 				if (children.length > 0) {
-					int firstChangedVarPos = myPattern.getFirstChangedVar(myOldBinding);
-
 					childrenExtended = 0;
-					for (OptionalTreeNode child : children) {
-						if (child.seekBinding(myBinding, firstChangedVarPos) && child.hasNext()) {
-							stage = STAGE_EXTEND; // it takes at least 1 child to be extended to change the stage to STAGE_EXTEND
-
-					        BindingNodeId firstBinding = child.next();
-					        Iterator<Var> bindingVars = firstBinding.iterator();
-					        while (bindingVars.hasNext()) {
-					        	Var v = bindingVars.next();
-					        	if (!myBinding.containsKey(v)) {
-					        		extendedBinding.put(v, firstBinding.get(v));
-					        	}
-					        }
-
-							cacheBindings[childrenExtended][0] = firstBinding;
-							cacheCurrentPos[childrenExtended] = 0;
-
-					        int size = 1;
-					        while (child.hasNext()) {
-					        	cacheBindings[childrenExtended][size++] = child.next();
-					        }
-					        cacheSize[childrenExtended] = size;
-					        childrenExtended++;
-					    }
+					for (int i = 0; i < children.length; i++) {
+						if (memos != null) {
+							// the keys of an earlier binding: the child is not seeked, and will be from there
+							memoHits[i] = memos[i].get(myIds);
+							if (memoHits[i] != null) {
+								if (memoHits[i].count() > 0) {
+									extendedChildren[childrenExtended++] = i;
+								}
+								continue;
+							}
+						}
+						// the children depend on the variables this node was seeked on too
+						int firstChangedVarPos = Math.min(seekedFrom[i], myPattern.getFirstChangedVar(seekedIds[i]));
+						seekedFrom[i] = Integer.MAX_VALUE;
+						if (seekedIds[i] == null) {
+							seekedIds[i] = myPatternIds.clone();
+						} else {
+							System.arraycopy(myPatternIds, 0, seekedIds[i], 0, myPatternIds.length);
+						}
+						if (children[i].seekBinding(myBinding, firstChangedVarPos) && children[i].hasNext()) {
+							extendedChildren[childrenExtended++] = i;
+						} else if (memos != null) {
+							memos[i].start(myIds);
+							memos[i].end();
+						}
+					}
+					if (childrenExtended > 0) {
+						stage = STAGE_EXTEND; // it takes at least 1 child to be extended to change the stage to STAGE_EXTEND
+
+						// the rows of the last child are combined with those of the others one at a time: only the
+						// others are cached, so the first rows come without reading all of the children's
+						for (int j = 0; j < childrenExtended - 1; j++) {
+							fillCache(extendedChildren[j]);
+						}
+						int last = extendedChildren[childrenExtended - 1];
+						streamedPos = 0;
+						if (memos != null && memoHits[last] == null) {
+							memos[last].start(myIds);
+						}
+						readStreamed();
+						extend();
 					}
 				}
 				nextFound = true;
 				return true;
-			} else {
-				atEnd = true;
-				return false;
-			}
-		} else { // stage == STAGE_EXTEND
-			for (int i = 0; i < childrenExtended; i++) {
-				cacheCurrentPos[i]++;
-				if (cacheSize[i] > cacheCurrentPos[i]) {
-					for (int j = 0; j < childrenExtended; j++) {
-						Iterator<Var> bindingVars = cacheBindings[j][cacheCurrentPos[j]].iterator();
-				        while (bindingVars.hasNext()) {
-				        	Var v = bindingVars.next();
-				        	if (!myBinding.containsKey(v)) {
-				        		extendedBinding.put(v, cacheBindings[j][cacheCurrentPos[j]].get(v));
-				        	}
-				        }
+
+			} else { // stage == STAGE_EXTEND
+				int last = childrenExtended - 1;
+				for (int i = 0; i < last; i++) {
+					LFBindingCache cache = caches[extendedChildren[i]];
+					if (cache.advance()) {
+						extend();
+						nextFound = true;
+						return true;
 					}
+					else {
+						cache.rewind();
+						cache.advance();
+					}
+				}
+				if (hasNextStreamed()) {
+					readStreamed();
+					extend();
 					nextFound = true;
 					return true;
 				}
-				else {
-					cacheCurrentPos[i] = 0;
+				stage = STAGE_FIND;
+			}
+		}
+	}
+
+	/**
+	 * Whether the binding of myPattern has one of the values and satisfies the filters, those the key ranges don't
+	 * decide evaluated on its nodes.
+	 */
+	private boolean satisfiesFilters() {
+		if (valuesVar != null && !valuesKeys.contains(myIds[valuesPosition])) {
+			return false;
+		}
+		Binding binding = null;
+		for (int i = 0; i < rangeFilters.length; i++) {
+			if (rangeFilters[i].holds(myIds)) {
+				continue;
+			}
+			if (binding == null) {
+				binding = new BindingTDB(myBinding, nodeTable);
+			}
+			if(!myFilters.get(i).isSatisfied(binding, functionEnv)) {
+				rejectedCount[i]++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Puts the bindings of the child in its cache, from the memo if it has them, keeping them there if not. */
+	private void fillCache(int child) {
+		LFBindingCache cache = caches[child];
+		cache.clear();
+		LFChildMemo.Entry hit = memos != null ? memoHits[child] : null;
+		if (hit != null) {
+			if (memoBinding == null) {
+				memoBinding = new long[globalAttributeOrder.length];
+			}
+			for (int i = 0; i < hit.count(); i++) {
+				memos[child].extend(hit, i, memoBinding);
+				cache.add(memoBinding);
+			}
+		} else {
+			if (memos != null) {
+				memos[child].start(myIds);
+			}
+			while (children[child].hasNext()) {
+				long[] ids = children[child].nextIds();
+				cache.add(ids);
+				if (memos != null) {
+					memos[child].add(ids);
 				}
 			}
-			stage = STAGE_FIND;
-			return hasNext();
+			if (memos != null) {
+				memos[child].end();
+			}
+		}
+		cache.advance();
+	}
+
+	/** Whether the last child extended has another row, from the memo or read as it goes. */
+	private boolean hasNextStreamed() {
+		int child = extendedChildren[childrenExtended - 1];
+		if (memos != null && memoHits[child] != null) {
+			return streamedPos < memoHits[child].count();
+		}
+		if (children[child].hasNext()) {
+			return true;
+		}
+		if (memos != null) {
+			memos[child].end();
+		}
+		return false;
+	}
+
+	/** Takes the next row of the last child extended. */
+	private void readStreamed() {
+		int child = extendedChildren[childrenExtended - 1];
+		int[] columns = childColumns[child];
+		if (streamedRow == null || streamedRow.length < columns.length) {
+			streamedRow = new long[columns.length];
+		}
+		if (memos != null && memoHits[child] != null) {
+			System.arraycopy(memoHits[child].rows, streamedPos * columns.length, streamedRow, 0, columns.length);
+			streamedPos++;
+			return;
+		}
+		long[] row = children[child].nextIds();
+		if (memos != null) {
+			memos[child].add(row);
+		}
+		for (int i = 0; i < columns.length; i++) {
+			streamedRow[i] = row[columns[i]];
+		}
+	}
+
+	/** Puts in extendedIds the binding of myPattern with the current rows of the children extended. */
+	private void extend() {
+		System.arraycopy(myIds, 0, extendedIds, 0, myIds.length);
+		for (int j = 0; j < childrenExtended - 1; j++) {
+			caches[extendedChildren[j]].extend(extendedIds);
+		}
+		int[] columns = childColumns[extendedChildren[childrenExtended - 1]];
+		for (int i = 0; i < columns.length; i++) {
+			if (streamedRow[i] != LFBindingNodeId.UNBOUND) {
+				extendedIds[columns[i]] = streamedRow[i];
+			}
 		}
 	}
 
+	/** Stops the tree at the next seek of any of its BGPs, with a {@link QueryCancelledException}. Can be called from any thread. */
+	@Override
+	public void abort() {
+		myPattern.abort();
+		if (children != null) {
+			for (OptionalTreeNode child : children) {
+				child.abort();
+			}
+		}
+	}
+
+	/** Each result in its own array, extending the seed of a seeded tree. */
 	@Override
 	public BindingNodeId next() {
+		long[] ids = nextIds().clone();
+		Arrays.fill(ids, 0, numSeeded, LFBindingNodeId.UNBOUND);
+		return new LFBindingNodeId(globalAttributeOrder, ids, seedParent);
+	}
+
+	/** The next result, indexed by the global attribute order. The array is reused. */
+	public long[] nextIds() {
+		nextFound = false;
+		resultCount++;
+		return extendedIds;
+	}
+
+	/**
+	 * Restarts a tree initialized with upper variables (not as a root) on the given ids for them, in order.
+	 * {@link LFBindingNodeId#UNBOUND} stands for a node not in the data, that no BGP using its variable matches.
+	 * The results extend parent, which binds the upper variables.
+	 */
+	public void seed(Binding parent, long[] upperIds) {
+		setSeed(parent, upperIds);
+		atEnd = !seekBinding(myBinding, 0);
+	}
+
+	private void setSeed(Binding parent, long[] upperIds) {
+		seedParent = parent;
+		numSeeded = upperIds.length;
+		unmatchable = false;
+		for (int pos : myPositions) {
+			if (pos < numSeeded && upperIds[pos] == LFBindingNodeId.UNBOUND) {
+				unmatchable = true;
+			}
+		}
+		Arrays.fill(myIds, LFBindingNodeId.UNBOUND);
+		System.arraycopy(upperIds, 0, myIds, 0, numSeeded);
+		// the filters see the seed through the parent
+		myBinding = new LFBindingNodeId(globalAttributeOrder, myIds, parent);
+		stage = STAGE_FIND;
 		nextFound = false;
-		return extendedBinding;
+		Arrays.fill(seekedIds, null);
+		Arrays.fill(seekedFrom, 0);
+		if (memos != null) {
+			// the filters of the children see the seed
+			for (LFChildMemo memo : memos) {
+				memo.clear();
+			}
+		}
+		for (OptionalTreeNode child : children) {
+			child.setSeed(parent, upperIds);
+		}
 	}
 
 	@Override
 	public boolean seekBinding(BindingNodeId previousBinding, int firstChangedVarPos) {
+		if (noTerms || unmatchable) {
+			return false;
+		}
+		for (int i = 0; i < seekedFrom.length; i++) {
+			seekedFrom[i] = Math.min(seekedFrom[i], firstChangedVarPos);
+		}
 		atEnd = false;
 		return myPattern.seekBinding(previousBinding, firstChangedVarPos);
 	}
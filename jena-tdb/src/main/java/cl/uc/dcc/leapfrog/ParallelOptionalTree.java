@@ -0,0 +1,214 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.jena.atlas.iterator.IteratorResourceClosing;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.tdb.TDBException;
+import org.apache.jena.tdb.solver.Abortable;
+import org.apache.jena.tdb.solver.SolverLib;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+import org.apache.jena.tdb.sys.SystemTDB;
+
+/**
+ * Runs an optional tree in parallel: the keys of the first variable of the root BGP are split in ranges,
+ * using keys sampled from the internal nodes of a B+Tree, and each range runs in its own tree (its own
+ * {@link BGPIter} and {@link LFTrieIndex}es) as a task of the common fork-join pool.
+ * The results are merged in the order of the ranges (so in the same order as a single tree) or as they come.
+ * The tasks also convert their results to {@link Binding}s, with an {@link LFMaterializer}.
+ */
+public class ParallelOptionalTree implements Iterator<Binding>, Abortable, Closeable {
+
+	/** Number of ranges the root BGP is split in; 1 or unset executes sequentially. */
+	public static final Symbol symParallelism = SystemTDB.allocSymbol("leapfrogParallelism");
+	/** If false, the results of the ranges are interleaved as they come. Default true. */
+	public static final Symbol symParallelOrdered = SystemTDB.allocSymbol("leapfrogParallelOrdered");
+
+	private static final int QUEUE_SIZE = 1_000;
+	private static final Binding END = BindingFactory.binding();	// Marks the end of a range in a queue.
+
+	private NodeTable nodeTable;
+	private Context context;
+	private OptionalTreeNode[] trees;
+	private BlockingQueue<Binding>[] queues;			// One per range, or the same one for all if unordered.
+	private Future<?>[] tasks;
+	private int current;									// queue being read
+	private int finished;									// ranges done
+	private boolean ordered;
+
+	private Binding nextBinding;
+	private volatile boolean aborted = false;
+	private volatile Throwable failure;
+
+	/**
+	 * @param factory creates the same optional tree each time it is called.
+	 * @param parallelism maximum number of ranges.
+	 * @param killList gets what has to be aborted to cancel the execution.
+	 * @return an iterator over the results of the tree, from a single tree if it can't be split.
+	 * Closing it stops the tasks still running.
+	 */
+	public static Iterator<Binding> create(Supplier<OptionalTreeNode> factory, NodeTable nodeTable, Context context, int parallelism, boolean ordered, List<Abortable> killList) {
+		OptionalTreeNode first = factory.get();
+		first.init(new Var[0]);
+		long[] splits = first.sampleSplits(parallelism);
+		if (splits.length == 0) {
+			killList.add(first);
+			return new IteratorResourceClosing<>(LFMaterializer.create(SolverLib.makeAbortable(first, killList), nodeTable, context), first);
+		}
+		OptionalTreeNode[] trees = new OptionalTreeNode[splits.length + 1];
+		first.setRangeMax(splits[0]);
+		trees[0] = first;
+		for (int i = 1; i < trees.length; i++) {
+			trees[i] = factory.get();
+			trees[i].setRangeMin(splits[i-1]);
+			if (i < splits.length) {
+				trees[i].setRangeMax(splits[i]);
+			}
+			trees[i].init(new Var[0]);
+		}
+		ParallelOptionalTree iter = new ParallelOptionalTree(trees, nodeTable, context, ordered);
+		killList.add(iter);
+		return iter;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ParallelOptionalTree(OptionalTreeNode[] trees, NodeTable nodeTable, Context context, boolean ordered) {
+		this.nodeTable = nodeTable;
+		this.context = context;
+		this.ordered = ordered;
+		this.trees = trees;
+		queues = new BlockingQueue[trees.length];
+		tasks = new Future<?>[trees.length];
+		for (int i = 0; i < trees.length; i++) {
+			queues[i] = (ordered || i == 0) ? new ArrayBlockingQueue<>(QUEUE_SIZE) : queues[0];
+		}
+		for (int i = 0; i < trees.length; i++) {
+			OptionalTreeNode tree = trees[i];
+			BlockingQueue<Binding> queue = queues[i];
+			tasks[i] = ForkJoinPool.commonPool().submit(() -> run(tree, queue));
+		}
+	}
+
+	private void run(OptionalTreeNode tree, BlockingQueue<Binding> queue) {
+		try {
+			Iterator<Binding> results = LFMaterializer.create(tree, nodeTable, context);
+			while (!aborted && results.hasNext()) {
+				put(queue, results.next());
+			}
+		} catch (Throwable th) {
+			failure = th;
+		} finally {
+			tree.close();
+			put(queue, END);
+		}
+	}
+
+	/** Blocking put, telling the pool so it can compensate for a blocked worker. */
+	private void put(BlockingQueue<Binding> queue, Binding binding) {
+		ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+			private boolean done = false;
+
+			@Override
+			public boolean block() throws InterruptedException {
+				while (!done && !aborted) {
+					done = queue.offer(binding, 100, TimeUnit.MILLISECONDS);
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				if (!done && !aborted) {
+					done = queue.offer(binding);
+				}
+				return done || aborted;
+			}
+		};
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			aborted = true;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (nextBinding == null) {
+			if (aborted) {
+				throw new QueryCancelledException();
+			}
+			if (finished == queues.length) {
+				return false;
+			}
+			Binding b;
+			try {
+				b = queues[current].take();
+			} catch (InterruptedException e) {
+				abort();
+				throw new QueryCancelledException();
+			}
+			if (b == END) {
+				finished++;
+				if (ordered) {
+					current++;
+				}
+				if (failure != null) {
+					abort();
+					throw new TDBException("Parallel leapfrog: a range failed", failure);
+				}
+			} else {
+				nextBinding = b;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Binding next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Binding b = nextBinding;
+		nextBinding = null;
+		return b;
+	}
+
+	@Override
+	public void abort() {
+		aborted = true;
+		for (Future<?> task : tasks) {
+			task.cancel(false);
+		}
+		// Stops the tasks in the middle of a range, at their next seek.
+		for (OptionalTreeNode tree : trees) {
+			tree.abort();
+		}
+		// Wake up a reader waiting on a queue the tasks no longer write to.
+		for (BlockingQueue<Binding> queue : queues) {
+			queue.clear();
+			queue.offer(END);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (finished < queues.length) {
+			abort();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb.solver.Abortable;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.solver.BindingTDB;
+import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+
+/**
+ * The leapfrog over an op for each binding of its input, as the right side of a join. The variables of the op's BGPs
+ * bound by an input binding are the upper variables of the tree, which is seeked to their ids (see
+ * {@link OptionalTreeNode#seed}) and extends the input binding with the rest.
+ *
+ * The input bindings of a join usually bind the same variables, so there is a tree for each set of upper variables
+ * seen, reused for all the bindings with that set.
+ */
+public class SeededOptionalTree implements Iterator<BindingNodeId>, Abortable, Closeable {
+
+	private Iterator<Binding> input;
+	private NodeTable nodeTable;
+	private Supplier<OptionalTreeNode> treeFactory;
+	private Var[] patternVars;
+
+	private Map<List<Var>, OptionalTreeNode> trees = new HashMap<>();
+	private volatile OptionalTreeNode tree;		// the tree of the current input binding
+	private volatile boolean aborted;
+
+	/** @param op a supported op, see {@link OptionalTreeNode#isSupported} */
+	public SeededOptionalTree(Iterator<Binding> input, Op op, Supplier<OptionalTreeNode> treeFactory, NodeTable nodeTable) {
+		this.input = input;
+		this.nodeTable = nodeTable;
+		this.treeFactory = treeFactory;
+		patternVars = OptionalTreeNode.patternVars(op).toArray(new Var[0]);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (tree == null || !tree.hasNext()) {
+			if (!input.hasNext()) {
+				return false;
+			}
+			seed(input.next());
+		}
+		return true;
+	}
+
+	@Override
+	public BindingNodeId next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return tree.next();
+	}
+
+	private void seed(Binding binding) {
+		List<Var> upperVars = new ArrayList<>();
+		for (Var v : patternVars) {
+			if (binding.contains(v)) {
+				upperVars.add(v);
+			}
+		}
+		tree = trees.get(upperVars);
+		if (tree == null) {
+			tree = treeFactory.get();
+			tree.init(upperVars.toArray(new Var[upperVars.size()]), false);
+			trees.put(upperVars, tree);
+		}
+		if (aborted) {
+			tree.abort();
+		}
+
+		long[] upperIds = new long[upperVars.size()];
+		for (int i = 0; i < upperIds.length; i++) {
+			upperIds[i] = getId(binding, upperVars.get(i));
+		}
+		tree.seed(binding, upperIds);
+	}
+
+	/** The id of the node of v, {@link LFBindingNodeId#UNBOUND} if it is not in the node table. */
+	private long getId(Binding binding, Var v) {
+		NodeId id = null;
+		if (binding instanceof BindingTDB) {
+			id = ((BindingTDB) binding).getNodeId(v);
+		}
+		if (id == null) {
+			Node node = binding.get(v);
+			id = nodeTable.getNodeIdForNode(node);
+		}
+		return NodeId.isDoesNotExist(id) ? LFBindingNodeId.UNBOUND : id.getId();
+	}
+
+	/** Stops the tree running, and any created later, at their next seek. */
+	@Override
+	public void abort() {
+		aborted = true;
+		OptionalTreeNode t = tree;
+		if (t != null) {
+			t.abort();
+		}
+	}
+
+	@Override
+	public void close() {
+		for (OptionalTreeNode t : trees.values()) {
+			t.close();
+		}
+	}
+}
@@ -283,6 +283,8 @@ public class StoreConnection
             }
             
             sConn.forceRecoverFromJournal() ;
+            // Transactions record their changes and add them in (see DatasetBuilderTxn).
+            dsg.getTripleTable().keepStats(location) ;
             
             if (!location.isMemUnique())
                 // Don't cache use-once in-memory datasets.
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.base.objectfile;
+
+import static org.apache.jena.tdb.sys.SystemTDB.SizeOfInt ;
+
+import java.io.IOException ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.channels.FileChannel.MapMode ;
+import java.nio.file.Paths ;
+import java.nio.file.StandardOpenOption ;
+import java.util.Arrays ;
+
+import org.apache.jena.tdb.base.file.FileException ;
+import org.apache.jena.tdb.sys.SystemTDB ;
+
+/**
+ * Read-only access to an {@link ObjectFile} on disk through memory mapped segments of
+ * the file: an object is returned as a read-only slice of its segment, not copied.
+ * <p>
+ * A segment is mapped, and kept, when first read once the file covers all of it.
+ * Objects in the rest of the file, across the end of a segment, or not yet written
+ * out, are read from the ObjectFile. Readers must only ask for objects that have been
+ * committed: the file may be truncated after uncommitted objects.
+ */
+public class ObjectFileMapped extends ObjectFileReadonly
+{
+    private final String filename ;
+    private final int segmentSize ;
+    private FileChannel channel ;
+    // Written under the object lock and then republished.
+    private volatile ByteBuffer[] segments = new ByteBuffer[0] ;
+
+    public ObjectFileMapped(ObjectFile other, String filename)
+    {
+        this(other, filename, SystemTDB.SegmentSize) ;
+    }
+
+    public ObjectFileMapped(ObjectFile other, String filename, int segmentSize)
+    {
+        super(other) ;
+        this.filename = filename ;
+        this.segmentSize = segmentSize ;
+        try { channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ) ; }
+        catch (IOException ex) { throw new FileException("ObjectFileMapped: "+filename, ex) ; }
+    }
+
+    @Override
+    public ByteBuffer read(long loc)
+    {
+        ByteBuffer segment = ( loc >= 0 ) ? segment((int)(loc/segmentSize)) : null ;
+        if ( segment == null )
+            return other.read(loc) ;
+        int offset = (int)(loc%segmentSize) ;
+        if ( offset+SizeOfInt > segmentSize )
+            return other.read(loc) ;
+        int len = segment.getInt(offset) ;
+        if ( len < 0 || offset+SizeOfInt+len > segmentSize )
+            return other.read(loc) ;
+        ByteBuffer bb = segment.duplicate() ;
+        bb.limit(offset+SizeOfInt+len) ;
+        bb.position(offset+SizeOfInt) ;
+        return bb.slice() ;
+    }
+
+    /** The segment, or null if it is not mapped (yet). */
+    private ByteBuffer segment(int seg)
+    {
+        ByteBuffer[] x = segments ;
+        if ( seg < x.length && x[seg] != null )
+            return x[seg] ;
+        // Cheap check first: the file, with the write buffer, does not cover the segment.
+        if ( (long)(seg+1)*segmentSize > other.length() )
+            return null ;
+        return mapSegment(seg) ;
+    }
+
+    private synchronized ByteBuffer mapSegment(int seg)
+    {
+        if ( channel == null )
+            return null ;
+        ByteBuffer[] x = segments ;
+        if ( seg < x.length && x[seg] != null )
+            return x[seg] ;
+        long start = (long)seg*segmentSize ;
+        try {
+            // Whole segments of what is on disk.
+            if ( start+segmentSize > channel.size() )
+                return null ;
+            ByteBuffer segment = channel.map(MapMode.READ_ONLY, start, segmentSize) ;
+            if ( seg >= x.length )
+                x = Arrays.copyOf(x, seg+1) ;
+            x[seg] = segment ;
+            segments = x ;
+            return segment ;
+        } catch (IOException ex) {
+            throw new FileException("ObjectFileMapped: "+filename+": segment "+seg, ex) ;
+        }
+    }
+
+    /** Number of segments mapped. */
+    public int mappedSegments()
+    {
+        int n = 0 ;
+        for ( ByteBuffer bb : segments )
+        {
+            if ( bb != null )
+                n++ ;
+        }
+        return n ;
+    }
+
+    /** Close the mapping; the ObjectFile is not closed. Segments are unmapped when garbage collected. */
+    public synchronized void closeMapping()
+    {
+        if ( channel == null )
+            return ;
+        try { channel.close() ; }
+        catch (IOException ex) { throw new FileException("ObjectFileMapped: "+filename, ex) ; }
+        channel = null ;
+        segments = new ByteBuffer[0] ;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Mapped:"+super.toString() ;
+    }
+}
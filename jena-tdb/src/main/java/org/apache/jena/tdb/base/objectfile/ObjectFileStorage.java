@@ -28,6 +28,7 @@ import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.iterator.IteratorSlotted;
 import org.apache.jena.atlas.lib.Pair;
 import org.apache.jena.tdb.base.file.BufferChannel;
+import org.apache.jena.tdb.base.file.BufferChannelFile;
 import org.apache.jena.tdb.base.file.FileException;
 import org.apache.jena.tdb.sys.SystemTDB;
 import org.slf4j.Logger;
@@ -236,8 +237,30 @@ public class ObjectFileStorage implements ObjectFile
         return writeBuffer.position() == 0 && filesize == 0;
     }
 
+    // Read-only, memory mapped view; created when first asked for.
+    private ObjectFileMapped mapped = null;
+
+    /**
+     * A read-only view of this file that reads objects from memory mapped segments,
+     * shared by all callers, or null if the file is not on disk.
+     */
+    public synchronized ObjectFile getMappedReadonly() {
+        if ( mapped == null && file instanceof BufferChannelFile )
+            mapped = new ObjectFileMapped(this, file.getFilename());
+        return mapped;
+    }
+
     @Override
-    public void close()                 { flushOutputBuffer(); file.close(); }
+    public void close() {
+        synchronized (this) {
+            if ( mapped != null ) {
+                mapped.closeMapping();
+                mapped = null;
+            }
+        }
+        flushOutputBuffer();
+        file.close();
+    }
 
     @Override
     public void sync()                  { flushOutputBuffer(); file.sync(); }
@@ -27,6 +27,8 @@ import static org.apache.jena.tdb.index.bplustree.BPlusTreeParams.CheckingNode ;
 import static org.apache.jena.tdb.index.bplustree.BPlusTreeParams.CheckingTree ;
 import static org.apache.jena.tdb.index.bplustree.BPlusTreeParams.DumpTree ;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import org.apache.jena.atlas.io.IndentedLineBuffer ;
@@ -39,8 +41,6 @@ import org.apache.jena.tdb.sys.SystemTDB ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 
-import cl.uc.dcc.leapfrog.LFTrieIndex;
-
 public final class BPTreeNode extends BPTreePage
 {
     private static final short READ = 1 ;
@@ -1547,32 +1547,121 @@ public final class BPTreeNode extends BPTreePage
     }
     
     /* new methods for leapfrog */
-    public Record getLowOrZeroRecord() {
-    	if (records.getSize() > 0) {
-    		return records.getLow() ; 
-    	} else {
-    		return LFTrieIndex.zeroRecord;
-    	}
-    }
+    public BPTreeRecords search(Stack<BPTreeNode> nodes, Record rec) {
+    	nodes.push(this);
 
-    public Record getHighOrZeroRecord() {
-    	if (records.getSize() > 0) {
-    		return records.getHigh() ; 
+    	BPTreePage p = findHere(rec);
+    	if (p instanceof BPTreeNode) {
+    		BPTreeNode n = (BPTreeNode) p;
+    		nodes.push(n);
+    		return n.search(nodes, rec);
     	} else {
-    		return LFTrieIndex.zeroRecord;
+    		return (BPTreeRecords) p;
     	}
     }
 
-    public BPTreeRecords search(Stack<BPTreeNode> nodes, Record rec) {
+    /** As {@link #search(Stack, Record)}, with the key given as longs so no Record is created */
+    public BPTreeRecords search(Stack<BPTreeNode> nodes, long[] key) {
     	nodes.push(this);
 
-    	BPTreePage p = findHere(rec);
+    	int idx = convert(records.find(key));
+    	BPTreePage p = get(idx, READ);
     	if (p instanceof BPTreeNode) {
     		BPTreeNode n = (BPTreeNode) p;
     		nodes.push(n);
-    		return n.search(nodes, rec);
+    		return n.search(nodes, key);
     	} else {
     		return (BPTreeRecords) p;
     	}
     }
+
+    /** true if key is outside the [low, high] range of the keys in this node (an empty node counts as the zero record) */
+    public boolean isOutside(long[] key) {
+    	if (records.getSize() > 0) {
+    		return records.compare(0, key) > 0 || records.compare(records.getSize()-1, key) < 0;
+    	}
+    	for (long k : key) {
+    		if (k != 0) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /** Estimate of the number of records in [min, max).  Descends while both keys fall
+     *  under the same child; where they split, the children in between are counted as the
+     *  size of the first of them, sampled down its leftmost path.  Exact when the range
+     *  lies inside one records page. */
+    public long estimateRange(long[] min, long[] max) {
+    	int lo = convert(records.find(min));
+    	int hi = convert(records.find(max));
+    	BPTreePage p = get(lo, READ);
+    	try {
+    		if (lo == hi) {
+    			if (p instanceof BPTreeNode) {
+    				return ((BPTreeNode) p).estimateRange(min, max);
+    			}
+    			BPTreeRecords r = (BPTreeRecords) p;
+    			return r.findSlot(max) - r.findSlot(min);
+    		}
+    		return (hi - lo) * sampleSize(p);
+    	} finally {
+    		p.release();
+    	}
+    }
+
+    private static long sampleSize(BPTreePage p) {
+    	if (p instanceof BPTreeRecords) {
+    		return p.getCount();
+    	}
+    	BPTreeNode n = (BPTreeNode) p;
+    	BPTreePage child = n.get(0, READ);
+    	try {
+    		return (n.count+1) * sampleSize(child);
+    	} finally {
+    		child.release();
+    	}
+    }
+
+    /** Column col of the separator keys in [min, max), in key order, taken from the highest
+     *  level of the tree that has at least n of them (or from the lowest level of nodes).
+     *  These split the range into parts of about the same number of records. */
+    public void sampleKeys(long[] min, long[] max, int col, int n, List<Long> keys) {
+    	List<BPTreeNode> level = new ArrayList<>();
+    	level.add(this);
+    	while (true) {
+    		keys.clear();
+    		for (BPTreeNode node : level) {
+    			int from = slot(node.records.find(min));
+    			int to = slot(node.records.find(max));
+    			for (int i = from; i < to; i++) {
+    				keys.add(node.records.getLong(i, col));
+    			}
+    		}
+    		if (keys.size() >= n || level.get(0).isLeaf) {
+    			break;
+    		}
+    		List<BPTreeNode> children = new ArrayList<>();
+    		for (BPTreeNode node : level) {
+    			int lo = convert(node.records.find(min));
+    			int hi = convert(node.records.find(max));
+    			for (int i = lo; i <= hi; i++) {
+    				children.add((BPTreeNode) node.get(i, READ));
+    			}
+    			if (node != this) {
+    				node.release();
+    			}
+    		}
+    		level = children;
+    	}
+    	for (BPTreeNode node : level) {
+    		if (node != this) {
+    			node.release();
+    		}
+    	}
+    }
+
+    private static int slot(int idx) {
+    	return idx >= 0 ? idx : decodeIndex(idx);
+    }
 }
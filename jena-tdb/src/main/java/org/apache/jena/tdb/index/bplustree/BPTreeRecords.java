@@ -355,4 +355,24 @@ public final class BPTreeRecords extends BPTreePage
     	}
     	return rBuff.get(idx) ;
     }
+
+    /** Slot of the first record greater than or equal to key; getCount() if there is none */
+    public int findSlot(long[] key)
+    {
+        int idx = rBuff.find(key) ;
+        return idx >= 0 ? idx : decodeIndex(idx) ;
+    }
+
+    /** As {@link #findSlot(long[])}, for a key not before slot from, searching forwards from there */
+    public int findSlot(long[] key, int from)
+    {
+        int idx = rBuff.gallop(key, from) ;
+        return idx >= 0 ? idx : decodeIndex(idx) ;
+    }
+
+    /** Decode the record key at slot idx into tuple */
+    public void getTuple(int idx, long[] tuple)
+    {
+        rBuff.getLongs(idx, tuple) ;
+    }
 }
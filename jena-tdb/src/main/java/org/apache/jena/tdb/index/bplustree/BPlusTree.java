@@ -22,6 +22,7 @@ import static org.apache.jena.tdb.index.bplustree.BPlusTreeParams.CheckingNode ;
 import static org.apache.jena.tdb.index.bplustree.BPlusTreeParams.CheckingTree ;
 
 import java.util.Iterator ;
+import java.util.List ;
 
 import org.apache.jena.atlas.io.IndentedWriter ;
 import org.apache.jena.atlas.iterator.Iter ;
@@ -127,6 +128,8 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     private BPTreeNodeMgr nodeManager ; 
     private BPTreeRecordsMgr recordsMgr; 
     private BPlusTreeParams bpTreeParams ;
+    // Adds, deletes and packs through this object, so copies of the records can tell they are out of date.
+    private volatile long modifications = 0 ;
     
     /** Create the in-memory structures to correspond to
      * the supplied block managers for the persistent storage.
@@ -266,6 +269,9 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     /** Only use for careful manipulation of structures */
     public BPTreeRecordsMgr getRecordsMgr()     { return recordsMgr ; }
     
+    /** Number of adds, deletes and packs made through this object, whether they changed the records or not */
+    public long getModifications()              { return modifications ; }
+    
     @Override
     public RecordFactory getRecordFactory()
     {
@@ -322,6 +328,7 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     public Record addAndReturnOld(Record record)
     {
         startUpdateBlkMgr() ;
+        modifications++ ;
         BPTreeNode root = getRoot() ;
         Record r = BPTreeNode.insert(root, record) ;
         if ( CheckingTree ) root.checkNodeDeep() ;
@@ -330,6 +337,18 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
         return r ;
     }
     
+    /** Fill an empty B+Tree with records given in key order, in full leaves written one
+     *  after another as {@link BPlusTreeRewriter} does, instead of adding them one at a time. */
+    public void pack(Iterator<Record> records)
+    {
+        if ( ! isEmpty() )
+            throw new BPTreeException("Not empty: cannot pack records into "+this) ;
+        startUpdateBlkMgr() ;
+        modifications++ ;
+        try { BPlusTreeRewriter.packIntoEmpty(records, this) ; }
+        finally { finishUpdateBlkMgr() ; }
+    }
+    
     @Override
     public boolean delete(Record record)
     { return deleteAndReturnOld(record) != null ; }
@@ -337,6 +356,7 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
     public Record deleteAndReturnOld(Record record)
     {
         startUpdateBlkMgr() ;
+        modifications++ ;
         BPTreeNode root = getRoot() ;
         Record r = BPTreeNode.delete(root, record) ;
         if ( CheckingTree ) root.checkNodeDeep() ;
@@ -369,6 +389,27 @@ public class BPlusTree implements Iterable<Record>, RangeIndex
         return iter ;
     }
     
+    /** Estimate of the number of records from min (inclusive) to max (exclusive), keys given as longs */
+    public long estimateRange(long[] min, long[] max)
+    {
+        startReadBlkMgr() ;
+        BPTreeNode root = getRoot() ;
+        long x = root.estimateRange(min, max) ;
+        releaseRoot(root) ;
+        finishReadBlkMgr() ;
+        return x ;
+    }
+    
+    /** Column col of keys splitting min (inclusive) to max (exclusive) in parts of similar size ; see {@link BPTreeNode#sampleKeys} */
+    public void sampleKeys(long[] min, long[] max, int col, int n, List<Long> keys)
+    {
+        startReadBlkMgr() ;
+        BPTreeNode root = getRoot() ;
+        root.sampleKeys(min, max, col, n, keys) ;
+        releaseRoot(root) ;
+        finishReadBlkMgr() ;
+    }
+    
     /** Iterate over a range of fromRec (inclusive) to toRec (exclusive) */ 
     private static Iterator<Record> iterator(BPTreeNode node, Record fromRec, Record toRec)
     { 
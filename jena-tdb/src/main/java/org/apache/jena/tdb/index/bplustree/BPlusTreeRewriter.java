@@ -88,8 +88,35 @@ public class BPlusTreeRewriter
             throw new BPTreeException() ;
         }
     
+        if ( ! packTree(iterRecords, bpt2, root) )
+            return null ;
+
+        // ****** Finish the tree.
+        blkMgrNodes.sync() ;
+        blkMgrRecords.sync() ;
+        // Force root reset.
+        bpt2 = BPlusTree.create(bptParams, blkMgrNodes, blkMgrRecords) ;
+        return bpt2 ;
+    }
+
+    /** Given a stream of records, in key order, fill the empty B+Tree bpt with them, packed as
+     *  {@link #packIntoBPlusTree} does, in the block managers it already has.
+     *  The root stays at block zero; the empty leaf it pointed to is left unused.
+     */
+    static void packIntoEmpty(Iterator<Record> iterRecords, BPlusTree bpt)
+    {
+        if ( ! iterRecords.hasNext() )
+            return ;
+        BPTreeNode root = bpt.getNodeManager().getWrite(BPlusTreeParams.RootId, BPlusTreeParams.RootParent) ;
+        if ( ! packTree(iterRecords, bpt, root) )
+            throw new BPTreeException("Failed to pack records into "+bpt) ;
+    }
+
+    /** Pack the records into data blocks and index layers, then copy the top of the tree into root. */
+    private static boolean packTree(Iterator<Record> iterRecords, BPlusTree bpt, BPTreeNode root)
+    {
         // ******** Pack data blocks.
-        Iterator<Pair<Integer, Record>> iter = writePackedDataBlocks(iterRecords, bpt2) ;
+        Iterator<Pair<Integer, Record>> iter = writePackedDataBlocks(iterRecords, bpt) ;
     
         // ******** Index layer
         // Loop until one block only.
@@ -99,7 +126,7 @@ public class BPlusTreeRewriter
         boolean leafLayer= true ;
         while(true)
         {
-            iter = genTreeLevel(iter, bpt2, leafLayer) ;
+            iter = genTreeLevel(iter, bpt, leafLayer) ;
             // Advances iter.
             IteratorWithBuffer<Pair<Integer, Record>> iter2 = new IteratorWithBuffer<>(iter, 2) ;
             boolean singleBlock = ( iter2.peek(1) == null ) ;
@@ -115,16 +142,11 @@ public class BPlusTreeRewriter
         if ( iter.hasNext() )
         {
             log.error("**** Building index layers didn't result in a single block") ;
-            return null ;
+            return false ;
         }
-        fixupRoot(root, pair, bpt2) ;
+        fixupRoot(root, pair, bpt) ;
 
-        // ****** Finish the tree.
-        blkMgrNodes.sync() ;
-        blkMgrRecords.sync() ;
-        // Force root reset.
-        bpt2 = BPlusTree.create(bptParams, blkMgrNodes, blkMgrRecords) ;
-        return bpt2 ;
+        return true ;
     }
 
     // **** data block phase
@@ -48,6 +48,11 @@ public class NodeLib
 {
     private static Nodec nodec = new NodecSSE() ;
     
+    /** The {@link Nodec} used when none is given. */
+    public static Nodec getNodec() {
+        return nodec;
+    }
+    
     /**
      * Encode and write a {@link Node} to the {@link ObjectFile}. Returns the location,
      * suitable for use with {@link #fetchDecode}.
@@ -62,25 +67,34 @@ public class NodeLib
      * Returns the location, suitable for use with {@link #fetchDecode}.
      */
     public static long encodeStore(Node node, ObjectFile file, ByteBuffer bb) {
+        return encodeStore(node, file, bb, nodec);
+    }
+
+    /**
+     * Encode with the given {@link Nodec} and write a {@link Node} to the {@link ObjectFile}. 
+     * Uses the given {@link ByteBuffer} for encoding space if possible.
+     * Returns the location, suitable for use with {@link #fetchDecode(long, ObjectFile, Nodec)}.
+     */
+    public static long encodeStore(Node node, ObjectFile file, ByteBuffer bb, Nodec nodec) {
         int maxSize = nodec.maxSize(node);
         if ( bb == null )
-            return allocEncodeWrite(node, file, maxSize);  
+            return allocEncodeWrite(node, file, maxSize, nodec);  
         if ( bb.capacity() < maxSize )
             // Buffer may not be big enough.
-            return allocEncodeWrite(node, file, maxSize);
+            return allocEncodeWrite(node, file, maxSize, nodec);
         // Use buffer provided.
         bb.clear();
-        return encodeWrite(node, file, bb);
+        return encodeWrite(node, file, bb, nodec);
     }
 
     /** Encode and write, allocating space as needed */
-    private static long allocEncodeWrite(Node node, ObjectFile file, int maxSize) {
+    private static long allocEncodeWrite(Node node, ObjectFile file, int maxSize, Nodec nodec) {
         ByteBuffer bb = ByteBuffer.allocate(maxSize);
-        return encodeWrite(node, file, bb);
+        return encodeWrite(node, file, bb, nodec);
     }
     
     /** Encode and write, using the space provided which is assumed to be large enough. */
-    private static long encodeWrite(Node node, ObjectFile file, ByteBuffer bb) {
+    private static long encodeWrite(Node node, ObjectFile file, ByteBuffer bb, Nodec nodec) {
         int len = nodec.encode(node, bb, null);
         long x = file.write(bb);
         return x;
@@ -91,10 +105,19 @@ public class NodeLib
      * have originally been generated by {@link #encodeStore}.
      */
     public static Node fetchDecode(long id, ObjectFile file) {
+        return fetchDecode(id, file, nodec);
+    }
+    
+    /**
+     * Read and decode, with the given {@link Nodec}, a {@link Node} from the
+     * {@link ObjectFile}. The {@code id} must have originally been generated by
+     * {@link #encodeStore} with a compatible {@link Nodec}.
+     */
+    public static Node fetchDecode(long id, ObjectFile file, Nodec nodec) {
         ByteBuffer bb = file.read(id);
         if ( bb == null )
             return null;
-        return decode(bb);
+        return decode(bb, nodec);
     }
     
     /**
@@ -116,6 +139,11 @@ public class NodeLib
      * in getting the node from the ObjectFile.
      */
     public static Node decode(ByteBuffer bb) {
+        return decode(bb, nodec);
+    }
+
+    /** Decode a node with the given {@link Nodec}. */
+    public static Node decode(ByteBuffer bb, Nodec nodec) {
         bb.position(0);
         Node n = nodec.decode(bb, null);
         return n;
@@ -25,6 +25,8 @@ import org.apache.jena.tdb.base.record.RecordFactory ;
 import org.apache.jena.tdb.index.RangeIndex ;
 import org.apache.jena.tdb.index.RangeIndexBuilder ;
 import org.apache.jena.tdb.lib.ColumnMap ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTable ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTableNative ;
 import org.apache.jena.tdb.store.tupletable.TupleIndex ;
 import org.apache.jena.tdb.store.tupletable.TupleIndexRecord ;
 import org.apache.jena.tdb.sys.SystemTDB ;
@@ -63,5 +65,23 @@ public class BuilderStdDB {
         }
     }
 
-}
+    public static class NamespaceTableBuilderStd implements NamespaceTableBuilder
+    {
+        private final ObjectFileBuilder objectFileBuilder ;
+
+        public NamespaceTableBuilderStd() {
+            this(new ObjectFileBuilderStd()) ;
+        }
+
+        public NamespaceTableBuilderStd(ObjectFileBuilder objectFileBuilder) {
+            this.objectFileBuilder = objectFileBuilder ;
+        }
 
+        @Override
+        public NamespaceTable buildNamespaceTable(FileSet fileSet, String ext)
+        {
+            ObjectFile objectFile = objectFileBuilder.buildObjectFile(fileSet, ext) ;
+            return new NamespaceTableNative(objectFile) ;
+        }
+    }
+}
@@ -42,6 +42,7 @@ import org.apache.jena.tdb.index.bplustree.BPlusTreeParams ;
 import org.apache.jena.tdb.lib.ColumnMap ;
 import org.apache.jena.tdb.solver.OpExecutorTDB1 ;
 import org.apache.jena.tdb.store.* ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTable ;
 import org.apache.jena.tdb.store.nodetable.NodeTable ;
 import org.apache.jena.tdb.store.nodetable.NodeTableCache ;
 import org.apache.jena.tdb.store.nodetable.NodeTableInline ;
@@ -65,15 +66,19 @@ public class DatasetBuilderStd {
 
     private BlockMgrBuilder blockMgrBuilder = new BuilderStdIndex.BlockMgrBuilderStd();
     private ObjectFileBuilder objectFileBuilder = new BuilderStdDB.ObjectFileBuilderStd(); 
+    private NamespaceTableBuilder namespaceTableBuilder = new BuilderStdDB.NamespaceTableBuilderStd(); 
 
     private void setupRecord() {
         if ( this.blockMgrBuilder instanceof BlockMgrBuilderRecorder)
             throw new TDBException("Already recording (BlockMgrBuilder)");
         if ( this.objectFileBuilder instanceof ObjectFileBuilderRecorder)
             throw new TDBException("Already recording (ObjectFileBuilder)");
+        if ( this.namespaceTableBuilder instanceof NamespaceTableBuilderRecorder)
+            throw new TDBException("Already recording (NamespaceTableBuilder)");
         
         this.blockMgrBuilder = new BlockMgrBuilderRecorder(blockMgrBuilder, recorder);
         this.objectFileBuilder= new ObjectFileBuilderRecorder(objectFileBuilder, recorder);
+        this.namespaceTableBuilder = new NamespaceTableBuilderRecorder(namespaceTableBuilder, recorder);
     }
     
     private RangeIndex buildRangeIndex(FileSet fileSet, RecordFactory recordFactory, IndexParams indexParams) {
@@ -161,8 +166,13 @@ public class DatasetBuilderStd {
     }
 
     public DatasetBuilderStd(BlockMgrBuilder blockMgrBuilder, ObjectFileBuilder objectFileBuilder) {
+        this(blockMgrBuilder, objectFileBuilder, new BuilderStdDB.NamespaceTableBuilderStd());
+    }
+
+    public DatasetBuilderStd(BlockMgrBuilder blockMgrBuilder, ObjectFileBuilder objectFileBuilder, NamespaceTableBuilder namespaceTableBuilder) {
         this.blockMgrBuilder = blockMgrBuilder;
         this.objectFileBuilder = objectFileBuilder; 
+        this.namespaceTableBuilder = namespaceTableBuilder; 
         this.recorder = new Recorder() ;
         // XXX YUK
         setupRecord();
@@ -222,7 +232,8 @@ public class DatasetBuilderStd {
         ReorderTransformation transform = (_transform == null) ? chooseReorderTransformation(location) : _transform ;
 
         StorageConfig storageConfig = new StorageConfig(location, params, writeable,
-                                                        recorder.blockMgrs, recorder.objectFiles, recorder.bufferChannels) ;
+                                                        recorder.blockMgrs, recorder.objectFiles, recorder.bufferChannels,
+                                                        recorder.namespaceTables) ;
         
         recorder.finish() ;
         
@@ -355,7 +366,10 @@ public class DatasetBuilderStd {
         RecordFactory recordFactory = new RecordFactory(SystemTDB.LenNodeHash, SystemTDB.SizeOfNodeId) ;
         Index idx = /*indexBuilder.*/buildIndex(fsIndex, recordFactory, params) ;
         ObjectFile objectFile = objectFileBuilder.buildObjectFile(fsObjectFile, Names.extNodeData) ;
-        NodeTable nodeTable = new NodeTableNative(idx, objectFile) ;
+        NamespaceTable namespaces = null ;
+        if ( params.isNodeNamespaces() )
+            namespaces = namespaceTableBuilder.buildNamespaceTable(fsObjectFile, Names.extNamespaces) ;
+        NodeTable nodeTable = new NodeTableNative(idx, objectFile, namespaces) ;
         nodeTable = NodeTableCache.create(nodeTable, 
                                           params.getNode2NodeIdCacheSize(),
                                           params.getNodeId2NodeCacheSize(),
@@ -441,6 +455,10 @@ public class DatasetBuilderStd {
         void record(FileRef fileRef, ObjectFile objFile);
     }
 
+    interface RecordNamespaceTable {
+        void record(FileRef fileRef, NamespaceTable namespaceTable) ;
+    }
+
     interface RecordNodeTable {
         void record(FileRef fileRef, NodeTable nodeTable) ;
     }
@@ -463,6 +481,24 @@ public class DatasetBuilderStd {
         }
     }
     
+    static class NamespaceTableBuilderRecorder implements NamespaceTableBuilder {
+        private final NamespaceTableBuilder builder ;
+        private final RecordNamespaceTable  recorder ;
+        
+        NamespaceTableBuilderRecorder(NamespaceTableBuilder namespaceTableBuilder, RecordNamespaceTable recorder) {
+            this.builder = namespaceTableBuilder ;
+            this.recorder = recorder ;
+        }
+        
+        @Override
+        public NamespaceTable buildNamespaceTable(FileSet fileSet, String ext) {
+            NamespaceTable namespaceTable = builder.buildNamespaceTable(fileSet, ext) ;
+            FileRef ref = FileRef.create(fileSet, ext) ;
+            recorder.record(ref, namespaceTable) ;
+            return namespaceTable ;
+        }
+    }
+    
     static class BlockMgrBuilderRecorder implements BlockMgrBuilder {
         private final BlockMgrBuilder builder ;
         private final RecordBlockMgr  recorder ;
@@ -482,12 +518,13 @@ public class DatasetBuilderStd {
         }
     }
 
-    static class Recorder implements RecordBlockMgr, RecordObjectFile, RecordNodeTable {
+    static class Recorder implements RecordBlockMgr, RecordObjectFile, RecordNamespaceTable, RecordNodeTable {
 
         Map<FileRef, BlockMgr>      blockMgrs      = null ;
         Map<FileRef, ObjectFile>    objectFiles    = null ;
         // Not used currently.
         Map<FileRef, BufferChannel> bufferChannels = null ;
+        Map<FileRef, NamespaceTable> namespaceTables = null ;
         Map<FileRef, NodeTable>     nodeTables = null ;
         boolean recording = false ;
 
@@ -501,6 +538,7 @@ public class DatasetBuilderStd {
             
             objectFiles    = new HashMap<>() ;
             bufferChannels = new HashMap<>() ;
+            namespaceTables = new HashMap<>() ;
             nodeTables     = new HashMap<>() ;
         } 
         void finish() {
@@ -510,6 +548,7 @@ public class DatasetBuilderStd {
             blockMgrs      = null ;
             objectFiles    = null ;
             bufferChannels = null ;
+            namespaceTables = null ;
             recording      = false ;
         }
         
@@ -527,6 +566,12 @@ public class DatasetBuilderStd {
                 objectFiles.put(fileRef, objFile);
         }
         
+        @Override
+        public void record(FileRef fileRef, NamespaceTable namespaceTable) {
+            if ( recording )
+                namespaceTables.put(fileRef, namespaceTable) ;
+        }
+        
         @Override
         public void record(FileRef fileRef, NodeTable nodeTable) {
             if ( recording )
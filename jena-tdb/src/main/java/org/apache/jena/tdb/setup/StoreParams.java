@@ -70,6 +70,7 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
     /*package*/ final Item<String>             indexPrefix ;
     /*package*/ final Item<String>             prefixNode2Id ;
     /*package*/ final Item<String>             prefixId2Node ;
+    /*package*/ final Item<Boolean>            nodeNamespaces ;
 
     /** Build StoreParams, starting from system defaults.
      * 
@@ -91,7 +92,8 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
                             Item<String> primaryIndexTriples, Item<String[]> tripleIndexes,
                             Item<String> primaryIndexQuads, Item<String[]> quadIndexes,
                             Item<String> primaryIndexPrefix, Item<String[]> prefixIndexes,
-                            Item<String> indexPrefix, Item<String> prefixNode2Id, Item<String> prefixId2Node) {
+                            Item<String> indexPrefix, Item<String> prefixNode2Id, Item<String> prefixId2Node,
+                            Item<Boolean> nodeNamespaces) {
         this.fileMode               = fileMode ;
         this.blockSize              = blockSize ;
         this.blockReadCacheSize     = blockReadCacheSize ;
@@ -112,6 +114,7 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
 
         this.prefixNode2Id          = prefixNode2Id ;
         this.prefixId2Node          = prefixId2Node ;
+        this.nodeNamespaces         = nodeNamespaces ;
     }
     
     /** The system default settings. This is the normal set to use.
@@ -243,6 +246,15 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
         return prefixId2Node.value ;
     }
 
+    /**
+     * Whether the node tables store an IRI as the id of its namespace and its local
+     * name, with the namespaces in a separate file.
+     * Databases written with this set can not be read without it.
+     */
+    public boolean isNodeNamespaces() {
+        return nodeNamespaces.value ;
+    }
+
     @Override
     public String toString() {
         StringBuilder buff = new StringBuilder() ;
@@ -266,6 +278,7 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
 
         fmt(buff, "prefixNode2Id", getPrefixNode2Id(), prefixNode2Id.isSet) ;
         fmt(buff, "prefixId2Node", getPrefixId2Node(), prefixId2Node.isSet) ;
+        fmt(buff, "nodeNamespaces", Boolean.toString(isNodeNamespaces()), nodeNamespaces.isSet) ;
         
         return buff.toString() ;
     }
@@ -313,6 +326,7 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
         result = prime * result + ((primaryIndexTriples == null) ? 0 : primaryIndexTriples.hashCode()) ;
         result = prime * result + ((quadIndexes == null) ? 0 : quadIndexes.hashCode()) ;
         result = prime * result + ((tripleIndexes == null) ? 0 : tripleIndexes.hashCode()) ;
+        result = prime * result + ((nodeNamespaces == null) ? 0 : nodeNamespaces.hashCode()) ;
         return result ;
     }
     
@@ -360,6 +374,8 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
             return false ;
         if ( !sameValues(params1.prefixId2Node, params2.prefixId2Node) )
             return false ;
+        if ( !sameValues(params1.nodeNamespaces, params2.nodeNamespaces) )
+            return false ;
         return true ;
     }
     
@@ -466,6 +482,11 @@ public class StoreParams implements IndexParams, StoreParamsDynamic
                 return false ;
         } else if ( !tripleIndexes.equals(other.tripleIndexes) )
             return false ;
+        if ( nodeNamespaces == null ) {
+            if ( other.nodeNamespaces != null )
+                return false ;
+        } else if ( !nodeNamespaces.equals(other.nodeNamespaces) )
+            return false ;
         return true ;
     }
 
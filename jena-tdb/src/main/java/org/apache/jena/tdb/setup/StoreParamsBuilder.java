@@ -99,6 +99,8 @@ public class StoreParamsBuilder {
     private Item<String>             prefixNode2Id         = new Item<>(StoreParamsConst.prefixNode2Id, false) ;
 
     private Item<String>             prefixId2Node         = new Item<>(StoreParamsConst.prefixId2Node, false) ;
+
+    private Item<Boolean>            nodeNamespaces        = new Item<>(StoreParamsConst.nodeNamespaces, false) ;
     
     public static StoreParamsBuilder create() {
         return new StoreParamsBuilder() ;
@@ -167,6 +169,8 @@ public class StoreParamsBuilder {
 
         this.prefixNode2Id          = other.prefixNode2Id ; 
         this.prefixId2Node          = other.prefixId2Node ; 
+        
+        this.nodeNamespaces         = other.nodeNamespaces ; 
     }
     
     public StoreParams build() {
@@ -176,7 +180,7 @@ public class StoreParamsBuilder {
                  indexNode2Id, indexId2Node, primaryIndexTriples, tripleIndexes,
                  primaryIndexQuads, quadIndexes, primaryIndexPrefix,
                  prefixIndexes, indexPrefix,
-                 prefixNode2Id, prefixId2Node) ;
+                 prefixNode2Id, prefixId2Node, nodeNamespaces) ;
     }
     
     public FileMode getFileMode() {
@@ -340,5 +344,14 @@ public class StoreParamsBuilder {
        this.prefixId2Node = new Item<>(prefixId2Node, true) ;
        return this ;
    }
+
+    public boolean isNodeNamespaces() {
+        return nodeNamespaces.value ;
+    }
+
+   public StoreParamsBuilder nodeNamespaces(boolean nodeNamespaces) {
+       this.nodeNamespaces = new Item<>(nodeNamespaces, true) ;
+       return this ;
+   }
 }
 
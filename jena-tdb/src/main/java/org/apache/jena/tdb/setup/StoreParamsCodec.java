@@ -29,6 +29,7 @@ import static org.apache.jena.tdb.setup.StoreParamsConst.fIndexPrefix ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fNode2NodeIdCacheSize ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fNodeId2NodeCacheSize ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fNodeMissCacheSize ;
+import static org.apache.jena.tdb.setup.StoreParamsConst.fNodeNamespaces ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fPrefixId2Node ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fPrefixIndexes ;
 import static org.apache.jena.tdb.setup.StoreParamsConst.fPrefixNode2Id ;
@@ -111,6 +112,7 @@ public class StoreParamsCodec {
         encode(builder, key(fIndexPrefix),              params.getIndexPrefix()) ;
         encode(builder, key(fPrefixNode2Id),            params.getPrefixNode2Id()) ;
         encode(builder, key(fPrefixId2Node),            params.getPrefixId2Node()) ;
+        encode(builder, key(fNodeNamespaces),           params.isNodeNamespaces()) ;
         
         builder.finishObject("StoreParams") ;
         return (JsonObject)builder.build() ;
@@ -154,6 +156,7 @@ public class StoreParamsCodec {
                 case fIndexPrefix:             builder.indexPrefix(getString(json, key)) ;                  break ;
                 case fPrefixNode2Id:           builder.prefixNode2Id(getString(json, key)) ;                break ;
                 case fPrefixId2Node:           builder.prefixId2Node(getString(json, key)) ;                break ;
+                case fNodeNamespaces:          builder.nodeNamespaces(getBoolean(json, key)) ;              break ;
                 default:
                     throw new TDBException("StoreParams key no recognized: "+key) ;
             }
@@ -177,6 +180,13 @@ public class StoreParamsCodec {
         return x ;
     }
     
+    private static boolean getBoolean(JsonObject json, String key) {
+        if ( ! json.hasKey(key) )
+            throw new TDBException("StoreParamsCodec.getBoolean: no such key: "+key) ;
+        boolean x = json.get(key).getAsBoolean().value() ;
+        return x ;
+    }
+    
     private static String[] getStringArray(JsonObject json, String key) {
         if ( ! json.hasKey(key) )
             throw new TDBException("StoreParamsCodec.getStringArray: no such key: "+key) ;
@@ -199,6 +209,10 @@ public class StoreParamsCodec {
             builder.key(name).value(value.toString()) ;
             return ;
         }
+        if ( value instanceof Boolean ) {
+            builder.key(name).value(((Boolean)value).booleanValue()) ;
+            return ;
+        }
         if ( value instanceof String[] ) {
             String[] x = (String[])value ;
             builder.key(name) ;
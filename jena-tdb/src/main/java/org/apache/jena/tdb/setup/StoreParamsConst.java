@@ -87,6 +87,9 @@ public class StoreParamsConst {
     
     public static final String   fPrefixId2Node        = "file_prefix_id2node" ;
     public static final String   prefixId2Node         = Names.prefixId2Node ;
+    
+    public static final String   fNodeNamespaces       = "node_namespaces" ;
+    public static final boolean  nodeNamespaces        = false ;
 
     // Must be after the constants above to get initialization order right
     // because StoreParamsBuilder uses these constants.
@@ -40,7 +40,8 @@ public class BindingNodeId extends Map2<Var, NodeId>
     // Possible optimization: there are at most 3 possible values so HashMap is overkill.
     // Use a chain of small objects.
     
-    private BindingNodeId(Map<Var, NodeId> map1, Map2<Var, NodeId> map2, Binding parentBinding)
+    // For subclasses keeping the ids elsewhere: map1 may then be null if they override all the Map2 operations.
+    protected BindingNodeId(Map<Var, NodeId> map1, Map2<Var, NodeId> map2, Binding parentBinding)
     {
         super(map1, map2) ;
         this.parentBinding = parentBinding ;
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.solver.stats;
+
+import java.util.Arrays ;
+
+/**
+ * HyperLogLog sketch of the number of distinct longs (NodeIds) added to it,
+ * within a few percent. Values can only be added: a sketch does not shrink
+ * when triples are deleted.
+ */
+public final class HyperLogLog
+{
+    /** log2 of the number of registers: 1024 of them, about 3% standard error */
+    static final int P = 10 ;
+    static final int M = 1 << P ;
+
+    private final byte[] registers ;
+
+    public HyperLogLog() { this(new byte[M]) ; }
+
+    HyperLogLog(byte[] registers)
+    {
+        if ( registers.length != M )
+            throw new IllegalArgumentException("Registers: "+registers.length) ;
+        this.registers = registers ;
+    }
+
+    public void add(long value)
+    {
+        long h = mix(value) ;
+        int idx = (int)(h >>> (64-P)) ;
+        // Position of the first 1 bit after the index bits, 1-based.
+        int rank = Long.numberOfLeadingZeros((h << P) | (1L << (P-1))) + 1 ;
+        if ( rank > registers[idx] )
+            registers[idx] = (byte)rank ;
+    }
+
+    /** Add all the values of other to this sketch. */
+    public void merge(HyperLogLog other)
+    {
+        for ( int i = 0 ; i < M ; i++ )
+        {
+            if ( other.registers[i] > registers[i] )
+                registers[i] = other.registers[i] ;
+        }
+    }
+
+    public HyperLogLog copy() { return new HyperLogLog(Arrays.copyOf(registers, M)) ; }
+
+    /** Estimate of the number of distinct values added. */
+    public long estimate()
+    {
+        double sum = 0 ;
+        int zeros = 0 ;
+        for ( byte r : registers )
+        {
+            sum += 1.0 / (1L << r) ;
+            if ( r == 0 )
+                zeros++ ;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / M) ;
+        double e = alpha * M * M / sum ;
+        // Small range correction: linear counting.
+        if ( e <= 2.5 * M && zeros > 0 )
+            e = M * Math.log((double)M / zeros) ;
+        return Math.round(e) ;
+    }
+
+    byte[] getRegisters() { return registers ; }
+
+    // Finalizer of MurmurHash3 (fmix64): NodeIds are often sequential.
+    private static long mix(long k)
+    {
+        k ^= k >>> 33 ;
+        k *= 0xff51afd7ed558ccdL ;
+        k ^= k >>> 33 ;
+        k *= 0xc4ceb3fe1a85ec53L ;
+        k ^= k >>> 33 ;
+        return k ;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.solver.stats;
+
+import java.io.BufferedInputStream ;
+import java.io.BufferedOutputStream ;
+import java.io.DataInputStream ;
+import java.io.DataOutputStream ;
+import java.io.File ;
+import java.io.FileInputStream ;
+import java.io.FileOutputStream ;
+import java.io.IOException ;
+import java.nio.file.AtomicMoveNotSupportedException ;
+import java.nio.file.Files ;
+import java.nio.file.StandardCopyOption ;
+import java.util.HashMap ;
+import java.util.Iterator ;
+import java.util.Map ;
+import java.util.Map.Entry ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.lib.tuple.Tuple ;
+import org.apache.jena.atlas.logging.Log ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.sparql.graph.NodeConst ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.store.nodetable.NodeTable ;
+import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable ;
+
+/**
+ * Statistics of a triple table, kept up to date as triples are added and deleted:
+ * the number of triples, of triples for each predicate and for each class (objects
+ * of rdf:type), and sketches of the distinct subjects and objects of each predicate
+ * (see {@link HyperLogLog}).
+ * <p>
+ * The statistics of the changes of a write transaction read through to those of the
+ * dataset, and are merged into them when it commits (see {@link #changes}).
+ * Unlike the stats file written by tdbstats, these are not a full scan; the distinct
+ * counts do not go down when triples are deleted, and {@link #gather} starts again.
+ */
+public class TripleStats
+{
+    private static final int MAGIC = 0x54445354 ;       // "TDST"
+    private static final int VERSION = 1 ;
+
+    private static class PredicateStats
+    {
+        long count = 0 ;
+        final HyperLogLog subjects ;
+        final HyperLogLog objects ;
+
+        PredicateStats()                                    { this(new HyperLogLog(), new HyperLogLog()) ; }
+        PredicateStats(HyperLogLog subjects, HyperLogLog objects) { this.subjects = subjects ; this.objects = objects ; }
+
+        PredicateStats copy()
+        {
+            PredicateStats ps = new PredicateStats(subjects.copy(), objects.copy()) ;
+            ps.count = count ;
+            return ps ;
+        }
+    }
+
+    private final TripleStats base ;            // For the changes of a transaction, the dataset's.
+    private final NodeTable nodeTable ;
+    private final File file ;                   // Null if not persisted.
+    private NodeId typeId = null ;              // rdf:type, once in the node table.
+
+    private long count = 0 ;
+    private Map<NodeId, PredicateStats> predicates = new HashMap<>() ;
+    private Map<NodeId, Long> types = new HashMap<>() ;
+    private boolean cleared = false ;           // The changes start from an empty table.
+    private long modifications = 0 ;
+    private long written = 0 ;
+
+    /** Statistics of an empty triple table, written to file (may be null). */
+    public TripleStats(NodeTable nodeTable, File file)
+    {
+        this(null, nodeTable, file) ;
+    }
+
+    private TripleStats(TripleStats base, NodeTable nodeTable, File file)
+    {
+        this.base = base ;
+        this.nodeTable = nodeTable ;
+        this.file = file ;
+    }
+
+    /**
+     * Statistics for the changes of a write transaction, whose node table is nodeTable.
+     * They include the dataset's statistics when read; {@link #commit} adds them to those.
+     */
+    public TripleStats changes(NodeTable nodeTable)
+    {
+        return new TripleStats(( base == null ) ? this : base, nodeTable, null) ;
+    }
+
+    /**
+     * The dataset's statistics, for reading with nodes of nodeTable: the node table of a
+     * transaction has nodes that the dataset's will only have once the journal is flushed.
+     */
+    public TripleStats view(NodeTable nodeTable)
+    {
+        return changes(nodeTable) ;
+    }
+
+    /**
+     * For the changes of a write transaction that has committed: add them to the
+     * dataset's statistics and write those.
+     * @return the dataset's statistics, as a {@link #view} for the node table of the transaction.
+     */
+    public TripleStats commit()
+    {
+        base.merge(this) ;
+        base.write() ;
+        return base.view(nodeTable) ;
+    }
+
+    /** Statistics of the triples of table, by a scan of its primary index. */
+    public static TripleStats gather(NodeTupleTable table, File file)
+    {
+        TripleStats stats = new TripleStats(table.getNodeTable(), file) ;
+        Iterator<Tuple<NodeId>> iter = table.getTupleTable().getIndex(0).all() ;
+        try {
+            for ( ; iter.hasNext() ; )
+            {
+                Tuple<NodeId> t = iter.next() ;
+                stats.add(t.get(0), t.get(1), t.get(2)) ;
+            }
+        } finally { Iter.close(iter) ; }
+        return stats ;
+    }
+
+    // ---- Updates
+
+    /** Record an added triple, given as the NodeIds of its nodes. */
+    public synchronized void add(NodeId s, NodeId p, NodeId o)
+    {
+        count++ ;
+        modifications++ ;
+        PredicateStats ps = predicates.get(p) ;
+        if ( ps == null )
+        {
+            ps = new PredicateStats() ;
+            predicates.put(p, ps) ;
+        }
+        ps.count++ ;
+        ps.subjects.add(s.getId()) ;
+        ps.objects.add(o.getId()) ;
+        if ( p.equals(typeId()) )
+            types.merge(o, 1L, Long::sum) ;
+    }
+
+    /** Record a deleted triple, given as the NodeIds of its nodes. */
+    public synchronized void delete(NodeId s, NodeId p, NodeId o)
+    {
+        count-- ;
+        modifications++ ;
+        PredicateStats ps = predicates.get(p) ;
+        if ( ps == null )
+        {
+            // Only the changes of a transaction count down from zero.
+            ps = new PredicateStats() ;
+            predicates.put(p, ps) ;
+        }
+        ps.count-- ;
+        boolean isType = p.equals(typeId()) ;
+        if ( isType )
+            types.merge(o, -1L, Long::sum) ;
+        if ( base == null )
+        {
+            // Predicates and classes that no longer have triples.
+            if ( ps.count <= 0 )
+                predicates.remove(p) ;
+            if ( isType && types.get(o) <= 0 )
+                types.remove(o) ;
+        }
+    }
+
+    /** Record that all the triples were deleted. */
+    public synchronized void clear()
+    {
+        count = 0 ;
+        predicates = new HashMap<>() ;
+        types = new HashMap<>() ;
+        cleared = true ;
+        modifications++ ;
+    }
+
+    /** Add changes, made by a transaction that has committed, to these statistics. */
+    public void merge(TripleStats changes)
+    {
+        // Copy them first: the changes read through to this object, so do not hold both locks.
+        long dCount ;
+        boolean dCleared ;
+        Map<NodeId, PredicateStats> dPredicates = new HashMap<>() ;
+        Map<NodeId, Long> dTypes ;
+        synchronized (changes)
+        {
+            dCount = changes.count ;
+            dCleared = changes.cleared ;
+            changes.predicates.forEach((p, ps) -> dPredicates.put(p, ps.copy())) ;
+            dTypes = new HashMap<>(changes.types) ;
+        }
+
+        synchronized (this)
+        {
+            if ( dCleared )
+            {
+                count = 0 ;
+                predicates = new HashMap<>() ;
+                types = new HashMap<>() ;
+            }
+            count += dCount ;
+            for ( Entry<NodeId, PredicateStats> e : dPredicates.entrySet() )
+            {
+                PredicateStats ps = predicates.get(e.getKey()) ;
+                if ( ps == null )
+                    predicates.put(e.getKey(), e.getValue()) ;
+                else
+                {
+                    ps.count += e.getValue().count ;
+                    ps.subjects.merge(e.getValue().subjects) ;
+                    ps.objects.merge(e.getValue().objects) ;
+                }
+            }
+            dTypes.forEach((t, n) -> types.merge(t, n, Long::sum)) ;
+            prune() ;
+            modifications++ ;
+        }
+    }
+
+    private void prune()
+    {
+        predicates.values().removeIf(ps -> ps.count <= 0) ;
+        types.values().removeIf(n -> n <= 0) ;
+    }
+
+    private NodeId typeId()
+    {
+        if ( typeId == null )
+        {
+            NodeId id = nodeTable.getNodeIdForNode(NodeConst.nodeRDFType) ;
+            if ( ! NodeId.isDoesNotExist(id) )
+                typeId = id ;
+        }
+        return typeId ;
+    }
+
+    // ---- Reading
+
+    /** Number of triples. */
+    public long getCount()
+    {
+        long n ;
+        boolean fromBase ;
+        synchronized (this)
+        {
+            n = count ;
+            fromBase = ( base != null && ! cleared ) ;
+        }
+        return fromBase ? n + base.getCount() : n ;
+    }
+
+    /** Number of triples with predicate p. */
+    public long getCount(Node p)                { return getCount(nodeId(p)) ; }
+
+    public long getCount(NodeId p)
+    {
+        long n ;
+        boolean fromBase ;
+        synchronized (this)
+        {
+            PredicateStats ps = predicates.get(p) ;
+            n = ( ps == null ) ? 0 : ps.count ;
+            fromBase = ( base != null && ! cleared ) ;
+        }
+        return fromBase ? n + base.getCount(p) : n ;
+    }
+
+    /** Number of rdf:type triples with object type. */
+    public long getTypeCount(Node type)         { return getTypeCount(nodeId(type)) ; }
+
+    public long getTypeCount(NodeId type)
+    {
+        long n ;
+        boolean fromBase ;
+        synchronized (this)
+        {
+            n = types.getOrDefault(type, 0L) ;
+            fromBase = ( base != null && ! cleared ) ;
+        }
+        return fromBase ? n + base.getTypeCount(type) : n ;
+    }
+
+    /** Estimate of the number of distinct subjects of predicate p. */
+    public long getDistinctSubjects(Node p)     { return getDistinctSubjects(nodeId(p)) ; }
+
+    public long getDistinctSubjects(NodeId p)   { return distinct(p, true) ; }
+
+    /** Estimate of the number of distinct objects of predicate p. */
+    public long getDistinctObjects(Node p)      { return getDistinctObjects(nodeId(p)) ; }
+
+    public long getDistinctObjects(NodeId p)    { return distinct(p, false) ; }
+
+    private long distinct(NodeId p, boolean subjects)
+    {
+        long n = getCount(p) ;
+        if ( n <= 0 )
+            return 0 ;
+        HyperLogLog sketch = sketch(p, subjects) ;
+        // Deleted triples stay in the sketch.
+        return ( sketch == null ) ? 0 : Math.max(1, Math.min(n, sketch.estimate())) ;
+    }
+
+    private HyperLogLog sketch(NodeId p, boolean subjects)
+    {
+        HyperLogLog sketch = null ;
+        boolean fromBase ;
+        synchronized (this)
+        {
+            PredicateStats ps = predicates.get(p) ;
+            if ( ps != null )
+                sketch = ( subjects ? ps.subjects : ps.objects ).copy() ;
+            fromBase = ( base != null && ! cleared ) ;
+        }
+        if ( fromBase )
+        {
+            HyperLogLog other = base.sketch(p, subjects) ;
+            if ( sketch == null )
+                sketch = other ;
+            else if ( other != null )
+                sketch.merge(other) ;
+        }
+        return sketch ;
+    }
+
+    private NodeId nodeId(Node n)
+    {
+        return nodeTable.getNodeIdForNode(n) ;
+    }
+
+    /** The counts as nodes, as the stats file has them (see {@link Stats#write(String, StatsResults)}). */
+    public StatsResults results()
+    {
+        TripleStats all = this ;
+        if ( base != null )
+        {
+            all = new TripleStats(nodeTable, null) ;
+            all.merge(base) ;
+            all.merge(this) ;
+        }
+        Map<Node, Integer> predicateCounts = new HashMap<>() ;
+        Map<Node, Integer> typeCounts = new HashMap<>() ;
+        long n ;
+        synchronized (all)
+        {
+            n = all.count ;
+            all.predicates.forEach((p, ps) -> predicateCounts.put(nodeTable.getNodeForNodeId(p), (int)Math.min(Integer.MAX_VALUE, ps.count))) ;
+            all.types.forEach((t, c) -> typeCounts.put(nodeTable.getNodeForNodeId(t), (int)Math.min(Integer.MAX_VALUE, c))) ;
+        }
+        return new StatsResults(predicateCounts, typeCounts, n) ;
+    }
+
+    // ---- Persistence
+
+    /** Write the statistics to their file, if they changed since they were read or last written. */
+    public void write()
+    {
+        if ( file == null )
+            return ;
+        synchronized (this)
+        {
+            if ( modifications == written )
+                return ;
+            File tmp = new File(file.getPath()+".tmp") ;
+            try {
+                try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))) ) {
+                    out.writeInt(MAGIC) ;
+                    out.writeInt(VERSION) ;
+                    out.writeLong(count) ;
+                    out.writeInt(predicates.size()) ;
+                    for ( Entry<NodeId, PredicateStats> e : predicates.entrySet() )
+                    {
+                        out.writeLong(e.getKey().getId()) ;
+                        out.writeLong(e.getValue().count) ;
+                        out.write(e.getValue().subjects.getRegisters()) ;
+                        out.write(e.getValue().objects.getRegisters()) ;
+                    }
+                    out.writeInt(types.size()) ;
+                    for ( Entry<NodeId, Long> e : types.entrySet() )
+                    {
+                        out.writeLong(e.getKey().getId()) ;
+                        out.writeLong(e.getValue()) ;
+                    }
+                }
+                try {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE) ;
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING) ;
+                }
+                written = modifications ;
+            } catch (IOException ex)
+            { Log.warn(TripleStats.class, "Problem when writing statistics file", ex) ; }
+        }
+    }
+
+    /** The statistics written to file, or null if there is no such file or it can't be read. */
+    public static TripleStats read(File file, NodeTable nodeTable)
+    {
+        if ( file == null || ! file.exists() )
+            return null ;
+        TripleStats stats = new TripleStats(nodeTable, file) ;
+        try ( DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))) ) {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+            {
+                Log.warn(TripleStats.class, "Not a statistics file: "+file) ;
+                return null ;
+            }
+            stats.count = in.readLong() ;
+            int numPredicates = in.readInt() ;
+            for ( int i = 0 ; i < numPredicates ; i++ )
+            {
+                NodeId p = NodeId.create(in.readLong()) ;
+                long n = in.readLong() ;
+                byte[] subjects = new byte[HyperLogLog.M] ;
+                byte[] objects = new byte[HyperLogLog.M] ;
+                in.readFully(subjects) ;
+                in.readFully(objects) ;
+                PredicateStats ps = new PredicateStats(new HyperLogLog(subjects), new HyperLogLog(objects)) ;
+                ps.count = n ;
+                stats.predicates.put(p, ps) ;
+            }
+            int numTypes = in.readInt() ;
+            for ( int i = 0 ; i < numTypes ; i++ )
+                stats.types.put(NodeId.create(in.readLong()), in.readLong()) ;
+        } catch (IOException ex) {
+            Log.warn(TripleStats.class, "Problem when reading statistics file", ex) ;
+            return null ;
+        }
+        return stats ;
+    }
+}
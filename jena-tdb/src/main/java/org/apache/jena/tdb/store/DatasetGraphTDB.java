@@ -38,6 +38,7 @@ import org.apache.jena.sparql.core.TransactionalNotSupported ;
 import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation ;
 import org.apache.jena.tdb.base.file.Location ;
 import org.apache.jena.tdb.lib.NodeLib ;
+import org.apache.jena.tdb.solver.stats.TripleStats ;
 import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable ;
 import org.apache.jena.tdb.transaction.DatasetGraphTransaction ;
 import org.apache.jena.tdb.transaction.DatasetGraphTxn ;
@@ -211,6 +212,7 @@ public class DatasetGraphTDB extends DatasetGraphTriplesQuads
         // from the indexes happens.
 
         NodeTupleTable t = chooseNodeTupleTable(g) ;
+        TripleStats stats = ( t == getTripleTable().getNodeTupleTable() ) ? getTripleTable().getStats() : null ;
         @SuppressWarnings("unchecked")
         Tuple<NodeId>[] array = (Tuple<NodeId>[])new Tuple<?>[sliceSize] ;
 
@@ -236,7 +238,8 @@ public class DatasetGraphTDB extends DatasetGraphTriplesQuads
 
             // Delete them.
             for (int i = 0; i < len; i++) {
-                t.getTupleTable().delete(array[i]) ;
+                if ( t.getTupleTable().delete(array[i]) && stats != null )
+                    stats.delete(array[i].get(0), array[i].get(1), array[i].get(2)) ;
                 array[i] = null ;
             }
             // Finished?
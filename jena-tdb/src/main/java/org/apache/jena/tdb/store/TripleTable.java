@@ -19,15 +19,19 @@
 package org.apache.jena.tdb.store;
 
 
+import java.io.File ;
 import java.util.Iterator ;
 import org.apache.jena.atlas.iterator.NullIterator ;
 import org.apache.jena.atlas.lib.tuple.Tuple ;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.Triple ;
+import org.apache.jena.tdb.base.file.Location ;
 import org.apache.jena.tdb.lib.TupleLib ;
+import org.apache.jena.tdb.solver.stats.TripleStats ;
 import org.apache.jena.tdb.store.nodetable.NodeTable ;
 import org.apache.jena.tdb.store.tupletable.TupleIndex ;
 import org.apache.jena.tdb.sys.DatasetControl ;
+import org.apache.jena.tdb.sys.Names ;
 
 
 /** TripleTable - a collection of TupleIndexes for 3-tuples
@@ -39,12 +43,43 @@ import org.apache.jena.tdb.sys.DatasetControl ;
 
 public class TripleTable extends TableBase
 {
+    private TripleStats stats = null ;
+    private File statsFile = null ;
+    
     public TripleTable(TupleIndex[] indexes, NodeTable nodeTable, DatasetControl policy)
     {
         super(3, indexes, nodeTable, policy) ;
         //table = new NodeTupleTableConcrete(3, indexes, nodeTable, policy) ;
     }
     
+    /** Keep statistics of the triples, in a file at location (none for a memory location).
+     *  They are read from the file if there is one; otherwise they are known only
+     *  for an empty table, until {@link #rebuildStats}.
+     */
+    public void keepStats(Location location)
+    {
+        statsFile = location.isMem() ? null : new File(location.getPath(Names.liveStats)) ;
+        stats = TripleStats.read(statsFile, table.getNodeTable()) ;
+        // Written before triples were added some other way (e.g. tdbloader2).
+        if ( stats != null && stats.getCount() == 0 && ! isEmpty() )
+            stats = null ;
+        if ( stats == null && isEmpty() )
+            stats = new TripleStats(table.getNodeTable(), statsFile) ;
+    }
+    
+    /** Statistics kept up to date as triples are added and deleted; null if not known. */
+    public TripleStats getStats()               { return stats ; }
+    
+    public void setStats(TripleStats stats)     { this.stats = stats ; }
+    
+    /** Gather the statistics again, by a scan of the table */
+    public TripleStats rebuildStats()
+    {
+        stats = TripleStats.gather(table, statsFile) ;
+        stats.write() ;
+        return stats ;
+    }
+    
     public boolean add( Triple triple ) 
     { 
         return add(triple.getSubject(), triple.getPredicate(), triple.getObject()) ;
@@ -52,7 +87,13 @@ public class TripleTable extends TableBase
 
     public boolean add(Node s, Node p, Node o) 
     { 
-        return table.addRow(s, p, o) ;
+        if ( stats == null )
+            return table.addRow(s, p, o) ;
+        Tuple<NodeId> t = table.addRowIds(s, p, o) ;
+        if ( t == null )
+            return false ;
+        stats.add(t.get(0), t.get(1), t.get(2)) ;
+        return true ;
     }
     
     /** Delete a triple  - return true if it was deleted, false if it didn't exist */
@@ -64,7 +105,13 @@ public class TripleTable extends TableBase
     /** Delete a triple  - return true if it was deleted, false if it didn't exist */
     public boolean delete(Node s, Node p, Node o) 
     { 
-        return table.deleteRow(s, p, o) ;
+        if ( stats == null )
+            return table.deleteRow(s, p, o) ;
+        Tuple<NodeId> t = table.deleteRowIds(s, p, o) ;
+        if ( t == null )
+            return false ;
+        stats.delete(t.get(0), t.get(1), t.get(2)) ;
+        return true ;
     }
 
     /** Find matching triples */
@@ -79,5 +126,25 @@ public class TripleTable extends TableBase
     
     /** Clear - does not clear the associated node tuple table */
     public void clearTriples()
-    { table.clear() ; }
+    {
+        table.clear() ;
+        if ( stats != null )
+            stats.clear() ;
+    }
+    
+    @Override
+    public void sync()
+    {
+        super.sync() ;
+        if ( stats != null )
+            stats.write() ;
+    }
+    
+    @Override
+    public void close()
+    {
+        if ( stats != null )
+            stats.write() ;
+        super.close() ;
+    }
 }
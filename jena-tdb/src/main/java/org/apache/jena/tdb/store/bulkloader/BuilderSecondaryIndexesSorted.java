@@ -0,0 +1,785 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.bulkloader;
+
+import java.io.BufferedInputStream ;
+import java.io.BufferedOutputStream ;
+import java.io.DataInputStream ;
+import java.io.DataOutputStream ;
+import java.io.File ;
+import java.io.FileInputStream ;
+import java.io.FileOutputStream ;
+import java.io.IOException ;
+import java.io.RandomAccessFile ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.Iterator ;
+import java.util.List ;
+import java.util.NoSuchElementException ;
+import java.util.PriorityQueue ;
+import java.util.concurrent.ArrayBlockingQueue ;
+import java.util.concurrent.BlockingQueue ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.RecursiveAction ;
+
+import org.apache.jena.atlas.RuntimeIOException ;
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.lib.Bytes ;
+import org.apache.jena.atlas.lib.Closeable ;
+import org.apache.jena.atlas.lib.Timer ;
+import org.apache.jena.atlas.lib.tuple.Tuple ;
+import org.apache.jena.tdb.TDBException ;
+import org.apache.jena.tdb.base.record.Record ;
+import org.apache.jena.tdb.base.record.RecordFactory ;
+import org.apache.jena.tdb.index.bplustree.BPlusTree ;
+import org.apache.jena.tdb.lib.ColumnMap ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.store.tupletable.TupleIndex ;
+import org.apache.jena.tdb.store.tupletable.TupleIndexRecord ;
+
+/**
+ * Build each secondary index from the tuples of the primary index sorted into its order,
+ * and packed into its B+Tree in full leaves (see {@link BPlusTree#pack}), rather than
+ * adding the tuples one at a time.
+ * <p>
+ * The tuples are sorted in runs, each a {@code long[]} of the NodeIds of the tuples in the
+ * index order, of at most the memory budget. When there is more than one run, the runs are
+ * written to temporary files and merged as they are packed. The merge is split into ranges
+ * of keys, chosen from samples of the runs, that are merged in parallel and packed one
+ * after the other. The indexes are built in parallel, sharing the budget and the threads.
+ * An index not held in an empty B+Tree of NodeIds is copied tuple by tuple.
+ */
+public class BuilderSecondaryIndexesSorted implements BuilderSecondaryIndexes
+{
+    /** Memory for the runs of all the indexes together, by default. */
+    public static final long DefaultMemoryBudget = 512L*1024*1024 ;
+    private static final int MinRunSize = 1000 ;
+    private static final int IOBufferSize = 128*1024 ;
+    // Tuples merged at a time for the packer.
+    private static final int ChunkSize = 16*1024 ;
+    // Samples of each run for each range of the merge, to choose the keys between ranges.
+    private static final int SamplesPerRange = 16 ;
+    // Sorting: ranges of a run sorted in another thread, or by insertion.
+    private static final int ParallelSortSize = 64*1024 ;
+    private static final int InsertionSortSize = 16 ;
+
+    private final LoadMonitor monitor ;
+    private final long memoryBudget ;
+    private final File tmpDir ;
+    private final int parallelism ;
+
+    public BuilderSecondaryIndexesSorted(LoadMonitor monitor) { this(monitor, DefaultMemoryBudget, null) ; }
+
+    /** Runs take up to memoryBudget bytes between them, spilled to tmpDir (null for the system default). */
+    public BuilderSecondaryIndexesSorted(LoadMonitor monitor, long memoryBudget, File tmpDir)
+    {
+        this(monitor, memoryBudget, tmpDir, Runtime.getRuntime().availableProcessors()) ;
+    }
+
+    /** As above, with up to parallelism threads building the indexes and merging their runs. */
+    public BuilderSecondaryIndexesSorted(LoadMonitor monitor, long memoryBudget, File tmpDir, int parallelism)
+    {
+        this.monitor = monitor ;
+        this.memoryBudget = memoryBudget ;
+        this.tmpDir = tmpDir ;
+        this.parallelism = Math.max(1, parallelism) ;
+    }
+
+    @Override
+    public void createSecondaryIndexes(TupleIndex   primaryIndex ,
+                                       TupleIndex[] secondaryIndexes)
+    {
+        List<TupleIndex> indexes = new ArrayList<>() ;
+        for ( TupleIndex index : secondaryIndexes )
+        {
+            if ( index != null )
+                indexes.add(index) ;
+        }
+        if ( indexes.isEmpty() )
+            return ;
+
+        monitor.print("** Sorted index building") ;
+        Timer timer = new Timer() ;
+        timer.startTimer() ;
+
+        int threads = Math.min(indexes.size(), parallelism) ;
+        // Threads left over merge the ranges of each index.
+        int mergeThreads = Math.max(1, parallelism/threads) ;
+        ExecutorService executor = Executors.newFixedThreadPool(threads) ;
+        try {
+            List<Future<Built>> builds = new ArrayList<>() ;
+            for ( TupleIndex index : indexes )
+                builds.add(executor.submit(() -> build(primaryIndex, index, memoryBudget/threads, mergeThreads))) ;
+            // The monitor is not for several threads: the indexes are reported from this one.
+            for ( Future<Built> f : builds )
+            {
+                Built built = f.get() ;
+                monitor.indexBuilt(built.label, built.items, built.time) ;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt() ;
+            throw new TDBException("Interrupted building indexes", ex) ;
+        } catch (ExecutionException ex) {
+            throw new TDBException("Failed to build indexes", ex.getCause()) ;
+        } finally {
+            executor.shutdownNow() ;
+        }
+
+        long time = timer.readTimer() ;
+        timer.endTimer() ;
+        monitor.print("Time for sorted indexing: %.2fs\n", time/1000.0) ;
+    }
+
+    private Built build(TupleIndex srcIndex, TupleIndex destIndex, long budget, int mergeThreads)
+    {
+        Timer timer = new Timer() ;
+        timer.startTimer() ;
+        long items = 0 ;
+        String label = destIndex.getMapping() ;
+        int width = destIndex.getTupleLength() ;
+        BPlusTree bpt = null ;
+        if ( destIndex instanceof TupleIndexRecord && ((TupleIndexRecord)destIndex).getRangeIndex() instanceof BPlusTree )
+            bpt = (BPlusTree)((TupleIndexRecord)destIndex).getRangeIndex() ;
+        if ( bpt == null || ! bpt.isEmpty() || bpt.getRecordFactory().hasValue() || bpt.getRecordFactory().keyLength() != width*NodeId.SIZE )
+        {
+            Iterator<Tuple<NodeId>> iter = srcIndex.all() ;
+            try {
+                for ( ; iter.hasNext() ; items++ )
+                    destIndex.add(iter.next()) ;
+            } finally { Iter.close(iter) ; }
+            return new Built(label, items, timer.endTimer()) ;
+        }
+
+        RecordFactory factory = bpt.getRecordFactory() ;
+        ColumnMap colMap = destIndex.getColumnMap() ;
+        // Growing the run holds the previous copy as well for a while.
+        int runSize = (int)Math.max(MinRunSize, Math.min((Integer.MAX_VALUE-8)/width, budget/(width*NodeId.SIZE))) ;
+        List<Run> runs = new ArrayList<>() ;
+        try {
+            long[] run = new long[Math.min(runSize, 64*1024)*width] ;
+            int count = 0 ;
+            Iterator<Tuple<NodeId>> iter = srcIndex.all() ;
+            try {
+                while ( iter.hasNext() )
+                {
+                    items++ ;
+                    if ( count*width == run.length )
+                    {
+                        if ( count < runSize )
+                            run = Arrays.copyOf(run, (int)Math.min(2L*count, runSize)*width) ;
+                        else
+                        {
+                            runs.add(spill(run, width, count)) ;
+                            count = 0 ;
+                        }
+                    }
+                    // The i'th NodeId goes to the slot of the index order.
+                    Tuple<NodeId> tuple = iter.next() ;
+                    int base = count*width ;
+                    for ( int i = 0 ; i < width ; i++ )
+                        run[base+colMap.mapSlotIdx(i)] = tuple.get(i).getId() ;
+                    count++ ;
+                }
+            } finally { Iter.close(iter) ; }
+
+            Iterator<Record> sorted ;
+            if ( runs.isEmpty() )
+            {
+                sort(run, width, count) ;
+                sorted = new ChunkRecords(factory, width, run, count*width, Iter.nullIterator()) ;
+            }
+            else
+            {
+                if ( count > 0 )
+                    runs.add(spill(run, width, count)) ;
+                run = null ;
+                Iterator<long[]> chunks ;
+                if ( mergeThreads > 1 )
+                    chunks = new MergeRanges(runs, width, mergeThreads, budget) ;
+                else
+                    chunks = new MergeChunks(new MergeRuns(runs, null, null, width)) ;
+                sorted = new ChunkRecords(factory, width, null, 0, chunks) ;
+            }
+            try { bpt.pack(sorted) ; }
+            finally { Iter.close(sorted) ; }
+            destIndex.sync() ;
+        } finally {
+            for ( Run r : runs )
+                r.file.delete() ;
+        }
+        return new Built(label, items, timer.endTimer()) ;
+    }
+
+    /** An index built: its tuples, and the time it took in milliseconds. */
+    private static class Built
+    {
+        final String label ;
+        final long items ;
+        final long time ;
+
+        Built(String label, long items, long time)
+        {
+            this.label = label ;
+            this.items = items ;
+            this.time = time ;
+        }
+    }
+
+    /** Sort the first count tuples of run and write them to a temporary file. */
+    private Run spill(long[] run, int width, int count)
+    {
+        sort(run, width, count) ;
+        try {
+            File file = File.createTempFile("tdb-index-", ".run", tmpDir) ;
+            file.deleteOnExit() ;
+            try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IOBufferSize)) ) {
+                for ( int i = 0 ; i < count*width ; i++ )
+                    out.writeLong(run[i]) ;
+            }
+            return new Run(file, count) ;
+        } catch (IOException ex) { throw new RuntimeIOException(ex) ; }
+    }
+
+    /** A sorted run in a temporary file, in the byte order of the keys of its records. */
+    private static class Run
+    {
+        final File file ;
+        final long size ;
+
+        Run(File file, long size)
+        {
+            this.file = file ;
+            this.size = size ;
+        }
+    }
+
+    // ---- Tuples of width NodeIds in a long[], compared as the keys of their records.
+
+    private static int compare(long[] run1, int idx1, long[] run2, int idx2, int width)
+    {
+        for ( int k = 0 ; k < width ; k++ )
+        {
+            int x = Long.compareUnsigned(run1[idx1+k], run2[idx2+k]) ;
+            if ( x != 0 )
+                return x ;
+        }
+        return 0 ;
+    }
+
+    private static void swap(long[] run, int width, int i, int j)
+    {
+        int a = i*width ;
+        int b = j*width ;
+        for ( int k = 0 ; k < width ; k++ )
+        {
+            long x = run[a+k] ;
+            run[a+k] = run[b+k] ;
+            run[b+k] = x ;
+        }
+    }
+
+    /** Sort the first count tuples of run, in place. */
+    private static void sort(long[] run, int width, int count)
+    {
+        int depth = 2*(32-Integer.numberOfLeadingZeros(count)) ;
+        ForkJoinPool.commonPool().invoke(new SortTask(run, width, 0, count, depth)) ;
+    }
+
+    /**
+     * Introsort of the tuples [lo, hi) of a run: quicksort with a three way partition,
+     * heapsort beyond the depth limit. The smaller side of large partitions is forked.
+     */
+    private static class SortTask extends RecursiveAction
+    {
+        private final long[] run ;
+        private final int width ;
+        private final int lo ;
+        private final int hi ;
+        private final int depth ;
+
+        SortTask(long[] run, int width, int lo, int hi, int depth)
+        {
+            this.run = run ;
+            this.width = width ;
+            this.lo = lo ;
+            this.hi = hi ;
+            this.depth = depth ;
+        }
+
+        @Override
+        protected void compute()
+        {
+            List<SortTask> forked = new ArrayList<>() ;
+            long[] pivot = new long[width] ;
+            int lo = this.lo ;
+            int hi = this.hi ;
+            int depth = this.depth ;
+            while ( hi-lo > InsertionSortSize )
+            {
+                if ( depth-- == 0 )
+                {
+                    heapSort(lo, hi) ;
+                    lo = hi ;
+                    break ;
+                }
+                int m = median(lo, (lo+hi)>>>1, hi-1) ;
+                System.arraycopy(run, m*width, pivot, 0, width) ;
+                // [lo, lt) < pivot, [lt, gt) = pivot, [gt, hi) > pivot
+                int lt = lo ;
+                int gt = hi ;
+                for ( int i = lo ; i < gt ; )
+                {
+                    int x = compare(run, i*width, pivot, 0, width) ;
+                    if ( x < 0 )
+                        swap(run, width, lt++, i++) ;
+                    else if ( x > 0 )
+                        swap(run, width, i, --gt) ;
+                    else
+                        i++ ;
+                }
+                SortTask task ;
+                if ( lt-lo < hi-gt )
+                {
+                    task = new SortTask(run, width, lo, lt, depth) ;
+                    lo = gt ;
+                }
+                else
+                {
+                    task = new SortTask(run, width, gt, hi, depth) ;
+                    hi = lt ;
+                }
+                if ( task.hi-task.lo > ParallelSortSize )
+                {
+                    task.fork() ;
+                    forked.add(task) ;
+                }
+                else
+                    task.compute() ;
+            }
+            insertionSort(lo, hi) ;
+            for ( SortTask task : forked )
+                task.join() ;
+        }
+
+        private int compareAt(int i, int j)
+        {
+            return compare(run, i*width, run, j*width, width) ;
+        }
+
+        private int median(int a, int b, int c)
+        {
+            if ( compareAt(a, b) < 0 )
+                return compareAt(b, c) < 0 ? b : ( compareAt(a, c) < 0 ? c : a ) ;
+            return compareAt(a, c) < 0 ? a : ( compareAt(b, c) < 0 ? c : b ) ;
+        }
+
+        private void insertionSort(int lo, int hi)
+        {
+            for ( int i = lo+1 ; i < hi ; i++ )
+                for ( int j = i ; j > lo && compareAt(j-1, j) > 0 ; j-- )
+                    swap(run, width, j-1, j) ;
+        }
+
+        private void heapSort(int lo, int hi)
+        {
+            int n = hi-lo ;
+            for ( int i = n/2-1 ; i >= 0 ; i-- )
+                siftDown(lo, i, n) ;
+            for ( int end = n-1 ; end > 0 ; end-- )
+            {
+                swap(run, width, lo, lo+end) ;
+                siftDown(lo, 0, end) ;
+            }
+        }
+
+        private void siftDown(int lo, int i, int n)
+        {
+            for ( int child = 2*i+1 ; child < n ; child = 2*i+1 )
+            {
+                if ( child+1 < n && compareAt(lo+child, lo+child+1) < 0 )
+                    child++ ;
+                if ( compareAt(lo+i, lo+child) >= 0 )
+                    return ;
+                swap(run, width, lo+i, lo+child) ;
+                i = child ;
+            }
+        }
+    }
+
+    // ---- Merging
+
+    /** The records of chunks of tuples, in order. */
+    private static class ChunkRecords implements Iterator<Record>, Closeable
+    {
+        private final RecordFactory factory ;
+        private final int width ;
+        private final Iterator<long[]> chunks ;
+        private long[] chunk ;
+        private int length ;
+        private int pos = 0 ;
+
+        /** The first length longs of chunk, then the chunks. */
+        ChunkRecords(RecordFactory factory, int width, long[] chunk, int length, Iterator<long[]> chunks)
+        {
+            this.factory = factory ;
+            this.width = width ;
+            this.chunk = chunk ;
+            this.length = length ;
+            this.chunks = chunks ;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( pos == length )
+            {
+                if ( ! chunks.hasNext() )
+                    return false ;
+                chunk = chunks.next() ;
+                length = chunk.length ;
+                pos = 0 ;
+            }
+            return true ;
+        }
+
+        @Override
+        public Record next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            byte[] key = new byte[width*NodeId.SIZE] ;
+            for ( int k = 0 ; k < width ; k++ )
+                Bytes.setLong(chunk[pos+k], key, k*NodeId.SIZE) ;
+            pos += width ;
+            return factory.create(key) ;
+        }
+
+        @Override
+        public void close()
+        {
+            Iter.close(chunks) ;
+        }
+    }
+
+    /** The tuples of ranges of sorted runs, in order. */
+    private static class MergeRuns implements Closeable
+    {
+        private final PriorityQueue<RunReader> queue ;
+        private final List<RunReader> readers = new ArrayList<>() ;
+        private final int width ;
+
+        /** The tuples from starts[i] to ends[i] of each run i, or all of them if null. */
+        MergeRuns(List<Run> runs, long[] starts, long[] ends, int width)
+        {
+            this.width = width ;
+            this.queue = new PriorityQueue<>((r1, r2) -> compare(r1.current, 0, r2.current, 0, width)) ;
+            try {
+                for ( int i = 0 ; i < runs.size() ; i++ )
+                {
+                    Run run = runs.get(i) ;
+                    RunReader r = new RunReader(run, starts == null ? 0 : starts[i], ends == null ? run.size : ends[i], width) ;
+                    readers.add(r) ;
+                    if ( r.advance() )
+                        queue.add(r) ;
+                }
+            } catch (RuntimeException ex) {
+                close() ;
+                throw ex ;
+            }
+        }
+
+        boolean hasNext() { return ! queue.isEmpty() ; }
+
+        /** Fill chunk with the next tuples; the number of longs filled. */
+        int fill(long[] chunk)
+        {
+            int n = 0 ;
+            while ( n < chunk.length && ! queue.isEmpty() )
+            {
+                RunReader r = queue.poll() ;
+                System.arraycopy(r.current, 0, chunk, n, width) ;
+                n += width ;
+                if ( r.advance() )
+                    queue.add(r) ;
+            }
+            return n ;
+        }
+
+        @Override
+        public void close()
+        {
+            for ( RunReader r : readers )
+                r.close() ;
+        }
+    }
+
+    /** The tuples of sorted runs, in order, merged in the packer's thread. */
+    private static class MergeChunks implements Iterator<long[]>, Closeable
+    {
+        private final MergeRuns merge ;
+        private final long[] chunk ;
+
+        MergeChunks(MergeRuns merge)
+        {
+            this.merge = merge ;
+            this.chunk = new long[ChunkSize*merge.width] ;
+        }
+
+        @Override
+        public boolean hasNext() { return merge.hasNext() ; }
+
+        // The chunk is reused: the records of the previous one have been taken.
+        @Override
+        public long[] next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            int n = merge.fill(chunk) ;
+            return ( n == chunk.length ) ? chunk : Arrays.copyOf(chunk, n) ;
+        }
+
+        @Override
+        public void close() { merge.close() ; }
+    }
+
+    /**
+     * The tuples of sorted runs, in order, merged in parallel by ranges of keys. Each range
+     * is merged in its own thread into a queue of chunks, taken range by range; the memory
+     * of the runs, now on disk, holds the chunks merged ahead of the packer.
+     */
+    private static class MergeRanges implements Iterator<long[]>, Closeable
+    {
+        private static final long[] End = new long[0] ;
+
+        private final ExecutorService executor ;
+        private final List<BlockingQueue<long[]>> queues = new ArrayList<>() ;
+        private final List<Future<?>> merges = new ArrayList<>() ;
+        private int range = 0 ;
+        private long[] slot = null ;
+
+        MergeRanges(List<Run> runs, int width, int ranges, long budget)
+        {
+            long[][] bounds = bounds(runs, width, ranges) ;
+            int capacity = (int)Math.max(2, Math.min(1024, budget/((long)ranges*ChunkSize*width*NodeId.SIZE))) ;
+            executor = Executors.newFixedThreadPool(ranges) ;
+            for ( int p = 0 ; p < ranges ; p++ )
+            {
+                long[] starts = new long[runs.size()] ;
+                long[] ends = new long[runs.size()] ;
+                for ( int i = 0 ; i < runs.size() ; i++ )
+                {
+                    starts[i] = bounds[i][p] ;
+                    ends[i] = bounds[i][p+1] ;
+                }
+                BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(capacity) ;
+                queues.add(queue) ;
+                merges.add(executor.submit(() -> {
+                    try {
+                        MergeRuns merge = new MergeRuns(runs, starts, ends, width) ;
+                        try {
+                            while ( merge.hasNext() )
+                            {
+                                long[] chunk = new long[ChunkSize*width] ;
+                                int n = merge.fill(chunk) ;
+                                queue.put(( n == chunk.length ) ? chunk : Arrays.copyOf(chunk, n)) ;
+                            }
+                        } finally { merge.close() ; }
+                    } finally { queue.put(End) ; }
+                    return null ;
+                })) ;
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( slot == null )
+            {
+                if ( range == queues.size() )
+                    return false ;
+                long[] chunk ;
+                try {
+                    chunk = queues.get(range).take() ;
+                    if ( chunk == End )
+                    {
+                        merges.get(range).get() ;
+                        range++ ;
+                    }
+                    else
+                        slot = chunk ;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt() ;
+                    throw new TDBException("Interrupted merging runs", ex) ;
+                } catch (ExecutionException ex) {
+                    throw new TDBException("Failed to merge runs", ex.getCause()) ;
+                }
+            }
+            return true ;
+        }
+
+        @Override
+        public long[] next()
+        {
+            if ( ! hasNext() )
+                throw new NoSuchElementException() ;
+            long[] chunk = slot ;
+            slot = null ;
+            return chunk ;
+        }
+
+        @Override
+        public void close()
+        {
+            executor.shutdownNow() ;
+        }
+    }
+
+    /**
+     * Where the ranges of the merge start and end in each run: for run i, bounds[i][p] to
+     * bounds[i][p+1] is range p. The keys between ranges are spread over samples of the runs,
+     * taken in proportion to their size.
+     */
+    private static long[][] bounds(List<Run> runs, int width, int ranges)
+    {
+        long maxSize = 1 ;
+        for ( Run run : runs )
+            maxSize = Math.max(maxSize, run.size) ;
+        FileChannel[] channels = new FileChannel[runs.size()] ;
+        try {
+            int[] samples = new int[runs.size()] ;
+            int count = 0 ;
+            for ( int i = 0 ; i < runs.size() ; i++ )
+            {
+                channels[i] = new RandomAccessFile(runs.get(i).file, "r").getChannel() ;
+                samples[i] = (int)Math.max(1, ranges*SamplesPerRange*runs.get(i).size/maxSize) ;
+                count += samples[i] ;
+            }
+            long[] sample = new long[count*width] ;
+            ByteBuffer bb = ByteBuffer.allocate(width*NodeId.SIZE) ;
+            int n = 0 ;
+            for ( int i = 0 ; i < runs.size() ; i++ )
+            {
+                long size = runs.get(i).size ;
+                for ( int j = 1 ; j <= samples[i] ; j++ )
+                    read(channels[i], size*j/(samples[i]+1), bb, sample, (n++)*width) ;
+            }
+            sort(sample, width, count) ;
+
+            long[][] bounds = new long[runs.size()][ranges+1] ;
+            long[] tuple = new long[width] ;
+            for ( int i = 0 ; i < runs.size() ; i++ )
+            {
+                bounds[i][ranges] = runs.get(i).size ;
+                for ( int p = 1 ; p < ranges ; p++ )
+                {
+                    // First tuple not less than the key, at or after the start of the range.
+                    int key = (int)((long)count*p/ranges)*width ;
+                    long lo = bounds[i][p-1] ;
+                    long hi = runs.get(i).size ;
+                    while ( lo < hi )
+                    {
+                        long mid = (lo+hi)>>>1 ;
+                        read(channels[i], mid, bb, tuple, 0) ;
+                        if ( compare(tuple, 0, sample, key, width) < 0 )
+                            lo = mid+1 ;
+                        else
+                            hi = mid ;
+                    }
+                    bounds[i][p] = lo ;
+                }
+            }
+            return bounds ;
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex) ;
+        } finally {
+            for ( FileChannel channel : channels )
+            {
+                try { if ( channel != null ) channel.close() ; }
+                catch (IOException ex) { throw new RuntimeIOException(ex) ; }
+            }
+        }
+    }
+
+    /** Read the idx'th tuple of a run into dest at pos. */
+    private static void read(FileChannel channel, long idx, ByteBuffer bb, long[] dest, int pos) throws IOException
+    {
+        bb.clear() ;
+        long position = idx*bb.capacity() ;
+        while ( bb.hasRemaining() )
+        {
+            if ( channel.read(bb, position+bb.position()) < 0 )
+                throw new TDBException("Short run file") ;
+        }
+        bb.flip() ;
+        for ( int k = 0 ; bb.hasRemaining() ; k++ )
+            dest[pos+k] = bb.getLong() ;
+    }
+
+    private static class RunReader
+    {
+        private final DataInputStream in ;
+        private final long[] current ;
+        private long remaining ;
+
+        RunReader(Run run, long start, long end, int width)
+        {
+            this.current = new long[width] ;
+            this.remaining = end-start ;
+            FileInputStream file = null ;
+            try {
+                file = new FileInputStream(run.file) ;
+                file.getChannel().position(start*width*NodeId.SIZE) ;
+                in = new DataInputStream(new BufferedInputStream(file, IOBufferSize)) ;
+            }
+            catch (IOException ex)
+            {
+                // Not left open as the run file is deleted.
+                if ( file != null )
+                {
+                    try { file.close() ; } catch (IOException ex2) { ex.addSuppressed(ex2) ; }
+                }
+                throw new RuntimeIOException(ex) ;
+            }
+        }
+
+        /** Read the next tuple of the run into current; false at the end. */
+        boolean advance()
+        {
+            if ( remaining == 0 )
+                return false ;
+            try {
+                for ( int k = 0 ; k < current.length ; k++ )
+                    current[k] = in.readLong() ;
+            } catch (IOException ex) { throw new RuntimeIOException(ex) ; }
+            remaining-- ;
+            return true ;
+        }
+
+        void close()
+        {
+            try { in.close() ; } catch (IOException ex) { throw new RuntimeIOException(ex) ; }
+        }
+    }
+}
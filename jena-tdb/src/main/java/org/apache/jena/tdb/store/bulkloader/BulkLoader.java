@@ -18,11 +18,13 @@
 
 package org.apache.jena.tdb.store.bulkloader ;
 
+import java.io.File ;
 import java.io.InputStream ;
 import java.util.List ;
 
 import org.apache.jena.atlas.event.EventType ;
 import org.apache.jena.atlas.lib.DateTimeUtils ;
+import org.apache.jena.atlas.lib.tuple.Tuple ;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.Triple ;
 import org.apache.jena.riot.Lang ;
@@ -34,7 +36,9 @@ import org.apache.jena.tdb.TDB ;
 import org.apache.jena.tdb.TDBException ;
 import org.apache.jena.tdb.solver.stats.Stats ;
 import org.apache.jena.tdb.solver.stats.StatsCollector ;
+import org.apache.jena.tdb.solver.stats.TripleStats ;
 import org.apache.jena.tdb.store.DatasetGraphTDB ;
+import org.apache.jena.tdb.store.NodeId ;
 import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable ;
 import org.apache.jena.tdb.store.nodetupletable.NodeTupleTableView ;
 import org.apache.jena.tdb.sys.Names ;
@@ -52,6 +56,16 @@ public class BulkLoader {
     /** Number of ticks per super tick */
     public static int       superTick             = 10 ;
 
+    /** Memory, in bytes, for sorting the secondary indexes between them (see {@link BuilderSecondaryIndexesSorted}) */
+    public static long      IndexSortMemory       = Long.getLong("org.apache.jena.tdb.loader.sortMemory",
+                                                                 BuilderSecondaryIndexesSorted.DefaultMemoryBudget) ;
+    /** Directory for the sorted runs of the secondary indexes; null for the system temporary directory */
+    public static File      IndexSortTmpDir       = System.getProperty("org.apache.jena.tdb.loader.sortTmpDir") == null
+                                                    ? null : new File(System.getProperty("org.apache.jena.tdb.loader.sortTmpDir")) ;
+    /** Threads building the secondary indexes */
+    public static int       IndexSortThreads      = Integer.getInteger("org.apache.jena.tdb.loader.sortThreads",
+                                                                       Runtime.getRuntime().availableProcessors()) ;
+
     private static String   baseName              = "http://jena.apache.org/TDB/bulkload/event#" ;
 
     public static EventType evStartBulkload       = new EventType(baseName + "start-bulkload") ;
@@ -182,6 +196,8 @@ public class BulkLoader {
         final private LoadMonitor          monitor2 ;
         final private LoaderNodeTupleTable loaderTriples ;
         final private LoaderNodeTupleTable loaderQuads ;
+        // The loader adds to the triple table without going through TripleTable.add.
+        final private TripleStats          tripleStats ;
         final private boolean              showProgress ;
         private long                       count = 0 ;
         private StatsCollector             stats = null ;
@@ -195,6 +211,7 @@ public class BulkLoader {
 
             loaderTriples = new LoaderNodeTupleTable(dsg.getTripleTable().getNodeTupleTable(), "triples", monitor1) ;
             loaderQuads = new LoaderNodeTupleTable(dsg.getQuadTable().getNodeTupleTable(), "quads", monitor2) ;
+            tripleStats = dsg.getTripleTable().getStats() ;
             this.showProgress = showProgress ;
             this.collectStats = collectStats ;
         }
@@ -232,7 +249,7 @@ public class BulkLoader {
 
         private void process(Node g, Node s, Node p, Node o) {
             if ( g == null )
-                loaderTriples.load(s, p, o) ;
+                loadTriple(loaderTriples, tripleStats, s, p, o) ;
             else
                 loaderQuads.load(g, s, p, o) ;
             count++ ;
@@ -281,6 +298,7 @@ public class BulkLoader {
         final private Node                 graphName ;
         final private LoadMonitor          monitor ;
         final private LoaderNodeTupleTable loaderTriples ;
+        final private TripleStats          tripleStats ;
         final private boolean              startedEmpty ;
         private long                       count = 0 ;
         private StatsCollector             stats = null ;
@@ -293,11 +311,13 @@ public class BulkLoader {
             this.collectStats = collectStats ;
             // Choose NodeTupleTable.
             NodeTupleTable nodeTupleTable ;
-            if ( graphNode == null || Quad.isDefaultGraph(graphNode) )
+            if ( graphNode == null || Quad.isDefaultGraph(graphNode) ) {
                 nodeTupleTable = dsg.getTripleTable().getNodeTupleTable() ;
-            else {
+                tripleStats = dsg.getTripleTable().getStats() ;
+            } else {
                 NodeTupleTable ntt = dsg.getQuadTable().getNodeTupleTable() ;
                 nodeTupleTable = new NodeTupleTableView(ntt, graphName) ;
+                tripleStats = null ;
             }
             startedEmpty = dsg.isEmpty() ;
             monitor = createLoadMonitor(dsg, "triples", showProgress) ;
@@ -318,7 +338,7 @@ public class BulkLoader {
             Node p = triple.getPredicate() ;
             Node o = triple.getObject() ;
 
-            loaderTriples.load(s, p, o) ;
+            loadTriple(loaderTriples, tripleStats, s, p, o) ;
             if ( stats != null )
                 stats.record(null, s, p, o) ;
             count++ ;
@@ -366,6 +386,17 @@ public class BulkLoader {
         public void finish() {}
     }
 
+    /** Load a triple, and record it in tripleStats, if not null, when it was not already loaded. */
+    private static void loadTriple(LoaderNodeTupleTable loader, TripleStats tripleStats, Node s, Node p, Node o) {
+        if ( tripleStats == null ) {
+            loader.load(s, p, o) ;
+            return ;
+        }
+        Tuple<NodeId> t = loader.loadIds(s, p, o) ;
+        if ( t != null )
+            tripleStats.add(t.get(0), t.get(1), t.get(2)) ;
+    }
+
     static void forceSync(DatasetGraphTDB dsg) {
         // Force sync - we have been bypassing DSG tables.
         // THIS DOES NOT WORK IF modules check for SYNC necessity.
@@ -200,7 +200,21 @@ public final class LoadMonitor
     {
         currentFinishTime = timer.readTimer() ;
         long indexTime = currentFinishTime - currentStartTime ;
-        
+        printIndex(label, indexTime) ;
+    }
+
+    /**
+     * An index built of items slots in indexTime milliseconds, as between {@link #startIndex} and
+     * {@link #finishIndex}, for indexes built by other threads than the one calling.
+     */
+    void indexBuilt(String label, long items, long indexTime)
+    {
+        totalIndexItems = items ;
+        printIndex(label, indexTime) ;
+    }
+
+    private void printIndex(String label, long indexTime)
+    {
         if ( totalIndexItems > 0 )
         {
             if ( indexTime > 0 )
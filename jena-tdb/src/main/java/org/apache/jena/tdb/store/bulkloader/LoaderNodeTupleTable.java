@@ -98,12 +98,18 @@ public class LoaderNodeTupleTable implements Closeable, Sync
         loadPrepare() ;
     }
     
-    /** Stream in items to load ... */
-    public void load(Node... nodes)
+    /** Stream in items to load ... ; true if the item was not already in the table */
+    public boolean load(Node... nodes)
+    {
+        return loadIds(nodes) != null ;
+    }
+
+    /** As {@link #load}: the NodeIds of the item loaded, or null if it was already in the table */
+    public Tuple<NodeId> loadIds(Node... nodes)
     {
         count++ ;           // Not zero the first time.
         monitor.dataItem() ;
-        nodeTupleTable.addRow(nodes) ;  
+        return nodeTupleTable.addRowIds(nodes) ;
     }
     
     /** Notify End of data to load - this operation may 
@@ -158,15 +164,9 @@ public class LoaderNodeTupleTable implements Closeable, Sync
 
     private void createSecondaryIndexes()
     {
-        BuilderSecondaryIndexes builder = new BuilderSecondaryIndexesSequential(monitor) ;
-        
-//        if ( doInParallel )
-//            builder = new BuilderSecondaryIndexesParallel(printer) ;
-//        else if ( doInterleaved )
-//            builder = new BuilderSecondaryIndexesInterleaved(printer) ;
-//        else
-//            builder = new BuilderSecondaryIndexesSequential(printer) ;
-        
+        // Sort the primary index into each order and pack the B+Trees.
+        BuilderSecondaryIndexes builder = new BuilderSecondaryIndexesSorted(monitor, BulkLoader.IndexSortMemory,
+                                                                            BulkLoader.IndexSortTmpDir, BulkLoader.IndexSortThreads) ;
         builder.createSecondaryIndexes(primaryIndex, secondaryIndexes) ;
             
         // Re-attach the indexes.
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import org.apache.jena.atlas.lib.Closeable ;
+
+/**
+ * The IRI namespaces of a node table, for {@link NodecNamespace}. A namespace is
+ * identified by a small integer, its position in the table; ids are never reused.
+ * 
+ * @see NamespaceTableNative
+ * @see NamespaceTableReadonly
+ */
+public interface NamespaceTable extends Closeable
+{
+    /** Beyond this, new namespaces are not added and IRIs in them are stored in full. */
+    public static final int MaxNamespaces = 1<<16 ;
+
+    /** The namespace with this id. */
+    public String getNamespace(int id) ;
+
+    /** The id of the namespace, or -1 if it is not in the table. */
+    public int getId(String namespace) ;
+
+    /** The id of the namespace, adding it if it is new, or -1 if the table is full. */
+    public int getAllocateId(String namespace) ;
+
+    /** Number of namespaces. */
+    public int size() ;
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import java.nio.ByteBuffer ;
+import java.util.Arrays ;
+import java.util.Iterator ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+
+import org.apache.jena.atlas.io.BlockUTF8 ;
+import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.tdb.TDBException ;
+import org.apache.jena.tdb.base.objectfile.ObjectFile ;
+
+/**
+ * A {@link NamespaceTable} kept in an append only {@link ObjectFile}, a namespace per
+ * object, all of them held in memory, read when the table is opened.
+ * <p>
+ * A new namespace is written and synced before its id is returned, so it is on disk
+ * before any node that uses it is written.
+ */
+public class NamespaceTableNative implements NamespaceTable
+{
+    private final ObjectFile file ;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>() ;
+    // Written under the object lock and then republished.
+    private volatile String[] namespaces = new String[16] ;
+    private int size = 0 ;
+
+    public NamespaceTableNative(ObjectFile file)
+    {
+        this.file = file ;
+        Iterator<Pair<Long, ByteBuffer>> iter = file.all() ;
+        while ( iter.hasNext() )
+            append(BlockUTF8.toString(iter.next().cdr())) ;
+    }
+
+    @Override
+    public String getNamespace(int id)
+    {
+        String[] x = namespaces ;
+        if ( id >= 0 && id < x.length && x[id] != null )
+            return x[id] ;
+        synchronized (this) {
+            if ( id >= 0 && id < size )
+                return namespaces[id] ;
+        }
+        throw new TDBException("No namespace for id "+id+" in "+file.getLabel()) ;
+    }
+
+    @Override
+    public int getId(String namespace)
+    {
+        Integer id = ids.get(namespace) ;
+        return ( id == null ) ? -1 : id ;
+    }
+
+    @Override
+    public int getAllocateId(String namespace)
+    {
+        Integer id = ids.get(namespace) ;
+        if ( id != null )
+            return id ;
+        synchronized (this) {
+            id = ids.get(namespace) ;
+            if ( id != null )
+                return id ;
+            if ( size >= MaxNamespaces )
+                return -1 ;
+            // Worst case UTF-8 for a Java char.
+            ByteBuffer bb = ByteBuffer.allocate(3*namespace.length()) ;
+            BlockUTF8.fromChars(namespace, bb) ;
+            bb.flip() ;
+            file.write(bb) ;
+            file.sync() ;
+            return append(namespace) ;
+        }
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size ;
+    }
+
+    private synchronized int append(String namespace)
+    {
+        String[] x = namespaces ;
+        if ( size == x.length )
+            x = Arrays.copyOf(x, 2*size) ;
+        x[size] = namespace ;
+        namespaces = x ;
+        // A duplicate in the file (not written by this class) keeps the first id.
+        ids.putIfAbsent(namespace, size) ;
+        return size++ ;
+    }
+
+    @Override
+    public void close()
+    {
+        file.close() ;
+    }
+
+    @Override
+    public String toString()
+    { return "NamespaceTable["+file.getLabel()+"]" ; }
+}
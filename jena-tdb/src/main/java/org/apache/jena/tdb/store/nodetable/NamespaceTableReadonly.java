@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import org.apache.jena.tdb.TDBException ;
+
+/** A {@link NamespaceTable} view that does not add namespaces, for read transactions. */
+public class NamespaceTableReadonly implements NamespaceTable
+{
+    private final NamespaceTable namespaces ;
+
+    public NamespaceTableReadonly(NamespaceTable namespaces)
+    {
+        this.namespaces = namespaces ;
+    }
+
+    @Override
+    public String getNamespace(int id)
+    { return namespaces.getNamespace(id) ; }
+
+    @Override
+    public int getId(String namespace)
+    { return namespaces.getId(namespace) ; }
+
+    @Override
+    public int getAllocateId(String namespace)
+    {
+        int id = namespaces.getId(namespace) ;
+        if ( id < 0 )
+            throw new TDBException("Allocation attempt on NamespaceTableReadonly") ;
+        return id ;
+    }
+
+    @Override
+    public int size()
+    { return namespaces.size() ; }
+
+    // The table is shared with the dataset.
+    @Override
+    public void close() { }
+}
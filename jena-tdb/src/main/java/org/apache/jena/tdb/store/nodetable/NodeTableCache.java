@@ -19,12 +19,14 @@
 package org.apache.jena.tdb.store.nodetable;
 
 import java.util.Iterator ;
+import java.util.concurrent.atomic.LongAdder ;
 
 import org.apache.jena.atlas.iterator.Iter ;
 import org.apache.jena.atlas.lib.Cache ;
 import org.apache.jena.atlas.lib.CacheFactory ;
 import org.apache.jena.atlas.lib.CacheSet ;
 import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.atlas.lib.cache.CacheInfo ;
 import org.apache.jena.atlas.logging.Log ;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.tdb.TDBException ;
@@ -34,6 +36,10 @@ import org.apache.jena.tdb.store.NodeId ;
 /** Cache wrapper around a NodeTable.  
  * Assumes all access goes through this wrapper.
  * Read-cache - write caching is done via the object file used by the base NodeTable. 
+ * <p>
+ * The caches are for many threads ({@link CacheFactory#createConcurrentCache}) and
+ * cache misses lock only a stripe of the keys, so misses on different nodes do not wait
+ * for each other.
  */ 
 public class NodeTableCache implements NodeTable
 {
@@ -43,11 +49,23 @@ public class NodeTableCache implements NodeTable
     private Cache<Node, NodeId> node2id_Cache = null ;
     private Cache<NodeId, Node> id2node_Cache = null ;
     
+    // Counted on the first, unlocked, lookup.
+    private final LongAdder node2idHits = new LongAdder() ;
+    private final LongAdder node2idMisses = new LongAdder() ;
+    private final LongAdder node2idEvictions = new LongAdder() ;
+    private final LongAdder id2nodeHits = new LongAdder() ;
+    private final LongAdder id2nodeMisses = new LongAdder() ;
+    private final LongAdder id2nodeEvictions = new LongAdder() ;
+    
     // A small cache of "known unknowns" to speed up searching for impossible things.   
     // Cache update needed on NodeTable changes because a node may become "known"
     private CacheSet<Node> notPresent = null ;
     private NodeTable baseTable ;
-    private Object lock = new Object() ;
+    
+    // Cache misses lock the stripe of their key, Node or NodeId.
+    // Both map a node and its id the same way, so they may update the caches concurrently.
+    private static final int LockStripes = 64 ;
+    private final Object[] locks = new Object[LockStripes] ;
 
     public static NodeTable create(NodeTable nodeTable, StoreParams params) {
         int nodeToIdCacheSize = params.getNode2NodeIdCacheSize() ;
@@ -65,13 +83,45 @@ public class NodeTableCache implements NodeTable
 
     private NodeTableCache(NodeTable baseTable, int nodeToIdCacheSize, int idToNodeCacheSize, int nodeMissesCacheSize) {
         this.baseTable = baseTable ;
-        if ( nodeToIdCacheSize > 0 )
-            node2id_Cache = CacheFactory.createCache(nodeToIdCacheSize) ;
-        if ( idToNodeCacheSize > 0 )
-            id2node_Cache = CacheFactory.createCache(idToNodeCacheSize) ;
+        for ( int i = 0 ; i < LockStripes ; i++ )
+            locks[i] = new Object() ;
+        if ( nodeToIdCacheSize > 0 ) {
+            node2id_Cache = CacheFactory.createConcurrentCache(nodeToIdCacheSize) ;
+            node2id_Cache.setDropHandler((n, id) -> node2idEvictions.increment()) ;
+        }
+        if ( idToNodeCacheSize > 0 ) {
+            id2node_Cache = CacheFactory.createConcurrentCache(idToNodeCacheSize) ;
+            id2node_Cache.setDropHandler((id, n) -> id2nodeEvictions.increment()) ;
+        }
         if ( nodeMissesCacheSize > 0 )
             notPresent = CacheFactory.createCacheSet(nodeMissesCacheSize) ;
     }
+    
+    private Object lockFor(Object key) {
+        int h = key.hashCode() ;
+        return locks[(h ^ (h >>> 16)) & (LockStripes-1)] ;
+    }
+    
+    /** Statistics of the Node to NodeId cache, or null if there is none */
+    public CacheInfo getNode2IdCacheInfo() {
+        if ( node2id_Cache == null )
+            return null ;
+        return cacheInfo(node2id_Cache, node2idHits, node2idMisses, node2idEvictions) ;
+    }
+    
+    /** Statistics of the NodeId to Node cache, or null if there is none */
+    public CacheInfo getId2NodeCacheInfo() {
+        if ( id2node_Cache == null )
+            return null ;
+        return cacheInfo(id2node_Cache, id2nodeHits, id2nodeMisses, id2nodeEvictions) ;
+    }
+    
+    private static CacheInfo cacheInfo(Cache<?, ?> cache, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        long h = hits.sum() ;
+        long m = misses.sum() ;
+        double rate = ( h+m == 0 ) ? 1.0 : (double)h/(h+m) ;
+        return new CacheInfo((int)cache.size(), h+m, h, m, rate, evictions.sum()) ;
+    }
 
     @Override
     public final NodeTable wrapped() { return baseTable ; } 
@@ -112,10 +162,13 @@ public class NodeTableCache implements NodeTable
         // Try once outside the synchronized
         // (Cache access is thread-safe) 
         Node n = cacheLookup(id) ;
-        if ( n != null )
+        if ( n != null ) {
+            id2nodeHits.increment() ;
             return n ; 
+        }
+        id2nodeMisses.increment() ;
 
-        synchronized (lock) {
+        synchronized (lockFor(id)) {
             // Lock to update two caches consisently.
             // Verify cache miss
             n = cacheLookup(id) ;
@@ -139,9 +192,12 @@ public class NodeTableCache implements NodeTable
         // Try once outside the synchronized
         // (Cache access is thread-safe.) 
         NodeId nodeId = cacheLookup(node) ;
-        if ( nodeId != null )
+        if ( nodeId != null ) {
+            node2idHits.increment() ;
             return nodeId ; 
-        synchronized (lock) {
+        }
+        node2idMisses.increment() ;
+        synchronized (lockFor(node)) {
             // Update two caches inside synchronized.
             // Check stil valid.
             nodeId = cacheLookup(node) ;
@@ -220,15 +276,12 @@ public class NodeTableCache implements NodeTable
     @Override
     public boolean isEmpty()
     {
-        synchronized (lock)
-        {
-            if ( node2id_Cache != null )
-                return node2id_Cache.isEmpty() ;
-            if ( id2node_Cache != null )
-                id2node_Cache.isEmpty() ;
-            // Write through.
-            return baseTable.isEmpty() ;
-        }
+        if ( node2id_Cache != null )
+            return node2id_Cache.isEmpty() ;
+        if ( id2node_Cache != null )
+            id2node_Cache.isEmpty() ;
+        // Write through.
+        return baseTable.isEmpty() ;
     }
 
     @Override
@@ -22,6 +22,8 @@ import static org.apache.jena.tdb.lib.NodeLib.setHash ;
 
 import java.nio.ByteBuffer ;
 import java.util.Iterator ;
+import java.util.concurrent.locks.ReadWriteLock ;
+import java.util.concurrent.locks.ReentrantReadWriteLock ;
 import java.util.function.Function;
 
 import org.apache.jena.atlas.iterator.Iter ;
@@ -35,11 +37,16 @@ import org.apache.jena.tdb.lib.NodeLib ;
 import org.apache.jena.tdb.store.Hash ;
 import org.apache.jena.tdb.store.NodeId ;
 
-/** A concrete NodeTable based on native storage (string file and an index) */ 
+/**
+ * A concrete NodeTable based on native storage (string file and an index).
+ * With a {@link NamespaceTable}, IRIs are stored by {@link NodecNamespace}.
+ */ 
 public class NodeTableNative implements NodeTable
 {
     protected ObjectFile objects ;
     protected Index nodeHashToId ;          // hash -> int
+    protected NamespaceTable namespaces ;   // May be null.
+    protected Nodec nodec ;
     private boolean syncNeeded = false ;    // Non-transactional mode sync.
     
     // Delayed construction - must call init explicitly.
@@ -47,15 +54,27 @@ public class NodeTableNative implements NodeTable
     
     // Combined into one constructor.
     public NodeTableNative(Index nodeToId, ObjectFile objectFile)
+    {
+        this(nodeToId, objectFile, null) ;
+    }
+    
+    public NodeTableNative(Index nodeToId, ObjectFile objectFile, NamespaceTable namespaces)
     {
         this() ;
-        init(nodeToId, objectFile) ;
+        init(nodeToId, objectFile, namespaces) ;
     }
     
     protected void init(Index nodeToId, ObjectFile objectFile)
+    {
+        init(nodeToId, objectFile, null) ;
+    }
+    
+    protected void init(Index nodeToId, ObjectFile objectFile, NamespaceTable namespaces)
     {
         this.nodeHashToId = nodeToId ;
         this.objects = objectFile;
+        this.namespaces = namespaces ;
+        this.nodec = ( namespaces == null ) ? NodeLib.getNodec() : new NodecNamespace(namespaces) ;
     }
 
     // ---- Public interface for Node <==> NodeId
@@ -95,7 +114,9 @@ public class NodeTableNative implements NodeTable
     // to maintain cache validity which indirectly sync access to the NodeTable.
     // But to be sure, we provide MRSW guarantees on this class.
     // (otherwise if no cache => disaster)
-    // Synchronization happens in accessIndex() and readNodeByNodeId()
+    // Synchronization happens in accessIndex() and readNodeByNodeId():
+    // lookups share the read lock, allocation takes the write lock.
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock() ;
     
     // NodeId to Node worker.
     private Node _retrieveNodeByNodeId(NodeId id)
@@ -129,20 +150,24 @@ public class NodeTableNative implements NodeTable
         // Key only.
         Record r = nodeHashToId.getRecordFactory().create(k) ;
         
-        synchronized (this)  // Pair to readNodeFromTable.
-        {
+        rwLock.readLock().lock() ;  // Pair to readNodeFromTable.
+        try {
             // Key and value, or null
             Record r2 = nodeHashToId.find(r) ;
             if ( r2 != null )
-            {
                 // Found.  Get the NodeId.
-                NodeId id = NodeId.create(r2.getValue(), 0) ;
-                return id ;
-            }
-
+                return NodeId.create(r2.getValue(), 0) ;
             // Not found.
             if ( ! create )
                 return NodeId.NodeDoesNotExist ;
+        } finally { rwLock.readLock().unlock() ; }
+
+        rwLock.writeLock().lock() ;
+        try {
+            // Check again: it may have been added since the read lock was released.
+            Record r2 = nodeHashToId.find(r) ;
+            if ( r2 != null )
+                return NodeId.create(r2.getValue(), 0) ;
             // Write the node, which allocates an id for it.
             NodeId id = writeNodeToTable(node) ;
 
@@ -154,7 +179,7 @@ public class NodeTableNative implements NodeTable
             if ( ! nodeHashToId.add(r) )
                 throw new TDBException("NodeTableBase::nodeToId - record mysteriously appeared") ;
             return id ;
-        }
+        } finally { rwLock.writeLock().unlock() ; }
     }
     
     // -------- NodeId<->Node
@@ -162,25 +187,25 @@ public class NodeTableNative implements NodeTable
     // Null means allocate a fresh buffer each time.
     private final ByteBuffer writeBuffer = ByteBuffer.allocate(1024);
     // Synchronization:
-    //   write: in accessIndex
-    //   read: synchronized here.
+    //   write: in accessIndex, under the write lock
+    //   read: under the read lock here.
     // Only places for accessing the StringFile.
 
     private final NodeId writeNodeToTable(Node node)
     {
         syncNeeded = true ;
-        long x = NodeLib.encodeStore(node, getObjects(), writeBuffer) ;
+        long x = NodeLib.encodeStore(node, getObjects(), writeBuffer, nodec) ;
         return NodeId.create(x);
     }
 
     private final Node readNodeFromTable(NodeId id)
     {
-        synchronized (this) // Pair to accessIndex
-        {
+        rwLock.readLock().lock() ;  // Pair to accessIndex
+        try {
             if ( id.getId() >= getObjects().length() )
                 return null ;
-            return NodeLib.fetchDecode(id.getId(), getObjects()) ;
-        }
+            return NodeLib.fetchDecode(id.getId(), getObjects(), nodec) ;
+        } finally { rwLock.readLock().unlock() ; }
     }
     // -------- NodeId<->Node
 
@@ -198,6 +223,11 @@ public class NodeTableNative implements NodeTable
             getObjects().close() ;
             objects = null ;
         }
+        if ( namespaces != null )
+        {
+            namespaces.close() ;
+            namespaces = null ;
+        }
     }
 
     @Override
@@ -217,7 +247,7 @@ public class NodeTableNative implements NodeTable
 		Function<Pair<Long, ByteBuffer>, Pair<NodeId, Node>> transform = item -> {
 			NodeId id = NodeId.create(item.car().longValue());
 			ByteBuffer bb = item.cdr();
-			Node n = NodeLib.decode(bb);
+			Node n = NodeLib.decode(bb, nodec);
 			return new Pair<>(id, n);
 		};
         return Iter.map(objs, transform) ;
@@ -242,6 +272,11 @@ public class NodeTableNative implements NodeTable
         return nodeHashToId;
     }
 
+    /** The namespaces of the IRIs in this node table, or null. */
+    public NamespaceTable getNamespaces() {
+        return namespaces;
+    }
+
     @Override
     public String toString() { return objects.getLabel() ; }
 
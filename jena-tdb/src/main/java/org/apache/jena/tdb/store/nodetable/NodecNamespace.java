@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import java.nio.ByteBuffer ;
+import java.nio.CharBuffer ;
+
+import org.apache.jena.atlas.io.BlockUTF8 ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.shared.PrefixMapping ;
+import org.apache.jena.tdb.TDBException ;
+
+/**
+ * Encoder/decoder for nodes that writes an IRI as the id of its namespace, in a
+ * {@link NamespaceTable}, and its local name, after a marker byte. Other nodes are
+ * written by {@link NodecSSE}, whose encodings never start with the marker byte, so
+ * node files written before are still read.
+ * <p>
+ * The namespace of an IRI is up to and including the last '/', '#' or ':'.
+ */
+public class NodecNamespace implements Nodec
+{
+    private static final byte Marker = 0x01 ;
+    // Namespace ids, 7 bits per byte.
+    private static final int MaxIdLength = 5 ;
+
+    private final NamespaceTable namespaces ;
+    private final Nodec nodecSSE = new NodecSSE() ;
+
+    public NodecNamespace(NamespaceTable namespaces)
+    {
+        this.namespaces = namespaces ;
+    }
+
+    public NamespaceTable getNamespaceTable()
+    {
+        return namespaces ;
+    }
+
+    @Override
+    public int maxSize(Node node)
+    {
+        if ( node.isURI() )
+            // Local name is no longer than the IRI. 3 bytes is the worst case of a char in UTF-8.
+            return Math.max(1+MaxIdLength+3*node.getURI().length(), nodecSSE.maxSize(node)) ;
+        return nodecSSE.maxSize(node) ;
+    }
+
+    @Override
+    public int encode(Node node, ByteBuffer bb, PrefixMapping pmap)
+    {
+        if ( node.isURI() )
+        {
+            String uri = node.getURI() ;
+            int split = splitNamespace(uri) ;
+            int id = ( split > 0 ) ? namespaces.getAllocateId(uri.substring(0, split)) : -1 ;
+            if ( id >= 0 )
+            {
+                bb.put(Marker) ;
+                for ( ; id >= 0x80 ; id >>>= 7 )
+                    bb.put((byte)(id | 0x80)) ;
+                bb.put((byte)id) ;
+                BlockUTF8.fromChars(CharBuffer.wrap(uri, split, uri.length()), bb) ;
+                bb.flip() ;
+                return bb.limit() ;
+            }
+        }
+        return nodecSSE.encode(node, bb, pmap) ;
+    }
+
+    @Override
+    public Node decode(ByteBuffer bb, PrefixMapping pmap)
+    {
+        if ( ! bb.hasRemaining() || bb.get(bb.position()) != Marker )
+            return nodecSSE.decode(bb, pmap) ;
+        bb.get() ;
+        int id = 0 ;
+        for ( int shift = 0 ; ; shift += 7 )
+        {
+            if ( shift >= 7*MaxIdLength )
+                throw new TDBException("Bad namespace id") ;
+            int b = bb.get() ;
+            id |= ( b & 0x7F ) << shift ;
+            if ( ( b & 0x80 ) == 0 )
+                break ;
+        }
+        String namespace = namespaces.getNamespace(id) ;
+        // The local name is decoded after the namespace, straight from the byte buffer.
+        char[] chars = new char[namespace.length()+bb.remaining()] ;
+        namespace.getChars(0, namespace.length(), chars, 0) ;
+        CharBuffer cb = CharBuffer.wrap(chars, namespace.length(), bb.remaining()) ;
+        BlockUTF8.toChars(bb, cb) ;
+        return NodeFactory.createURI(new String(chars, 0, cb.position())) ;
+    }
+
+    /** Length of the namespace of an IRI, or 0 if it has none. */
+    static int splitNamespace(String uri)
+    {
+        for ( int i = uri.length()-1 ; i >= 0 ; i-- )
+        {
+            char ch = uri.charAt(i) ;
+            if ( ch == '/' || ch == '#' || ch == ':' )
+                return i+1 ;
+        }
+        return 0 ;
+    }
+}
@@ -19,9 +19,11 @@
 package org.apache.jena.tdb.store.nodetable;
 
 import java.nio.ByteBuffer ;
+import java.nio.CharBuffer ;
 
 import org.apache.jena.atlas.io.BlockUTF8 ;
 import org.apache.jena.atlas.lib.StrUtils ;
+import org.apache.jena.datatypes.TypeMapper ;
 import org.apache.jena.graph.Node ;
 import org.apache.jena.graph.NodeFactory ;
 import org.apache.jena.riot.RiotException ;
@@ -93,35 +95,39 @@ public class NodecSSE implements Nodec
     @Override
     public Node decode(ByteBuffer bb, PrefixMapping pmap)
     {
-        // Ideally, this would be straight from the byte buffer.
-        // But currently we go bytes -> string -> node 
-
-        // Byte -> String
-        String str = BlockUTF8.toString(bb) ;
-        //OLD  
-        //String str = Bytes.fromByteBuffer(bb) ;
-        // String -> Node
-        
+        // Bytes -> chars, straight from the byte buffer, which may be a slice of a mapped file.
+        char[] chars = new char[bb.remaining()] ;
+        CharBuffer cb = CharBuffer.wrap(chars) ;
+        BlockUTF8.toChars(bb, cb) ;
+        int len = cb.position() ;
+
         // Easy cases.
-        if ( str.startsWith("_:") )   
+        if ( len >= 2 && chars[0] == '_' && chars[1] == ':' )
         {
             // Must be done this way.
             // In particular, bnode labels can contain ":" from Jena
             // TokenizerText does not recognize these.
-            str = str.substring(2) ;
-            return NodeFactory.createBlankNode(str) ;
+            return NodeFactory.createBlankNode(new String(chars, 2, len-2)) ;
         }
 
-        if ( str.startsWith("<") )
+        if ( len >= 2 && chars[0] == '<' )
         {
             // Do directly.
-            // (is it quicker?)
-            str = str.substring(1,str.length()-1) ;
+            String str = new String(chars, 1, len-2) ;
             str = StrUtils.unescapeString(str) ;
             str = StrUtils.decodeHex(str, MarkerChar) ;
             return NodeFactory.createURI(str) ;
         }
 
+        // Literals as written by encode, without the tokenizer.
+        if ( len >= 2 && chars[0] == '"' )
+        {
+            Node n = decodeLiteral(chars, len) ;
+            if ( n != null )
+                return n ;
+        }
+
+        String str = new String(chars, 0, len) ;
         Tokenizer tokenizer = TokenizerFactory.makeTokenizerString(str) ;
         if ( ! tokenizer.hasNext() )
             throw new TDBException("Failed to tokenise: "+str) ;
@@ -137,6 +143,61 @@ public class NodecSSE implements Nodec
         }
     }
 
+    /**
+     * Decode "lex", "lex"@lang or "lex"^^&lt;datatype&gt; with the escapes that encode
+     * writes, unescaping the lexical form in place. Returns null for anything else,
+     * which is left to the tokenizer.
+     */
+    private static Node decodeLiteral(char[] chars, int len)
+    {
+        int j = 0 ;
+        int i = 1 ;
+        for ( ; i < len ; i++ )
+        {
+            char ch = chars[i] ;
+            if ( ch == '"' )
+                break ;
+            if ( ch == '\\' )
+            {
+                if ( ++i == len )
+                    return null ;
+                switch (chars[i])
+                {
+                    case 'n':   ch = '\n' ; break ;
+                    case 't':   ch = '\t' ; break ;
+                    case 'r':   ch = '\r' ; break ;
+                    case 'f':   ch = '\f' ; break ;
+                    case 'b':   ch = '\b' ; break ;
+                    case '"':   ch = '"' ; break ;
+                    case '\'':  ch = '\'' ; break ;
+                    case '\\':  ch = '\\' ; break ;
+                    default:    return null ;
+                }
+            }
+            chars[j++] = ch ;
+        }
+        if ( i == len )
+            return null ;
+        String lex = new String(chars, 0, j) ;
+        // After the closing quote.
+        i++ ;
+        if ( i == len )
+            return NodeFactory.createLiteral(lex) ;
+        if ( chars[i] == '@' && i+1 < len )
+            return NodeFactory.createLiteral(lex, new String(chars, i+1, len-i-1)) ;
+        if ( i+3 < len && chars[i] == '^' && chars[i+1] == '^' && chars[i+2] == '<' && chars[len-1] == '>' )
+        {
+            for ( int k = i+3 ; k < len-1 ; k++ )
+            {
+                if ( chars[k] == '\\' || chars[k] == '>' )
+                    return null ;
+            }
+            String dt = new String(chars, i+3, len-i-4) ;
+            return NodeFactory.createLiteral(lex, TypeMapper.getInstance().getSafeTypeByName(dt)) ;
+        }
+        return null ;
+    }
+
     // Over-estimate the length of the encoding.
     private static int maxLength(Node node)
     {
@@ -35,6 +35,12 @@ public interface NodeTupleTable extends Sync, Closeable
 
     public boolean deleteRow(Node... nodes) ;
 
+    /** As {@link #addRow}: the tuple of NodeIds added, or null if it was already in the table. */
+    public Tuple<NodeId> addRowIds(Node... nodes) ;
+
+    /** As {@link #deleteRow}: the tuple of NodeIds deleted, or null if it was not in the table. */
+    public Tuple<NodeId> deleteRowIds(Node... nodes) ;
+
     /** Find by node. */
     public Iterator<Tuple<Node>> find(Node... nodes) ;
 
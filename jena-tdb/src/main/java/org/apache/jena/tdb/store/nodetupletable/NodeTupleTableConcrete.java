@@ -76,6 +76,12 @@ public class NodeTupleTableConcrete implements NodeTupleTable
     
     @Override
     public boolean addRow(Node... nodes)
+    {
+        return addRowIds(nodes) != null ;
+    }
+
+    @Override
+    public Tuple<NodeId> addRowIds(Node... nodes)
     {
         try
         {
@@ -85,7 +91,7 @@ public class NodeTupleTableConcrete implements NodeTupleTable
                 n[i] = nodeTable.getAllocateNodeId(nodes[i]) ;
 
             Tuple<NodeId> t = TupleFactory.tuple(n) ;
-            return tupleTable.add(t) ;
+            return tupleTable.add(t) ? t : null ;
         } finally
         {
             finishWrite() ;
@@ -94,6 +100,12 @@ public class NodeTupleTableConcrete implements NodeTupleTable
 
     @Override
     public boolean deleteRow(Node... nodes)
+    {
+        return deleteRowIds(nodes) != null ;
+    }
+
+    @Override
+    public Tuple<NodeId> deleteRowIds(Node... nodes)
     {
         try
         {
@@ -103,12 +115,12 @@ public class NodeTupleTableConcrete implements NodeTupleTable
             {
                 NodeId id = idForNode(nodes[i]) ;
                 if (NodeId.isDoesNotExist(id)) 
-                    return false ;
+                    return null ;
                 n[i] = id ;
             }
 
             Tuple<NodeId> t = TupleFactory.tuple(n) ;
-            return tupleTable.delete(t) ;
+            return tupleTable.delete(t) ? t : null ;
         } finally
         {
             finishWrite() ;
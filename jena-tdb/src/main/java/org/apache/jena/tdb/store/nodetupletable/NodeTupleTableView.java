@@ -55,6 +55,22 @@ public class NodeTupleTableView extends NodeTupleTableWrapper
         nodes = push(Node.class, prefix, nodes) ;
         return super.deleteRow(nodes) ;
     }
+
+    /** The NodeIds added, the prefix first. */
+    @Override
+    public Tuple<NodeId> addRowIds(Node... nodes)
+    {
+        nodes = push(Node.class, prefix, nodes) ;
+        return super.addRowIds(nodes) ;
+    }
+
+    /** The NodeIds deleted, the prefix first. */
+    @Override
+    public Tuple<NodeId> deleteRowIds(Node... nodes)
+    {
+        nodes = push(Node.class, prefix, nodes) ;
+        return super.deleteRowIds(nodes) ;
+    }
     
     @Override
     public Iterator<Tuple<Node>> find(Node... nodes)
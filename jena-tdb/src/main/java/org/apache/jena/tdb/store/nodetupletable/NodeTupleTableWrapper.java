@@ -51,6 +51,14 @@ public class NodeTupleTableWrapper implements NodeTupleTable
     public boolean deleteRow(Node... nodes)
     { return nodeTupleTable.deleteRow(nodes) ; }
 
+    @Override
+    public Tuple<NodeId> addRowIds(Node... nodes)
+    { return nodeTupleTable.addRowIds(nodes) ; }
+
+    @Override
+    public Tuple<NodeId> deleteRowIds(Node... nodes)
+    { return nodeTupleTable.deleteRowIds(nodes) ; }
+
     @Override
     public Iterator<Tuple<Node>> find(Node... nodes)
     { return nodeTupleTable.find(nodes) ; }
@@ -79,6 +79,8 @@ public class FileRef
         file("node2id.dat") ;
         file("prefixIdx.idn") ;
         file("prefixIdx.dat") ;
+        file("nodes.ns") ;
+        file("prefixes.ns") ;
         
         add(1000+idxOffset, "TEST") ;
         add(1001+idxOffset, "TEST1") ;
@@ -46,6 +46,7 @@ public class Names
     
     /** Node file */
     public static final String extNodeData              = "dat" ;           // Extension of node files
+    public static final String extNamespaces            = "ns" ;            // Extension of the IRI namespaces of node files
     public static final String extJournal               = "jrnl" ;          // Extension of node files.
     public static final String journalFileBase          = "journal" ;
     public static final String journalFile              = journalFileBase+"."+extJournal ;
@@ -65,6 +66,8 @@ public class Names
     public static final String optFixed                 = "fixed.opt" ;
     public static final String optNone                  = "none.opt" ; 
     public static final String optDefault               = optFixed ;
+    /** Statistics of the triple table kept up to date with updates */
+    public static final String liveStats                = "stats.live" ;
     
     public static final String extMeta                  = "info" ;
     public static final String directoryMetafile        = "this" ;          // Root name of the directory for a metafile.  
@@ -24,15 +24,23 @@ import org.apache.jena.query.ReadWrite ;
 import org.apache.jena.tdb.TDBException ;
 import org.apache.jena.tdb.base.block.BlockMgr ;
 import org.apache.jena.tdb.base.block.BlockMgrReadonly ;
+import org.apache.jena.tdb.base.block.FileMode ;
 import org.apache.jena.tdb.base.file.FileSet ;
 import org.apache.jena.tdb.base.objectfile.ObjectFile ;
 import org.apache.jena.tdb.base.objectfile.ObjectFileReadonly ;
+import org.apache.jena.tdb.base.objectfile.ObjectFileStorage ;
 import org.apache.jena.tdb.index.IndexParams ;
 import org.apache.jena.tdb.setup.BlockMgrBuilder ;
 import org.apache.jena.tdb.setup.DatasetBuilderStd ;
+import org.apache.jena.tdb.setup.NamespaceTableBuilder ;
 import org.apache.jena.tdb.setup.ObjectFileBuilder ;
+import org.apache.jena.tdb.solver.stats.TripleStats ;
 import org.apache.jena.tdb.store.DatasetGraphTDB ;
+import org.apache.jena.tdb.store.TripleTable ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTable ;
+import org.apache.jena.tdb.store.nodetable.NamespaceTableReadonly ;
 import org.apache.jena.tdb.sys.FileRef ;
+import org.apache.jena.tdb.sys.SystemTDB ;
 
 public class DatasetBuilderTxn
 {
@@ -40,6 +48,7 @@ public class DatasetBuilderTxn
     private final TransactionManager txnMgr ;
     private final Map<FileRef, BlockMgr> blockMgrs ; 
     private final Map<FileRef, ObjectFile> objectFiles; 
+    private final Map<FileRef, NamespaceTable> namespaceTables; 
     private final DatasetGraphTDB dsg ;
     private Transaction txn;
 
@@ -47,6 +56,7 @@ public class DatasetBuilderTxn
         this.txnMgr = txnMgr ;
         this.blockMgrs = dsg.getConfig().blockMgrs ;
         this.objectFiles = dsg.getConfig().objectFiles ;
+        this.namespaceTables = dsg.getConfig().namespaceTables ;
         this.dsg = dsg ;
     }
     
@@ -70,17 +80,28 @@ public class DatasetBuilderTxn
     private DatasetGraphTDB buildReadonly() {
         BlockMgrBuilder blockMgrBuilder = new BlockMgrBuilderReadonly();
         ObjectFileBuilder objectFileBuilder = new ObjectFileBuilderReadonly();
-        DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, objectFileBuilder) ;
+        NamespaceTableBuilder namespaceTableBuilder = new NamespaceTableBuilderReadonly() ;
+        DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, objectFileBuilder, namespaceTableBuilder) ;
         DatasetGraphTDB dsg2 = x._build(dsg.getLocation(), dsg.getConfig().params, false, dsg.getReorderTransform()) ;
+        TripleStats stats = dsg.getTripleTable().getStats() ;
+        if ( stats != null )
+            dsg2.getTripleTable().setStats(stats.view(dsg2.getTripleTable().getNodeTupleTable().getNodeTable())) ;
         return dsg2 ;
     }
 
     private DatasetGraphTDB buildWritable() {
         BlockMgrBuilder blockMgrBuilder = new BlockMgrBuilderTx() ;
         ObjectFileBuilder objectFileBuilder = new ObjectFileBuilderTx();
-        DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, objectFileBuilder);
+        NamespaceTableBuilder namespaceTableBuilder = new NamespaceTableBuilderTx() ;
+        DatasetBuilderStd x = new DatasetBuilderStd(blockMgrBuilder, objectFileBuilder, namespaceTableBuilder);
         DatasetGraphTDB dsg2 = x._build(dsg.getLocation(), dsg.getConfig().params, true, dsg.getReorderTransform()) ;
         dsg2.getContext().putAll(dsg.getContext()) ;
+        TripleStats stats = dsg.getTripleTable().getStats() ;
+        if ( stats != null ) {
+            TripleStats changes = stats.changes(dsg2.getTripleTable().getNodeTupleTable().getNodeTable()) ;
+            dsg2.getTripleTable().setStats(changes) ;
+            txn.addAdditionaComponent(new StatsTx(dsg2.getTripleTable())) ;
+        }
         return dsg2 ;
     }
 
@@ -117,6 +138,55 @@ public class DatasetBuilderTxn
         }
     }
 
+    class NamespaceTableBuilderTx implements NamespaceTableBuilder
+    {
+        @Override
+        public NamespaceTable buildNamespaceTable(FileSet fileSet, String ext) {
+            FileRef ref = FileRef.create(fileSet, ext) ;
+            NamespaceTable base = namespaceTables.get(ref) ;
+            if ( base == null )
+                throw new TDBException("No NamespaceTable for " + ref) ;
+            // New namespaces are kept until the commit and dropped on abort.
+            NamespaceTableTrans namespacesTxn = new NamespaceTableTrans(txn, base) ;
+            txn.addComponent(namespacesTxn) ;
+            return namespacesTxn ;
+        }
+    }
+
+    /**
+     * Adds the statistics of the changes of the transaction to the dataset's, and writes them,
+     * when it commits. The dataset of the transaction may be the base of the next ones until
+     * the journal is flushed, so it then reads the dataset's statistics.
+     */
+    static class StatsTx implements TransactionLifecycle
+    {
+        private final TripleTable tripleTable ;
+
+        StatsTx(TripleTable tripleTable) {
+            this.tripleTable = tripleTable ;
+        }
+
+        @Override
+        public void begin(Transaction txn) {}
+
+        @Override
+        public void abort(Transaction txn) {}
+
+        @Override
+        public void commitPrepare(Transaction txn) {}
+
+        @Override
+        public void committed(Transaction txn) {
+            tripleTable.setStats(tripleTable.getStats().commit()) ;
+        }
+
+        @Override
+        public void enactCommitted(Transaction txn) {}
+
+        @Override
+        public void clearupCommitted(Transaction txn) {}
+    }
+
     // ---- Build passthrough versions for readonly access
 
     class BlockMgrBuilderReadonly implements BlockMgrBuilder
@@ -138,8 +208,26 @@ public class DatasetBuilderTxn
         public ObjectFile buildObjectFile(FileSet fileSet, String ext) {
             FileRef ref = FileRef.create(fileSet, ext) ;
             ObjectFile file = objectFiles.get(ref) ;
+            // Objects as slices of the mapped file, not copies.
+            // Not on MS Windows, where a mapped file can not be truncated on abort.
+            if ( file instanceof ObjectFileStorage && SystemTDB.fileMode() == FileMode.mapped && ! SystemTDB.isWindows ) {
+                ObjectFile mapped = ((ObjectFileStorage)file).getMappedReadonly() ;
+                if ( mapped != null )
+                    return mapped ;
+            }
             return new ObjectFileReadonly(file);
         }
     }
-}
 
+    class NamespaceTableBuilderReadonly implements NamespaceTableBuilder
+    {
+        @Override
+        public NamespaceTable buildNamespaceTable(FileSet fileSet, String ext) {
+            FileRef ref = FileRef.create(fileSet, ext) ;
+            NamespaceTable namespaceTable = namespaceTables.get(ref) ;
+            if ( namespaceTable == null )
+                throw new TDBException("No NamespaceTable for " + ref) ;
+            return new NamespaceTableReadonly(namespaceTable) ;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.transaction;
+
+import java.util.ArrayList ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.apache.jena.tdb.store.nodetable.NamespaceTable ;
+
+/**
+ * Add transactionality control to a {@link NamespaceTable}. Namespaces added by the
+ * transaction are kept in memory, with the ids that follow those of the base table,
+ * and are written to the base table when it commits, before the node files that use
+ * them are synced. On abort, they are dropped.
+ * <p>
+ * Readers do not see the new namespaces, nor any node that uses them, until the
+ * transaction commits. A crash between the prepare and the commit point leaves unused
+ * namespaces in the base table.
+ */
+class NamespaceTableTrans implements NamespaceTable, TransactionLifecycle
+{
+    private final NamespaceTable base ;
+    private final List<String> added = new ArrayList<>() ;
+    private final Map<String, Integer> addedIds = new HashMap<>() ;
+    private int start ;
+
+    NamespaceTableTrans(Transaction txn /*unused*/, NamespaceTable base) {
+        this.base = base ;
+        this.start = base.size() ;
+    }
+
+    @Override
+    public String getNamespace(int id) {
+        if ( id >= start && id < start+added.size() )
+            return added.get(id-start) ;
+        return base.getNamespace(id) ;
+    }
+
+    @Override
+    public int getId(String namespace) {
+        int id = base.getId(namespace) ;
+        if ( id >= 0 )
+            return id ;
+        Integer x = addedIds.get(namespace) ;
+        return ( x == null ) ? -1 : x ;
+    }
+
+    @Override
+    public int getAllocateId(String namespace) {
+        int id = getId(namespace) ;
+        if ( id >= 0 )
+            return id ;
+        if ( start+added.size() >= MaxNamespaces )
+            return -1 ;
+        id = start+added.size() ;
+        added.add(namespace) ;
+        addedIds.put(namespace, id) ;
+        return id ;
+    }
+
+    @Override
+    public int size() {
+        return start+added.size() ;
+    }
+
+    @Override
+    public void begin(Transaction txn) {
+        start = base.size() ;
+        added.clear() ;
+        addedIds.clear() ;
+    }
+
+    @Override
+    public void abort(Transaction txn) {
+        added.clear() ;
+        addedIds.clear() ;
+    }
+
+    @Override
+    public void commitPrepare(Transaction txn) {
+        // Write early - before the node file, and the journal, are synced.
+        for ( int i = 0 ; i < added.size() ; i++ ) {
+            int id = base.getAllocateId(added.get(i)) ;
+            if ( id != start+i )
+                throw new TDBTransactionException("Namespace id "+(start+i)+" written as "+id+": "+added.get(i)) ;
+        }
+    }
+
+    @Override
+    public void committed(Transaction txn) { }
+
+    @Override
+    public void enactCommitted(Transaction txn) { }
+
+    @Override
+    public void clearupCommitted(Transaction txn) { }
+
+    // The base table is shared with the dataset.
+    @Override
+    public void close() { }
+}
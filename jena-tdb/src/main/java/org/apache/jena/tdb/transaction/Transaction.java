@@ -42,6 +42,7 @@ public class Transaction
     private final TxnType originalTxnType ;
     private final ReadWrite mode ;
     
+    private final List<NamespaceTableTrans> namespaceTables = new ArrayList<>() ;
     private final List<ObjectFileTrans> objectFileTrans = new ArrayList<>() ;
     private final List<BlockMgrJournal> blkMgrs = new ArrayList<>() ;
     private final List<TransactionLifecycle> others = new ArrayList<>() ;
@@ -187,6 +188,8 @@ public class Transaction
     }
     
     /*package*/ void forAllComponents(Consumer<TransactionLifecycle> action) {
+        // Namespaces before the node files that use them.
+        namespaceTables.forEach(action);
         objectFileTrans.forEach(action);
         blkMgrs.forEach(action);
         others.forEach(action);
@@ -334,6 +337,10 @@ public class Transaction
     
     // For development and tracking, keep these as separate lists.
     
+    /*package*/ void addComponent(NamespaceTableTrans namespaces) {
+        namespaceTables.add(namespaces) ;
+    }
+
     /*package*/ void addComponent(ObjectFileTrans oft) {
         objectFileTrans.add(oft);
     }
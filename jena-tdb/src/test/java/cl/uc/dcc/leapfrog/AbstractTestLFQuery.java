@@ -0,0 +1,139 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb.TDB;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.solver.OpExecutorTDB1;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.junit.AfterClass;
+
+/**
+ * Queries over a TDB dataset run by the leapfrog and checked against the TDB executor. Each test class fills the
+ * dataset in its {@code @BeforeClass}, after {@link #createDataset}.
+ */
+public abstract class AbstractTestLFQuery {
+
+	protected static final String NS = "http://example/";
+	protected static final String PRE = "PREFIX : <" + NS + "> PREFIX xsd: <http://www.w3.org/2001/XMLSchema#> ";
+
+	/** Settings of a query with the union of the named graphs as its default graph. */
+	protected static final Consumer<Context> unionDefaultGraph = context -> context.set(TDB.symUnionDefaultGraph, true);
+
+	protected static DatasetGraph dsg;
+	protected static Dataset dataset;
+
+	protected static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	/** A new, empty, in-memory dataset for the queries of the class. */
+	protected static void createDataset() {
+		dsg = TDBFactory.createDatasetGraph();
+		dataset = DatasetFactory.wrap(dsg);
+	}
+
+	@AfterClass public static void clearDataset() {
+		dsg = null;
+		dataset = null;
+	}
+
+	/** The rows of the query, sorted. */
+	protected static List<String> exec(String qs, boolean leapfrog) {
+		return exec(qs, leapfrog, null);
+	}
+
+	/** The rows of the query, sorted, with settings applied to the context of the execution if not null. */
+	protected static List<String> exec(String qs, boolean leapfrog, Consumer<Context> settings) {
+		List<String> rows = exec(qs, leapfrog, settings, AbstractTestLFQuery::row);
+		Collections.sort(rows);
+		return rows;
+	}
+
+	/** The rows of the query, in the order it gives them, each formatted by format. */
+	protected static List<String> exec(String qs, boolean leapfrog, Consumer<Context> settings, Function<Binding, String> format) {
+		try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, dataset) ) {
+			if (settings != null) {
+				settings.accept(qExec.getContext());
+			}
+			return rows(qExec, leapfrog, format);
+		}
+	}
+
+	/** The rows of a query execution, by the leapfrog or else the TDB executor. */
+	protected static List<String> rows(QueryExecution qExec, boolean leapfrog, Function<Binding, String> format) {
+		if (!leapfrog) {
+			QC.setFactory(qExec.getContext(), OpExecutorTDB1.OpExecFactoryTDB);
+		}
+		List<String> rows = new ArrayList<>();
+		ResultSet rs = qExec.execSelect();
+		while (rs.hasNext()) {
+			rows.add(format.apply(rs.nextBinding()));
+		}
+		return rows;
+	}
+
+	/**
+	 * The values of the named variables of binding by name only: the executors nest the bindings differently, and
+	 * allocate different variables of their own.
+	 */
+	protected static String row(Binding binding) {
+		List<Var> vars = Iter.toList(Iter.filter(binding.vars(), v -> v.isNamedVar()));
+		vars.sort(Comparator.comparing(Var::getVarName));
+		StringBuilder row = new StringBuilder();
+		for (Var v : vars) {
+			row.append(v.getVarName()).append('=').append(binding.get(v)).append(' ');
+		}
+		return row.toString();
+	}
+
+	/** The same rows, at least one, by the leapfrog and by the TDB executor. */
+	protected static void test(String qs) {
+		test(qs, null);
+	}
+
+	protected static void test(String qs, Consumer<Context> settings) {
+		List<String> expected = exec(qs, false, settings);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, exec(qs, true, settings));
+	}
+
+	/** The tree of an op in SSE, its BGPs in the order written, before init. */
+	protected static OptionalTreeNode tree(String op) {
+		return OptionalTreeNode.getNode(TDBInternal.getDatasetGraphTDB(dsg), SSE.parseOp(op, SSE.getPrefixMapRead()), ReorderLib.identity());
+	}
+
+	/** Number of bindings of the tree, after init. */
+	protected static int count(OptionalTreeNode tree) {
+		tree.init(new Var[0]);
+		int n = 0;
+		while (tree.hasNext()) {
+			tree.next();
+			n++;
+		}
+		return n;
+	}
+}
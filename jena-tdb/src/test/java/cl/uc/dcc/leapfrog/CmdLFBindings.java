@@ -0,0 +1,110 @@
+package cl.uc.dcc.leapfrog;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Throughput, allocation and GC of queries returning a million rows, with every variable of every row decoded
+ * to a Node, from the leapfrog bindings to the {@link org.apache.jena.tdb.solver.BindingTDB}s of the results.
+ * Allocation is per thread, measured through com.sun.management.ThreadMXBean when available.
+ * Usage: CmdLFBindings [fanOut] [numRounds]
+ */
+public class CmdLFBindings {
+
+	private static final String NS = "http://example/";
+	private static final String PRE = "PREFIX : <" + NS + "> ";
+
+	private static final String[] queries = {
+		// fanOut^3 rows from the leapfrog
+		"SELECT * { ?x :p ?y . ?z :q ?y }",
+		// the same rows from the caches of two OPTIONALs
+		"SELECT * { ?y a :Y OPTIONAL { ?x :p ?y } OPTIONAL { ?z :q ?y } }",
+	};
+
+	public static void main(String... argv) {
+		int fanOut = (argv.length > 0) ? Integer.parseInt(argv[0]) : 100;
+		int numRounds = (argv.length > 1) ? Integer.parseInt(argv[1]) : 5;
+
+		Graph graph = TDBFactory.createDatasetGraph().getDefaultGraph();
+		for (int y = 0; y < fanOut; y++) {
+			graph.add(Triple.create(uri("y" + y), RDF.type.asNode(), uri("Y")));
+			for (int i = 0; i < fanOut; i++) {
+				graph.add(Triple.create(uri("x" + y + "_" + i), uri("p"), uri("y" + y)));
+				graph.add(Triple.create(uri("z" + y + "_" + i), uri("q"), uri("y" + y)));
+			}
+		}
+		Model model = ModelFactory.createModelForGraph(graph);
+
+		for (String qs : queries) {
+			System.out.println(qs);
+			for (int round = 0; round < numRounds; round++) {
+				long gcCount0 = gcCount();
+				long gcTime0 = gcTime();
+				long alloc0 = allocatedBytes();
+				long time0 = System.nanoTime();
+				long rows = 0;
+				try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, model) ) {
+					ResultSet rs = qExec.execSelect();
+					while (rs.hasNext()) {
+						Binding b = rs.nextBinding();
+						for (Iterator<Var> vars = b.vars(); vars.hasNext(); ) {
+							b.get(vars.next());
+						}
+						rows++;
+					}
+				}
+				long time = System.nanoTime() - time0;
+				long alloc = allocatedBytes() - alloc0;
+				System.out.printf("%s: %,d rows  %.2f ms  %,.0f rows/s  %s  GC %d in %d ms\n",
+				                  Lib.classShortName(CmdLFBindings.class), rows, time/1e6, rows/(time/1e9),
+				                  alloc < 0 ? "" : String.format("%,.1f bytes/row", (double) alloc/rows),
+				                  gcCount() - gcCount0, gcTime() - gcTime0);
+			}
+		}
+	}
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/** Bytes allocated by this thread, negative if the JVM can't tell. */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
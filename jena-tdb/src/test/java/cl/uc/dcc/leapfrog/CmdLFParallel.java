@@ -0,0 +1,44 @@
+package cl.uc.dcc.leapfrog;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb.TDBFactory;
+
+/**
+ * Time of a LUBM-style BGP run by {@link ParallelOptionalTree} with an increasing number of ranges,
+ * on the data of {@link CmdLFVarOrder}.
+ * Usage: CmdLFParallel [numUniversities] [maxParallelism]
+ */
+public class CmdLFParallel {
+
+	private static final String query = "PREFIX : <" + CmdLFVarOrder.NS + "> "
+	                                    + "SELECT * { ?x :takesCourse ?c . ?p :teacherOf ?c . ?x :advisor ?p . ?x :memberOf ?d . ?p :worksFor ?d }";
+
+	public static void main(String... argv) {
+		int numUniversities = (argv.length > 0) ? Integer.parseInt(argv[0]) : 50;
+		int maxParallelism = (argv.length > 1) ? Integer.parseInt(argv[1]) : Runtime.getRuntime().availableProcessors();
+
+		DatasetGraph dsg = TDBFactory.createDatasetGraph();
+		CmdLFVarOrder.generate(dsg.getDefaultGraph(), numUniversities);
+		Model model = ModelFactory.createModelForGraph(dsg.getDefaultGraph());
+
+		for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+			for (int round = 0; round < 3; round++) {
+				long time0 = System.nanoTime();
+				long rows;
+				try ( QueryExecution qExec = QueryExecutionFactory.create(query, model) ) {
+					qExec.getContext().set(ParallelOptionalTree.symParallelism, parallelism);
+					qExec.getContext().set(ParallelOptionalTree.symParallelOrdered, false);
+					rows = ResultSetFormatter.consume(qExec.execSelect());
+				}
+				System.out.printf("%s: parallelism %d  %,d rows  %.2f ms\n",
+				                  Lib.classShortName(CmdLFParallel.class), parallelism, rows, (System.nanoTime()-time0)/1e6);
+			}
+		}
+	}
+}
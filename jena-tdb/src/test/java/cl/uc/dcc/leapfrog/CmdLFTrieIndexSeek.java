@@ -0,0 +1,47 @@
+package cl.uc.dcc.leapfrog;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.tdb.index.bplustree.BPlusTree;
+
+/**
+ * Seek micro-benchmark for {@link LFTrieIndex}: time and bytes allocated per seek
+ * on the last level of an in-memory B+Tree.
+ * Usage: CmdLFTrieIndexSeek [numTuples] [numRounds]
+ */
+public class CmdLFTrieIndexSeek {
+
+	public static void main(String... argv) {
+		int numTuples = (argv.length > 0) ? Integer.parseInt(argv[0]) : 1_000_000;
+		int numRounds = (argv.length > 1) ? Integer.parseInt(argv[1]) : 10;
+
+		long[][] tuples = new long[numTuples][];
+		for (int i = 0; i < numTuples; i++) {
+			tuples[i] = new long[] { 1, 1, 2L*i };
+		}
+		BPlusTree bpt = TestLFTrieIndex.build(tuples, 100, 100);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		for (int round = 0; round < numRounds; round++) {
+			LFTrieIndex it = TestLFTrieIndex.trie(bpt);
+			it.open();
+			it.open();
+			it.open();
+
+			long bytes0 = threads.getThreadAllocatedBytes(threadId);
+			long time0 = System.nanoTime();
+			long seeks = 0;
+			// Short forward hops, as in a leapfrog intersection.
+			for (long key = 3; !it.atEnd(); key += 5) {
+				it.seek(key);
+				seeks++;
+			}
+			long time = System.nanoTime() - time0;
+			long bytes = threads.getThreadAllocatedBytes(threadId) - bytes0;
+			System.out.printf("%s: %,d seeks  %.1f ns/seek  %.2f bytes/seek\n",
+			                  Lib.classShortName(CmdLFTrieIndexSeek.class), seeks, (double)time/seeks, (double)bytes/seeks);
+		}
+	}
+}
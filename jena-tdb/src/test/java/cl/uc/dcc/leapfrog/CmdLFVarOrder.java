@@ -0,0 +1,116 @@
+package cl.uc.dcc.leapfrog;
+
+import java.util.Arrays;
+
+import org.apache.jena.atlas.lib.Lib;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Compares the heuristic variable order of {@link BGPIter} with the one chosen by {@link LFCostModel}
+ * over BGPs in the style of LUBM and WatDiv, on generated in-memory data.
+ * Usage: CmdLFVarOrder [numUniversities] [numRounds]
+ */
+public class CmdLFVarOrder {
+
+	static final String NS = "http://example/lubm#";
+
+	private static final String[] queries = {
+		// LUBM Q2: triangle
+		"SELECT * { ?x a :GraduateStudent . ?y a :University . ?z a :Department . ?x :memberOf ?z . ?z :subOrganizationOf ?y . ?x :undergraduateDegreeFrom ?y }",
+		// LUBM Q9: triangle through advisor
+		"SELECT * { ?x :advisor ?y . ?y :teacherOf ?z . ?x :takesCourse ?z }",
+		// WatDiv style snowflake, anchored on a single university
+		"SELECT * { ?x :takesCourse ?c . ?x :memberOf ?d . ?d :subOrganizationOf :University3 . ?p :teacherOf ?c }",
+		// WatDiv style star with a selective constant at the end
+		"SELECT * { ?x :memberOf ?d . ?x :advisor ?p . ?p :worksFor ?d . ?x :takesCourse :Course3_4_1 }",
+	};
+
+	public static void main(String... argv) {
+		int numUniversities = (argv.length > 0) ? Integer.parseInt(argv[0]) : 10;
+		int numRounds = (argv.length > 1) ? Integer.parseInt(argv[1]) : 5;
+
+		DatasetGraph dsg = TDBFactory.createDatasetGraph();
+		generate(dsg.getDefaultGraph(), numUniversities);
+		NodeTupleTable ntt = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable();
+		ReorderTransformation reorder = ReorderLib.fixed();
+
+		for (String qs : queries) {
+			Query query = QueryFactory.create("PREFIX : <" + NS + "> " + qs);
+			BasicPattern pattern = reorder.reorder(((OpBGP) Algebra.compile(query)).getPattern());
+			for (int round = 0; round < numRounds; round++) {
+				long[] heuristic = run(new BGPIter(pattern, ntt));
+				long[] cost = run(new BGPIter(pattern, ntt, new LFCostModel(ntt, reorder)));
+				System.out.printf("%s: %,d rows  heuristic %.2f ms  cost %.2f ms\n",
+				                  Lib.classShortName(CmdLFVarOrder.class), heuristic[0], heuristic[1]/1e6, cost[1]/1e6);
+			}
+			System.out.println("    heuristic order: " + Arrays.asList(new BGPIter(pattern, ntt).init(new Var[0])));
+			System.out.println("    cost order:      " + Arrays.asList(new BGPIter(pattern, ntt, new LFCostModel(ntt, reorder)).init(new Var[0])));
+		}
+	}
+
+	/** @return the number of rows and the time, in ns, to get them all */
+	private static long[] run(BGPIter iter) {
+		long time0 = System.nanoTime();
+		iter.init(new Var[0]);
+		long rows = 0;
+		if (iter.openTerms()) {
+			iter.open();
+			while (iter.hasNext()) {
+				rows++;
+			}
+		}
+		return new long[] { rows, System.nanoTime() - time0 };
+	}
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	// LUBM-like: universities with departments, professors teaching courses, students taking them.
+	static void generate(Graph graph, int numUniversities) {
+		Node type = RDF.type.asNode();
+		for (int u = 0; u < numUniversities; u++) {
+			Node univ = uri("University" + u);
+			graph.add(Triple.create(univ, type, uri("University")));
+			for (int d = 0; d < 15; d++) {
+				Node dept = uri("Department" + u + "_" + d);
+				graph.add(Triple.create(dept, type, uri("Department")));
+				graph.add(Triple.create(dept, uri("subOrganizationOf"), univ));
+				for (int p = 0; p < 10; p++) {
+					Node prof = uri("Professor" + u + "_" + d + "_" + p);
+					graph.add(Triple.create(prof, type, uri("FullProfessor")));
+					graph.add(Triple.create(prof, uri("worksFor"), dept));
+					for (int c = 0; c < 2; c++) {
+						graph.add(Triple.create(prof, uri("teacherOf"), uri("Course" + u + "_" + d + "_" + (2*p+c))));
+					}
+				}
+				for (int s = 0; s < 50; s++) {
+					Node student = uri("Student" + u + "_" + d + "_" + s);
+					graph.add(Triple.create(student, type, uri(s % 5 == 0 ? "GraduateStudent" : "UndergraduateStudent")));
+					graph.add(Triple.create(student, uri("memberOf"), dept));
+					graph.add(Triple.create(student, uri("advisor"), uri("Professor" + u + "_" + d + "_" + (s % 10))));
+					graph.add(Triple.create(student, uri("undergraduateDegreeFrom"), uri("University" + ((u + s) % numUniversities))));
+					for (int c = 0; c < 3; c++) {
+						graph.add(Triple.create(student, uri("takesCourse"), uri("Course" + u + "_" + d + "_" + ((s + 7*c) % 20))));
+					}
+				}
+			}
+		}
+	}
+}
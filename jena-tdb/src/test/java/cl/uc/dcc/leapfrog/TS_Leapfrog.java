@@ -0,0 +1,29 @@
+package cl.uc.dcc.leapfrog;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses( {
+	TestLFTrieIndex.class
+	, TestLFCostModel.class
+	, TestParallelOptionalTree.class
+	, TestLFBindingCache.class
+	, TestLFBindingNodeId.class
+	, TestLFMaterializer.class
+	, TestLFQuads.class
+	, TestLFHybrid.class
+	, TestLFRangeFilter.class
+	, TestLFDistinct.class
+	, TestLFGroupCount.class
+	, TestLFOrderBy.class
+	, TestLFCancel.class
+	, TestLFExplain.class
+	, TestLFChildMemo.class
+	, TestLFTrieSnapshot.class
+	, TestLFBatch.class
+} )
+
+public class TS_Leapfrog {
+
+}
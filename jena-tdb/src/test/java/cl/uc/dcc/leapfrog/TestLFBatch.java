@@ -0,0 +1,97 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** VALUES blocks of one variable run as a single leapfrog, and queries run for many values of a variable. */
+public class TestLFBatch extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 60; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("type"), uri("t" + (i % 6)));
+			if (i % 4 != 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("name"), NodeFactory.createLiteral("n" + i));
+			}
+			if (i % 3 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("knows"), uri("s" + ((i * 7) % 60)));
+			}
+		}
+	}
+
+	@Test public void batch_values_01() {
+		test("SELECT * { VALUES ?t { :t1 :t3 :t4 } ?s :type ?t . ?s :name ?n }");
+	}
+
+	@Test public void batch_values_02() {
+		// a value not in the data, and an OPTIONAL
+		test("SELECT * { VALUES ?t { :t2 :nothing :t5 } ?s :type ?t OPTIONAL { ?s :knows ?o . ?o :type ?u } }");
+	}
+
+	@Test public void batch_values_03() {
+		// run as a join: a value twice, two variables
+		test("SELECT * { VALUES ?t { :t1 :t1 } ?s :type ?t }");
+		test("SELECT * { VALUES (?t ?s) { (:t1 :s1) (:t2 :s2) (:t1 :s7) } ?s :type ?t . ?s :name ?n }");
+	}
+
+	@Test public void batch_values_04() {
+		assertTrue(exec("SELECT * { VALUES ?t { :nothing } ?s :type ?t }", true).isEmpty());
+	}
+
+	@Test public void batch_plan_01() {
+		String op = "(bgp (?s <" + NS + "type> ?t) (?s <" + NS + "name> ?n))";
+		OptionalTreeNode tree = tree(op);
+		tree.setValues(Var.alloc("t"), Arrays.asList(uri("t1"), uri("t3"), uri("nothing")));
+		// the subjects of t1 and t3, all with a name
+		assertEquals(20, count(tree));
+		assertTrue(LFExplain.plan(tree, false).contains("values ?t  2 keys"));
+	}
+
+	@Test public void batch_exec_01() {
+		Query query = QueryFactory.create(PRE + "SELECT ?s ?n { ?s :type ?t . ?s :name ?n } ORDER BY ?n");
+		List<Node> values = Arrays.asList(uri("t0"), uri("t4"), uri("nothing"));
+		Map<Node, List<Binding>> results = LFBatch.exec(query, Var.alloc("t"), values, dataset);
+		assertEquals(values, new ArrayList<>(results.keySet()));
+		for (Node value : values) {
+			String qs = "SELECT ?s ?n { ?s :type <" + value.getURI() + "> . ?s :name ?n } ORDER BY ?n";
+			List<String> expected = new ArrayList<>();
+			try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, dataset) ) {
+				ResultSet rs = qExec.execSelect();
+				while (rs.hasNext()) {
+					expected.add(rs.next().get("n").toString());
+				}
+			}
+			List<String> actual = new ArrayList<>();
+			for (Binding binding : results.get(value)) {
+				assertEquals(value, binding.get(Var.alloc("t")));
+				actual.add(binding.get(Var.alloc("n")).getLiteralLexicalForm());
+			}
+			assertEquals(expected, actual);
+		}
+		assertTrue(results.get(uri("nothing")).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batch_exec_02() {
+		Query query = QueryFactory.create(PRE + "SELECT * { ?s :type ?t } LIMIT 3");
+		LFBatch.exec(query, Var.alloc("t"), Arrays.asList(uri("t0")), dataset);
+	}
+}
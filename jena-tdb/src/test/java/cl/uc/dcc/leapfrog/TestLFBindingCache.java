@@ -0,0 +1,139 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestLFBindingCache {
+
+	private static final String NS = "http://example/";
+	private static final String PRE = "PREFIX : <" + NS + "> ";
+	private static final Var x = Var.alloc("x");
+	private static final Var y = Var.alloc("y");
+	private static Model model;
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	// :a has 1500 :p values and 40 :q values, the OPTIONALs on them overflowed the old fixed cache.
+	@BeforeClass public static void beforeClass() {
+		Graph graph = TDBFactory.createDatasetGraph().getDefaultGraph();
+		for (int i = 0; i < 1500; i++) {
+			graph.add(Triple.create(uri("a"), uri("p"), uri("b" + i)));
+		}
+		for (int i = 0; i < 40; i++) {
+			graph.add(Triple.create(uri("a"), uri("q"), uri("c" + i)));
+		}
+		graph.add(Triple.create(uri("a"), uri("type"), uri("T")));
+		graph.add(Triple.create(uri("d"), uri("type"), uri("T")));
+		model = ModelFactory.createModelForGraph(graph);
+	}
+
+	// Bindings indexed by the attribute order (y, z, x), the cache only keeps x and y.
+	private static final Var[] vars = { y, Var.alloc("z"), x };
+	private static final int[] columns = { 2, 0 };
+
+	private static long[] ids(long xId, long yId) {
+		return new long[] { yId >= 0 ? yId : LFBindingNodeId.UNBOUND, 7, xId };
+	}
+
+	private static void fill(LFBindingCache cache, int n) {
+		cache.clear();
+		for (int i = 0; i < n; i++) {
+			cache.add(ids(i, i % 2 == 0 ? 100 + i : -1));
+		}
+	}
+
+	private static void check(LFBindingCache cache, int n) {
+		for (int round = 0; round < 2; round++) {
+			cache.rewind();
+			for (int i = 0; i < n; i++) {
+				assertTrue(cache.advance());
+				long[] ids = ids(-1, -1);
+				ids[2] = LFBindingNodeId.UNBOUND;
+				cache.extend(ids);
+				BindingNodeId b = new LFBindingNodeId(vars, ids);
+				assertEquals(i, b.get(x).getId());
+				if (i % 2 == 0) {
+					assertEquals(100 + i, b.get(y).getId());
+				} else {
+					assertFalse(b.containsKey(y));
+				}
+			}
+			assertFalse(cache.advance());
+		}
+	}
+
+	@Test public void cache_memory_01() {
+		LFBindingCache cache = new LFBindingCache(columns, -1);
+		fill(cache, 5000);
+		assertEquals(5000, cache.size());
+		assertFalse(cache.isSpilled());
+		check(cache, 5000);
+		cache.close();
+	}
+
+	@Test public void cache_spill_01() {
+		LFBindingCache cache = new LFBindingCache(columns, 100);
+		fill(cache, 1000);
+		assertEquals(1000, cache.size());
+		assertTrue(cache.isSpilled());
+		check(cache, 1000);
+		// Refilled below the threshold, nothing on disk.
+		fill(cache, 50);
+		assertFalse(cache.isSpilled());
+		check(cache, 50);
+		cache.close();
+	}
+
+	@Test public void cache_spill_02() {
+		// Without columns rows are only counted.
+		LFBindingCache cache = new LFBindingCache(new int[0], 0);
+		for (int i = 0; i < 10; i++) {
+			cache.add(ids(i, -1));
+		}
+		assertFalse(cache.isSpilled());
+		int n = 0;
+		while (cache.advance()) {
+			n++;
+		}
+		assertEquals(10, n);
+	}
+
+	private static int count(String qs, long threshold) {
+		try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, model) ) {
+			qExec.getContext().set(ARQ.spillToDiskThreshold, threshold);
+			return ResultSetFormatter.consume(qExec.execSelect());
+		}
+	}
+
+	@Test public void cache_query_01() {
+		String qs = "SELECT * { ?s :type :T OPTIONAL { ?s :p ?o } }";
+		assertEquals(1501, count(qs, -1));
+		assertEquals(1501, count(qs, 100));
+	}
+
+	@Test public void cache_query_02() {
+		// Every combination of the two OPTIONALs, replaying the spilled one 40 times.
+		String qs = "SELECT * { ?s :type :T OPTIONAL { ?s :p ?o } OPTIONAL { ?s :q ?c } }";
+		assertEquals(1500 * 40 + 1, count(qs, -1));
+		assertEquals(1500 * 40 + 1, count(qs, 10));
+	}
+}
@@ -0,0 +1,90 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.store.NodeId;
+import org.junit.Test;
+
+public class TestLFBindingNodeId {
+
+	private static final String NS = "http://example/";
+	private static final Var x = Var.alloc("x");
+	private static final Var y = Var.alloc("y");
+	private static final Var z = Var.alloc("z");
+	private static final long U = LFBindingNodeId.UNBOUND;
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	@Test public void binding_01() {
+		BindingNodeId b = new LFBindingNodeId(new Var[] { x, y, z }, new long[] { 5, U, 7 });
+		assertEquals(2, b.size());
+		assertTrue(b.containsKey(x));
+		assertFalse(b.containsKey(y));
+		assertFalse(b.containsKey(Var.alloc("w")));
+		assertEquals(NodeId.create(7), b.get(z));
+		assertNull(b.get(y));
+		List<Var> vars = new ArrayList<>();
+		b.forEach(vars::add);
+		assertEquals(Arrays.asList(x, z), vars);
+	}
+
+	@Test public void binding_02() {
+		long[] ids = { U, U };
+		BindingNodeId b = new LFBindingNodeId(new Var[] { x, y }, ids);
+		assertTrue(b.isEmpty());
+		b.put(y, NodeId.create(3));
+		assertEquals(3, ids[1]);
+		assertEquals(1, b.size());
+		assertFalse(b.iterator().next().equals(x));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void binding_03() {
+		new LFBindingNodeId(new Var[] { x }, new long[] { U }).put(y, NodeId.create(3));
+	}
+
+	// An OPTIONAL inside an OPTIONAL, only some extensions of the outer one extend the inner one.
+	@Test public void binding_query_01() {
+		Graph graph = TDBFactory.createDatasetGraph().getDefaultGraph();
+		graph.add(Triple.create(uri("a"), uri("type"), uri("T")));
+		for (int i = 0; i < 4; i++) {
+			graph.add(Triple.create(uri("a"), uri("p"), uri("o" + i)));
+		}
+		graph.add(Triple.create(uri("o0"), uri("r"), uri("z0")));
+		graph.add(Triple.create(uri("o2"), uri("r"), uri("z2")));
+
+		String qs = "PREFIX : <" + NS + "> SELECT ?o ?z { ?s :type :T OPTIONAL { ?s :p ?o OPTIONAL { ?o :r ?z } } }";
+		List<String> rows = new ArrayList<>();
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, ModelFactory.createModelForGraph(graph)) ) {
+			ResultSet rs = qExec.execSelect();
+			while (rs.hasNext()) {
+				QuerySolution row = rs.next();
+				rows.add(row.getResource("o").getLocalName() + (row.contains("z") ? "=" + row.getResource("z").getLocalName() : ""));
+			}
+		}
+		Collections.sort(rows);
+		assertEquals(Arrays.asList("o0=z0", "o1", "o2=z2", "o3"), rows);
+	}
+}
@@ -0,0 +1,62 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Cancelling the leapfrog inside a hasNext(), and the OPTIONALs read as their results are needed. */
+public class TestLFCancel extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 5000; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + i));
+			if (i < 30) {
+				dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 4)), uri("q"), uri("w" + i));
+				dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 3)), uri("r"), uri("z" + i));
+			}
+		}
+	}
+
+	@Test public void cancel_01() {
+		OptionalTreeNode tree = tree("(bgp (?s <" + NS + "p> ?o))");
+		tree.init(new Var[0]);
+		assertTrue(tree.hasNext());
+		tree.next();
+		tree.abort();
+		try {
+			tree.hasNext();
+			fail("not cancelled");
+		} catch (QueryCancelledException ex) {}
+	}
+
+	@Test public void cancel_timeout_01() {
+		// 25 million pairs, none passing the filter: no result to stop at, without the seeks checking
+		String qs = PRE + "SELECT * { ?a :p ?b . ?c :p ?d FILTER(str(?b) = str(?c)) }";
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, dataset) ) {
+			qExec.setTimeout(200);
+			long start = System.currentTimeMillis();
+			try {
+				qExec.execSelect().hasNext();
+				fail("not cancelled");
+			} catch (QueryCancelledException ex) {}
+			assertTrue(System.currentTimeMillis() - start < 10_000);
+		}
+	}
+
+	@Test public void optional_children_01() {
+		// the rows of the last OPTIONAL are read as they go, those of the others repeated for each of them
+		String qs = "SELECT * { ?s :p ?o OPTIONAL { ?s :q ?w } OPTIONAL { ?s :r ?z } }";
+		assertEquals(exec(qs, false), exec(qs, true));
+		qs = "SELECT * { ?s :p ?o OPTIONAL { ?s :q ?w } OPTIONAL { ?s :r ?z } } LIMIT 20";
+		assertEquals(20, exec(qs, true).size());
+	}
+}
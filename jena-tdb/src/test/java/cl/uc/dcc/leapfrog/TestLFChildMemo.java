@@ -0,0 +1,123 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.Context;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The bindings of OPTIONAL children kept for the keys they share with their parent. */
+public class TestLFChildMemo extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		// each ?b under many ?a, the children join on ?b only
+		for (int i = 0; i < 40; i++) {
+			for (int j = 0; j < 10; j++) {
+				dsg.add(Quad.defaultGraphIRI, uri("a" + i), uri("p"), uri("b" + ((i + j) % 15)));
+			}
+		}
+		for (int b = 0; b < 15; b++) {
+			for (int k = 0; k < b % 4; k++) {
+				dsg.add(Quad.defaultGraphIRI, uri("b" + b), uri("q"), uri("c" + k));
+			}
+			if (b % 3 != 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("b" + b), uri("r"), uri("d" + b));
+				dsg.add(Quad.defaultGraphIRI, uri("b" + b), uri("r"), uri("e" + b));
+			}
+		}
+	}
+
+	private static Consumer<Context> memoRows(long rows) {
+		return context -> context.set(OptionalTreeNode.symOptionalMemo, rows);
+	}
+
+	private static void testMemo(String qs) {
+		List<String> expected = exec(qs, false);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, exec(qs, true, memoRows(0)));
+		assertEquals(expected, exec(qs, true, memoRows(OptionalTreeNode.DEFAULT_MEMO_ROWS)));
+		// keys dropped and bindings too many to keep
+		assertEquals(expected, exec(qs, true, memoRows(2)));
+	}
+
+	@Test public void memo_query_01() {
+		testMemo("SELECT * { ?a :p ?b OPTIONAL { ?b :q ?c } }");
+	}
+
+	@Test public void memo_query_02() {
+		// a cached child and a streamed one
+		testMemo("SELECT * { ?a :p ?b OPTIONAL { ?b :q ?c } OPTIONAL { ?b :r ?d } }");
+	}
+
+	@Test public void memo_query_03() {
+		// nested, and a child without variables of its own
+		testMemo("SELECT * { ?a :p ?b OPTIONAL { ?b :r ?d OPTIONAL { ?b :q ?c } } OPTIONAL { ?b :q :c1 } }");
+	}
+
+	@Test public void memo_hits_01() {
+		String op = "(conditional (bgp (?a <" + NS + "p> ?b)) (bgp (?b <" + NS + "q> ?c)))";
+		OptionalTreeNode tree = tree(op);
+		int n = count(tree);
+		assertEquals(exec("SELECT * { ?a :p ?b OPTIONAL { ?b :q ?c } }", false).size(), n);
+		// 400 bindings of ?a ?b, 15 keys of ?b
+		String plan = LFExplain.plan(tree, true);
+		assertTrue(plan, plan.contains("385 memo hits"));
+	}
+
+	@Test public void memo_lru_01() {
+		// the key is position 0, the child's column position 1
+		LFChildMemo memo = new LFChildMemo(new int[] { 0 }, new int[] { 1 }, 3);
+		long[] binding = new long[2];
+		for (long key = 1; key <= 3; key++) {
+			binding[0] = key;
+			memo.start(binding);
+			binding[1] = 10 * key;
+			memo.add(binding);
+			memo.end();
+		}
+		binding[0] = 1;
+		LFChildMemo.Entry entry = memo.get(binding);
+		assertNotNull(entry);
+		assertEquals(1, entry.count());
+		long[] out = new long[2];
+		memo.extend(entry, 0, out);
+		assertEquals(10, out[1]);
+
+		// 2 is the least recently used
+		binding[0] = 4;
+		memo.start(binding);
+		memo.add(binding);
+		memo.end();
+		binding[0] = 2;
+		assertNull(memo.get(binding));
+		binding[0] = 3;
+		assertNotNull(memo.get(binding));
+		assertEquals(2, memo.hits());
+	}
+
+	@Test public void memo_too_many_01() {
+		LFChildMemo memo = new LFChildMemo(new int[] { 0 }, new int[] { 1 }, 3);
+		long[] binding = { 5, 0 };
+		memo.start(binding);
+		for (int i = 0; i < 4; i++) {
+			binding[1] = i;
+			memo.add(binding);
+		}
+		memo.end();
+		binding[1] = 0;
+		assertNull(memo.get(binding));
+		// no rows is kept too
+		memo.start(binding);
+		memo.end();
+		assertEquals(0, memo.get(binding).count());
+	}
+}
@@ -0,0 +1,105 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.solver.stats.TripleStats;
+import org.apache.jena.tdb.store.nodetupletable.NodeTupleTable;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Test;
+
+public class TestLFCostModel {
+
+	private static final String NS = "http://example/";
+	private static final Node p = uri("p");
+	private static final Node q = uri("q");
+	private static final Node rare = uri("Rare");
+	private static final Var x = Var.alloc("x");
+	private static final Var y = Var.alloc("y");
+	private static final Var z = Var.alloc("z");
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	// 100 :p triples and 100 :q triples in a chain, only one node of type :Rare.
+	private static DatasetGraph data() {
+		DatasetGraph dsg = TDBFactory.createDatasetGraph();
+		for (int i = 0; i < 100; i++) {
+			dsg.getDefaultGraph().add(Triple.create(uri("a" + i), p, uri("b" + i)));
+			dsg.getDefaultGraph().add(Triple.create(uri("b" + i), q, uri("c" + i)));
+		}
+		dsg.getDefaultGraph().add(Triple.create(uri("c7"), RDF.type.asNode(), rare));
+		return dsg;
+	}
+
+	private static NodeTupleTable ntt(DatasetGraph dsg) {
+		return TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable();
+	}
+
+	private static Triple[] chain() {
+		return new Triple[] { Triple.create(x, p, y), Triple.create(y, q, z), Triple.create(z, RDF.type.asNode(), rare) };
+	}
+
+	@Test public void cost_rangeCount_01() {
+		LFCostModel model = new LFCostModel(ntt(data()), ReorderLib.fixed());
+		assertEquals(100, model.rangeCount(Triple.create(x, p, y)));
+		assertEquals(1, model.rangeCount(Triple.create(z, RDF.type.asNode(), rare)));
+		assertEquals(1, model.rangeCount(Triple.create(uri("a3"), p, uri("b3"))));
+		assertEquals(0, model.rangeCount(Triple.create(uri("a3"), p, uri("b4"))));
+		assertEquals(0, model.rangeCount(Triple.create(x, uri("unknown"), y)));
+		assertEquals(201, model.rangeCount(Triple.create(x, y, z)));
+	}
+
+	@Test public void cost_order_01() {
+		NodeTupleTable ntt = ntt(data());
+		LFCostModel model = new LFCostModel(ntt, ReorderLib.fixed());
+		BGPIter bgp = new BGPIter(BasicPattern.wrap(Arrays.asList(chain())), ntt);
+
+		List<Var> heuristic = bgp.getVarOrder(Arrays.asList(x, y, z));
+		assertEquals(Arrays.asList(y, z, x), heuristic);
+		// ?z is anchored by the rare type, then ?y follows through :q
+		assertEquals(Arrays.asList(z, y, x), model.getVarOrder(chain(), heuristic, new ArrayList<>()));
+	}
+
+	@Test public void cost_order_02() {
+		NodeTupleTable ntt = ntt(data());
+		LFCostModel model = new LFCostModel(ntt, ReorderLib.fixed());
+		// Variables bound from outside are not reordered.
+		assertEquals(Arrays.asList(z, x), model.getVarOrder(chain(), Arrays.asList(z, x), Arrays.asList(y)));
+	}
+
+	@Test public void cost_order_03() {
+		DatasetGraph dsg = data();
+		NodeTupleTable ntt = ntt(dsg);
+		TripleStats stats = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getStats();
+		assertEquals(100, stats.getDistinctObjects(p));
+		// The same order from the distinct counts of the live statistics.
+		LFCostModel model = new LFCostModel(ntt, ReorderLib.fixed(), stats);
+		assertEquals(Arrays.asList(z, y, x), model.getVarOrder(chain(), Arrays.asList(y, z, x), new ArrayList<>()));
+	}
+
+	@Test public void cost_query_01() {
+		DatasetGraph dsg = data();
+		String qs = "PREFIX : <" + NS + "> SELECT * { ?x :p ?y . ?y :q ?z . ?z a :Rare }";
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, ModelFactory.createModelForGraph(dsg.getDefaultGraph())) ) {
+			assertEquals(1, ResultSetFormatter.consume(qExec.execSelect()));
+		}
+	}
+}
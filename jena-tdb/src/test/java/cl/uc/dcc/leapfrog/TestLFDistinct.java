@@ -0,0 +1,92 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** DISTINCT and REDUCED over the leapfrog, checked against the TDB executor. */
+public class TestLFDistinct extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 60; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 20)), uri("p"), uri("o" + i));
+			dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 20)), uri("q"), uri("o" + (i % 11)));
+			dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("r"), uri("z" + (i % 4)));
+			dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("v"), SSE.parseNode("" + i));
+		}
+	}
+
+	/** Bindings of the tree for the BGP with only vars needed. */
+	private static int count(String bgp, String... vars) {
+		OptionalTreeNode tree = tree("(bgp " + bgp + ")");
+		Set<Var> needed = new HashSet<>();
+		for (String v : vars) {
+			needed.add(Var.alloc(v));
+		}
+		tree.setDistinctVars(needed);
+		return count(tree);
+	}
+
+	@Test public void distinct_01() {
+		test("SELECT DISTINCT ?s { ?s :p ?o }");
+		test("SELECT DISTINCT ?o { ?s :p ?o }");
+	}
+
+	@Test public void distinct_02() {
+		test("SELECT DISTINCT ?s { ?s :p ?o . ?s :q ?w }");
+		test("SELECT DISTINCT ?z { ?s :p ?o . ?o :r ?z }");
+		test("SELECT DISTINCT ?s ?z { ?s :p ?o . ?o :r ?z . ?s :q ?w }");
+	}
+
+	@Test public void distinct_03() {
+		test("SELECT DISTINCT ?s { ?s :p ?o FILTER(?o != :o3) }");
+		test("SELECT DISTINCT ?s { ?s :p ?o . ?o :v ?n FILTER(?n > 30) }");
+	}
+
+	@Test public void distinct_04() {
+		test("SELECT DISTINCT ?s ?z { ?s :p ?o OPTIONAL { ?o :r ?z } }");
+		test("SELECT DISTINCT ?s { ?s :q ?w OPTIONAL { ?w :r ?z } }");
+	}
+
+	@Test public void distinct_05() {
+		// nothing projected from the BGP
+		test("SELECT DISTINCT (1 AS ?x) { ?s :p ?o . ?o :r ?z }");
+		test("SELECT DISTINCT ?s { :s1 :p ?o . ?o :r ?z }");
+	}
+
+	@Test public void distinct_06() {
+		List<String> all = exec("SELECT DISTINCT ?o { ?s :p ?o }", false);
+		List<String> rows = exec("SELECT DISTINCT ?o { ?s :p ?o } LIMIT 5", true);
+		assertEquals(5, rows.size());
+		assertTrue(all.containsAll(rows));
+	}
+
+	@Test public void reduced_01() {
+		// any number of duplicates is allowed, the same rows
+		String qs = "SELECT REDUCED ?s { ?s :p ?o . ?s :q ?w }";
+		List<String> expected = exec(qs, false);
+		List<String> rows = exec(qs, true);
+		assertTrue(rows.size() <= expected.size());
+		assertEquals(new TreeSet<>(expected), new TreeSet<>(rows));
+	}
+
+	@Test public void distinct_bindings_01() {
+		// each ?s once: the object only checked to exist
+		assertEquals(20, count("(?s <" + NS + "p> ?o)", "s"));
+		assertEquals(60, count("(?s <" + NS + "p> ?o)", "s", "o"));
+		assertEquals(20, count("(?s <" + NS + "p> ?o) (?s <" + NS + "q> ?w)", "s"));
+		// the join variable is not needed either
+		assertEquals(1, count("(?s <" + NS + "p> ?o) (?o <" + NS + "r> ?z)"));
+	}
+}
@@ -0,0 +1,107 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.function.FunctionEnvBase;
+import org.apache.jena.sparql.mgt.Explain.InfoLevel;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The plan of the leapfrog and its counters. */
+public class TestLFExplain {
+
+	private static final String NS = "http://example/";
+
+	private static DatasetGraph dsg;
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	@BeforeClass public static void data() {
+		dsg = TDBFactory.createDatasetGraph();
+		for (int i = 0; i < 60; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 20)), uri("p"), uri("o" + i));
+			dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("r"), uri("z" + (i % 4)));
+			if (i % 3 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("v"), SSE.parseNode("" + i));
+			}
+		}
+	}
+
+	private static OptionalTreeNode tree(String op) {
+		OptionalTreeNode tree = OptionalTreeNode.getNode(TDBInternal.getDatasetGraphTDB(dsg), SSE.parseOp(op), ReorderLib.identity());
+		tree.setFunctionEnv(new FunctionEnvBase());
+		tree.init(new Var[0]);
+		return tree;
+	}
+
+	private static final String OP = "(conditional"
+			+ " (filter (!= ?z <" + NS + "z0>) (bgp (?s <" + NS + "p> ?o) (?o <" + NS + "r> ?z)))"
+			+ " (bgp (?o <" + NS + "v> ?v)))";
+
+	@Test public void explain_plan_01() {
+		String plan = LFExplain.plan(tree(OP), false);
+		// ?o is the join, ?s and ?z are each read from a single index
+		assertTrue(plan, plan.contains("bgp ?o | ?s ?z"));
+		assertTrue(plan, plan.contains("POS <" + NS + "p> ?o | ?s"));
+		assertTrue(plan, plan.contains("PSO <" + NS + "r> ?o | ?z"));
+		assertTrue(plan, plan.contains("filter ( ?z != <" + NS + "z0> )"));
+		assertTrue(plan, plan.contains("optional"));
+		assertTrue(plan, plan.contains("bgp ?o | ?v"));
+		assertFalse(plan, plan.contains("results"));
+	}
+
+	@Test public void explain_analyze_01() {
+		OptionalTreeNode tree = tree(OP);
+		int n = 0;
+		while (tree.hasNext()) {
+			tree.next();
+			n++;
+		}
+		// the objects not in z0
+		assertEquals(45, n);
+		String plan = LFExplain.plan(tree, true);
+		assertTrue(plan, plan.contains(n + " results"));
+		assertTrue(plan, plan.contains("60 bindings"));
+		assertTrue(plan, plan.contains("15 rejected"));
+		// every ?o of the root is a key, reached by a seek or a next
+		assertTrue(plan, plan.contains("?o  "));
+		assertTrue(plan, plan.contains(" 60 keys"));
+		assertTrue(plan, plan.contains("pages 1 "));
+		// the optional found the values of a third of them
+		assertTrue(plan, plan.contains("15 bindings"));
+	}
+
+	@Test public void explain_exec_01() {
+		Dataset dataset = DatasetFactory.wrap(dsg);
+		String qs = "SELECT * { ?s <" + NS + "p> ?o . ?o <" + NS + "r> ?z }";
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, dataset) ) {
+			Context context = qExec.getContext();
+			context.set(ARQ.symLogExec, InfoLevel.FINE);
+			assertEquals(60, ResultSetFormatter.consume(qExec.execSelect()));
+		}
+		Context context = new Context();
+		assertFalse(LFExplain.explaining(context));
+		context.set(ARQ.symLogExec, InfoLevel.INFO);
+		assertFalse(LFExplain.explaining(context));
+	}
+}
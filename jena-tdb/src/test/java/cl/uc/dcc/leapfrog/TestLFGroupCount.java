@@ -0,0 +1,73 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** COUNT and GROUP BY from the trie, checked against the TDB executor. */
+public class TestLFGroupCount extends AbstractTestLFQuery {
+
+	// Enough triples for the ranges counted to span several leaf pages.
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 3000; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + (i % 7)), uri("p"), uri("o" + i));
+			dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("r"), uri("z" + (i % 11)));
+			if (i % 5 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("o" + i), uri("v"), SSE.parseNode("" + (i % 13)));
+			}
+			if (i % 10 == 0) {
+				dsg.add(uri("g" + (i % 3)), uri("s" + (i % 7)), uri("p"), uri("o" + i));
+				dsg.add(uri("g" + (i % 4)), uri("s" + (i % 7)), uri("p"), uri("o" + i));
+			}
+		}
+	}
+
+	@Test public void count_01() {
+		test("SELECT (COUNT(*) AS ?c) { ?s :p ?o }");
+		test("SELECT (COUNT(*) AS ?c) { ?s ?p ?o }");
+	}
+
+	@Test public void count_02() {
+		test("SELECT (COUNT(*) AS ?c) { ?s :p ?o . ?o :r ?z }");
+		test("SELECT (COUNT(?o) AS ?c) (COUNT(*) AS ?d) { ?s :p ?o . ?o :v ?n }");
+	}
+
+	@Test public void count_03() {
+		// a constant not in the data: a count of 0
+		test("SELECT (COUNT(*) AS ?c) { ?s :unknown ?o }");
+		assertEquals(0, exec("SELECT ?s (COUNT(*) AS ?c) { ?s :unknown ?o } GROUP BY ?s", true).size());
+	}
+
+	@Test public void group_01() {
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o } GROUP BY ?s");
+		test("SELECT ?z (COUNT(*) AS ?c) { ?o :r ?z } GROUP BY ?z");
+	}
+
+	@Test public void group_02() {
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o . ?o :r ?z } GROUP BY ?s");
+		test("SELECT ?s ?z (COUNT(*) AS ?c) { ?s :p ?o . ?o :r ?z } GROUP BY ?s ?z");
+		test("SELECT ?n (COUNT(*) AS ?c) { ?s :p ?o . ?o :v ?n } GROUP BY ?n");
+	}
+
+	@Test public void group_03() {
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o . ?o :r ?z } GROUP BY ?s HAVING (COUNT(*) > 428)");
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o . ?o :r :z3 } GROUP BY ?s ORDER BY DESC(?c)");
+	}
+
+	@Test public void group_graph_01() {
+		test("SELECT ?g (COUNT(*) AS ?c) { GRAPH ?g { ?s :p ?o } } GROUP BY ?g");
+		// each triple once in the union graph
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o } GROUP BY ?s", unionDefaultGraph);
+	}
+
+	@Test public void group_not_counted_01() {
+		// left to ARQ
+		test("SELECT ?s (COUNT(DISTINCT ?z) AS ?c) { ?s :p ?o . ?o :r ?z } GROUP BY ?s");
+		test("SELECT ?s (SUM(?n) AS ?c) { ?s :p ?o . ?o :v ?n } GROUP BY ?s");
+		test("SELECT ?s (COUNT(*) AS ?c) { ?s :p ?o FILTER(?o != :o3) } GROUP BY ?s");
+	}
+}
@@ -0,0 +1,121 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Queries mixing the leapfrog with the operators it does not run, checked against the TDB executor. */
+public class TestLFHybrid extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 30; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + (i % 7)));
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("v"), SSE.parseNode("" + i));
+			if (i % 2 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("q"), uri("o" + (i % 5)));
+			}
+			if (i % 3 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("o" + (i % 7)), uri("r"), uri("z" + (i % 4)));
+			}
+			dsg.add(uri("g"), uri("s" + i), uri("p"), uri("o" + (i % 3)));
+			// a loop every 10 subjects
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("link"), uri("s" + (i % 10 == 0 ? i : i + 1)));
+		}
+	}
+
+	@Test public void hybrid_union_01() {
+		test("SELECT * { { ?s :p ?o } UNION { ?s :q ?o OPTIONAL { ?o :r ?z } } }");
+	}
+
+	@Test public void hybrid_minus_01() {
+		test("SELECT * { ?s :p ?o MINUS { ?o :r :z0 } }");
+	}
+
+	@Test public void hybrid_subselect_01() {
+		test("SELECT * { ?s :p ?o { SELECT ?o (COUNT(*) AS ?n) { ?o :r ?z } GROUP BY ?o } }");
+	}
+
+	@Test public void hybrid_path_01() {
+		test("SELECT * { ?s :p/:r ?z . ?s :q ?o }");
+	}
+
+	@Test public void hybrid_values_01() {
+		// the BGP for each row of the table, one of them with a node not in the data
+		test("SELECT * { VALUES ?o { :o1 :o2 :missing } ?s :p ?o OPTIONAL { ?o :r ?z } }");
+	}
+
+	@Test public void hybrid_values_02() {
+		// a seed variable only in the OPTIONAL
+		test("SELECT * { VALUES ?z { :z0 :missing } ?s :p ?o OPTIONAL { ?o :r ?z } }");
+	}
+
+	@Test public void hybrid_values_03() {
+		// a seed variable only in a filter
+		test("SELECT * { VALUES ?m { 20 25 } ?s :v ?n FILTER(?n > ?m) }");
+	}
+
+	@Test public void hybrid_bind_01() {
+		test("SELECT * { BIND(:o3 AS ?o) ?s :p ?o . ?s :v ?n }");
+	}
+
+	@Test public void hybrid_optional_01() {
+		// the right side is not for the leapfrog, the left side is
+		test("SELECT * { ?s :p ?o OPTIONAL { { ?o :r ?z } UNION { ?s :q ?z } } }");
+	}
+
+	@Test public void hybrid_optional_02() {
+		// filters over the variables of an OPTIONAL: after it extends the row, not on the left BGP
+		test("SELECT * { ?s :p ?o OPTIONAL { ?s :q ?z } FILTER(!bound(?z)) }");
+		test("SELECT * { ?s :p ?o OPTIONAL { ?s :v ?z } FILTER(?z > 5) }");
+	}
+
+	@Test public void hybrid_exists_01() {
+		// the filter needs the execution context
+		test("SELECT * { ?s :p ?o FILTER EXISTS { ?o :r ?z } }");
+	}
+
+	@Test public void hybrid_dataset_01() {
+		// FROM: a dataset that is not TDB
+		test("SELECT * FROM :g { ?s :p ?o OPTIONAL { ?s :q ?z } }");
+	}
+
+	@Test public void hybrid_repeated_01() {
+		// a variable twice in a triple
+		test("SELECT * { ?x ?p ?x }");
+	}
+
+	@Test public void hybrid_repeated_02() {
+		test("SELECT * { ?x :link ?x . ?x :p ?o OPTIONAL { ?o ?q ?o } }");
+	}
+
+	@Test public void hybrid_repeated_03() {
+		test("SELECT (COUNT(*) AS ?n) { ?x ?p ?x }");
+		test("SELECT * { GRAPH ?g { ?s :p ?o } ?s ?q ?s }");
+	}
+
+	@Test public void hybrid_named_model_01() {
+		Model model = dataset.getNamedModel(NS + "g");
+		String qs = PRE + "SELECT * { ?s :p ?o OPTIONAL { ?s :q ?z } }";
+		List<String> expected;
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, model) ) {
+			expected = rows(qExec, false, AbstractTestLFQuery::row);
+		}
+		Collections.sort(expected);
+		assertEquals(30, expected.size());
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, model) ) {
+			List<String> rows = rows(qExec, true, AbstractTestLFQuery::row);
+			Collections.sort(rows);
+			assertEquals(expected, rows);
+		}
+	}
+}
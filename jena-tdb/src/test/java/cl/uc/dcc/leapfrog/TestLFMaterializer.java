@@ -0,0 +1,167 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.solver.BindingNodeId;
+import org.apache.jena.tdb.store.NodeId;
+import org.apache.jena.tdb.store.nodetable.NodeTable;
+import org.apache.jena.tdb.store.nodetable.NodeTableCache;
+import org.apache.jena.tdb.store.nodetable.NodeTableWrapper;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.junit.Test;
+
+public class TestLFMaterializer {
+
+	private static final Var x = Var.alloc("x");
+	private static final Var y = Var.alloc("y");
+
+	/** Records the ids looked up, other than inline ones. */
+	private static class RecordingNodeTable extends NodeTableWrapper {
+		List<Long> lookups = new ArrayList<>();
+
+		RecordingNodeTable(NodeTable nodeTable) {
+			super(nodeTable);
+		}
+
+		@Override
+		public Node getNodeForNodeId(NodeId id) {
+			if (!NodeId.isInline(id)) {
+				lookups.add(id.getId());
+			}
+			return super.getNodeForNodeId(id);
+		}
+	}
+
+	private static NodeTable nodeTable(DatasetGraph dsg) {
+		return TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getNodeTupleTable().getNodeTable();
+	}
+
+	// Rows (?x = :n(i % 5), ?y = i) for i in 0..n-1: the IRIs repeat, the integers are inline.
+	private static List<BindingNodeId> rows(NodeTable nodeTable, int n) {
+		List<BindingNodeId> rows = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			long[] ids = {
+				nodeTable.getAllocateNodeId(NodeFactory.createURI("http://example/n" + (4 - i % 5))).getId(),
+				nodeTable.getAllocateNodeId(SSE.parseNode("" + i)).getId()
+			};
+			rows.add(new LFBindingNodeId(new Var[] { x, y }, ids));
+		}
+		return rows;
+	}
+
+	@Test public void materialize_01() {
+		NodeTable base = nodeTable(TDBFactory.createDatasetGraph());
+		List<BindingNodeId> rows = rows(base, 12);
+		RecordingNodeTable nodeTable = new RecordingNodeTable(base);
+
+		// Blocks of 1, 2, 4 rows, then 5 for the rest (under 8)
+		Iterator<Binding> iter = new LFMaterializer(rows.iterator(), nodeTable, 10);
+		int[] lookups = { 1, 3, 3, 7, 7, 7, 7, 12, 12, 12, 12, 12 };
+		for (int i = 0; i < 12; i++) {
+			assertTrue(iter.hasNext());
+			Binding b = iter.next();
+			assertEquals(NodeFactory.createURI("http://example/n" + (4 - i % 5)), b.get(x));
+			assertEquals(SSE.parseNode("" + i), b.get(y));
+			// Each IRI of a block once, and nothing for the inline integers.
+			assertEquals(lookups[i], nodeTable.lookups.size());
+		}
+		// The last block: its 5 IRIs in increasing id order.
+		for (int k = 8; k < 12; k++) {
+			assertTrue(nodeTable.lookups.get(k-1) < nodeTable.lookups.get(k));
+		}
+		assertTrue(!iter.hasNext());
+	}
+
+	@Test public void materialize_blocks_01() {
+		NodeTable nodeTable = nodeTable(TDBFactory.createDatasetGraph());
+		int[] pulled = { 0 };
+		Iterator<BindingNodeId> rows = rows(nodeTable, 100).iterator();
+		Iterator<BindingNodeId> input = new Iterator<BindingNodeId>() {
+			@Override public boolean hasNext() { return rows.hasNext(); }
+			@Override public BindingNodeId next() { pulled[0]++; return rows.next(); }
+		};
+		Iterator<Binding> iter = new LFMaterializer(input, nodeTable, 16);
+		assertTrue(iter.hasNext());
+		assertEquals(1, pulled[0]);
+		iter.next();
+		iter.next();
+		assertEquals(3, pulled[0]);
+		int n = 2;
+		while (iter.hasNext()) {
+			iter.next();
+			n++;
+			// Never more than a block ahead.
+			assertTrue(pulled[0] - n < 16);
+		}
+		assertEquals(100, n);
+	}
+
+	@Test public void materialize_limit_01() {
+		DatasetGraph dsg = TDBFactory.createDatasetGraph();
+		for (int i = 0; i < 2500; i++) {
+			dsg.getDefaultGraph().add(SSE.parseTriple("(<http://example/s" + i + "> <http://example/p> <http://example/o" + i + ">)"));
+		}
+		Model model = ModelFactory.createModelForGraph(dsg.getDefaultGraph());
+		NodeTableCache cache = nodeTableCache(nodeTable(dsg));
+		// ?s and ?o of the first rows only, a block of 1000 rows would look up 2000 nodes. QueryIterSlice asks for a
+		// row after the last one it returns: blocks of 1 and 2 rows.
+		long requests = cache.getId2NodeCacheInfo().requests;
+		assertEquals(1, exec(model, "SELECT * { ?s <http://example/p> ?o } LIMIT 1", LFMaterializer.DEFAULT_BLOCK_SIZE).size());
+		long lookups = cache.getId2NodeCacheInfo().requests - requests;
+		assertTrue("LIMIT lookups: " + lookups, lookups <= 6);
+
+		requests = cache.getId2NodeCacheInfo().requests;
+		try ( QueryExecution qExec = QueryExecutionFactory.create("ASK { ?s <http://example/p> ?o }", model) ) {
+			assertTrue(qExec.execAsk());
+		}
+		lookups = cache.getId2NodeCacheInfo().requests - requests;
+		assertTrue("ASK lookups: " + lookups, lookups <= 2);
+	}
+
+	private static NodeTableCache nodeTableCache(NodeTable nodeTable) {
+		while (!(nodeTable instanceof NodeTableCache)) {
+			nodeTable = nodeTable.wrapped();
+		}
+		return (NodeTableCache) nodeTable;
+	}
+
+	@Test public void materialize_02() {
+		Model model = ModelFactory.createModelForGraph(TDBFactory.createDatasetGraph().getDefaultGraph());
+		for (int i = 0; i < 2500; i++) {
+			model.getGraph().add(SSE.parseTriple("(<http://example/s" + (i % 30) + "> <http://example/p> " + i + ")"));
+		}
+		String qs = "SELECT * { ?s <http://example/p> ?o OPTIONAL { ?s <http://example/q> ?z } }";
+		assertEquals(exec(model, qs, 0), exec(model, qs, 7));
+		assertEquals(exec(model, qs, 0), exec(model, qs, LFMaterializer.DEFAULT_BLOCK_SIZE));
+		assertEquals(2500, exec(model, qs, 0).size());
+	}
+
+	private static List<String> exec(Model model, String qs, int blockSize) {
+		try ( QueryExecution qExec = QueryExecutionFactory.create(qs, model) ) {
+			qExec.getContext().set(LFMaterializer.symMaterializeBlock, blockSize);
+			List<String> rows = new ArrayList<>();
+			ResultSet rs = qExec.execSelect();
+			while (rs.hasNext()) {
+				rows.add(rs.nextBinding().toString());
+			}
+			return rows;
+		}
+	}
+}
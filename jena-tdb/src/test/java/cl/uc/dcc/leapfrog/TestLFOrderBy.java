@@ -0,0 +1,111 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** ORDER BY from the order of the trie, checked against the TDB executor. */
+public class TestLFOrderBy extends AbstractTestLFQuery {
+
+	private static final Var X = Var.alloc("x");
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = -50; i < 50; i++) {
+			// distinct values, not in the order of the subjects
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("v"), SSE.parseNode("" + (i * 37 % 101)));
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + Math.floorMod(i, 6)));
+			if (i % 3 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("o" + Math.floorMod(i, 6)), uri("r"), uri("z" + i));
+			}
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("m"), i % 10 == 0 ? uri("n" + i) : SSE.parseNode("" + i));
+		}
+		String[] dateTimes = { "2018-03-01T10:00:00Z", "2017-03-01T10:00:00Z", "2018-03-01T09:59:59.5Z", "2019-01-01T00:00:00Z" };
+		for (int i = 0; i < dateTimes.length; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("d" + i), uri("t"), NodeFactory.createLiteral(dateTimes[i], XSDDatatype.XSDdateTime));
+			dsg.add(Quad.defaultGraphIRI, uri("d" + i), uri("u"), NodeFactory.createLiteral(dateTimes[i], XSDDatatype.XSDdateTime));
+		}
+		dsg.add(Quad.defaultGraphIRI, uri("e"), uri("u"), NodeFactory.createLiteral("2018-03-01T10:00:00+01:00", XSDDatatype.XSDdateTime));
+	}
+
+	/** The rows in the order the query gives them, each after its value of ?x. */
+	private static List<String> execInOrder(String qs, boolean leapfrog) {
+		return exec(qs, leapfrog, null, b -> b.get(X) + " " + row(b));
+	}
+
+	/** The same rows, and the same values of ?x in the same order: the rows of a value may come in any order. */
+	private static void testOrdered(String qs) {
+		List<String> expected = execInOrder(qs, false);
+		List<String> rows = execInOrder(qs, true);
+		assertFalse(expected.isEmpty());
+		assertEquals(xs(expected), xs(rows));
+		Collections.sort(expected);
+		Collections.sort(rows);
+		assertEquals(expected, rows);
+	}
+
+	private static List<String> xs(List<String> rows) {
+		List<String> res = new ArrayList<>();
+		for (String row : rows) {
+			res.add(row.substring(0, row.indexOf(' ')));
+		}
+		return res;
+	}
+
+	private static LFOrderBy orderBy(String op) {
+		return LFOrderBy.create(() -> tree(op), X);
+	}
+
+	@Test public void order_create_01() {
+		assertNotNull(orderBy("(bgp (?s <" + NS + "v> ?x))"));
+		assertNotNull(orderBy("(bgp (?s <" + NS + "t> ?x))"));
+		// IRIs, and dateTimes of two timezones
+		assertNull(orderBy("(bgp (?s <" + NS + "m> ?x))"));
+		assertNull(orderBy("(bgp (?s <" + NS + "u> ?x))"));
+		// not a variable of the root BGP
+		assertNull(orderBy("(conditional (bgp (?s <" + NS + "p> ?o)) (bgp (?s <" + NS + "v> ?x)))"));
+	}
+
+	@Test public void order_integer_01() {
+		// the negative integers first
+		testOrdered("SELECT * { ?s :v ?x } ORDER BY ?x");
+		testOrdered("SELECT * { ?s :v ?x } ORDER BY ASC(?x)");
+	}
+
+	@Test public void order_integer_02() {
+		testOrdered("SELECT * { ?s :v ?x . ?s :p ?o } ORDER BY ?x");
+		testOrdered("SELECT * { ?s :v ?x . ?s :p ?o FILTER(?x > -20) } ORDER BY ?x");
+		testOrdered("SELECT * { ?s :v ?x OPTIONAL { ?s :p ?o . ?o :r ?z } } ORDER BY ?x");
+	}
+
+	@Test public void order_limit_01() {
+		testOrdered("SELECT * { ?s :v ?x } ORDER BY ?x LIMIT 7");
+		testOrdered("SELECT ?s { ?s :v ?x . ?s :p :o2 } ORDER BY ?x LIMIT 3");
+		testOrdered("SELECT * { ?s :v ?x } ORDER BY ?x LIMIT 5 OFFSET 40");
+	}
+
+	@Test public void order_datetime_01() {
+		testOrdered("SELECT * { ?d :t ?x } ORDER BY ?x");
+	}
+
+	@Test public void order_not_pushed_01() {
+		// left to ARQ
+		testOrdered("SELECT * { ?s :m ?x } ORDER BY ?x");
+		testOrdered("SELECT * { ?d :u ?x } ORDER BY ?x");
+		testOrdered("SELECT * { ?s :v ?x } ORDER BY DESC(?x) LIMIT 4");
+		testOrdered("SELECT * { ?s :v ?x . ?s :p ?o } ORDER BY ?o ?x");
+	}
+}
@@ -0,0 +1,79 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb.TDBFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** GRAPH and union default graph patterns on the quad indexes, checked against the TDB executor. */
+public class TestLFQuads extends AbstractTestLFQuery {
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int g = 0; g < 3; g++) {
+			Node graph = uri("g" + g);
+			for (int i = 0; i < 30; i++) {
+				// some triples in every graph, some in one
+				if (i % 3 == 0 || i % 3 == g) {
+					dsg.add(new Quad(graph, uri("s" + i), uri("p"), uri("o" + (i % 7))));
+				}
+				if ((i + g) % 4 == 0) {
+					dsg.add(new Quad(graph, uri("o" + (i % 7)), uri("q"), uri("z" + i)));
+				}
+			}
+		}
+		for (int i = 0; i < 10; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + (i % 7)));
+		}
+	}
+
+	@Test public void quads_graph_01() {
+		test("SELECT * { GRAPH :g1 { ?s :p ?o . ?o :q ?z } }");
+	}
+
+	@Test public void quads_graph_02() {
+		// no index has the constant predicate before a variable graph: it is checked inside the trie
+		test("SELECT * { GRAPH ?g { ?s :p ?o . ?o :q ?z } }");
+	}
+
+	@Test public void quads_graph_03() {
+		test("SELECT * { GRAPH ?g { ?s ?p ?o } }");
+	}
+
+	@Test public void quads_graph_04() {
+		test("SELECT * { ?s :p ?o OPTIONAL { GRAPH ?g { ?o :q ?z } } }");
+	}
+
+	@Test public void quads_graph_05() {
+		assertEquals(0, exec("SELECT * { GRAPH :unknown { ?s :p ?o } }", true).size());
+	}
+
+	@Test public void quads_graph_06() {
+		// nothing to enumerate in the empty quad table
+		Dataset empty = TDBFactory.createDataset();
+		try ( QueryExecution qExec = QueryExecutionFactory.create("SELECT * { GRAPH ?g { ?s ?p ?o } }", empty) ) {
+			assertFalse(qExec.execSelect().hasNext());
+		}
+	}
+
+	@Test public void quads_union_01() {
+		// each triple once, whatever the number of graphs it is in
+		test("SELECT * { GRAPH <" + Quad.unionGraph.getURI() + "> { ?s :p ?o } }");
+		assertEquals(30, exec("SELECT * { GRAPH <" + Quad.unionGraph.getURI() + "> { ?s :p ?o } }", true).size());
+	}
+
+	@Test public void quads_union_02() {
+		test("SELECT * { ?s :p ?o . ?o :q ?z }", unionDefaultGraph);
+	}
+
+	@Test public void quads_union_03() {
+		test("SELECT * { ?s :p ?o OPTIONAL { ?o :q ?z } }", unionDefaultGraph);
+	}
+}
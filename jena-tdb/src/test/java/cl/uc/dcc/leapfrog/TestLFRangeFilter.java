@@ -0,0 +1,148 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.apache.jena.tdb.store.NodeId;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Filters compiled to key ranges, and the queries with them checked against the TDB executor. */
+public class TestLFRangeFilter extends AbstractTestLFQuery {
+
+	private static final Var X = Var.alloc("x");
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = -40; i < 40; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("v"), SSE.parseNode("" + (i * 7)));
+			dsg.add(Quad.defaultGraphIRI, uri("s" + i), uri("p"), uri("o" + Math.floorMod(i, 5)));
+			if (i % 4 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("o" + Math.floorMod(i, 5)), uri("w"), SSE.parseNode("" + i));
+			}
+		}
+		// values the ranges can't tell apart, left to the filter
+		String[] others = { "12.5", "100.0e0", "'50'", "'30'^^xsd:string", "'77'^^xsd:short", "12345678901234567890",
+				"<" + NS + "x>" };
+		for (int i = 0; i < others.length; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("t" + i), uri("v"), SSE.parseNode(others[i], SSE.getPrefixMapRead()));
+		}
+		String[] dateTimes = { "2018-03-01T10:00:00Z", "2018-03-01T10:00:00+02:00", "2018-03-01T09:30:00-01:00",
+				"2018-03-01T10:00:00", "2018-02-28T23:00:00-14:00", "2018-03-01T12:00:00.5Z", "2018-03-02T00:00:00+05:45",
+				"2017-12-31T23:59:59", "2018-03-01T10:00:00.123456Z" };
+		for (int i = 0; i < dateTimes.length; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("d" + i), uri("t"), NodeFactory.createLiteral(dateTimes[i], XSDDatatype.XSDdateTime));
+		}
+	}
+
+	private static LFRangeFilter compile(String expr) {
+		Set<Var> vars = new HashSet<>();
+		vars.add(X);
+		Expr e = ExprUtils.parse(expr, SSE.getPrefixMapRead());
+		return LFRangeFilter.compile(e, vars);
+	}
+
+	private static long id(String node) {
+		return NodeId.inline(SSE.parseNode(node, SSE.getPrefixMapRead())).getId();
+	}
+
+	@Test public void key_range_01() {
+		LFKeyRange r = LFKeyRange.interval(10, 20).union(LFKeyRange.interval(21, 30)).union(LFKeyRange.interval(50, 60));
+		assertEquals(LFKeyRange.interval(10, 30).union(LFKeyRange.interval(50, 60)).toString(), r.toString());
+		assertTrue(r.contains(30));
+		assertFalse(r.contains(31));
+		assertEquals(50, r.ceiling(31));
+		assertFalse(r.hasCeiling(61));
+		assertTrue(r.intersection(LFKeyRange.outside(15, 55)).contains(58));
+		assertFalse(r.intersection(LFKeyRange.outside(15, 55)).contains(15));
+		// unsigned: the keys with the top bit set are the last ones
+		assertTrue(LFKeyRange.interval(1, -1).contains(Long.MIN_VALUE));
+		assertFalse(LFKeyRange.outside(0, 5).contains(5));
+		assertTrue(LFKeyRange.outside(0, 5).contains(6));
+	}
+
+	@Test public void range_integer_01() {
+		LFRangeFilter f = compile("?x > 10 && ?x <= 500");
+		LFKeyRange r = f.getRange(X);
+		assertFalse(r.contains(id("10")));
+		assertTrue(r.contains(id("11")));
+		assertTrue(r.contains(id("500")));
+		assertFalse(r.contains(id("501")));
+		assertFalse(r.contains(id("-3")));
+		// other types are for the filter
+		assertTrue(r.contains(id("1.5")));
+		f.setAttributeOrder(new Var[] { X });
+		assertTrue(f.holds(new long[] { id("11") }));
+		assertFalse(f.holds(new long[] { id("12.0") }));
+	}
+
+	@Test public void range_integer_02() {
+		LFKeyRange r = compile("?x >= -5.5 && ?x < 2").getRange(X);
+		assertFalse(r.contains(id("-6")));
+		assertTrue(r.contains(id("-5")));
+		assertTrue(r.contains(id("1")));
+		assertFalse(r.contains(id("2")));
+		assertFalse(compile("?x = 2.5").getRange(X).contains(id("2")));
+		assertTrue(compile("10 < ?x").getRange(X).contains(id("11")));
+		assertFalse(compile("10 < ?x").getRange(X).contains(id("10")));
+	}
+
+	@Test public void range_not_compiled_01() {
+		LFRangeFilter f = compile("?x > 10 || ?x < 0");
+		assertTrue(f.getVars().isEmpty());
+		f.setAttributeOrder(new Var[] { X });
+		assertFalse(f.holds(new long[] { id("20") }));
+		assertTrue(compile("?x > ?y").getVars().isEmpty());
+		assertTrue(compile("?y > 10").getVars().isEmpty());
+	}
+
+	@Test public void range_query_01() {
+		test("SELECT * { ?s :v ?x FILTER(?x > 10 && ?x < 500) }");
+	}
+
+	@Test public void range_query_02() {
+		test("SELECT * { ?s :v ?x FILTER(?x >= -100 && ?x <= 20) }");
+	}
+
+	@Test public void range_query_03() {
+		test("SELECT * { ?s :v ?x FILTER(?x = 49) }");
+		test("SELECT * { ?s :v ?x FILTER(-30 > ?x) }");
+		test("SELECT * { ?s :v ?x FILTER(?x > 12) }");
+	}
+
+	@Test public void range_query_04() {
+		// a variable of two patterns
+		test("SELECT * { ?s :p ?o . ?o :w ?x . ?t :v ?x FILTER(?x > -20 && ?x < 30) }");
+	}
+
+	@Test public void range_query_05() {
+		// a filter the ranges only narrow
+		test("SELECT * { ?s :v ?x FILTER(?x > 0 && ?x < 100 && ?x != 49) }");
+		test("SELECT * { ?s :v ?x FILTER(?x > 12.5 && str(?s) != '') }");
+	}
+
+	@Test public void range_query_06() {
+		test("SELECT * { ?s :p ?o OPTIONAL { ?o :w ?x FILTER(?x >= 0) } }");
+	}
+
+	@Test public void range_datetime_01() {
+		test("SELECT * { ?d :t ?x FILTER(?x >= '2018-03-01T10:00:00Z'^^xsd:dateTime) }");
+		test("SELECT * { ?d :t ?x FILTER(?x < '2018-03-01T10:00:00+01:00'^^xsd:dateTime) }");
+	}
+
+	@Test public void range_datetime_02() {
+		test("SELECT * { ?d :t ?x FILTER(?x > '2018-01-01T00:00:00'^^xsd:dateTime) }");
+		test("SELECT * { ?d :t ?x FILTER(?x = '2018-03-01T08:00:00Z'^^xsd:dateTime) }");
+	}
+}
@@ -0,0 +1,314 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.apache.jena.tdb.sys.SystemTDB.SizeOfLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.atlas.lib.Bytes;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.tdb.base.record.Record;
+import org.apache.jena.tdb.index.bplustree.BPlusTree;
+import org.apache.jena.tdb.store.NodeId;
+import org.junit.Test;
+
+public class TestLFTrieIndex {
+
+	private static final Var s = Var.alloc("s");
+	private static final Var p = Var.alloc("p");
+	private static final Var o = Var.alloc("o");
+
+	// Small pages so seeks have to cross leaves and climb the node stack.
+	static BPlusTree build(long[][] tuples) {
+		return build(tuples, 3, 2);
+	}
+
+	static BPlusTree build(long[][] tuples, int order, int minRecords) {
+		BPlusTree bpt = BPlusTree.makeMem(order, minRecords, 3 * NodeId.SIZE, 0);
+		for (long[] t : tuples) {
+			byte[] key = new byte[3 * NodeId.SIZE];
+			for (int i = 0; i < 3; i++) {
+				Bytes.setLong(t[i], key, i*SizeOfLong);
+			}
+			bpt.add(new Record(key, null));
+		}
+		return bpt;
+	}
+
+	static LFTrieIndex trie(BPlusTree bpt) {
+		Var[] order = { s, p, o };
+		return new LFTrieIndex(bpt, new Node[] { s, p, o }, order, 3);
+	}
+
+	static long[][] data() {
+		long[][] tuples = new long[60][];
+		int n = 0;
+		for (int i = 1; i <= 5; i++) {
+			for (int j = 1; j <= 4; j++) {
+				for (int k = 1; k <= 3; k++) {
+					tuples[n++] = new long[] { 10*i, 10*j, 10*k };
+				}
+			}
+		}
+		return tuples;
+	}
+
+	@Test public void trie_open_01() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		assertEquals(10, it.key());
+		it.open();
+		assertEquals(10, it.key());
+		it.open();
+		assertEquals(10, it.key());
+	}
+
+	@Test public void trie_next_01() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		for (long x = 20; x <= 50; x += 10) {
+			it.next();
+			assertFalse(it.atEnd());
+			assertEquals(x, it.key());
+		}
+		it.next();
+		assertTrue(it.atEnd());
+	}
+
+	@Test public void trie_next_02() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		it.seek(30);
+		it.open();
+		it.next();
+		it.next();
+		it.next();
+		assertEquals(40, it.key());
+		it.next();
+		// Next value for level 1 is under a different prefix.
+		assertTrue(it.atEnd());
+	}
+
+	@Test public void trie_seek_01() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		it.seek(25);
+		assertFalse(it.atEnd());
+		assertEquals(30, it.key());
+		it.seek(50);
+		assertEquals(50, it.key());
+		it.seek(51);
+		assertTrue(it.atEnd());
+	}
+
+	@Test public void trie_seek_02() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		it.seek(40);
+		it.open();
+		it.seek(30);
+		it.open();
+		assertEquals(10, it.key());
+		it.seek(21);
+		assertEquals(30, it.key());
+		it.seek(31);
+		assertTrue(it.atEnd());
+		it.up();
+		it.seek(40);
+		assertFalse(it.atEnd());
+		it.open();
+		assertEquals(10, it.key());
+	}
+
+	@Test public void trie_seek_unsigned_01() {
+		// Inline NodeIds have the high bit set: they are after all the others.
+		long inline = 0x8000000000000005L;
+		LFTrieIndex it = trie(build(new long[][] { {10, 1, 1}, {20, 1, 1}, {inline, 1, 1} }));
+		it.open();
+		assertEquals(10, it.key());
+		it.seek(0x8000000000000000L);
+		assertFalse(it.atEnd());
+		assertEquals(inline, it.key());
+		it.seek(20);
+		assertTrue(it.atEnd());
+	}
+
+	@Test public void trie_seek_03() {
+		// Large pages, so seeks of different lengths stay in the same page or cross several.
+		long[][] tuples = new long[2000][];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = new long[] { 1, 1, 3L*i };
+		}
+		BPlusTree bpt = build(tuples, 50, 50);
+		for (int hop = 1; hop < 400; hop += 37) {
+			LFTrieIndex it = trie(bpt);
+			it.open();
+			it.open();
+			it.open();
+			for (long key = hop; key <= 3L*(tuples.length-1); key += hop) {
+				if (key <= it.key()) {
+					// seek never stays at the current key
+					continue;
+				}
+				it.seek(key);
+				assertFalse(it.atEnd());
+				assertEquals((key+2)/3*3, it.key());
+			}
+			it.seek(3L*tuples.length-2);
+			assertTrue(it.atEnd());
+		}
+	}
+
+	@Test public void trie_sample_01() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		it.seek(30);
+		it.open();
+		// Keys of level 1 under 30: 10..40, from the separators of the small pages.
+		List<Long> keys = new ArrayList<>();
+		it.sampleKeys(2, keys);
+		assertFalse(keys.isEmpty());
+		for (int i = 0; i < keys.size(); i++) {
+			assertTrue(keys.get(i) >= 10 && keys.get(i) <= 40);
+			assertTrue(i == 0 || keys.get(i-1) <= keys.get(i));
+		}
+		// An estimate, exact inside one page.
+		LFTrieIndex it2 = trie(build(data(), 100, 100));
+		it2.open();
+		it2.seek(30);
+		it2.open();
+		assertEquals(12, it2.levelSize());
+	}
+
+	@Test public void trie_up_01() {
+		LFTrieIndex it = trie(build(data()));
+		it.open();
+		it.open();
+		it.seek(45);
+		assertTrue(it.atEnd());
+		it.up();
+		it.next();
+		assertEquals(20, it.key());
+		it.open();
+		assertEquals(10, it.key());
+	}
+
+	@Test public void trie_constant_01() {
+		// (s, 20, o): the constant column is skipped by open() and up(), keys of s without it are skipped.
+		long[][] tuples = data();
+		List<long[]> some = new ArrayList<>();
+		for (long[] t : tuples) {
+			if (t[0] != 20 || t[1] != 20) {
+				some.add(t);
+			}
+		}
+		LFTrieIndex it = new LFTrieIndex(build(some.toArray(new long[0][])), new Node[] { s, NodeFactory.createURI("http://example/c"), o }, new Var[] { s, o }, 3);
+		it.setConstant(1, 20);
+		it.open();
+		assertEquals(10, it.key());
+		it.next();
+		assertEquals(30, it.key());
+		it.open();
+		assertEquals(10, it.key());
+		it.seek(30);
+		assertEquals(30, it.key());
+		it.next();
+		assertTrue(it.atEnd());
+		it.up();
+		it.seek(45);
+		assertEquals(50, it.key());
+		it.open();
+		assertEquals(10, it.key());
+	}
+
+	@Test public void trie_ignored_01() {
+		// (s, p, ANY): the enumeration of p under each s sees each value once, over several buffers.
+		long[][] tuples = new long[12000][];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = new long[] { 1 + i % 2, i / 6, i % 3 };
+		}
+		LFTrieIndex it = new LFTrieIndex(build(tuples, 50, 50), new Node[] { s, p, Node.ANY }, new Var[] { s, p }, 1);
+		it.open();
+		it.next();
+		assertEquals(2, it.key());
+		long[] binding = new long[2];
+		it.startNoIntersection(binding);
+		List<Long> keys = new ArrayList<>();
+		while (true) {
+			keys.add(binding[1]);
+			if (it.hasNextInBuffer()) {
+				it.nextInBuffer(binding);
+			} else if (it.hasNextBuffer()) {
+				it.nextBuffer(binding);
+			} else {
+				break;
+			}
+		}
+		assertEquals(2000, keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertEquals(i, (long) keys.get(i));
+		}
+	}
+
+	/** The bindings of the enumeration of it, started. */
+	private static List<String> enumerate(LFTrieIndex it, long[] binding) {
+		List<String> res = new ArrayList<>();
+		while (true) {
+			res.add(Arrays.toString(binding));
+			if (it.hasNextInBuffer()) {
+				it.nextInBuffer(binding);
+			} else if (it.hasNextBuffer()) {
+				it.nextBuffer(binding);
+			} else {
+				return res;
+			}
+		}
+	}
+
+	@Test public void trie_buffer_01() {
+		// a buffer of 5 tuples at most: the 12 under s = 20 over several, read again from the tree by resetAll()
+		long saved = LFTrieIndex.bufferBudget;
+		LFTrieIndex.bufferBudget = 5 * 3 * SizeOfLong;
+		try {
+			LFTrieIndex it = new LFTrieIndex(build(data()), new Node[] { s, p, o }, new Var[] { s, p, o }, 1);
+			it.open();
+			it.next();
+			long[] binding = new long[3];
+			it.startNoIntersection(binding);
+			assertEquals(5, it.bufferSize());
+			List<String> all = enumerate(it, binding);
+			assertEquals(12, all.size());
+			assertEquals("[0, 10, 10]", all.get(0));
+			assertEquals("[0, 40, 30]", all.get(11));
+			it.resetAll(binding);
+			assertEquals(all, enumerate(it, binding));
+		} finally {
+			LFTrieIndex.bufferBudget = saved;
+		}
+	}
+
+	@Test public void trie_buffer_02() {
+		// grows to the whole range, from the estimate of its size: resetAll() goes back to the start of the buffer
+		long[][] tuples = new long[5000][];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = new long[] { 1 + i % 2, i, i % 3 };
+		}
+		LFTrieIndex it = new LFTrieIndex(build(tuples, 50, 50), new Node[] { s, p, o }, new Var[] { s, p, o }, 1);
+		it.open();
+		long[] binding = new long[3];
+		it.startNoIntersection(binding);
+		assertEquals(2500, it.bufferSize());
+		assertFalse(it.hasNextBuffer());
+		List<String> all = enumerate(it, binding);
+		it.resetAll(binding);
+		assertEquals(all, enumerate(it, binding));
+		assertEquals("[0, 0, 0]", all.get(0));
+		assertEquals("[0, 4998, 0]", all.get(2499));
+	}
+}
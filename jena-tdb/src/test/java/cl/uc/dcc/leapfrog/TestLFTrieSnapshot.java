@@ -0,0 +1,137 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb.index.bplustree.BPlusTree;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
+import org.apache.jena.tdb.store.tupletable.TupleIndexRecord;
+import org.apache.jena.tdb.sys.TDBInternal;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** The indexes read from their snapshots in memory give the same results as from their B+Trees. */
+public class TestLFTrieSnapshot extends AbstractTestLFQuery {
+
+	private static final String ALL = "SPO,POS,OSP,SOP,PSO,OPS,GSPO,GPOS,GOSP,POSG,OSPG,SPOG";
+
+	@BeforeClass public static void data() {
+		createDataset();
+		for (int i = 0; i < 50; i++) {
+			dsg.add(Quad.defaultGraphIRI, uri("n" + i), uri("p"), uri("n" + ((i * 7) % 50)));
+			dsg.add(Quad.defaultGraphIRI, uri("n" + i), uri("p"), uri("n" + ((i + 3) % 50)));
+			if (i % 4 == 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("n" + i), uri("q"), uri("c" + (i % 3)));
+			}
+			if (i % 5 != 0) {
+				dsg.add(Quad.defaultGraphIRI, uri("n" + i), uri("v"), SSE.parseNode("" + i));
+			}
+			dsg.add(new Quad(uri("g" + (i % 3)), uri("n" + i), uri("p"), uri("n" + ((i * 3) % 50))));
+		}
+	}
+
+	/** Settings reading the indexes from their snapshots, in as many threads. */
+	private static Consumer<Context> snapshots(String indexes, int parallelism) {
+		return context -> {
+			context.set(LFTrieSnapshot.symSnapshotIndexes, indexes);
+			context.set(ParallelOptionalTree.symParallelism, parallelism);
+		};
+	}
+
+	private static void testSnapshots(String qs) {
+		testSnapshots(qs, context -> {});
+	}
+
+	/** The same rows by the leapfrog over the B+Trees and over the snapshots of some or all the indexes. */
+	private static void testSnapshots(String qs, Consumer<Context> settings) {
+		List<String> expected = exec(qs, true, settings);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, exec(qs, true, settings.andThen(snapshots(ALL, 1))));
+		// some of the tuples from snapshots, some from B+Trees
+		assertEquals(expected, exec(qs, true, settings.andThen(snapshots("pos, spo", 1))));
+	}
+
+	@Test public void snapshot_query_01() {
+		testSnapshots("SELECT * { ?a :p ?b . ?b :p ?c . ?c :p ?a }");
+	}
+
+	@Test public void snapshot_query_02() {
+		// constants first and after a variable
+		testSnapshots("SELECT * { ?a :p ?b . ?b :q :c1 . ?a :v ?x }");
+	}
+
+	@Test public void snapshot_query_03() {
+		testSnapshots("SELECT DISTINCT ?a { ?a :p ?b . ?b :p ?c }");
+	}
+
+	@Test public void snapshot_query_04() {
+		testSnapshots("SELECT * { ?a :q ?c OPTIONAL { ?a :p ?b . ?b :v ?x } }");
+	}
+
+	@Test public void snapshot_query_05() {
+		testSnapshots("SELECT * { ?a :p ?b . ?b :v ?x FILTER (?x > 20) FILTER (?x < 30) }");
+	}
+
+	@Test public void snapshot_query_06() {
+		testSnapshots("SELECT (COUNT(*) AS ?n) { ?a ?p ?b . ?b ?q ?c }");
+	}
+
+	@Test public void snapshot_quads_01() {
+		testSnapshots("SELECT * { GRAPH ?g { ?a :p ?b . ?b :p ?c } }");
+		testSnapshots("SELECT * { GRAPH :g1 { ?a :p ?b } ?b :q ?c }");
+		testSnapshots("SELECT DISTINCT ?a ?b { ?a :p ?b . ?b :p ?c }", unionDefaultGraph);
+	}
+
+	@Test public void snapshot_parallel_01() {
+		// split on keys sampled from the snapshot
+		String qs = "SELECT * { ?a :p ?b . ?b :p ?c }";
+		assertEquals(exec(qs, true), exec(qs, true, snapshots(ALL, 4)));
+	}
+
+	@Test public void snapshot_explain_01() {
+		String op = "(bgp (?a <" + NS + "p> ?b) (?b <" + NS + "q> ?c))";
+		OptionalTreeNode tree = tree(op);
+		tree.setSnapshotIndexes(LFTrieSnapshot.indexes(context(ALL)));
+		tree.init(new Var[0]);
+		String plan = LFExplain.plan(tree, false);
+		assertTrue(plan, plan.contains(" snapshot "));
+	}
+
+	@Test public void snapshot_stale_01() {
+		DatasetGraph dsg = TDBFactory.createDatasetGraph();
+		dsg.add(Quad.defaultGraphIRI, uri("a"), uri("p"), uri("b"));
+		DatasetGraphTDB dsgtdb = TDBInternal.getDatasetGraphTDB(dsg);
+		BPlusTree btree = (BPlusTree) ((TupleIndexRecord) dsgtdb.getTripleTable().getNodeTupleTable().getTupleTable().getIndex(0)).getRangeIndex();
+		LFTrieSnapshot snapshot = LFTrieSnapshot.get(btree);
+		assertEquals(1, snapshot.size());
+		assertSame(snapshot, LFTrieSnapshot.get(btree));
+		dsg.add(Quad.defaultGraphIRI, uri("a"), uri("p"), uri("c"));
+		LFTrieSnapshot again = LFTrieSnapshot.get(btree);
+		assertNotSame(snapshot, again);
+		assertEquals(2, again.size());
+	}
+
+	@Test public void snapshot_indexes_01() {
+		assertEquals(3, LFTrieSnapshot.indexes(context(" spo,POS , ,gspo")).size());
+		assertTrue(LFTrieSnapshot.indexes(context("spo")).contains("SPO"));
+		assertTrue(LFTrieSnapshot.indexes(new Context()).isEmpty());
+	}
+
+	private static Context context(String indexes) {
+		Context context = new Context();
+		context.set(LFTrieSnapshot.symSnapshotIndexes, indexes);
+		return context;
+	}
+}
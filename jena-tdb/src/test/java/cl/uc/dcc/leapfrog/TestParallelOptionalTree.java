@@ -0,0 +1,92 @@
+package cl.uc.dcc.leapfrog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.tdb.TDBFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestParallelOptionalTree {
+
+	private static final String NS = "http://example/";
+	private static final String PRE = "PREFIX : <" + NS + "> ";
+	private static Model model;
+
+	private static Node uri(String local) {
+		return NodeFactory.createURI(NS + local);
+	}
+
+	// Enough triples for the indexes to have internal nodes to sample from.
+	@BeforeClass public static void beforeClass() {
+		Graph graph = TDBFactory.createDatasetGraph().getDefaultGraph();
+		for (int i = 0; i < 3000; i++) {
+			graph.add(Triple.create(uri("x" + i), uri("p"), uri("y" + (i % 700))));
+			graph.add(Triple.create(uri("y" + (i % 700)), uri("q"), uri("z" + (i % 13))));
+			if (i % 3 == 0) {
+				graph.add(Triple.create(uri("x" + i), uri("r"), uri("w" + i)));
+			}
+		}
+		model = ModelFactory.createModelForGraph(graph);
+	}
+
+	private static List<String> exec(String qs, int parallelism, boolean ordered) {
+		try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, model) ) {
+			qExec.getContext().set(ParallelOptionalTree.symParallelism, parallelism);
+			qExec.getContext().set(ParallelOptionalTree.symParallelOrdered, ordered);
+			List<String> rows = new ArrayList<>();
+			ResultSet rs = qExec.execSelect();
+			while (rs.hasNext()) {
+				rows.add(rs.next().toString());
+			}
+			return rows;
+		}
+	}
+
+	private static void test(String qs) {
+		List<String> expected = exec(qs, 1, true);
+		assertTrue(expected.size() > 0);
+		// In the order of the ranges, the same order as a sequential execution.
+		assertEquals(expected, exec(qs, 4, true));
+
+		List<String> unordered = exec(qs, 4, false);
+		Collections.sort(expected);
+		Collections.sort(unordered);
+		assertEquals(expected, unordered);
+	}
+
+	@Test public void parallel_bgp_01() {
+		test("SELECT * { ?x :p ?y . ?y :q ?z }");
+	}
+
+	@Test public void parallel_bgp_02() {
+		test("SELECT * { ?x :p ?y . ?y :q :z3 }");
+	}
+
+	@Test public void parallel_optional_01() {
+		test("SELECT * { ?x :p ?y . OPTIONAL { ?x :r ?w } }");
+	}
+
+	@Test public void parallel_close_01() {
+		String qs = "SELECT * { ?x :p ?y . ?y :q ?z }";
+		try ( QueryExecution qExec = QueryExecutionFactory.create(PRE + qs, model) ) {
+			qExec.getContext().set(ParallelOptionalTree.symParallelism, 4);
+			ResultSet rs = qExec.execSelect();
+			assertTrue(rs.hasNext());
+			rs.next();
+		}
+	}
+}
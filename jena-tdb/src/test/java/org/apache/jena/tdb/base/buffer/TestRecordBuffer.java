@@ -25,6 +25,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.Bytes ;
 import org.apache.jena.tdb.base.buffer.BufferException ;
 import org.apache.jena.tdb.base.buffer.RecordBuffer ;
 import org.apache.jena.tdb.base.record.Record ;
@@ -298,6 +299,54 @@ public class TestRecordBuffer extends BaseTest
         same(iter, 4, 6, 8 ) ;
     }
     
+    // Keys of 3 longs, accessed as longs.
+    @Test public void recBufferLong01()
+    {
+        RecordBuffer rb = makeLong(4, 4) ;
+        long[] tuple = new long[3] ;
+        rb.getLongs(2, tuple) ;
+        assertEquals(30, tuple[0]) ;
+        assertEquals(31, tuple[1]) ;
+        assertEquals(32, tuple[2]) ;
+        assertEquals(21, rb.getLong(1, 1)) ;
+    }
+
+    @Test public void recBufferLong02()
+    {
+        RecordBuffer rb = makeLong(4, 4) ;
+        assertEquals(2, rb.find(new long[]{30, 31, 32})) ;
+        assertEquals(-3, rb.find(new long[]{30, 0, 0})) ;
+        assertEquals(-1, rb.find(new long[]{0, 0, 0})) ;
+        assertEquals(-5, rb.find(new long[]{41, 0, 0})) ;
+        // A shorter key matches as a prefix
+        assertEquals(3, rb.find(new long[]{40})) ;
+    }
+
+    @Test public void recBufferLong03()
+    {
+        RecordBuffer rb = makeLong(4, 4) ;
+        assertTrue(rb.compare(0, new long[]{10, 11, 12}) == 0) ;
+        assertTrue(rb.compare(0, new long[]{10, 11, 13}) < 0) ;
+        assertTrue(rb.compare(0, new long[]{10, 10, 13}) > 0) ;
+        // Compares as unsigned, like the bytes.
+        assertTrue(rb.compare(0, new long[]{-1L, 0, 0}) < 0) ;
+    }
+
+    @Test public void recBufferLong04()
+    {
+        RecordBuffer rb = makeLong(20, 20) ;
+        for ( int from = 0 ; from < 20 ; from++ )
+        {
+            for ( int i = from+1 ; i <= 20 ; i++ )
+            {
+                assertEquals(rb.find(new long[]{10*i, 10*i+1, 10*i+2}), rb.gallop(new long[]{10*i, 10*i+1, 10*i+2}, from)) ;
+                assertEquals(rb.find(new long[]{10*i+5, 0, 0}), rb.gallop(new long[]{10*i+5, 0, 0}, from)) ;
+            }
+        }
+        // Past the end
+        assertEquals(-21, rb.gallop(new long[]{300, 0, 0}, 3)) ;
+    }
+
     // ---- Support
     private static void contains(RecordBuffer rb, int... vals)
     {
@@ -333,6 +382,21 @@ public class TestRecordBuffer extends BaseTest
         return rb.find(r(v)) ;
     }
 
+    // Records (10i,10i+1,10i+2) for i = 1..n
+    private static RecordBuffer makeLong(int n, int len)
+    {
+        RecordFactory factory = new RecordFactory(3*SystemTDB.SizeOfLong, 0) ;
+        RecordBuffer rb = new RecordBuffer(factory, len) ;
+        for ( int i = 1 ; i <= n ; i++ )
+        {
+            byte[] key = new byte[3*SystemTDB.SizeOfLong] ;
+            for ( int j = 0 ; j < 3 ; j++ )
+                Bytes.setLong(10*i+j, key, j*SystemTDB.SizeOfLong) ;
+            rb.add(factory.create(key)) ;
+        }
+        return rb ;
+    }
+
     private static RecordBuffer make(int n, int len)
     { 
         RecordBuffer rb = new RecordBuffer(recordFactory, len) ;
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.base.objectfile;
+
+import java.nio.ByteBuffer ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.apache.jena.tdb.ConfigTest ;
+import org.apache.jena.tdb.base.file.BufferChannelFile ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+public class TestObjectFileMapped extends BaseTest
+{
+    static String filename = ConfigTest.getTestingDir()+"/test-objectfile-mapped" ;
+    static final int SegmentSize = 1024 ;
+
+    private ObjectFileStorage file ;
+    private ObjectFileMapped mapped ;
+
+    @Before public void before()
+    {
+        FileOps.deleteSilent(filename) ;
+        file = new ObjectFileStorage(BufferChannelFile.create(filename)) ;
+        mapped = new ObjectFileMapped(file, filename, SegmentSize) ;
+    }
+
+    @After public void after()
+    {
+        mapped.closeMapping() ;
+        file.close() ;
+        FileOps.deleteSilent(filename) ;
+    }
+
+    static ByteBuffer object(int i)
+    {
+        ByteBuffer bb = ByteBuffer.allocate(i%100) ;
+        for ( int j = 0 ; j < bb.capacity() ; j++ )
+            bb.put((byte)(i+j)) ;
+        bb.flip() ;
+        return bb ;
+    }
+
+    private long[] write(int n)
+    {
+        long[] ids = new long[n] ;
+        for ( int i = 0 ; i < n ; i++ )
+            ids[i] = file.write(object(i)) ;
+        return ids ;
+    }
+
+    @Test public void mapped_01()
+    {
+        long[] ids = write(500) ;
+        file.sync() ;
+        int direct = 0 ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            ByteBuffer bb = mapped.read(ids[i]) ;
+            assertEquals(object(i), bb) ;
+            if ( bb.isDirect() )
+                direct++ ;
+        }
+        // Every whole segment; objects at the end of the file or across segments are copied.
+        assertEquals(file.length()/SegmentSize, mapped.mappedSegments()) ;
+        assertTrue("Direct: "+direct, direct > 400) ;
+    }
+
+    @Test public void mapped_02()
+    {
+        // Not yet on disk.
+        long[] ids = write(10) ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+            assertEquals(object(i), mapped.read(ids[i])) ;
+        assertEquals(0, mapped.mappedSegments()) ;
+    }
+
+    @Test public void mapped_03()
+    {
+        long[] ids = write(100) ;
+        file.sync() ;
+        long start = file.length() ;
+        write(100) ;
+        file.sync() ;
+        assertEquals(object(50), mapped.read(ids[50])) ;
+        // As an abort does: the segment at the end is mapped over the truncation.
+        file.truncate(start) ;
+        long[] ids2 = new long[100] ;
+        for ( int i = 0 ; i < ids2.length ; i++ )
+            ids2[i] = file.write(object(1000+i)) ;
+        file.sync() ;
+        for ( int i = 0 ; i < ids2.length ; i++ )
+            assertEquals(object(1000+i), mapped.read(ids2[i])) ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+            assertEquals(object(i), mapped.read(ids[i])) ;
+    }
+}
@@ -63,6 +63,39 @@ public class TestBPlusTreeRewriter extends BaseTest
     
     @Test public void bpt_rewrite_99()  { runTest(5, 1000) ; }
     
+    @Test public void bpt_pack_01()     { runPackTest(3, 0) ; }
+    @Test public void bpt_pack_02()     { runPackTest(3, 1) ; }
+    @Test public void bpt_pack_03()     { runPackTest(3, 1000) ; }
+
+    @Test(expected=BPTreeException.class)
+    public void bpt_pack_04()
+    {
+        BPlusTree bpt = BPlusTree.makeMem(3, 3, KeySize, ValueSize) ;
+        bpt.add(createData(1, recordFactory).get(0)) ;
+        bpt.pack(createData(10, recordFactory).iterator()) ;
+    }
+
+    static void runPackTest(int order, int N)
+    {
+        List<Record> originaldata = TestBPlusTreeRewriter.createData(N, recordFactory) ;
+        BPlusTree bpt = BPlusTree.makeMem(order, order, KeySize, ValueSize) ;
+        long modifications = bpt.getModifications() ;
+        bpt.pack(originaldata.iterator()) ;
+        assertTrue(bpt.getModifications() > modifications) ;
+
+        bpt.check() ;
+        scanComparision(originaldata, bpt) ;
+        findComparison(originaldata, bpt) ;
+        sizeComparison(originaldata, bpt) ;
+
+        // Still a B+Tree to add to.
+        Record r = recordFactory.create() ;
+        Bytes.setInt(N+1, r.getKey()) ;
+        assertTrue(bpt.add(r)) ;
+        bpt.check() ;
+        assertEquals(N+1, bpt.size()) ;
+    }
+
     static void runTest(int order, int N)
     { runOneTest(order, N , recordFactory, false) ; }
     
@@ -94,6 +94,17 @@ public class TestStoreParams extends BaseTest {
         assertArrayEquals(expected, params.getTripleIndexes()) ;
     }
 
+    @Test public void store_params_15() {
+        assertFalse(StoreParams.getDftStoreParams().isNodeNamespaces()) ;
+        StoreParams params = StoreParams.builder().nodeNamespaces(true).build() ;
+        StoreParams params2 = roundTrip(params) ;
+        assertEqualsStoreParams(params,params2) ;
+        assertTrue(params2.isNodeNamespaces()) ;
+        // Not set : off.
+        JsonObject x = JSON.parse("{ \"tdb.block_size\": 2048 }") ;
+        assertFalse(StoreParamsCodec.decode(x).isNodeNamespaces()) ;
+    }
+
     // Check that setting gets recorded and propagated.
 
     @Test public void store_params_20() {
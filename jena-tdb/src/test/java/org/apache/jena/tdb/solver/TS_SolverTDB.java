@@ -25,6 +25,7 @@ import org.junit.runners.Suite ;
 @Suite.SuiteClasses( {
     TestSolverTDB.class     // Tests the TDB connectivity
     , TestStats.class
+    , TestTripleStats.class
 })
 
 public class TS_SolverTDB
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.solver;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.query.ReadWrite ;
+import org.apache.jena.sparql.core.DatasetGraph ;
+import org.apache.jena.sparql.core.Quad ;
+import org.apache.jena.sparql.graph.NodeConst ;
+import org.apache.jena.tdb.ConfigTest ;
+import org.apache.jena.tdb.StoreConnection ;
+import org.apache.jena.tdb.TDBFactory ;
+import org.apache.jena.tdb.base.file.Location ;
+import org.apache.jena.tdb.solver.stats.StatsResults ;
+import org.apache.jena.tdb.solver.stats.TripleStats ;
+import org.apache.jena.tdb.store.DatasetGraphTDB ;
+import org.apache.jena.tdb.store.TripleTable ;
+import org.apache.jena.tdb.sys.Names ;
+import org.apache.jena.tdb.sys.TDBInternal ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+public class TestTripleStats extends BaseTest
+{
+    static Node p1 = NodeFactory.createURI("http://example/p1") ;
+    static Node p2 = NodeFactory.createURI("http://example/p2") ;
+    static Node c1 = NodeFactory.createURI("http://example/C1") ;
+
+    static Node s(int i) { return NodeFactory.createURI("http://example/s"+i) ; }
+
+    private String path ;
+    private Location location ;
+
+    @Before public void before()
+    {
+        path = ConfigTest.getCleanDir() ;
+        location = Location.create(path) ;
+        StoreConnection.expel(location, true) ;
+        FileOps.clearDirectory(path) ;
+    }
+
+    @After public void after()
+    {
+        StoreConnection.release(location) ;
+        FileOps.clearDirectory(path) ;
+    }
+
+    // Predicate counts, as a read transaction sees them.
+    static long count(DatasetGraph dsg, Node p)
+    {
+        dsg.begin(ReadWrite.READ) ;
+        try {
+            TripleStats stats = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getStats() ;
+            return ( p == null ) ? stats.getCount() : stats.getCount(p) ;
+        } finally { dsg.end() ; }
+    }
+
+    @Test public void stats_01()
+    {
+        DatasetGraphTDB dsg = TDBInternal.getBaseDatasetGraphTDB(TDBFactory.createDatasetGraph()) ;
+        TripleStats stats = dsg.getTripleTable().getStats() ;
+        assertNotNull(stats) ;
+        for ( int i = 0 ; i < 100 ; i++ )
+        {
+            dsg.getTripleTable().add(s(i), p1, s(i%10)) ;
+            if ( i%4 == 0 )
+                dsg.getTripleTable().add(s(i), NodeConst.nodeRDFType, c1) ;
+        }
+        // Already there
+        dsg.getTripleTable().add(s(0), p1, s(0)) ;
+        assertEquals(125, stats.getCount()) ;
+        assertEquals(100, stats.getCount(p1)) ;
+        assertEquals(25, stats.getTypeCount(c1)) ;
+        assertEquals(0, stats.getCount(p2)) ;
+        assertEquals(100, stats.getDistinctSubjects(p1), 5) ;
+        assertEquals(10, stats.getDistinctObjects(p1)) ;
+        assertEquals(1, stats.getDistinctObjects(NodeConst.nodeRDFType)) ;
+
+        dsg.getTripleTable().delete(s(0), NodeConst.nodeRDFType, c1) ;
+        dsg.deleteAny(null, null, p1, s(1)) ;
+        assertEquals(114, stats.getCount()) ;
+        assertEquals(90, stats.getCount(p1)) ;
+        assertEquals(24, stats.getTypeCount(c1)) ;
+
+        StatsResults results = stats.results() ;
+        assertEquals(114, results.getCount()) ;
+        assertEquals(90, (int)results.getPredicates().get(p1)) ;
+
+        dsg.getTripleTable().clearTriples() ;
+        assertEquals(0, stats.getCount()) ;
+        assertEquals(0, stats.getCount(p1)) ;
+        assertEquals(0, stats.getDistinctSubjects(p1)) ;
+    }
+
+    @Test public void stats_txn_01()
+    {
+        DatasetGraph dsg = TDBFactory.createDatasetGraph(location) ;
+        dsg.begin(ReadWrite.WRITE) ;
+        for ( int i = 0 ; i < 10 ; i++ )
+            dsg.add(Quad.defaultGraphIRI, s(i), p1, s(0)) ;
+        // Seen in the transaction
+        assertEquals(10, TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getStats().getCount(p1)) ;
+        // Not yet seen outside it
+        assertEquals(0, TDBInternal.getBaseDatasetGraphTDB(dsg).getTripleTable().getStats().getCount()) ;
+        dsg.commit() ;
+        dsg.end() ;
+        assertEquals(10, count(dsg, p1)) ;
+
+        dsg.begin(ReadWrite.WRITE) ;
+        dsg.add(Quad.defaultGraphIRI, s(0), p2, s(0)) ;
+        dsg.delete(Quad.defaultGraphIRI, s(1), p1, s(0)) ;
+        dsg.abort() ;
+        dsg.end() ;
+        assertEquals(10, count(dsg, null)) ;
+        assertEquals(0, count(dsg, p2)) ;
+
+        dsg.begin(ReadWrite.WRITE) ;
+        dsg.delete(Quad.defaultGraphIRI, s(1), p1, s(0)) ;
+        dsg.commit() ;
+        dsg.end() ;
+        assertEquals(9, count(dsg, p1)) ;
+
+        // Read back from the file.
+        StoreConnection.expel(location, true) ;
+        dsg = TDBFactory.createDatasetGraph(location) ;
+        dsg.begin(ReadWrite.READ) ;
+        try {
+            TripleStats stats = TDBInternal.getDatasetGraphTDB(dsg).getTripleTable().getStats() ;
+            assertEquals(9, stats.getCount()) ;
+            assertEquals(9, stats.getCount(p1)) ;
+            assertEquals(9, stats.getDistinctSubjects(p1)) ;
+            assertEquals(1, stats.getDistinctObjects(p1)) ;
+        } finally { dsg.end() ; }
+    }
+
+    @Test public void stats_rebuild_01()
+    {
+        DatasetGraph dsg = TDBFactory.createDatasetGraph(location) ;
+        dsg.begin(ReadWrite.WRITE) ;
+        for ( int i = 0 ; i < 5 ; i++ )
+            dsg.add(Quad.defaultGraphIRI, s(i), p1, s(i)) ;
+        dsg.commit() ;
+        dsg.end() ;
+        StoreConnection.expel(location, true) ;
+        // Stats that do not match the data are unknown.
+        FileOps.delete(location.getPath(Names.liveStats)) ;
+        dsg = TDBFactory.createDatasetGraph(location) ;
+        TripleTable tripleTable = TDBInternal.getBaseDatasetGraphTDB(dsg).getTripleTable() ;
+        assertNull(tripleTable.getStats()) ;
+        TripleStats stats = tripleTable.rebuildStats() ;
+        assertEquals(5, stats.getCount(p1)) ;
+        assertEquals(5, stats.getDistinctObjects(p1)) ;
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.jena.tdb.store;
 
 import org.apache.jena.tdb.base.block.FileMode ;
+import org.apache.jena.tdb.store.bulkloader.TestBuilderSecondaryIndexesSorted ;
 import org.apache.jena.tdb.sys.SystemTDB ;
 import org.apache.jena.tdb.sys.TestOps ;
 import org.junit.AfterClass ;
@@ -37,6 +38,7 @@ import org.junit.runners.Suite ;
     , TestDatasetGraphTDBFind.class
     , TestDatasetGraphTDBFindPattern.class
     , TestLoader.class
+    , TestBuilderSecondaryIndexesSorted.class
     // The script suite
     , TestSuiteGraphTDB.class
     , Test_SPARQL_TDB.class
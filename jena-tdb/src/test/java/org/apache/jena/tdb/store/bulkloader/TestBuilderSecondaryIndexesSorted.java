@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.bulkloader;
+
+import java.util.HashSet ;
+import java.util.Set ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.tuple.Tuple ;
+import org.apache.jena.atlas.lib.tuple.TupleFactory ;
+import org.apache.jena.tdb.base.file.FileSet ;
+import org.apache.jena.tdb.base.record.RecordFactory ;
+import org.apache.jena.tdb.index.IndexFactory ;
+import org.apache.jena.tdb.index.RangeIndex ;
+import org.apache.jena.tdb.index.bplustree.BPlusTree ;
+import org.apache.jena.tdb.lib.ColumnMap ;
+import org.apache.jena.tdb.setup.StoreParams ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.store.tupletable.TupleIndex ;
+import org.apache.jena.tdb.store.tupletable.TupleIndexRecord ;
+import org.apache.jena.tdb.sys.Names ;
+import org.apache.jena.tdb.sys.SystemTDB ;
+import org.apache.jena.tdb.sys.TDBInternal ;
+import org.apache.jena.tdb.TDBFactory ;
+import org.junit.Test ;
+
+public class TestBuilderSecondaryIndexesSorted extends BaseTest
+{
+    static RecordFactory factory = new RecordFactory(3*SystemTDB.SizeOfNodeId, 0) ;
+
+    static TupleIndexRecord create(String description)
+    {
+        RangeIndex rIdx = IndexFactory.buildRangeIndex(FileSet.mem(), factory, StoreParams.getDftStoreParams()) ;
+        return new TupleIndexRecord(3, new ColumnMap("SPO", description), description, factory, rIdx) ;
+    }
+
+    static LoadMonitor monitor()
+    {
+        LoadMonitor monitor = BulkLoader.createLoadMonitor(TDBInternal.getDatasetGraphTDB(TDBFactory.createDatasetGraph()), "triples", false) ;
+        monitor.startLoad() ;
+        return monitor ;
+    }
+
+    // N tuples, in an order unrelated to any index; half with the top bit of a NodeId set.
+    static TupleIndexRecord primary(int N)
+    {
+        TupleIndexRecord index = create(Names.primaryIndexTriples) ;
+        for ( int i = 0 ; i < N ; i++ )
+        {
+            long x = (i*7919L)%N ;
+            long o = ( x%2 == 0 ) ? x+1 : (x+1)|Long.MIN_VALUE ;
+            index.add(TupleFactory.tuple(new NodeId(x%13+1), new NodeId(x%101+1), new NodeId(o))) ;
+        }
+        return index ;
+    }
+
+    static void build(int N, long memoryBudget)
+    {
+        build(N, memoryBudget, Runtime.getRuntime().availableProcessors()) ;
+    }
+
+    static void build(int N, long memoryBudget, int parallelism)
+    {
+        TupleIndexRecord primary = primary(N) ;
+        TupleIndex[] secondary = new TupleIndex[Names.tripleIndexes.length-1] ;
+        for ( int i = 1 ; i < Names.tripleIndexes.length ; i++ )
+            secondary[i-1] = create(Names.tripleIndexes[i]) ;
+
+        new BuilderSecondaryIndexesSorted(monitor(), memoryBudget, null, parallelism).createSecondaryIndexes(primary, secondary) ;
+
+        Set<Tuple<NodeId>> expected = new HashSet<>(Iter.toList(primary.all())) ;
+        for ( TupleIndex index : secondary )
+        {
+            BPlusTree bpt = (BPlusTree)((TupleIndexRecord)index).getRangeIndex() ;
+            bpt.check() ;
+            assertEquals(N, index.size()) ;
+            assertEquals(expected, new HashSet<>(Iter.toList(index.all()))) ;
+            // Finds go through the index order.
+            Tuple<NodeId> t = primary.all().next() ;
+            assertTrue(index.find(t).hasNext()) ;
+        }
+    }
+
+    @Test public void sorted_build_01()     { build(10, BuilderSecondaryIndexesSorted.DefaultMemoryBudget) ; }
+    // Runs of the least size, merged from files.
+    @Test public void sorted_build_02()     { build(5000, 1) ; }
+    @Test public void sorted_build_03()     { build(1000, 1) ; }
+    // Runs merged in the packer's thread, and in ranges by four and eight threads for each index.
+    @Test public void sorted_build_05()     { build(5000, 1, 1) ; }
+    @Test public void sorted_build_06()     { build(5000, 1, 20) ; }
+    @Test public void sorted_build_07()     { build(5500, 1, 40) ; }
+    // A run large enough to be sorted in parallel.
+    @Test public void sorted_build_08()     { build(200000, BuilderSecondaryIndexesSorted.DefaultMemoryBudget) ; }
+
+    @Test public void sorted_build_04()
+    {
+        // Not empty: added to one by one.
+        TupleIndexRecord primary = primary(100) ;
+        TupleIndexRecord dest = create("POS") ;
+        dest.add(TupleFactory.tuple(new NodeId(1000), new NodeId(1000), new NodeId(1000))) ;
+        new BuilderSecondaryIndexesSorted(monitor()).createSecondaryIndexes(primary, new TupleIndex[]{dest}) ;
+        assertEquals(101, dest.size()) ;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Random ;
+import java.util.concurrent.atomic.LongAdder ;
+import java.util.function.Function ;
+
+import org.apache.jena.atlas.lib.Cache ;
+import org.apache.jena.atlas.lib.CacheFactory ;
+import org.apache.jena.atlas.lib.Lib ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.tdb.base.file.Location ;
+import org.apache.jena.tdb.setup.Build ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.sys.Names ;
+
+/**
+ * Throughput and hit rate of NodeId to Node lookups by many threads, as when results
+ * are materialized: {@link NodeTableCache} against a cache from
+ * {@link CacheFactory#createCache} with all misses under one lock, as NodeTableCache was.
+ * Most lookups are of a small set of hot nodes; the others scan over all the nodes.
+ * <p>
+ * Usage: CmdNodeTableCacheBench [threads] [numNodes] [cacheSize] [seconds]
+ */
+public class CmdNodeTableCacheBench
+{
+    public static void main(String...argv) throws InterruptedException
+    {
+        int threads   = ( argv.length > 0 ) ? Integer.parseInt(argv[0]) : 64 ;
+        int numNodes  = ( argv.length > 1 ) ? Integer.parseInt(argv[1]) : 200000 ;
+        int cacheSize = ( argv.length > 2 ) ? Integer.parseInt(argv[2]) : 10000 ;
+        int seconds   = ( argv.length > 3 ) ? Integer.parseInt(argv[3]) : 5 ;
+
+        NodeTable base = Build.makeNodeTable(Location.mem(), Names.indexNode2Id, -1, Names.indexId2Node, -1, -1) ;
+        NodeId[] ids = new NodeId[numNodes] ;
+        for ( int i = 0 ; i < numNodes ; i++ )
+            ids[i] = base.getAllocateNodeId(NodeFactory.createURI("http://example/node/"+i)) ;
+
+        for ( int round = 0 ; round < 2 ; round++ )
+        {
+            run("createCache, one lock", singleLock(base, cacheSize), ids, threads, cacheSize, seconds) ;
+            NodeTableCache nt = (NodeTableCache)NodeTableCache.create(base, cacheSize, cacheSize, 0) ;
+            run("NodeTableCache", nt::getNodeForNodeId, ids, threads, cacheSize, seconds) ;
+            System.out.println("    "+nt.getId2NodeCacheInfo()) ;
+        }
+    }
+
+    // The NodeId to Node path of NodeTableCache before the caches were striped.
+    private static Function<NodeId, Node> singleLock(NodeTable base, int cacheSize)
+    {
+        Cache<NodeId, Node> cache = CacheFactory.createCache(cacheSize) ;
+        Object lock = new Object() ;
+        return id -> {
+            Node n = cache.getIfPresent(id) ;
+            if ( n != null )
+                return n ;
+            synchronized (lock) {
+                n = cache.getIfPresent(id) ;
+                if ( n != null )
+                    return n ;
+                n = base.getNodeForNodeId(id) ;
+                cache.put(id, n) ;
+                return n ;
+            }
+        } ;
+    }
+
+    private static void run(String label, Function<NodeId, Node> lookup, NodeId[] ids, int threads, int cacheSize, int seconds) throws InterruptedException
+    {
+        int hot = Math.max(1, cacheSize/2) ;
+        LongAdder ops = new LongAdder() ;
+        LongAdder hotOps = new LongAdder() ;
+        LongAdder hotTime = new LongAdder() ;
+        long end = System.nanoTime() + seconds*1000_000_000L ;
+        List<Thread> workers = new ArrayList<>() ;
+        for ( int t = 0 ; t < threads ; t++ )
+        {
+            int seed = t ;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed) ;
+                int scan = random.nextInt(ids.length) ;
+                long n = 0 ;
+                while ( System.nanoTime() < end )
+                {
+                    for ( int i = 0 ; i < 1000 ; i++ )
+                    {
+                        if ( random.nextInt(10) == 0 )
+                        {
+                            scan = ( scan+1 ) % ids.length ;
+                            lookup.apply(ids[scan]) ;
+                        }
+                        else
+                        {
+                            // Skewed towards the first of the hot nodes.
+                            double r = random.nextDouble() ;
+                            long time0 = System.nanoTime() ;
+                            lookup.apply(ids[(int)(hot*r*r*r)]) ;
+                            hotTime.add(System.nanoTime()-time0) ;
+                            hotOps.increment() ;
+                        }
+                    }
+                    n += 1000 ;
+                }
+                ops.add(n) ;
+            })) ;
+        }
+        workers.forEach(Thread::start) ;
+        for ( Thread w : workers )
+            w.join() ;
+        System.out.printf("%s: %-22s threads %d  %,.0f ops/s  hot lookup %.0f ns\n",
+                          Lib.classShortName(CmdNodeTableCacheBench.class), label, threads,
+                          ops.sum()/(double)seconds, hotTime.sum()/(double)Math.max(1, hotOps.sum())) ;
+    }
+}
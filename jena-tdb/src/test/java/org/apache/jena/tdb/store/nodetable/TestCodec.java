@@ -25,6 +25,7 @@ import java.util.Collection ;
 import org.apache.jena.atlas.junit.BaseTest ;
 import org.apache.jena.atlas.lib.ByteBufferLib ;
 import org.apache.jena.graph.Node ;
+import org.apache.jena.tdb.base.file.FileFactory ;
 import org.apache.jena.sparql.util.NodeFactoryExtra ;
 import org.junit.Test ;
 import org.junit.runner.RunWith ;
@@ -49,7 +50,8 @@ public class TestCodec extends BaseTest
     @Parameters public static Collection<Object[]> data()
     { 
         return Arrays.asList(new Object[][]
-                                        { { new NodecSSE() } } 
+                                        { { new NodecSSE() } ,
+                                          { new NodecNamespace(new NamespaceTableNative(FileFactory.createObjectFileMem("namespaces"))) } } 
                                         ) ;                                        
     }
 
@@ -80,6 +82,10 @@ public class TestCodec extends BaseTest
     @Test public void nodec_lit_20()    { test ("1") ; }
     @Test public void nodec_lit_21()    { test ("12.3") ; }
     @Test public void nodec_lit_22()    { test ("''^^<>") ; }
+    @Test public void nodec_lit_23()    { test ("'a\\\\b\\\"c\\td'") ; }
+    @Test public void nodec_lit_24()    { test ("'\\r\\n'@en") ; }
+    @Test public void nodec_lit_25()    { test ("'x y'^^<http://example/dt#t>") ; }
+    @Test public void nodec_lit_26()    { test ("'<>^^@'^^<http://example/dt>") ; }
 
     // Bad Unicode.
     static private final String binaryStr1            = "abc\uD800xyz" ;    // A single surrogate, without it's pair. 
@@ -93,6 +99,12 @@ public class TestCodec extends BaseTest
     
     @Test public void nodec_uri_01()    { test ("<>") ; }
     @Test public void nodec_uri_02()    { test ("<http://example/>") ; }
+    @Test public void nodec_uri_03()    { test ("<http://example/abc>") ; }
+    @Test public void nodec_uri_04()    { test ("<http://example/ns#"+greekBase+">") ; }
+    @Test public void nodec_uri_05()    { test ("<urn:x-local:abc>") ; }
+    @Test public void nodec_uri_06()    { test ("<abc>") ; }
+    @Test public void nodec_uri_07()    { test (org.apache.jena.graph.NodeFactory.createURI("http://example/a b")) ; }
+    @Test public void nodec_uri_08()    { test (org.apache.jena.graph.NodeFactory.createURI("http://example/"+chineseBase+"/_"+binaryStr1)) ; }
     
     // Jena anon ids can have a string form including ":"
     @Test public void nodec_blank_01()  { test (org.apache.jena.graph.NodeFactory.createBlankNode("a")) ; }
@@ -117,5 +129,12 @@ public class TestCodec extends BaseTest
         ByteBuffer bb2 = ByteBufferLib.duplicate(bb) ;
         Node n2 = nodec.decode(bb2, null) ;
         assertEquals(n, n2) ;
+
+        // As read from a mapped file.
+        ByteBuffer bb3 = ByteBuffer.allocateDirect(bbLen) ;
+        bb3.put(ByteBufferLib.duplicate(bb)) ;
+        bb3.flip() ;
+        Node n3 = nodec.decode(bb3.asReadOnlyBuffer(), null) ;
+        assertEquals(n, n3) ;
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.Random ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.atomic.AtomicReference ;
+
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.cache.CacheInfo ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.tdb.base.file.Location ;
+import org.apache.jena.tdb.setup.Build ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.sys.Names ;
+import org.junit.Test ;
+
+public class TestNodeTableCache extends BaseTest
+{
+    static NodeTableCache create(int cacheSize)
+    {
+        NodeTable base = Build.makeNodeTable(Location.mem(), Names.indexNode2Id, -1, Names.indexId2Node, -1, -1) ;
+        return (NodeTableCache)NodeTableCache.create(base, cacheSize, cacheSize, 10) ;
+    }
+
+    static Node node(int i) { return NodeFactory.createURI("http://example/n"+i) ; }
+
+    @Test public void cache_info_01()
+    {
+        NodeTableCache nt = create(10) ;
+        for ( int i = 0 ; i < 100 ; i++ )
+            nt.getAllocateNodeId(node(i)) ;
+        for ( int i = 0 ; i < 5 ; i++ )
+            nt.getNodeIdForNode(node(99)) ;
+
+        CacheInfo info = nt.getNode2IdCacheInfo() ;
+        assertEquals(105, info.requests) ;
+        assertEquals(5, info.hits) ;
+        assertEquals(100, info.misses) ;
+        assertEquals(10, info.cacheSize) ;
+        assertEquals(90, info.evictions) ;
+
+        NodeId id = nt.getNodeIdForNode(node(0)) ;
+        assertEquals(node(0), nt.getNodeForNodeId(id)) ;
+        info = nt.getId2NodeCacheInfo() ;
+        assertEquals(1, info.requests) ;
+    }
+
+    @Test public void cache_threads_01() throws InterruptedException
+    {
+        NodeTableCache nt = create(100) ;
+        Map<Node, NodeId> ids = new ConcurrentHashMap<>() ;
+        AtomicReference<String> error = new AtomicReference<>() ;
+        List<Thread> threads = new ArrayList<>() ;
+        for ( int t = 0 ; t < 8 ; t++ )
+        {
+            int seed = t ;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed) ;
+                for ( int i = 0 ; i < 5000 ; i++ )
+                {
+                    Node n = node(random.nextInt(1000)) ;
+                    NodeId id = nt.getAllocateNodeId(n) ;
+                    NodeId id2 = ids.putIfAbsent(n, id) ;
+                    if ( id2 != null && ! id2.equals(id) )
+                        error.set("Two ids for "+n+" : "+id+" "+id2) ;
+                    if ( ! n.equals(nt.getNodeForNodeId(id)) )
+                        error.set("Wrong node for "+id) ;
+                }
+            })) ;
+        }
+        threads.forEach(Thread::start) ;
+        for ( Thread t : threads )
+            t.join() ;
+        assertNull(error.get()) ;
+        for ( Map.Entry<Node, NodeId> e : ids.entrySet() )
+            assertEquals(e.getValue(), nt.getNodeIdForNode(e.getKey())) ;
+    }
+}
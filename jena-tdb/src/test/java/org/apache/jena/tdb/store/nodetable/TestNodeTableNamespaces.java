@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jena.tdb.store.nodetable;
+
+import java.util.Arrays ;
+
+import org.apache.jena.atlas.iterator.Iter ;
+import org.apache.jena.atlas.junit.BaseTest ;
+import org.apache.jena.atlas.lib.FileOps ;
+import org.apache.jena.atlas.lib.Pair ;
+import org.apache.jena.graph.Node ;
+import org.apache.jena.graph.NodeFactory ;
+import org.apache.jena.query.ReadWrite ;
+import org.apache.jena.sparql.core.DatasetGraph ;
+import org.apache.jena.sparql.core.Quad ;
+import org.apache.jena.tdb.ConfigTest ;
+import org.apache.jena.tdb.StoreConnection ;
+import org.apache.jena.tdb.TDBFactory ;
+import org.apache.jena.tdb.base.file.FileFactory ;
+import org.apache.jena.tdb.base.file.Location ;
+import org.apache.jena.tdb.lib.NodeLib ;
+import org.apache.jena.tdb.setup.Build ;
+import org.apache.jena.tdb.setup.StoreParams ;
+import org.apache.jena.tdb.store.DatasetGraphTDB ;
+import org.apache.jena.tdb.store.NodeId ;
+import org.apache.jena.tdb.sys.Names ;
+import org.apache.jena.tdb.sys.TDBInternal ;
+import org.junit.After ;
+import org.junit.Before ;
+import org.junit.Test ;
+
+public class TestNodeTableNamespaces extends BaseTest
+{
+    static Node node(int i) { return NodeFactory.createURI("http://example.org/data/ns"+(i%3)+"#item"+i) ; }
+
+    static final StoreParams params = StoreParams.builder().nodeNamespaces(true).build() ;
+
+    private String path ;
+    private Location location ;
+
+    @Before public void before()
+    {
+        path = ConfigTest.getCleanDir() ;
+        location = Location.create(path) ;
+        StoreConnection.expel(location, true) ;
+        FileOps.clearDirectory(path) ;
+    }
+
+    @After public void after()
+    {
+        StoreConnection.release(location) ;
+        FileOps.clearDirectory(path) ;
+    }
+
+    static NodeTableNative nodeTableNative(NodeTable nodeTable)
+    {
+        while ( nodeTable.wrapped() != null )
+            nodeTable = nodeTable.wrapped() ;
+        return (NodeTableNative)nodeTable ;
+    }
+
+    private int countNamespaces()
+    {
+        NamespaceTable namespaces = new NamespaceTableNative(FileFactory.createObjectFileDisk(location.getPath(Names.indexId2Node, Names.extNamespaces))) ;
+        try { return namespaces.size() ; }
+        finally { namespaces.close() ; }
+    }
+
+    static NamespaceTable namespaces(DatasetGraphTDB dsg)
+    {
+        return nodeTableNative(dsg.getTripleTable().getNodeTupleTable().getNodeTable()).getNamespaces() ;
+    }
+
+    @Test public void namespaces_01()
+    {
+        NodeTable nt = Build.makeNodeTable(location, params) ;
+        NodeId[] ids = new NodeId[300] ;
+        long lengthSSE = 0 ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            ids[i] = nt.getAllocateNodeId(node(i)) ;
+            lengthSSE += NodeLib.encode(node(i)).limit() ;
+        }
+        NodeId idLiteral = nt.getAllocateNodeId(NodeFactory.createLiteral("http://example.org/data/ns0#item0")) ;
+        NodeId idBlank = nt.getAllocateNodeId(NodeFactory.createBlankNode("b0")) ;
+        NodeTableNative ntn = nodeTableNative(nt) ;
+        assertEquals(3, ntn.getNamespaces().size()) ;
+        // Local names and the length codes of the object file.
+        long length = ntn.getObjects().length() ;
+        assertTrue("Length: "+length, length < lengthSSE/2) ;
+        nt.sync() ;
+        nt.close() ;
+
+        assertEquals(3, countNamespaces()) ;
+        nt = Build.makeNodeTable(location, params) ;
+        for ( int i = 0 ; i < ids.length ; i++ )
+        {
+            assertEquals(node(i), nt.getNodeForNodeId(ids[i])) ;
+            assertEquals(ids[i], nt.getNodeIdForNode(node(i))) ;
+        }
+        assertEquals(NodeFactory.createLiteral("http://example.org/data/ns0#item0"), nt.getNodeForNodeId(idLiteral)) ;
+        assertEquals(NodeFactory.createBlankNode("b0"), nt.getNodeForNodeId(idBlank)) ;
+        nt.close() ;
+    }
+
+    @Test public void namespaces_02()
+    {
+        // Nodes written without namespaces are still read.
+        NodeTable nt = Build.makeNodeTable(location, params) ;
+        NodeTableNative ntn = nodeTableNative(nt) ;
+        NodeTable ntSSE = new NodeTableNative(ntn.getIndex(), ntn.getObjects()) ;
+        NodeId id1 = ntSSE.getAllocateNodeId(node(1)) ;
+        NodeId id2 = nt.getAllocateNodeId(node(2)) ;
+        assertEquals(1, ntn.getNamespaces().size()) ;
+        assertEquals(node(1), nt.getNodeForNodeId(id1)) ;
+        assertEquals(node(2), nt.getNodeForNodeId(id2)) ;
+        assertEquals(id1, nt.getNodeIdForNode(node(1))) ;
+        assertEquals(Arrays.asList(node(1), node(2)), Iter.toList(Iter.map(ntn.all(), Pair::cdr))) ;
+        nt.close() ;
+    }
+
+    @Test public void namespaces_03()
+    {
+        // Off unless asked for.
+        NodeTable nt = Build.makeNodeTable(location) ;
+        NodeId id = nt.getAllocateNodeId(node(1)) ;
+        assertNull(nodeTableNative(nt).getNamespaces()) ;
+        assertEquals(node(1), nt.getNodeForNodeId(id)) ;
+        nt.close() ;
+        assertFalse(FileOps.exists(location.getPath(Names.indexId2Node, Names.extNamespaces))) ;
+    }
+
+    @Test public void namespaces_txn_01()
+    {
+        TDBFactory.setup(location, params) ;
+        DatasetGraph dsg = TDBFactory.createDatasetGraph(location) ;
+        Node p = NodeFactory.createURI("http://example.org/p") ;
+        dsg.begin(ReadWrite.WRITE) ;
+        dsg.add(Quad.defaultGraphIRI, node(0), p, node(1)) ;
+        assertEquals(3, namespaces(TDBInternal.getDatasetGraphTDB(dsg)).size()) ;
+        dsg.abort() ;
+        dsg.end() ;
+
+        // Namespaces of an aborted transaction are dropped.
+        NamespaceTable namespaces = namespaces(TDBInternal.getBaseDatasetGraphTDB(dsg)) ;
+        assertEquals(0, namespaces.size()) ;
+
+        dsg.begin(ReadWrite.WRITE) ;
+        dsg.add(Quad.defaultGraphIRI, node(2), p, node(3)) ;
+        assertEquals(0, namespaces.size()) ;
+        dsg.commit() ;
+        dsg.end() ;
+        assertEquals(3, namespaces.size()) ;
+
+        dsg.begin(ReadWrite.READ) ;
+        try {
+            assertFalse(dsg.contains(Quad.defaultGraphIRI, node(0), p, node(1))) ;
+            assertTrue(dsg.contains(Quad.defaultGraphIRI, node(2), p, node(3))) ;
+            assertTrue(namespaces(TDBInternal.getDatasetGraphTDB(dsg)) instanceof NamespaceTableReadonly) ;
+        } finally { dsg.end() ; }
+
+        // The setting is recorded with the database.
+        StoreConnection.expel(location, true) ;
+        dsg = TDBFactory.createDatasetGraph(location) ;
+        assertTrue(TDBInternal.getBaseDatasetGraphTDB(dsg).getConfig().params.isNodeNamespaces()) ;
+        dsg.begin(ReadWrite.READ) ;
+        try {
+            assertTrue(dsg.contains(Quad.defaultGraphIRI, node(2), p, node(3))) ;
+            assertEquals(1, dsg.getDefaultGraph().find(node(2), null, null).toList().size()) ;
+        } finally { dsg.end() ; }
+        assertEquals(3, countNamespaces()) ;
+    }
+}